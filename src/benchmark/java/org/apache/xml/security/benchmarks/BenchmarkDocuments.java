@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import org.apache.xml.security.utils.XMLUtils;
+import org.w3c.dom.Document;
+
+/**
+ * Generates the documents and keys used by the benchmarks
+ */
+public final class BenchmarkDocuments {
+
+    public static final String NAMESPACE = "urn:example:po";
+
+    private BenchmarkDocuments() {
+        // complete
+    }
+
+    /**
+     * Creates a purchase order document with the given number of items. Every item contains
+     * namespace declarations, attributes, escaped text content and a comment so that all the
+     * canonicalization code paths are exercised.
+     */
+    public static byte[] createPurchaseOrder(int items) {
+        StringBuilder sb = new StringBuilder(256 + items * 420);
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        sb.append("<PurchaseOrder xmlns=\"").append(NAMESPACE)
+            .append("\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" Id=\"po\">\n");
+        for (int i = 0; i < items; i++) {
+            sb.append("  <Item xmlns:ex=\"urn:example:extension\" Id=\"item-").append(i)
+                .append("\" ex:priority=\"").append(i % 5).append("\" quantity=\"").append(i + 1).append("\">\n");
+            sb.append("    <!-- item ").append(i).append(" -->\n");
+            sb.append("    <Name>Widget &amp; Gadget #").append(i).append("</Name>\n");
+            sb.append("    <Description>&lt;b&gt;Escaped&lt;/b&gt; markup with \"quotes\" &amp; a tab&#9;and a CR&#13;</Description>\n");
+            sb.append("    <ex:Price currency=\"EUR\" note=\"&lt;net&gt;\">").append(i * 3 + 0.99).append("</ex:Price>\n");
+            sb.append("  </Item>\n");
+        }
+        sb.append("  <PaymentInfo>\n");
+        sb.append("    <CreditCard Limit=\"5,000\" Currency=\"USD\">\n");
+        sb.append("      <Number>4019 2445 0277 5567</Number>\n");
+        sb.append("      <Issuer>Example Bank</Issuer>\n");
+        sb.append("      <Expiration>04/02</Expiration>\n");
+        sb.append("    </CreditCard>\n");
+        sb.append("  </PaymentInfo>\n");
+        sb.append("</PurchaseOrder>\n");
+        try {
+            return sb.toString().getBytes("UTF-8");
+        } catch (java.io.UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static Document parse(byte[] bytes) throws Exception {
+        return XMLUtils.createDocumentBuilder(false).parse(new ByteArrayInputStream(bytes));
+    }
+
+    public static byte[] serialize(Document document) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        XMLUtils.outputDOM(document, baos);
+        return baos.toByteArray();
+    }
+
+    public static KeyPair createRSAKeyPair() throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        return keyPairGenerator.generateKeyPair();
+    }
+
+    public static SecretKey createAESKey() throws Exception {
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(128);
+        return keyGenerator.generateKey();
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.benchmarks;
+
+import java.security.KeyPair;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.crypto.dsig.XMLSignature;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.dom.DOMValidateContext;
+
+import org.apache.xml.security.algorithms.MessageDigestAlgorithm;
+import org.apache.xml.security.transforms.Transforms;
+import org.apache.xml.security.utils.Constants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Benchmarks the validation of an enveloped RSA-SHA256 signature with the JSR-105 API (DOMXMLSignature)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DOMXMLSignatureBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int items;
+
+    private XMLSignatureFactory signatureFactory;
+    private KeyPair keyPair;
+    private byte[] signedDocument;
+    private Document documentToVerify;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        org.apache.xml.security.Init.init();
+        signatureFactory =
+            XMLSignatureFactory.getInstance("DOM", new org.apache.jcp.xml.dsig.internal.dom.XMLDSigRI());
+        keyPair = BenchmarkDocuments.createRSAKeyPair();
+
+        Document document = BenchmarkDocuments.parse(BenchmarkDocuments.createPurchaseOrder(items));
+        org.apache.xml.security.signature.XMLSignature signature =
+            new org.apache.xml.security.signature.XMLSignature(
+                document, "", org.apache.xml.security.signature.XMLSignature.ALGO_ID_SIGNATURE_RSA_SHA256
+            );
+        Element root = document.getDocumentElement();
+        root.insertBefore(signature.getElement(), root.getFirstChild());
+        Transforms transforms = new Transforms(document);
+        transforms.addTransform(Transforms.TRANSFORM_ENVELOPED_SIGNATURE);
+        transforms.addTransform(Transforms.TRANSFORM_C14N_EXCL_OMIT_COMMENTS);
+        signature.addDocument("", transforms, MessageDigestAlgorithm.ALGO_ID_DIGEST_SHA256);
+        signature.sign(keyPair.getPrivate());
+
+        signedDocument = BenchmarkDocuments.serialize(document);
+    }
+
+    @Setup(Level.Invocation)
+    public void parseDocument() throws Exception {
+        documentToVerify = BenchmarkDocuments.parse(signedDocument);
+    }
+
+    @Benchmark
+    public boolean validate() throws Exception {
+        Element signatureElement = (Element) documentToVerify.getElementsByTagNameNS(
+            Constants.SignatureSpecNS, Constants._TAG_SIGNATURE).item(0);
+        DOMValidateContext validateContext = new DOMValidateContext(keyPair.getPublic(), signatureElement);
+        XMLSignature signature = signatureFactory.unmarshalXMLSignature(validateContext);
+        return signature.validate(validateContext);
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+
+import org.apache.xml.security.c14n.Canonicalizer;
+import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
+import org.apache.xml.security.stax.impl.transformer.canonicalizer.Canonicalizer20010315_OmitCommentsTransformer;
+import org.apache.xml.security.test.stax.utils.XMLSecEventAllocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+/**
+ * Benchmarks the escaping of text and attribute values by the DOM and StAX canonicalizers on
+ * an entity-heavy document (escaped XML payloads inside a SOAP body). Run with
+ * "-prof gc" to see the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EscapingBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int payloads;
+
+    private Document document;
+    private List<XMLSecEvent> events;
+
+    @Setup
+    public void setUp() throws Exception {
+        org.apache.xml.security.Init.init();
+        byte[] bytes = createEscapedPayloadDocument(payloads);
+        document = BenchmarkDocuments.parse(bytes);
+
+        XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setEventAllocator(new XMLSecEventAllocator());
+        XMLEventReader xmlEventReader = xmlInputFactory.createXMLEventReader(new ByteArrayInputStream(bytes));
+        events = new ArrayList<XMLSecEvent>();
+        while (xmlEventReader.hasNext()) {
+            XMLSecEvent xmlSecEvent = (XMLSecEvent) xmlEventReader.nextEvent();
+            if (!xmlSecEvent.isStartDocument() && !xmlSecEvent.isEndDocument()) {
+                events.add(xmlSecEvent);
+            }
+        }
+        xmlEventReader.close();
+    }
+
+    @Benchmark
+    public byte[] canonicalizeDOM() throws Exception {
+        Canonicalizer canonicalizer = Canonicalizer.getInstance(Canonicalizer.ALGO_ID_C14N_OMIT_COMMENTS);
+        try {
+            return canonicalizer.canonicalizeSubtree(document);
+        } finally {
+            // handed back as in production code, so that the pooled instance is measured
+            canonicalizer.release();
+        }
+    }
+
+    @Benchmark
+    public byte[] canonicalizeStAX() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Canonicalizer20010315_OmitCommentsTransformer canonicalizer = new Canonicalizer20010315_OmitCommentsTransformer();
+        canonicalizer.setOutputStream(baos);
+        for (int i = 0; i < events.size(); i++) {
+            canonicalizer.transform(events.get(i));
+        }
+        return baos.toByteArray();
+    }
+
+    private static byte[] createEscapedPayloadDocument(int payloads) throws Exception {
+        StringBuilder sb = new StringBuilder(256 + payloads * 512);
+        sb.append("<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\">");
+        sb.append("<soap:Body><Messages xmlns=\"").append(BenchmarkDocuments.NAMESPACE).append("\">");
+        for (int i = 0; i < payloads; i++) {
+            sb.append("<Message Id=\"msg-").append(i)
+                .append("\" Filter=\"a &lt; b &amp;&amp; c &gt; d &quot;quoted&quot;&#9;&#10;\">");
+            sb.append("&lt;?xml version=&quot;1.0&quot;?&gt;&#13;\n");
+            sb.append("&lt;Order id=&quot;").append(i).append("&quot;&gt;&lt;Line qty=&quot;2&quot;&gt;")
+                .append("Fish &amp; Chips &#x20AC;12&lt;/Line&gt;&lt;Note&gt;x &lt; y &amp;&amp; y &gt; z")
+                .append("&lt;/Note&gt;&lt;/Order&gt;&#13;\n");
+            sb.append("</Message>");
+        }
+        sb.append("</Messages></soap:Body></soap:Envelope>");
+        return sb.toString().getBytes("UTF-8");
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKey;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.xml.security.stax.ext.InboundXMLSec;
+import org.apache.xml.security.stax.ext.OutboundXMLSec;
+import org.apache.xml.security.stax.ext.SecurePart;
+import org.apache.xml.security.stax.ext.XMLSec;
+import org.apache.xml.security.stax.ext.XMLSecurityConstants;
+import org.apache.xml.security.stax.ext.XMLSecurityProperties;
+import org.apache.xml.security.stax.securityToken.SecurityTokenConstants;
+import org.apache.xml.security.test.stax.utils.XmlReaderToWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the streaming OutboundXMLSec and InboundXMLSec signature and encryption paths
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StAXBenchmark {
+
+    private static final QName PURCHASE_ORDER = new QName(BenchmarkDocuments.NAMESPACE, "PurchaseOrder");
+
+    @Param({"10", "100", "1000"})
+    public int items;
+
+    private XMLInputFactory xmlInputFactory;
+    private byte[] plainDocument;
+    private byte[] signedDocument;
+    private byte[] encryptedDocument;
+
+    private OutboundXMLSec outboundSignatureXMLSec;
+    private InboundXMLSec inboundSignatureXMLSec;
+    private OutboundXMLSec outboundEncryptionXMLSec;
+    private InboundXMLSec inboundDecryptionXMLSec;
+
+    @Setup
+    public void setUp() throws Exception {
+        org.apache.xml.security.Init.init();
+        xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+
+        KeyPair keyPair = BenchmarkDocuments.createRSAKeyPair();
+        SecretKey key = BenchmarkDocuments.createAESKey();
+
+        XMLSecurityProperties properties = new XMLSecurityProperties();
+        List<XMLSecurityConstants.Action> actions = new ArrayList<XMLSecurityConstants.Action>();
+        actions.add(XMLSecurityConstants.SIGNATURE);
+        properties.setActions(actions);
+        properties.setSignatureKeyIdentifier(SecurityTokenConstants.KeyIdentifier_KeyValue);
+        properties.setSignatureKey(keyPair.getPrivate());
+        properties.setSignatureVerificationKey(keyPair.getPublic());
+        properties.setSignatureAlgorithm("http://www.w3.org/2001/04/xmldsig-more#rsa-sha256");
+        properties.addSignaturePart(new SecurePart(
+            PURCHASE_ORDER,
+            SecurePart.Modifier.Element,
+            new String[]{
+                "http://www.w3.org/2000/09/xmldsig#enveloped-signature",
+                "http://www.w3.org/2001/10/xml-exc-c14n#"
+            },
+            "http://www.w3.org/2001/04/xmlenc#sha256"
+        ));
+        outboundSignatureXMLSec = XMLSec.getOutboundXMLSec(properties);
+
+        properties = new XMLSecurityProperties();
+        properties.setSignatureVerificationKey(keyPair.getPublic());
+        inboundSignatureXMLSec = XMLSec.getInboundWSSec(properties);
+
+        properties = new XMLSecurityProperties();
+        actions = new ArrayList<XMLSecurityConstants.Action>();
+        actions.add(XMLSecurityConstants.ENCRYPT);
+        properties.setActions(actions);
+        properties.setEncryptionKey(key);
+        properties.setEncryptionSymAlgorithm("http://www.w3.org/2001/04/xmlenc#aes128-cbc");
+        properties.addEncryptionPart(new SecurePart(PURCHASE_ORDER, SecurePart.Modifier.Content));
+        outboundEncryptionXMLSec = XMLSec.getOutboundXMLSec(properties);
+
+        properties = new XMLSecurityProperties();
+        properties.setDecryptionKey(key);
+        inboundDecryptionXMLSec = XMLSec.getInboundWSSec(properties);
+
+        plainDocument = BenchmarkDocuments.createPurchaseOrder(items);
+        signedDocument = outbound(outboundSignatureXMLSec).toByteArray();
+        encryptedDocument = outbound(outboundEncryptionXMLSec).toByteArray();
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream outboundSignature() throws Exception {
+        return outbound(outboundSignatureXMLSec);
+    }
+
+    @Benchmark
+    public int inboundSignature() throws Exception {
+        return inbound(inboundSignatureXMLSec, signedDocument);
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream outboundEncryption() throws Exception {
+        return outbound(outboundEncryptionXMLSec);
+    }
+
+    @Benchmark
+    public int inboundDecryption() throws Exception {
+        return inbound(inboundDecryptionXMLSec, encryptedDocument);
+    }
+
+    private ByteArrayOutputStream outbound(OutboundXMLSec outboundXMLSec) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(plainDocument.length * 2);
+        XMLStreamWriter xmlStreamWriter = outboundXMLSec.processOutMessage(baos, "UTF-8");
+        XMLStreamReader xmlStreamReader =
+            xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(plainDocument));
+        XmlReaderToWriter.writeAll(xmlStreamReader, xmlStreamWriter);
+        xmlStreamWriter.close();
+        xmlStreamReader.close();
+        return baos;
+    }
+
+    private int inbound(InboundXMLSec inboundXMLSec, byte[] document) throws Exception {
+        XMLStreamReader xmlStreamReader =
+            xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(document));
+        XMLStreamReader securityStreamReader = inboundXMLSec.processInMessage(xmlStreamReader);
+        int events = 0;
+        while (securityStreamReader.hasNext()) {
+            securityStreamReader.next();
+            events++;
+        }
+        securityStreamReader.close();
+        return events;
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKey;
+
+import org.apache.xml.security.encryption.XMLCipher;
+import org.apache.xml.security.utils.EncryptionConstants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Benchmarks XMLCipher.doFinal for the encryption and decryption of the document element
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XMLCipherBenchmark {
+
+    @Param({XMLCipher.AES_128, XMLCipher.AES_128_GCM})
+    public String algorithm;
+
+    @Param({"10", "100", "1000"})
+    public int items;
+
+    private SecretKey key;
+    private byte[] plainDocument;
+    private byte[] encryptedDocument;
+
+    // fresh documents for every invocation since doFinal() replaces the content
+    private Document documentToEncrypt;
+    private Document documentToDecrypt;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        org.apache.xml.security.Init.init();
+        key = BenchmarkDocuments.createAESKey();
+        plainDocument = BenchmarkDocuments.createPurchaseOrder(items);
+
+        Document document = BenchmarkDocuments.parse(plainDocument);
+        XMLCipher cipher = XMLCipher.getInstance(algorithm);
+        cipher.init(XMLCipher.ENCRYPT_MODE, key);
+        encryptedDocument = BenchmarkDocuments.serialize(cipher.doFinal(document, document.getDocumentElement()));
+    }
+
+    @Setup(Level.Invocation)
+    public void parseDocuments() throws Exception {
+        documentToEncrypt = BenchmarkDocuments.parse(plainDocument);
+        documentToDecrypt = BenchmarkDocuments.parse(encryptedDocument);
+    }
+
+    @Benchmark
+    public Document encrypt() throws Exception {
+        XMLCipher cipher = XMLCipher.getInstance(algorithm);
+        cipher.init(XMLCipher.ENCRYPT_MODE, key);
+        return cipher.doFinal(documentToEncrypt, documentToEncrypt.getDocumentElement());
+    }
+
+    @Benchmark
+    public Document decrypt() throws Exception {
+        Element encryptedData = (Element) documentToDecrypt.getElementsByTagNameNS(
+            EncryptionConstants.EncryptionSpecNS, EncryptionConstants._TAG_ENCRYPTEDDATA).item(0);
+        XMLCipher cipher = XMLCipher.getInstance();
+        cipher.init(XMLCipher.DECRYPT_MODE, key);
+        return cipher.doFinal(documentToDecrypt, encryptedData);
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.benchmarks;
+
+import java.security.KeyPair;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.xml.security.algorithms.MessageDigestAlgorithm;
+import org.apache.xml.security.signature.XMLSignature;
+import org.apache.xml.security.transforms.Transforms;
+import org.apache.xml.security.utils.Constants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Benchmarks XMLSignature.sign and XMLSignature.checkSignatureValue of the DOM API
+ * with an enveloped RSA-SHA256 signature
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XMLSignatureBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int items;
+
+    private KeyPair keyPair;
+    private byte[] unsignedDocument;
+    private byte[] signedDocument;
+
+    // fresh documents for every invocation since sign() and checkSignatureValue() modify them
+    private Document documentToSign;
+    private Document documentToVerify;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        org.apache.xml.security.Init.init();
+        keyPair = BenchmarkDocuments.createRSAKeyPair();
+        unsignedDocument = BenchmarkDocuments.createPurchaseOrder(items);
+
+        Document document = BenchmarkDocuments.parse(unsignedDocument);
+        sign(document);
+        signedDocument = BenchmarkDocuments.serialize(document);
+    }
+
+    @Setup(Level.Invocation)
+    public void parseDocuments() throws Exception {
+        documentToSign = BenchmarkDocuments.parse(unsignedDocument);
+        documentToVerify = BenchmarkDocuments.parse(signedDocument);
+    }
+
+    @Benchmark
+    public XMLSignature sign() throws Exception {
+        return sign(documentToSign);
+    }
+
+    @Benchmark
+    public boolean checkSignatureValue() throws Exception {
+        Element signatureElement = (Element) documentToVerify.getElementsByTagNameNS(
+            Constants.SignatureSpecNS, Constants._TAG_SIGNATURE).item(0);
+        XMLSignature signature = new XMLSignature(signatureElement, "");
+        return signature.checkSignatureValue(keyPair.getPublic());
+    }
+
+    private XMLSignature sign(Document document) throws Exception {
+        XMLSignature signature =
+            new XMLSignature(document, "", XMLSignature.ALGO_ID_SIGNATURE_RSA_SHA256);
+        Element root = document.getDocumentElement();
+        root.insertBefore(signature.getElement(), root.getFirstChild());
+
+        Transforms transforms = new Transforms(document);
+        transforms.addTransform(Transforms.TRANSFORM_ENVELOPED_SIGNATURE);
+        transforms.addTransform(Transforms.TRANSFORM_C14N_EXCL_OMIT_COMMENTS);
+        signature.addDocument("", transforms, MessageDigestAlgorithm.ALGO_ID_DIGEST_SHA256);
+
+        signature.sign(keyPair.getPrivate());
+        return signature;
+    }
+}
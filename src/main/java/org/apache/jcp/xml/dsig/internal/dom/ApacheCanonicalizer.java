@@ -25,7 +25,6 @@
 package org.apache.jcp.xml.dsig.internal.dom;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.OutputStream;
 import java.security.spec.AlgorithmParameterSpec;
 import java.security.InvalidAlgorithmParameterException;
@@ -129,8 +128,6 @@ public abstract class ApacheCanonicalizer extends TransformService {
 
         if (os != null) {
             apacheCanonicalizer.setWriter(os);
-        } else {
-            apacheCanonicalizer.setWriter(new ByteArrayOutputStream());
         }
 
         try {
@@ -140,31 +137,27 @@ public abstract class ApacheCanonicalizer extends TransformService {
                     ((ApacheData)data).getXMLSignatureInput();
                 if (in.isElement()) {
                     if (inclusiveNamespaces != null) {
-                        return new OctetStreamData(new ByteArrayInputStream
-                            (apacheCanonicalizer.canonicalizeSubtree
-                                (in.getSubNode(), inclusiveNamespaces)));
+                        return toOctetStreamData(apacheCanonicalizer.canonicalizeSubtree
+                                (in.getSubNode(), inclusiveNamespaces), os);
                     } else {
-                        return new OctetStreamData(new ByteArrayInputStream
-                            (apacheCanonicalizer.canonicalizeSubtree
-                                (in.getSubNode())));
+                        return toOctetStreamData(apacheCanonicalizer.canonicalizeSubtree
+                                (in.getSubNode()), os);
                     }
                 } else if (in.isNodeSet()) {
                     nodeSet = in.getNodeSet();
                 } else {
-                    return new OctetStreamData(new ByteArrayInputStream(
+                    return toOctetStreamData(
                         apacheCanonicalizer.canonicalize(
-                            Utils.readBytesFromStream(in.getOctetStream()))));
+                            Utils.readBytesFromStream(in.getOctetStream())), os);
                 }
             } else if (data instanceof DOMSubTreeData) {
                 DOMSubTreeData subTree = (DOMSubTreeData)data;
                 if (inclusiveNamespaces != null) {
-                    return new OctetStreamData(new ByteArrayInputStream
-                        (apacheCanonicalizer.canonicalizeSubtree
-                         (subTree.getRoot(), inclusiveNamespaces)));
+                    return toOctetStreamData(apacheCanonicalizer.canonicalizeSubtree
+                         (subTree.getRoot(), inclusiveNamespaces), os);
                 } else {
-                    return new OctetStreamData(new ByteArrayInputStream
-                        (apacheCanonicalizer.canonicalizeSubtree
-                         (subTree.getRoot())));
+                    return toOctetStreamData(apacheCanonicalizer.canonicalizeSubtree
+                         (subTree.getRoot()), os);
                 }
             } else if (data instanceof NodeSetData) {
                 NodeSetData nsd = (NodeSetData)data;
@@ -176,22 +169,36 @@ public abstract class ApacheCanonicalizer extends TransformService {
                     log.debug("Canonicalizing " + nodeSet.size() + " nodes");
                 }
             } else {
-                return new OctetStreamData(new ByteArrayInputStream(
+                return toOctetStreamData(
                     apacheCanonicalizer.canonicalize(
                         Utils.readBytesFromStream(
-                        ((OctetStreamData)data).getOctetStream()))));
+                        ((OctetStreamData)data).getOctetStream())), os);
             }
             if (inclusiveNamespaces != null) {
-                return new OctetStreamData(new ByteArrayInputStream(
+                return toOctetStreamData(
                     apacheCanonicalizer.canonicalizeXPathNodeSet
-                        (nodeSet, inclusiveNamespaces)));
+                        (nodeSet, inclusiveNamespaces), os);
             } else {
-                return new OctetStreamData(new ByteArrayInputStream(
-                    apacheCanonicalizer.canonicalizeXPathNodeSet(nodeSet)));
+                return toOctetStreamData(
+                    apacheCanonicalizer.canonicalizeXPathNodeSet(nodeSet), os);
             }
         } catch (Exception e) {
             throw new TransformException(e);
+        } finally {
+            // the Canonicalizer is drawn from the pool again on the next call
+            apacheCanonicalizer.release();
+            apacheCanonicalizer = null;
+        }
+    }
+
+    /**
+     * @return the canonicalized octets, or null if they were written to the output stream
+     */
+    private static Data toOctetStreamData(byte[] bytes, OutputStream os) {
+        if (os != null) {
+            return null;
         }
+        return new OctetStreamData(new ByteArrayInputStream(bytes));
     }
 
     public Data transform(Data data, XMLCryptoContext xc, OutputStream os)
@@ -33,6 +33,7 @@ import javax.xml.crypto.NodeSetData;
 import org.w3c.dom.Node;
 import org.apache.xml.security.signature.NodeFilter;
 import org.apache.xml.security.signature.XMLSignatureInput;
+import org.apache.xml.security.utils.SubtreeNodeSet;
 import org.apache.xml.security.utils.XMLUtils;
 
 public class ApacheNodeSetData implements ApacheData, NodeSetData {
@@ -68,9 +69,8 @@ public class ApacheNodeSetData implements ApacheData, NodeSetData {
                 (XMLUtils.getOwnerDocument(xi.getSubNode()));
         }
 
-        Set<Node> inputSet = new LinkedHashSet<Node>();
-        XMLUtils.getSet(xi.getSubNode(), inputSet,
-                        null, !xi.isExcludeComments());
+        Set<Node> inputSet = 
+            new SubtreeNodeSet(xi.getSubNode(), null, !xi.isExcludeComments());
         Set<Node> nodeSet = new LinkedHashSet<Node>();
         for (Node currentNode : inputSet) {
             Iterator<NodeFilter> it = nodeFilters.iterator();
@@ -99,6 +99,7 @@ public final class DOMReference extends DOMStructure
     private boolean validated = false;
     private boolean validationStatus;
     private Data derefData;
+    private boolean digestInputBuffered;
     private InputStream dis;
     private MessageDigest md;
     private Provider provider;
@@ -407,6 +408,16 @@ public final class DOMReference extends DOMStructure
         return dis;
     }
 
+    /**
+     * This method only works after a call to validate or to digest the reference.
+     *
+     * @return true if the octets that were digested were first held in memory
+     *    as a whole, instead of being written to the digest as they were produced
+     */
+    public boolean isDigestInputBuffered() {
+        return digestInputBuffered;
+    }
+
     private Data dereference(XMLCryptoContext context)
         throws XMLSignatureException
     {
@@ -443,6 +454,7 @@ public final class DOMReference extends DOMStructure
             }
         }
         md.reset();
+        digestInputBuffered = false;
         DigesterOutputStream dos;
         Boolean cache = (Boolean)
             context.getProperty("javax.xml.crypto.dsig.cacheReference");
@@ -499,46 +511,58 @@ public final class DOMReference extends DOMStructure
                             spi = TransformService.getInstance(c14nalg, "DOM");
                         }
                     }
-                    data = spi.transform(data, context);
-                    xi = new XMLSignatureInput
-                        (((OctetStreamData)data).getOctetStream());
+                    if (spi instanceof ApacheCanonicalizer) {
+                        // canonicalize straight into the digest
+                        ((ApacheCanonicalizer)spi).canonicalize(data, context, os);
+                        xi = null;
+                    } else {
+                        data = spi.transform(data, context);
+                        xi = new XMLSignatureInput
+                            (((OctetStreamData)data).getOctetStream());
+                        digestInputBuffered = true;
+                    }
                 } else {
                     throw new XMLSignatureException("unrecognized Data type");
                 }
-                
-                boolean secVal = Utils.secureValidation(context);
-                xi.setSecureValidation(secVal);
-                if (context instanceof XMLSignContext && c14n11
-                    && !xi.isOctetStream() && !xi.isOutputStreamSet()) {
-                    TransformService spi = null;
-                    if (provider == null) {
-                        spi = TransformService.getInstance(c14nalg, "DOM");
-                    } else {
-                        try {
-                            spi = TransformService.getInstance(c14nalg, "DOM", provider);
-                        } catch (NoSuchAlgorithmException nsae) {
+
+                if (xi != null) {
+                    boolean secVal = Utils.secureValidation(context);
+                    xi.setSecureValidation(secVal);
+                    if (xi.isByteArray()) {
+                        digestInputBuffered = true;
+                    }
+                    if (context instanceof XMLSignContext && c14n11
+                        && !xi.isOctetStream() && !xi.isOutputStreamSet()) {
+                        TransformService spi = null;
+                        if (provider == null) {
                             spi = TransformService.getInstance(c14nalg, "DOM");
+                        } else {
+                            try {
+                                spi = TransformService.getInstance(c14nalg, "DOM", provider);
+                            } catch (NoSuchAlgorithmException nsae) {
+                                spi = TransformService.getInstance(c14nalg, "DOM");
+                            }
                         }
-                    }
 
-                    DOMTransform t = new DOMTransform(spi);
-                    Element transformsElem = null;
-                    String dsPrefix = DOMUtils.getSignaturePrefix(context);
-                    if (allTransforms.isEmpty()) {
-                        transformsElem = DOMUtils.createElement(
-                            refElem.getOwnerDocument(),
-                            "Transforms", XMLSignature.XMLNS, dsPrefix);
-                        refElem.insertBefore(transformsElem,
-                            DOMUtils.getFirstChildElement(refElem));
+                        DOMTransform t = new DOMTransform(spi);
+                        Element transformsElem = null;
+                        String dsPrefix = DOMUtils.getSignaturePrefix(context);
+                        if (allTransforms.isEmpty()) {
+                            transformsElem = DOMUtils.createElement(
+                                refElem.getOwnerDocument(),
+                                "Transforms", XMLSignature.XMLNS, dsPrefix);
+                            refElem.insertBefore(transformsElem,
+                                DOMUtils.getFirstChildElement(refElem));
+                        } else {
+                            transformsElem = DOMUtils.getFirstChildElement(refElem);
+                        }
+                        XmlWriter xwriter = new XmlWriterToTree(Marshaller.getMarshallers(), transformsElem);
+                        t.marshal(xwriter, dsPrefix, context);
+                        allTransforms.add(t);
+                        xi.updateOutputStream(os, true);
                     } else {
-                        transformsElem = DOMUtils.getFirstChildElement(refElem);
+                        xi.updateOutputStream(os);
                     }
-                    XmlWriter xwriter = new XmlWriterToTree(Marshaller.getMarshallers(), transformsElem);
-                    t.marshal(xwriter, dsPrefix, context);
-                    allTransforms.add(t);
-                    xi.updateOutputStream(os, true);
-                } else {
-                    xi.updateOutputStream(os);
                 }
             }
             os.flush();
@@ -636,7 +660,8 @@ public final class DOMReference extends DOMStructure
             XMLSignatureInput xsi = ad.getXMLSignatureInput();
             if (xsi.isNodeSet()) {
                 try {
-                    final Set<Node> s = xsi.getNodeSet();
+                    // a copy, as the node-set may be a view of the document
+                    final Set<Node> s = new LinkedHashSet<Node>(xsi.getNodeSet());
                     return new NodeSetData() {
                         @Override
                         public Iterator<Node> iterator() { return s.iterator(); }
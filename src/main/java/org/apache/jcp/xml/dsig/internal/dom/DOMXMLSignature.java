@@ -45,11 +45,19 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
+import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.apache.xml.security.exceptions.Base64DecodingException;
 import org.apache.xml.security.utils.Base64;
+import org.apache.xml.security.utils.ConcurrentTasks;
+import org.apache.xml.security.utils.DocumentIdIndex;
+import org.apache.xml.security.utils.XMLUtils;
 
 /**
  * DOM-based implementation of XMLSignature.
@@ -62,6 +70,20 @@ public final class DOMXMLSignature extends DOMStructure
 
     private static org.slf4j.Logger log =
         org.slf4j.LoggerFactory.getLogger(DOMXMLSignature.class);
+
+    /**
+     * The property of the validate context holding the Executor on which the
+     * References are validated concurrently. The document is prepared with
+     * XMLUtils.prepareForConcurrentReading, but the DOM API does not promise that a
+     * document can be read by several threads at once, and Xerces caches the last
+     * position read in its NodeLists. The property must therefore only be set where the
+     * DOM implementation, the transforms and the URIDereferencer in use are known to read
+     * the document safely. The References after an invalid one are not validated, and
+     * a signature validated as a task of a DOMXMLSignatureBatchValidator validates its
+     * References in that task.
+     */
+    private static final String REFERENCE_VALIDATION_EXECUTOR =
+        "org.apache.jcp.xml.dsig.referenceValidationExecutor";
     private String id;
     private SignatureValue sv;
     private KeyInfo ki;
@@ -258,12 +280,38 @@ public final class DOMXMLSignature extends DOMStructure
             return validationStatus;
         }
 
+        // the ID attributes of the document are marked by now, so index them once for all
+        // References instead of walking the tree for every one of them
+        Document doc = XMLUtils.getOwnerDocument(((DOMValidateContext)vc).getNode());
+        DocumentIdIndex.pin(doc);
+        try {
+            validationStatus = validateReferences(vc);
+        } finally {
+            DocumentIdIndex.unpin(doc);
+        }
+        validated = true;
+        return validationStatus;
+    }
+
+    private boolean validateReferences(XMLValidateContext vc) throws XMLSignatureException {
         // validate all References
         List<Reference> refs = DOMSignedInfo.getSignedInfoReferences(this.si);
+        Executor executor = (Executor)vc.getProperty(REFERENCE_VALIDATION_EXECUTOR);
+        boolean validateManifests = 
+            Boolean.TRUE.equals(vc.getProperty("org.jcp.xml.dsig.validateManifests"));
+        if (executor != null && ConcurrentTasks.isRunningTask()) {
+            // already validated on the Executor, as part of a batch
+            executor = null;
+        }
+        if (executor != null) {
+            prepareForConcurrentValidation((DOMValidateContext)vc, validateManifests);
+        }
+        List<FutureTask<Boolean>> validations = validateConcurrently(refs, vc, executor);
         boolean validateRefs = true;
         for (int i = 0, size = refs.size(); validateRefs && i < size; i++) {
             Reference ref = refs.get(i);
-            boolean refValid = ref.validate(vc);
+            boolean refValid = 
+                validations == null ? ref.validate(vc) : getResult(validations.get(i));
             if (log.isDebugEnabled()) {
                 log.debug("Reference[" + ref.getURI() + "] is valid: " + refValid);
             }
@@ -273,16 +321,12 @@ public final class DOMXMLSignature extends DOMStructure
             if (log.isDebugEnabled()) {
                 log.debug("Couldn't validate the References");
             }
-            validationStatus = false;
-            validated = true;
-            return validationStatus;
+            return false;
         }
 
         // validate Manifests, if property set
         boolean validateMans = true;
-        if (Boolean.TRUE.equals(vc.getProperty
-                                ("org.jcp.xml.dsig.validateManifests")))
-        {
+        if (validateManifests) {
             for (int i=0, size=objects.size(); validateMans && i < size; i++) {
                 XMLObject xo = objects.get(i);
                 List<XMLStructure> content = DOMXMLObject.getXmlObjectContent(xo);
@@ -295,10 +339,13 @@ public final class DOMXMLSignature extends DOMStructure
                         }
                         Manifest man = (Manifest)xs;
                         List<Reference> manRefs = DOMManifest.getManifestReferences(man);
+                        List<FutureTask<Boolean>> manValidations =
+                            validateConcurrently(manRefs, vc, executor);
                         int rsize = manRefs.size();
                         for (int k = 0; validateMans && k < rsize; k++) {
                             Reference ref = manRefs.get(k);
-                            boolean refValid = ref.validate(vc);
+                            boolean refValid = manValidations == null 
+                                ? ref.validate(vc) : getResult(manValidations.get(k));
                             if (log.isDebugEnabled()) {
                                 log.debug(
                                     "Manifest ref[" + ref.getURI() + "] is valid: " + refValid
@@ -311,9 +358,97 @@ public final class DOMXMLSignature extends DOMStructure
             }
         }
 
-        validationStatus = validateMans;
-        validated = true;
-        return validationStatus;
+        return validateMans;
+    }
+
+    /**
+     * Prepares the document for the References to be validated concurrently, so that they
+     * only read it. The document must not be modified while they are validated.
+     */
+    private void prepareForConcurrentValidation(DOMValidateContext vc, boolean validateManifests) {
+        List<Reference> refs = 
+            new ArrayList<Reference>(DOMSignedInfo.getSignedInfoReferences(this.si));
+        if (validateManifests) {
+            for (XMLObject xo : objects) {
+                for (XMLStructure xs : DOMXMLObject.getXmlObjectContent(xo)) {
+                    if (xs instanceof Manifest) {
+                        refs.addAll(DOMManifest.getManifestReferences((Manifest)xs));
+                    }
+                }
+            }
+        }
+
+        boolean circumvent = false;
+        for (Reference ref : refs) {
+            List<Transform> transforms = ((DOMReference)ref).getTransforms();
+            for (Transform transform : transforms) {
+                circumvent |= Transform.XPATH.equals(transform.getAlgorithm());
+            }
+        }
+
+        Document doc = DOMUtils.getOwnerDocument(vc.getNode());
+        if (circumvent) {
+            // otherwise done by the XPath transforms while the others read the document
+            XMLUtils.circumventBug2650(doc);
+        }
+        XMLUtils.prepareForConcurrentReading(doc);
+    }
+
+    /**
+     * Validates the given References on the given Executor, and waits until all of them
+     * are done. As the References are validated in order until one of them is invalid,
+     * the References after an invalid one are not validated.
+     *
+     * @return the validation of every Reference, or null if the References are to be
+     *    validated one after the other in the calling thread
+     */
+    private static List<FutureTask<Boolean>> validateConcurrently(
+        List<Reference> refs, final XMLValidateContext vc, Executor executor
+    ) throws XMLSignatureException {
+        if (executor == null || refs.size() < 2) {
+            return null;
+        }
+        List<Callable<Boolean>> callables = new ArrayList<Callable<Boolean>>(refs.size());
+        for (final Reference ref : refs) {
+            callables.add(new Callable<Boolean>() {
+                public Boolean call() throws XMLSignatureException {
+                    return ref.validate(vc);
+                }
+            });
+        }
+
+        List<FutureTask<Boolean>> validations = ConcurrentTasks.newTasks(callables, Boolean.FALSE);
+        try {
+            ConcurrentTasks.runAll(validations, executor);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new XMLSignatureException(ex);
+        }
+        return validations;
+    }
+
+    /**
+     * @return the result of a validation which is done
+     * @throws XMLSignatureException the exception thrown by the validation
+     */
+    private static boolean getResult(FutureTask<Boolean> validation) 
+        throws XMLSignatureException {
+        try {
+            return validation.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new XMLSignatureException(ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof XMLSignatureException) {
+                throw (XMLSignatureException)cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new XMLSignatureException(ex);
+        }
     }
 
     @Override
@@ -0,0 +1,429 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jcp.xml.dsig.internal.dom;
+
+import java.security.KeyException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import javax.xml.crypto.AlgorithmMethod;
+import javax.xml.crypto.KeySelector;
+import javax.xml.crypto.KeySelectorException;
+import javax.xml.crypto.KeySelectorResult;
+import javax.xml.crypto.URIDereferencer;
+import javax.xml.crypto.XMLCryptoContext;
+import javax.xml.crypto.dsig.XMLSignature;
+import javax.xml.crypto.dsig.XMLSignatureException;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.dom.DOMValidateContext;
+import javax.xml.crypto.dsig.keyinfo.KeyInfo;
+import javax.xml.crypto.dsig.keyinfo.KeyValue;
+import javax.xml.crypto.dsig.keyinfo.X509Data;
+
+import org.apache.xml.security.utils.Base64;
+import org.apache.xml.security.utils.ConcurrentTasks;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Validates many independent signatures at once, on an Executor, and returns the result of
+ * every signature instead of stopping at the first failure. It is the counterpart of
+ * {@link org.apache.xml.security.signature.XMLSignatureBatchVerifier} for the JSR 105 API.
+ * <p>
+ * The signatures are unmarshalled by the given XMLSignatureFactory and validated with their
+ * own DOMValidateContext, which is not modified. A KeySelector shared by several contexts may
+ * be called by several threads at once.
+ * <p>
+ * Optionally, see {@link #setShareKeySelectorResults(boolean)}, the batch also shares the
+ * results of the KeySelectors.
+ * <p>
+ * The signatures of the same Document are validated one after the other by one task, so that
+ * no Document is read by two threads at once. The Documents must not be modified while the
+ * batch is validated.
+ */
+public final class DOMXMLSignatureBatchValidator {
+
+    private static org.slf4j.Logger log =
+        org.slf4j.LoggerFactory.getLogger(DOMXMLSignatureBatchValidator.class);
+
+    private final XMLSignatureFactory factory;
+
+    private final Executor executor;
+
+    private boolean shareKeySelectorResults;
+
+    /**
+     * @param factory the factory which unmarshals the signatures
+     * @param executor the Executor on which the signatures are validated, or null to validate
+     *    them in the calling thread
+     */
+    public DOMXMLSignatureBatchValidator(XMLSignatureFactory factory, Executor executor) {
+        if (factory == null) {
+            throw new NullPointerException("factory cannot be null");
+        }
+        this.factory = factory;
+        this.executor = executor;
+    }
+
+    /**
+     * Sets whether the results of the KeySelectors are shared, which is off by default.
+     * <p>
+     * When it is on, and several contexts have the same KeySelector, signatures whose KeyInfo
+     * only holds KeyValues and X509Certificates with the same content, and which use the same
+     * SignatureMethod, get the KeySelectorResult selected for the first of them. The
+     * KeySelector is then not called for the other contexts at all. This must only be turned
+     * on if the KeySelector trusts a key for the same reasons in every context of a batch,
+     * that is if its decision does not depend on the XMLCryptoContext, such as its properties
+     * or a trust store per partner.
+     *
+     * @param shareKeySelectorResults true to share the results of the KeySelectors
+     */
+    public void setShareKeySelectorResults(boolean shareKeySelectorResults) {
+        this.shareKeySelectorResults = shareKeySelectorResults;
+    }
+
+    /**
+     * @return whether the results of the KeySelectors are shared
+     */
+    public boolean isShareKeySelectorResults() {
+        return shareKeySelectorResults;
+    }
+
+    /**
+     * Validates the signatures of the given contexts, and waits until all of them are
+     * validated.
+     *
+     * @param contexts the contexts of the signatures
+     * @return the result of every signature, in the order of the contexts
+     * @throws XMLSignatureException if the calling thread is interrupted while waiting
+     */
+    public List<Result> validate(final List<DOMValidateContext> contexts)
+        throws XMLSignatureException
+    {
+        final Result[] results = new Result[contexts.size()];
+
+        final Map<KeySelector, KeySelector> sharingKeySelectors =
+            new IdentityHashMap<KeySelector, KeySelector>();
+        Map<Document, List<Integer>> contextsByDocument =
+            new IdentityHashMap<Document, List<Integer>>();
+        List<List<Integer>> groups = new ArrayList<List<Integer>>();
+        for (int i = 0; i < contexts.size(); i++) {
+            DOMValidateContext context = contexts.get(i);
+            KeySelector keySelector = context.getKeySelector();
+            if (shareKeySelectorResults && keySelector != null
+                && !sharingKeySelectors.containsKey(keySelector)) {
+                sharingKeySelectors.put(keySelector, new SharingKeySelector(keySelector));
+            }
+
+            Document doc = DOMUtils.getOwnerDocument(context.getNode());
+            List<Integer> group = contextsByDocument.get(doc);
+            if (group == null) {
+                group = new ArrayList<Integer>();
+                contextsByDocument.put(doc, group);
+                groups.add(group);
+            }
+            group.add(i);
+        }
+
+        List<FutureTask<Void>> tasks = new ArrayList<FutureTask<Void>>(groups.size());
+        for (final List<Integer> group : groups) {
+            tasks.add(ConcurrentTasks.newTask(new Callable<Void>() {
+                public Void call() {
+                    for (Integer i : group) {
+                        results[i] = validate(contexts.get(i), sharingKeySelectors);
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        try {
+            ConcurrentTasks.runAll(tasks, executor);
+            for (FutureTask<Void> task : tasks) {
+                try {
+                    task.get();
+                } catch (ExecutionException ex) {
+                    // validate catches every Exception
+                    if (ex.getCause() instanceof Error) {
+                        throw (Error)ex.getCause();
+                    }
+                    throw new XMLSignatureException(ex);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new XMLSignatureException(ex);
+        }
+
+        List<Result> resultList = new ArrayList<Result>(results.length);
+        Collections.addAll(resultList, results);
+        return resultList;
+    }
+
+    private Result validate(
+        DOMValidateContext context, Map<KeySelector, KeySelector> sharingKeySelectors
+    ) {
+        KeySelector sharingKeySelector = null;
+        if (context.getKeySelector() != null) {
+            sharingKeySelector = sharingKeySelectors.get(context.getKeySelector());
+        }
+        DOMValidateContext validateContext = context;
+        if (sharingKeySelector != null) {
+            validateContext = new SharingValidateContext(context, sharingKeySelector);
+        }
+        XMLSignature signature = null;
+        try {
+            signature = factory.unmarshalXMLSignature(validateContext);
+            return new Result(signature, signature.validate(validateContext), null);
+        } catch (Exception ex) {
+            // the failure of one signature does not affect the others
+            if (log.isDebugEnabled()) {
+                log.debug(ex.getMessage(), ex);
+            }
+            return new Result(signature, false, ex);
+        }
+    }
+
+    /**
+     * A KeySelector which returns the same result for KeyInfos with the same self-contained
+     * content, and selects it with the given KeySelector only once.
+     */
+    private static class SharingKeySelector extends KeySelector {
+
+        private final KeySelector keySelector;
+
+        private final Map<String, KeySelectorResult> results =
+            new ConcurrentHashMap<String, KeySelectorResult>();
+
+        SharingKeySelector(KeySelector keySelector) {
+            this.keySelector = keySelector;
+        }
+
+        @Override
+        public KeySelectorResult select(
+            KeyInfo keyInfo, Purpose purpose, AlgorithmMethod method, XMLCryptoContext context
+        ) throws KeySelectorException {
+            if (context instanceof SharingValidateContext) {
+                // the KeySelector sees the context of the caller
+                context = ((SharingValidateContext)context).context;
+            }
+            String content = getSelfContainedContent(keyInfo);
+            if (content == null) {
+                return keySelector.select(keyInfo, purpose, method, context);
+            }
+            String key = purpose + " " + method.getAlgorithm() + " " + content;
+            KeySelectorResult result = results.get(key);
+            if (result == null) {
+                result = keySelector.select(keyInfo, purpose, method, context);
+                if (result != null && result.getKey() != null) {
+                    results.put(key, result);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * @return the content of the KeyInfo, or null if the key it holds may depend on
+         *    anything else than its content
+         */
+        private static String getSelfContainedContent(KeyInfo keyInfo)
+            throws KeySelectorException {
+            if (keyInfo == null) {
+                return null;
+            }
+            StringBuilder content = new StringBuilder();
+            try {
+                for (Object structure : keyInfo.getContent()) {
+                    if (structure instanceof KeyValue) {
+                        content.append("KeyValue ");
+                        content.append(Base64.encode(
+                            ((KeyValue)structure).getPublicKey().getEncoded()));
+                    } else if (structure instanceof X509Data) {
+                        for (Object data : ((X509Data)structure).getContent()) {
+                            if (!(data instanceof X509Certificate)) {
+                                return null;
+                            }
+                            content.append("X509Certificate ");
+                            content.append(Base64.encode(((X509Certificate)data).getEncoded()));
+                        }
+                    } else {
+                        return null;
+                    }
+                    content.append(' ');
+                }
+            } catch (KeyException ex) {
+                throw new KeySelectorException(ex);
+            } catch (CertificateEncodingException ex) {
+                throw new KeySelectorException(ex);
+            }
+            return content.length() == 0 ? null : content.toString();
+        }
+
+    }
+
+    /**
+     * A DOMValidateContext which has the SharingKeySelector, and otherwise reads and writes
+     * the context of the caller, so that the latter is not modified.
+     */
+    private static class SharingValidateContext extends DOMValidateContext {
+
+        private final DOMValidateContext context;
+
+        SharingValidateContext(DOMValidateContext context, KeySelector sharingKeySelector) {
+            super(sharingKeySelector, context.getNode());
+            this.context = context;
+        }
+
+        @Override
+        public Node getNode() {
+            return context.getNode();
+        }
+
+        @Override
+        public String getBaseURI() {
+            return context.getBaseURI();
+        }
+
+        @Override
+        public void setBaseURI(String baseURI) {
+            context.setBaseURI(baseURI);
+        }
+
+        @Override
+        public URIDereferencer getURIDereferencer() {
+            return context.getURIDereferencer();
+        }
+
+        @Override
+        public void setURIDereferencer(URIDereferencer dereferencer) {
+            context.setURIDereferencer(dereferencer);
+        }
+
+        @Override
+        public String getNamespacePrefix(String namespaceURI, String defaultPrefix) {
+            return context.getNamespacePrefix(namespaceURI, defaultPrefix);
+        }
+
+        @Override
+        public String putNamespacePrefix(String namespaceURI, String prefix) {
+            return context.putNamespacePrefix(namespaceURI, prefix);
+        }
+
+        @Override
+        public String getDefaultNamespacePrefix() {
+            return context.getDefaultNamespacePrefix();
+        }
+
+        @Override
+        public void setDefaultNamespacePrefix(String defaultPrefix) {
+            context.setDefaultNamespacePrefix(defaultPrefix);
+        }
+
+        @Override
+        public Object getProperty(String name) {
+            return context.getProperty(name);
+        }
+
+        @Override
+        public Object setProperty(String name, Object value) {
+            return context.setProperty(name, value);
+        }
+
+        @Override
+        public Object get(Object key) {
+            return context.get(key);
+        }
+
+        @Override
+        public Object put(Object key, Object value) {
+            return context.put(key, value);
+        }
+
+        @Override
+        public void setIdAttributeNS(Element element, String namespaceURI, String localName) {
+            context.setIdAttributeNS(element, namespaceURI, localName);
+        }
+
+        @Override
+        public Element getElementById(String idValue) {
+            return context.getElementById(idValue);
+        }
+
+        @SuppressWarnings("rawtypes")
+        @Override
+        public Iterator iterator() {
+            return context.iterator();
+        }
+
+    }
+
+    /**
+     * The result of validating a signature.
+     */
+    public static final class Result {
+
+        private final XMLSignature signature;
+
+        private final boolean valid;
+
+        private final Exception exception;
+
+        Result(XMLSignature signature, boolean valid, Exception exception) {
+            this.signature = signature;
+            this.valid = valid;
+            this.exception = exception;
+        }
+
+        /**
+         * @return the signature, to get the results of its References, or null if it could
+         *    not be unmarshalled
+         */
+        public XMLSignature getSignature() {
+            return signature;
+        }
+
+        /**
+         * @return true if the signature and all its References are valid
+         */
+        public boolean isValid() {
+            return valid;
+        }
+
+        /**
+         * @return the exception thrown while validating the signature, or null
+         */
+        public Exception getException() {
+            return exception;
+        }
+
+    }
+
+}
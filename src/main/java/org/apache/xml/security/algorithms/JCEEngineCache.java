@@ -0,0 +1,291 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.algorithms;
+
+import java.security.AccessController;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.PrivilegedAction;
+import java.security.Signature;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.xml.security.signature.XMLSignatureException;
+
+/**
+ * A bounded cache of JCA {@link Signature}, {@link Mac} and {@link MessageDigest} engines,
+ * keyed by the JCE algorithm ID and the provider (see {@link JCEMapper#getProviderId()}).
+ * <p>
+ * Looking up an engine through the provider framework is comparatively expensive, so
+ * engines are taken from the cache where possible and handed back once an operation has
+ * completed. An engine taken from the cache is confined to the calling thread until it is
+ * returned. Digests are reset when they are returned, and Macs are initialised with a
+ * placeholder key so that the cache does not keep the key of the last operation. A
+ * Signature cannot be cleared, so callers must only return Signatures that were initialised
+ * for verification, with a public key. Signatures and Macs must be initialised with a key
+ * before use, just like freshly created engines.
+ * <p>
+ * At most <code>org.apache.xml.security.jceEngineCache.poolSize</code> (default 16) idle
+ * engines are kept per algorithm and provider. Setting this property to 0 disables the
+ * cache, in which case every request creates a new engine.
+ */
+public final class JCEEngineCache {
+
+    private static final int MAX_IDLE_ENGINES =
+        AccessController.doPrivileged(new PrivilegedAction<Integer>() {
+            public Integer run() {
+                return Integer.getInteger("org.apache.xml.security.jceEngineCache.poolSize", 16);
+            }
+        });
+
+    private static final byte[] MAC_PLACEHOLDER_KEY = new byte[32];
+
+    private static final String SIGNATURE = "Signature";
+    private static final String MAC = "Mac";
+    private static final String MESSAGE_DIGEST = "MessageDigest";
+
+    private static final ConcurrentMap<String, BlockingDeque<Object>> pools =
+        new ConcurrentHashMap<String, BlockingDeque<Object>>();
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+
+    private JCEEngineCache() {
+        // complete
+    }
+
+    /**
+     * Returns whether idle engines are cached at all.
+     *
+     * @return false if the cache has been disabled by setting its pool size to 0
+     */
+    public static boolean isEnabled() {
+        return MAX_IDLE_ENGINES > 0;
+    }
+
+    /**
+     * Returns the number of requests that were served with a cached engine.
+     *
+     * @return the number of cache hits since the class was loaded
+     */
+    public static long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of requests that had to create a new engine.
+     *
+     * @return the number of cache misses since the class was loaded
+     */
+    public static long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Returns a Signature engine for the given algorithm, either a cached one or a newly
+     * created one. In either case it must be initialised before use.
+     *
+     * @param algorithmID the JCE algorithm ID
+     * @param provider the provider name, or null for the highest priority provider
+     * @return a Signature engine
+     * @throws XMLSignatureException if the algorithm or provider is not available
+     */
+    public static Signature getSignature(String algorithmID, String provider)
+        throws XMLSignatureException {
+        Signature signature = (Signature)poll(SIGNATURE, algorithmID, provider);
+        if (signature != null) {
+            return signature;
+        }
+        try {
+            if (provider == null) {
+                return Signature.getInstance(algorithmID);
+            }
+            return Signature.getInstance(algorithmID, provider);
+        } catch (NoSuchAlgorithmException ex) {
+            Object[] exArgs = { algorithmID, ex.getLocalizedMessage() };
+            throw new XMLSignatureException("algorithms.NoSuchAlgorithm", exArgs);
+        } catch (NoSuchProviderException ex) {
+            Object[] exArgs = { algorithmID, ex.getLocalizedMessage() };
+            throw new XMLSignatureException("algorithms.NoSuchAlgorithm", exArgs);
+        }
+    }
+
+    /**
+     * Returns a Mac engine for the given algorithm, either a cached one or a newly
+     * created one. In either case it must be initialised before use.
+     *
+     * @param algorithmID the JCE algorithm ID
+     * @param provider the provider name, or null for the highest priority provider
+     * @return a Mac engine
+     * @throws XMLSignatureException if the algorithm or provider is not available
+     */
+    public static Mac getMac(String algorithmID, String provider)
+        throws XMLSignatureException {
+        Mac mac = (Mac)poll(MAC, algorithmID, provider);
+        if (mac != null) {
+            return mac;
+        }
+        try {
+            if (provider == null) {
+                return Mac.getInstance(algorithmID);
+            }
+            return Mac.getInstance(algorithmID, provider);
+        } catch (NoSuchAlgorithmException ex) {
+            Object[] exArgs = { algorithmID, ex.getLocalizedMessage() };
+            throw new XMLSignatureException("algorithms.NoSuchAlgorithm", exArgs);
+        } catch (NoSuchProviderException ex) {
+            Object[] exArgs = { algorithmID, ex.getLocalizedMessage() };
+            throw new XMLSignatureException("algorithms.NoSuchAlgorithm", exArgs);
+        }
+    }
+
+    /**
+     * Returns a MessageDigest engine for the given algorithm, either a cached one or a
+     * newly created one. In either case it is in its initial state.
+     *
+     * @param algorithmID the JCE algorithm ID
+     * @param provider the provider name, or null for the highest priority provider
+     * @return a MessageDigest engine
+     * @throws XMLSignatureException if the algorithm or provider is not available
+     */
+    public static MessageDigest getMessageDigest(String algorithmID, String provider)
+        throws XMLSignatureException {
+        MessageDigest md = (MessageDigest)poll(MESSAGE_DIGEST, algorithmID, provider);
+        if (md != null) {
+            return md;
+        }
+        try {
+            if (provider == null) {
+                return MessageDigest.getInstance(algorithmID);
+            }
+            return MessageDigest.getInstance(algorithmID, provider);
+        } catch (NoSuchAlgorithmException ex) {
+            Object[] exArgs = { algorithmID, ex.getLocalizedMessage() };
+            throw new XMLSignatureException("algorithms.NoSuchAlgorithm", exArgs);
+        } catch (NoSuchProviderException ex) {
+            Object[] exArgs = { algorithmID, ex.getLocalizedMessage() };
+            throw new XMLSignatureException("algorithms.NoSuchAlgorithm", exArgs);
+        }
+    }
+
+    /**
+     * Makes a Signature engine available for reuse. The caller must not use it afterwards.
+     * As an engine cannot be cleared, it must not have been initialised with a private key.
+     *
+     * @param algorithmID the JCE algorithm ID the engine was obtained for
+     * @param provider the provider name the engine was obtained for
+     * @param signature
+     * @return whether the engine was added to the cache
+     */
+    public static boolean repoolSignature(String algorithmID, String provider, Signature signature) {
+        if (signature == null || !signature.getAlgorithm().equals(algorithmID)) {
+            return false;
+        }
+        return offer(SIGNATURE, algorithmID, provider, signature);
+    }
+
+    /**
+     * Makes a Mac engine available for reuse, after replacing the key it was initialised
+     * with by a placeholder key. The caller must not use it afterwards.
+     *
+     * @param algorithmID the JCE algorithm ID the engine was obtained for
+     * @param provider the provider name the engine was obtained for
+     * @param mac
+     * @return whether the engine was added to the cache
+     */
+    public static boolean repoolMac(String algorithmID, String provider, Mac mac) {
+        if (mac == null || !mac.getAlgorithm().equals(algorithmID)) {
+            return false;
+        }
+        if (!isEnabled()) {
+            return false;
+        }
+        try {
+            mac.init(new SecretKeySpec(MAC_PLACEHOLDER_KEY, algorithmID));
+        } catch (InvalidKeyException ex) {
+            // the key of the last operation could not be replaced
+            return false;
+        }
+        return offer(MAC, algorithmID, provider, mac);
+    }
+
+    /**
+     * Resets a MessageDigest engine and makes it available for reuse. The caller must not
+     * use it afterwards.
+     *
+     * @param algorithmID the JCE algorithm ID the engine was obtained for
+     * @param provider the provider name the engine was obtained for
+     * @param md
+     * @return whether the engine was added to the cache
+     */
+    public static boolean repoolMessageDigest(String algorithmID, String provider, MessageDigest md) {
+        if (md == null || !md.getAlgorithm().equals(algorithmID)) {
+            return false;
+        }
+        md.reset();
+        return offer(MESSAGE_DIGEST, algorithmID, provider, md);
+    }
+
+    private static String getKey(String type, String algorithmID, String provider) {
+        StringBuilder sb = new StringBuilder(type).append(':').append(algorithmID);
+        if (provider != null) {
+            sb.append('@').append(provider);
+        }
+        return sb.toString();
+    }
+
+    private static Object poll(String type, String algorithmID, String provider) {
+        if (MAX_IDLE_ENGINES > 0) {
+            BlockingDeque<Object> idleEngines = pools.get(getKey(type, algorithmID, provider));
+            if (idleEngines != null) {
+                Object engine = idleEngines.pollFirst();
+                if (engine != null) {
+                    hits.incrementAndGet();
+                    return engine;
+                }
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    private static boolean offer(String type, String algorithmID, String provider, Object engine) {
+        if (MAX_IDLE_ENGINES <= 0) {
+            return false;
+        }
+        String key = getKey(type, algorithmID, provider);
+        BlockingDeque<Object> idleEngines = pools.get(key);
+        if (idleEngines == null) {
+            BlockingDeque<Object> newIdleEngines = new LinkedBlockingDeque<Object>(MAX_IDLE_ENGINES);
+            idleEngines = pools.putIfAbsent(key, newIdleEngines);
+            if (idleEngines == null) {
+                idleEngines = newIdleEngines;
+            }
+        }
+        return idleEngines.offerFirst(engine);
+    }
+}
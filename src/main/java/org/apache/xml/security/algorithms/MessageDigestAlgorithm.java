@@ -19,7 +19,6 @@
 package org.apache.xml.security.algorithms;
 
 import java.security.MessageDigest;
-import java.security.NoSuchProviderException;
 
 import org.apache.xml.security.signature.XMLSignatureException;
 import org.apache.xml.security.utils.Constants;
@@ -69,7 +68,11 @@ public class MessageDigestAlgorithm extends Algorithm {
         Constants.XML_DSIG_NS_MORE_07_05 + "sha3-512";
 
     /** Field algorithm stores the actual {@link java.security.MessageDigest} */
-    private final MessageDigest algorithm;
+    private MessageDigest algorithm;
+
+    /** The JCE algorithm ID and provider that the digest was looked up with */
+    private final String algorithmID;
+    private final String provider;
     
     /**
      * Constructor for the brave who pass their own message digest algorithms and the 
@@ -81,7 +84,13 @@ public class MessageDigestAlgorithm extends Algorithm {
         throws XMLSignatureException {
         super(doc, algorithmURI);
 
-        algorithm = getDigestInstance(algorithmURI);
+        algorithmID = JCEMapper.translateURItoJCEID(algorithmURI);
+        if (algorithmID == null) {
+            Object[] exArgs = { algorithmURI };
+            throw new XMLSignatureException("algorithms.NoSuchMap", exArgs);
+        }
+        provider = JCEMapper.getProviderId();
+        algorithm = JCEEngineCache.getMessageDigest(algorithmID, provider);
     }
 
     /**
@@ -98,33 +107,25 @@ public class MessageDigestAlgorithm extends Algorithm {
         return new MessageDigestAlgorithm(doc, algorithmURI);
     }
 
-    private static MessageDigest getDigestInstance(String algorithmURI) throws XMLSignatureException {
-        String algorithmID = JCEMapper.translateURItoJCEID(algorithmURI);
-
-        if (algorithmID == null) {
-            Object[] exArgs = { algorithmURI };
-            throw new XMLSignatureException("algorithms.NoSuchMap", exArgs);
+    /**
+     * Resets the underlying {@link java.security.MessageDigest} and makes it available for
+     * reuse by other MessageDigestAlgorithm instances. This object must not be used
+     * afterwards, any further digest operation throws an IllegalStateException.
+     */
+    public void release() {
+        if (algorithm != null) {
+            JCEEngineCache.repoolMessageDigest(algorithmID, provider, algorithm);
+            algorithm = null;
         }
+    }
 
-        MessageDigest md;
-        String provider = JCEMapper.getProviderId();
-        try {      	
-            if (provider == null) {
-                md = MessageDigest.getInstance(algorithmID);
-            } else {
-                md = MessageDigest.getInstance(algorithmID, provider);
-            }
-        } catch (java.security.NoSuchAlgorithmException ex) {
-            Object[] exArgs = { algorithmID, ex.getLocalizedMessage() };
-
-            throw new XMLSignatureException("algorithms.NoSuchAlgorithm", exArgs);
-        } catch (NoSuchProviderException ex) {
-            Object[] exArgs = { algorithmID, ex.getLocalizedMessage() };
-
-            throw new XMLSignatureException("algorithms.NoSuchAlgorithm", exArgs);
+    private MessageDigest getDigest() {
+        if (algorithm == null) {
+            throw new IllegalStateException(
+                "The MessageDigestAlgorithm for " + algorithmID + " has been released"
+            );
         }
-        
-        return md;
+        return algorithm;
     }
 
     /**
@@ -133,7 +134,7 @@ public class MessageDigestAlgorithm extends Algorithm {
      * @return the actual {@link java.security.MessageDigest} algorithm object
      */
     public MessageDigest getAlgorithm() {
-        return algorithm;
+        return getDigest();
     }
 
     /**
@@ -155,7 +156,7 @@ public class MessageDigestAlgorithm extends Algorithm {
      * @return the result of the {@link java.security.MessageDigest#digest()} method
      */
     public byte[] digest() {
-        return algorithm.digest();
+        return getDigest().digest();
     }
 
     /**
@@ -166,7 +167,7 @@ public class MessageDigestAlgorithm extends Algorithm {
      * @return the result of the {@link java.security.MessageDigest#digest(byte[])} method
      */
     public byte[] digest(byte input[]) {
-        return algorithm.digest(input);
+        return getDigest().digest(input);
     }
 
     /**
@@ -180,7 +181,7 @@ public class MessageDigestAlgorithm extends Algorithm {
      * @throws java.security.DigestException
      */
     public int digest(byte buf[], int offset, int len) throws java.security.DigestException {
-        return algorithm.digest(buf, offset, len);
+        return getDigest().digest(buf, offset, len);
     }
 
     /**
@@ -190,7 +191,7 @@ public class MessageDigestAlgorithm extends Algorithm {
      * @return the result of the {@link java.security.MessageDigest#getAlgorithm} method
      */
     public String getJCEAlgorithmString() {
-        return algorithm.getAlgorithm();
+        return getDigest().getAlgorithm();
     }
 
     /**
@@ -200,7 +201,7 @@ public class MessageDigestAlgorithm extends Algorithm {
      * @return the result of the {@link java.security.MessageDigest#getProvider} method
      */
     public java.security.Provider getJCEProvider() {
-        return algorithm.getProvider();
+        return getDigest().getProvider();
     }
 
     /**
@@ -210,7 +211,7 @@ public class MessageDigestAlgorithm extends Algorithm {
      * @return the result of the {@link java.security.MessageDigest#getDigestLength} method
      */
     public int getDigestLength() {
-        return algorithm.getDigestLength();
+        return getDigest().getDigestLength();
     }
 
     /**
@@ -219,7 +220,7 @@ public class MessageDigestAlgorithm extends Algorithm {
      *
      */
     public void reset() {
-        algorithm.reset();
+        getDigest().reset();
     }
 
     /**
@@ -229,7 +230,7 @@ public class MessageDigestAlgorithm extends Algorithm {
      * @param input
      */
     public void update(byte[] input) {
-        algorithm.update(input);
+        getDigest().update(input);
     }
 
     /**
@@ -239,7 +240,7 @@ public class MessageDigestAlgorithm extends Algorithm {
      * @param input
      */
     public void update(byte input) {
-        algorithm.update(input);
+        getDigest().update(input);
     }
 
     /**
@@ -251,7 +252,7 @@ public class MessageDigestAlgorithm extends Algorithm {
      * @param len
      */
     public void update(byte buf[], int offset, int len) {
-        algorithm.update(buf, offset, len);
+        getDigest().update(buf, offset, len);
     }
 
     /** @inheritDoc */
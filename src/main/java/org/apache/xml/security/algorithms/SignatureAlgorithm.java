@@ -59,6 +59,12 @@ public class SignatureAlgorithm extends Algorithm {
 
     private final String algorithmURI;
 
+    /**
+     * Whether the engine has been initialised by this object. A cached engine may still be
+     * initialised with the key of its previous user, so this is not left to the engine.
+     */
+    private boolean initialized;
+
     /**
      * Constructor SignatureAlgorithm
      *
@@ -170,6 +176,7 @@ public class SignatureAlgorithm extends Algorithm {
      * @throws XMLSignatureException
      */
     public byte[] sign() throws XMLSignatureException {
+        checkInitialized();
         return signatureAlgorithm.engineSign();
     }
 
@@ -200,6 +207,7 @@ public class SignatureAlgorithm extends Algorithm {
      * @throws XMLSignatureException
      */
     public void update(byte[] input) throws XMLSignatureException {
+        checkInitialized();
         signatureAlgorithm.engineUpdate(input);
     }
 
@@ -211,6 +219,7 @@ public class SignatureAlgorithm extends Algorithm {
      * @throws XMLSignatureException
      */
     public void update(byte input) throws XMLSignatureException {
+        checkInitialized();
         signatureAlgorithm.engineUpdate(input);
     }
 
@@ -224,6 +233,7 @@ public class SignatureAlgorithm extends Algorithm {
      * @throws XMLSignatureException
      */
     public void update(byte buf[], int offset, int len) throws XMLSignatureException {
+        checkInitialized();
         signatureAlgorithm.engineUpdate(buf, offset, len);
     }
 
@@ -235,7 +245,9 @@ public class SignatureAlgorithm extends Algorithm {
      * @throws XMLSignatureException
      */
     public void initSign(Key signingKey) throws XMLSignatureException {	   
+        initialized = false;
         signatureAlgorithm.engineInitSign(signingKey);
+        initialized = true;
     }
 
     /**
@@ -248,7 +260,9 @@ public class SignatureAlgorithm extends Algorithm {
      * @throws XMLSignatureException
      */
     public void initSign(Key signingKey, SecureRandom secureRandom) throws XMLSignatureException {
+        initialized = false;
         signatureAlgorithm.engineInitSign(signingKey, secureRandom);
+        initialized = true;
     }
 
     /**
@@ -262,7 +276,9 @@ public class SignatureAlgorithm extends Algorithm {
     public void initSign(
         Key signingKey, AlgorithmParameterSpec algorithmParameterSpec
     ) throws XMLSignatureException {
+        initialized = false;
         signatureAlgorithm.engineInitSign(signingKey, algorithmParameterSpec);
+        initialized = true;
     }
 
     /**
@@ -285,9 +301,27 @@ public class SignatureAlgorithm extends Algorithm {
      * @throws XMLSignatureException
      */
     public void initVerify(Key verificationKey) throws XMLSignatureException {
+        initialized = false;
         signatureAlgorithm.engineInitVerify(verificationKey);
+        initialized = true;
     }
     
+    /**
+     * Releases the JCA engine used by this object for reuse by other signing or
+     * verification operations. This object may still be used afterwards, but it has to be
+     * initialised again via {@link #initSign} or {@link #initVerify}.
+     */
+    public void release() {
+        initialized = false;
+        signatureAlgorithm.engineRelease();
+    }
+
+    private void checkInitialized() throws XMLSignatureException {
+        if (!initialized) {
+            throw new XMLSignatureException("algorithms.NotInitialized");
+        }
+    }
+
     /**
      * Proxy method for {@link java.security.Signature#verify(byte[])}
      * which is executed on the internal {@link java.security.Signature} object.
@@ -298,6 +332,7 @@ public class SignatureAlgorithm extends Algorithm {
      * @throws XMLSignatureException
      */
     public boolean verify(byte[] signature) throws XMLSignatureException {
+        checkInitialized();
         return signatureAlgorithm.engineVerify(signature);
     }
 
@@ -170,4 +170,11 @@ public abstract class SignatureAlgorithmSpi {
 
     public void reset() {
     }
+
+    /**
+     * Hands the underlying JCA engine back to the {@link JCEEngineCache}. The engine is
+     * looked up again when this object is next initialised for signing or verification.
+     */
+    protected void engineRelease() {
+    }
 }
@@ -27,6 +27,7 @@ import java.security.spec.AlgorithmParameterSpec;
 import javax.crypto.Mac;
 import javax.crypto.SecretKey;
 
+import org.apache.xml.security.algorithms.JCEEngineCache;
 import org.apache.xml.security.algorithms.JCEMapper;
 import org.apache.xml.security.algorithms.MessageDigestAlgorithm;
 import org.apache.xml.security.algorithms.SignatureAlgorithmSpi;
@@ -46,6 +47,12 @@ public abstract class IntegrityHmac extends SignatureAlgorithmSpi {
     /** Field macAlgorithm */
     private Mac macAlgorithm = null;
 
+    /** The JCE algorithm ID that the engine is looked up with */
+    private final String algorithmID;
+
+    /** The name of the provider of the last engine that was looked up */
+    private String providerName;
+
     /** Field HMACOutputLength */
     private int HMACOutputLength = 0;
     private boolean HMACOutputLengthSet = false;
@@ -68,18 +75,12 @@ public abstract class IntegrityHmac extends SignatureAlgorithmSpi {
      * @throws XMLSignatureException
      */
     public IntegrityHmac() throws XMLSignatureException {
-        String algorithmID = JCEMapper.translateURItoJCEID(this.engineGetURI());
+        algorithmID = JCEMapper.translateURItoJCEID(this.engineGetURI());
         if (log.isDebugEnabled()) {
             log.debug("Created IntegrityHmacSHA1 using " + algorithmID);
         }
 
-        try {
-            this.macAlgorithm = Mac.getInstance(algorithmID);
-        } catch (java.security.NoSuchAlgorithmException ex) {
-            Object[] exArgs = { algorithmID, ex.getLocalizedMessage() };
-
-            throw new XMLSignatureException("algorithms.NoSuchAlgorithm", exArgs);
-        }
+        getMac();
     }
 
     /**
@@ -97,7 +98,9 @@ public abstract class IntegrityHmac extends SignatureAlgorithmSpi {
     public void reset() {
         HMACOutputLength = 0;
         HMACOutputLengthSet = false;
-        this.macAlgorithm.reset();
+        if (this.macAlgorithm != null) {
+            this.macAlgorithm.reset();
+        }
     }
 
     /**
@@ -117,7 +120,7 @@ public abstract class IntegrityHmac extends SignatureAlgorithmSpi {
                 Object[] exArgs = { String.valueOf(getDigestLength()) };
                 throw new XMLSignatureException("algorithms.HMACOutputLengthMin", exArgs);
             } else {
-                byte[] completeResult = this.macAlgorithm.doFinal();
+                byte[] completeResult = getMac().doFinal();
                 return MessageDigestAlgorithm.isEqual(completeResult, signature);
             }
         } catch (IllegalStateException ex) {
@@ -145,20 +148,11 @@ public abstract class IntegrityHmac extends SignatureAlgorithmSpi {
         }
 
         try {
-            this.macAlgorithm.init(secretKey);
+            getMac().init(secretKey);
         } catch (InvalidKeyException ex) {
-            // reinstantiate Mac object to work around bug in JDK
+            // discard Mac object to work around bug in JDK
             // see: http://bugs.sun.com/view_bug.do?bug_id=4953555
-            Mac mac = this.macAlgorithm;
-            try {
-                this.macAlgorithm = Mac.getInstance(macAlgorithm.getAlgorithm());
-            } catch (Exception e) {
-                // this shouldn't occur, but if it does, restore previous Mac
-                if (log.isDebugEnabled()) {
-                    log.debug("Exception when reinstantiating Mac:" + e);
-                }
-                this.macAlgorithm = mac;
-            }
+            this.macAlgorithm = null;
             throw new XMLSignatureException(ex);
         }
     }
@@ -179,7 +173,7 @@ public abstract class IntegrityHmac extends SignatureAlgorithmSpi {
                 Object[] exArgs = { String.valueOf(getDigestLength()) };
                 throw new XMLSignatureException("algorithms.HMACOutputLengthMin", exArgs);
             } else {
-                return this.macAlgorithm.doFinal();
+                return getMac().doFinal();
             }
         } catch (IllegalStateException ex) {
             throw new XMLSignatureException(ex);
@@ -219,9 +213,9 @@ public abstract class IntegrityHmac extends SignatureAlgorithmSpi {
 
         try {
             if (algorithmParameterSpec == null) {
-                this.macAlgorithm.init(secretKey);
+                getMac().init(secretKey);
             } else {
-                this.macAlgorithm.init(secretKey, algorithmParameterSpec);
+                getMac().init(secretKey, algorithmParameterSpec);
             }
         } catch (InvalidKeyException ex) {
             throw new XMLSignatureException(ex);
@@ -251,7 +245,7 @@ public abstract class IntegrityHmac extends SignatureAlgorithmSpi {
      */
     protected void engineUpdate(byte[] input) throws XMLSignatureException {
         try {
-            this.macAlgorithm.update(input);
+            getMac().update(input);
         } catch (IllegalStateException ex) {
             throw new XMLSignatureException(ex);
         }
@@ -266,7 +260,7 @@ public abstract class IntegrityHmac extends SignatureAlgorithmSpi {
      */
     protected void engineUpdate(byte input) throws XMLSignatureException {
         try {
-            this.macAlgorithm.update(input);
+            getMac().update(input);
         } catch (IllegalStateException ex) {
             throw new XMLSignatureException(ex);
         }
@@ -283,7 +277,7 @@ public abstract class IntegrityHmac extends SignatureAlgorithmSpi {
      */
     protected void engineUpdate(byte buf[], int offset, int len) throws XMLSignatureException {
         try {
-            this.macAlgorithm.update(buf, offset, len);
+            getMac().update(buf, offset, len);
         } catch (IllegalStateException ex) {
             throw new XMLSignatureException(ex);
         }
@@ -295,7 +289,7 @@ public abstract class IntegrityHmac extends SignatureAlgorithmSpi {
      *
      */
     protected String engineGetJCEAlgorithmString() {
-        return this.macAlgorithm.getAlgorithm();
+        return algorithmID;
     }
 
     /**
@@ -304,7 +298,23 @@ public abstract class IntegrityHmac extends SignatureAlgorithmSpi {
      * @inheritDoc
      */
     protected String engineGetJCEProviderName() {
-        return this.macAlgorithm.getProvider().getName();
+        return providerName;
+    }
+
+    /** @inheritDoc */
+    protected void engineRelease() {
+        if (this.macAlgorithm != null) {
+            JCEEngineCache.repoolMac(algorithmID, null, this.macAlgorithm);
+            this.macAlgorithm = null;
+        }
+    }
+
+    private Mac getMac() throws XMLSignatureException {
+        if (this.macAlgorithm == null) {
+            this.macAlgorithm = JCEEngineCache.getMac(algorithmID, null);
+            this.providerName = this.macAlgorithm.getProvider().getName();
+        }
+        return this.macAlgorithm;
     }
 
     /**
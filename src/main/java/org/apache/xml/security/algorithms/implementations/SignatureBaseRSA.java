@@ -21,7 +21,6 @@ package org.apache.xml.security.algorithms.implementations;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.Key;
-import java.security.NoSuchProviderException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.SecureRandom;
@@ -29,6 +28,7 @@ import java.security.Signature;
 import java.security.SignatureException;
 import java.security.spec.AlgorithmParameterSpec;
 
+import org.apache.xml.security.algorithms.JCEEngineCache;
 import org.apache.xml.security.algorithms.JCEMapper;
 import org.apache.xml.security.algorithms.SignatureAlgorithmSpi;
 import org.apache.xml.security.signature.XMLSignature;
@@ -45,40 +45,43 @@ public abstract class SignatureBaseRSA extends SignatureAlgorithmSpi {
     /** Field algorithm */
     private Signature signatureAlgorithm = null;
 
+    /** The JCE algorithm ID and provider that the engine is looked up with */
+    private final String algorithmID;
+    private final String provider;
+
+    /** Whether parameters were set on the engine, in which case it is not released */
+    private boolean parametersSet;
+
+    /**
+     * Whether the engine was initialised with a private key, in which case it is discarded
+     * rather than returned to the cache
+     */
+    private boolean privateKeySet;
+
+    /** The name of the provider of the last engine that was looked up */
+    private String providerName;
+
     /**
      * Constructor SignatureRSA
      *
      * @throws XMLSignatureException
      */
     public SignatureBaseRSA() throws XMLSignatureException {
-        String algorithmID = JCEMapper.translateURItoJCEID(this.engineGetURI());
+        algorithmID = JCEMapper.translateURItoJCEID(this.engineGetURI());
 
         if (log.isDebugEnabled()) {
             log.debug("Created SignatureRSA using " + algorithmID);
         }
-        String provider = JCEMapper.getProviderId();
-        try {
-            if (provider == null) {
-                this.signatureAlgorithm = Signature.getInstance(algorithmID);
-            } else {
-                this.signatureAlgorithm = Signature.getInstance(algorithmID,provider);
-            }
-        } catch (java.security.NoSuchAlgorithmException ex) {
-            Object[] exArgs = { algorithmID, ex.getLocalizedMessage() };
-
-            throw new XMLSignatureException("algorithms.NoSuchAlgorithm", exArgs);
-        } catch (NoSuchProviderException ex) {
-            Object[] exArgs = { algorithmID, ex.getLocalizedMessage() };
-
-            throw new XMLSignatureException("algorithms.NoSuchAlgorithm", exArgs);
-        }
+        provider = JCEMapper.getProviderId();
+        getSignature();
     }
 
     /** @inheritDoc */
     protected void engineSetParameter(AlgorithmParameterSpec params)
         throws XMLSignatureException {
         try {
-            this.signatureAlgorithm.setParameter(params);
+            parametersSet = true;
+            getSignature().setParameter(params);
         } catch (InvalidAlgorithmParameterException ex) {
             throw new XMLSignatureException(ex);
         }
@@ -87,7 +90,7 @@ public abstract class SignatureBaseRSA extends SignatureAlgorithmSpi {
     /** @inheritDoc */
     protected boolean engineVerify(byte[] signature) throws XMLSignatureException {
         try {
-            return this.signatureAlgorithm.verify(signature);
+            return getSignature().verify(signature);
         } catch (SignatureException ex) {
             throw new XMLSignatureException(ex);
         }
@@ -107,21 +110,12 @@ public abstract class SignatureBaseRSA extends SignatureAlgorithmSpi {
         }
 
         try {
-            this.signatureAlgorithm.initVerify((PublicKey) publicKey);
+            getSignature().initVerify((PublicKey) publicKey);
+            privateKeySet = false;
         } catch (InvalidKeyException ex) {
-            // reinstantiate Signature object to work around bug in JDK
+            // discard Signature object to work around bug in JDK
             // see: http://bugs.sun.com/view_bug.do?bug_id=4953555
-            Signature sig = this.signatureAlgorithm;
-            try {
-                this.signatureAlgorithm = Signature.getInstance(signatureAlgorithm.getAlgorithm());
-            } catch (Exception e) {
-                // this shouldn't occur, but if it does, restore previous 
-                // Signature
-                if (log.isDebugEnabled()) {
-                    log.debug("Exception when reinstantiating Signature:" + e);
-                }
-                this.signatureAlgorithm = sig;
-            }
+            this.signatureAlgorithm = null;
             throw new XMLSignatureException(ex);
         } 
     }
@@ -129,7 +123,7 @@ public abstract class SignatureBaseRSA extends SignatureAlgorithmSpi {
     /** @inheritDoc */
     protected byte[] engineSign() throws XMLSignatureException {
         try {
-            return this.signatureAlgorithm.sign();
+            return getSignature().sign();
         } catch (SignatureException ex) {
             throw new XMLSignatureException(ex);
         }
@@ -151,10 +145,11 @@ public abstract class SignatureBaseRSA extends SignatureAlgorithmSpi {
 
         try {
             if (secureRandom == null) {
-                this.signatureAlgorithm.initSign((PrivateKey) privateKey);
+                getSignature().initSign((PrivateKey) privateKey);
             } else {
-                this.signatureAlgorithm.initSign((PrivateKey) privateKey, secureRandom);
+                getSignature().initSign((PrivateKey) privateKey, secureRandom);
             }
+            privateKeySet = true;
         } catch (InvalidKeyException ex) {
             throw new XMLSignatureException(ex);
         }
@@ -168,7 +163,7 @@ public abstract class SignatureBaseRSA extends SignatureAlgorithmSpi {
     /** @inheritDoc */
     protected void engineUpdate(byte[] input) throws XMLSignatureException {
         try {
-            this.signatureAlgorithm.update(input);
+            getSignature().update(input);
         } catch (SignatureException ex) {
             throw new XMLSignatureException(ex);
         }
@@ -177,7 +172,7 @@ public abstract class SignatureBaseRSA extends SignatureAlgorithmSpi {
     /** @inheritDoc */
     protected void engineUpdate(byte input) throws XMLSignatureException {
         try {
-            this.signatureAlgorithm.update(input);
+            getSignature().update(input);
         } catch (SignatureException ex) {
             throw new XMLSignatureException(ex);
         }
@@ -186,7 +181,7 @@ public abstract class SignatureBaseRSA extends SignatureAlgorithmSpi {
     /** @inheritDoc */
     protected void engineUpdate(byte buf[], int offset, int len) throws XMLSignatureException {
         try {
-            this.signatureAlgorithm.update(buf, offset, len);
+            getSignature().update(buf, offset, len);
         } catch (SignatureException ex) {
             throw new XMLSignatureException(ex);
         }
@@ -194,12 +189,32 @@ public abstract class SignatureBaseRSA extends SignatureAlgorithmSpi {
 
     /** @inheritDoc */
     protected String engineGetJCEAlgorithmString() {
-        return this.signatureAlgorithm.getAlgorithm();
+        return algorithmID;
     }
 
     /** @inheritDoc */
     protected String engineGetJCEProviderName() {
-        return this.signatureAlgorithm.getProvider().getName();
+        return providerName;
+    }
+
+    /** @inheritDoc */
+    protected void engineRelease() {
+        if (signatureAlgorithm != null && !parametersSet) {
+            // an engine cannot be uninitialised, so it must not keep a private key in the cache
+            if (!privateKeySet) {
+                JCEEngineCache.repoolSignature(algorithmID, provider, signatureAlgorithm);
+            }
+            signatureAlgorithm = null;
+            privateKeySet = false;
+        }
+    }
+
+    private Signature getSignature() throws XMLSignatureException {
+        if (signatureAlgorithm == null) {
+            signatureAlgorithm = JCEEngineCache.getSignature(algorithmID, provider);
+            providerName = signatureAlgorithm.getProvider().getName();
+        }
+        return signatureAlgorithm;
     }
 
     /** @inheritDoc */
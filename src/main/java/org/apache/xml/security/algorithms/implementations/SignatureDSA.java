@@ -30,6 +30,7 @@ import java.security.SignatureException;
 import java.security.interfaces.DSAKey;
 import java.security.spec.AlgorithmParameterSpec;
 
+import org.apache.xml.security.algorithms.JCEEngineCache;
 import org.apache.xml.security.algorithms.JCEMapper;
 import org.apache.xml.security.algorithms.SignatureAlgorithmSpi;
 import org.apache.xml.security.signature.XMLSignature;
@@ -45,6 +46,22 @@ public class SignatureDSA extends SignatureAlgorithmSpi {
     /** Field algorithm */
     private Signature signatureAlgorithm = null;
 
+    /** The JCE algorithm ID and provider that the engine is looked up with */
+    private final String algorithmID;
+    private final String provider;
+
+    /** Whether parameters were set on the engine, in which case it is not released */
+    private boolean parametersSet;
+
+    /**
+     * Whether the engine was initialised with a private key, in which case it is discarded
+     * rather than returned to the cache
+     */
+    private boolean privateKeySet;
+
+    /** The name of the provider of the last engine that was looked up */
+    private String providerName;
+
     /** size of Q */
     private int size;
 
@@ -63,26 +80,13 @@ public class SignatureDSA extends SignatureAlgorithmSpi {
      * @throws XMLSignatureException
      */
     public SignatureDSA() throws XMLSignatureException {
-        String algorithmID = JCEMapper.translateURItoJCEID(engineGetURI());
+        algorithmID = JCEMapper.translateURItoJCEID(engineGetURI());
         if (log.isDebugEnabled()) {
             log.debug("Created SignatureDSA using " + algorithmID);
         }
 
-        String provider = JCEMapper.getProviderId();
-        try {
-            if (provider == null) {
-                this.signatureAlgorithm = Signature.getInstance(algorithmID);
-            } else {
-                this.signatureAlgorithm = 
-                    Signature.getInstance(algorithmID, provider);
-            }
-        } catch (java.security.NoSuchAlgorithmException ex) {
-            Object[] exArgs = { algorithmID, ex.getLocalizedMessage() };
-            throw new XMLSignatureException("algorithms.NoSuchAlgorithm", exArgs);
-        } catch (java.security.NoSuchProviderException ex) {
-            Object[] exArgs = { algorithmID, ex.getLocalizedMessage() };
-            throw new XMLSignatureException("algorithms.NoSuchAlgorithm", exArgs);
-        }
+        provider = JCEMapper.getProviderId();
+        getSignature();
     }
 
     /**
@@ -91,7 +95,8 @@ public class SignatureDSA extends SignatureAlgorithmSpi {
     protected void engineSetParameter(AlgorithmParameterSpec params)
         throws XMLSignatureException {
         try {
-            this.signatureAlgorithm.setParameter(params);
+            parametersSet = true;
+            getSignature().setParameter(params);
         } catch (InvalidAlgorithmParameterException ex) {
             throw new XMLSignatureException(ex);
         }
@@ -110,7 +115,7 @@ public class SignatureDSA extends SignatureAlgorithmSpi {
             byte[] jcebytes = JavaUtils.convertDsaXMLDSIGtoASN1(signature,
                                                                 size/8);
 
-            return this.signatureAlgorithm.verify(jcebytes);
+            return getSignature().verify(jcebytes);
         } catch (SignatureException ex) {
             throw new XMLSignatureException(ex);
         } catch (IOException ex) {
@@ -134,21 +139,12 @@ public class SignatureDSA extends SignatureAlgorithmSpi {
         }
 
         try {
-            this.signatureAlgorithm.initVerify((PublicKey) publicKey);
+            getSignature().initVerify((PublicKey) publicKey);
+            privateKeySet = false;
         } catch (InvalidKeyException ex) {
-            // reinstantiate Signature object to work around bug in JDK
+            // discard Signature object to work around bug in JDK
             // see: http://bugs.sun.com/view_bug.do?bug_id=4953555
-            Signature sig = this.signatureAlgorithm;
-            try {
-                this.signatureAlgorithm = Signature.getInstance(signatureAlgorithm.getAlgorithm());
-            } catch (Exception e) {
-                // this shouldn't occur, but if it does, restore previous
-                // Signature
-                if (log.isDebugEnabled()) {
-                    log.debug("Exception when reinstantiating Signature:" + e);
-                }
-                this.signatureAlgorithm = sig;
-            }
+            this.signatureAlgorithm = null;
             throw new XMLSignatureException(ex);
         }
         size = ((DSAKey)publicKey).getParams().getQ().bitLength();
@@ -159,7 +155,7 @@ public class SignatureDSA extends SignatureAlgorithmSpi {
      */
     protected byte[] engineSign() throws XMLSignatureException {
         try {
-            byte jcebytes[] = this.signatureAlgorithm.sign();
+            byte jcebytes[] = getSignature().sign();
 
             return JavaUtils.convertDsaASN1toXMLDSIG(jcebytes, size/8);
         } catch (IOException ex) {
@@ -187,10 +183,11 @@ public class SignatureDSA extends SignatureAlgorithmSpi {
 
         try {
             if (secureRandom == null) {
-                this.signatureAlgorithm.initSign((PrivateKey) privateKey);
+                getSignature().initSign((PrivateKey) privateKey);
             } else {
-                this.signatureAlgorithm.initSign((PrivateKey) privateKey, secureRandom);
+                getSignature().initSign((PrivateKey) privateKey, secureRandom);
             }
+            privateKeySet = true;
         } catch (InvalidKeyException ex) {
             throw new XMLSignatureException(ex);
         }
@@ -209,7 +206,7 @@ public class SignatureDSA extends SignatureAlgorithmSpi {
      */
     protected void engineUpdate(byte[] input) throws XMLSignatureException {
         try {
-            this.signatureAlgorithm.update(input);
+            getSignature().update(input);
         } catch (SignatureException ex) {
             throw new XMLSignatureException(ex);
         }
@@ -220,7 +217,7 @@ public class SignatureDSA extends SignatureAlgorithmSpi {
      */
     protected void engineUpdate(byte input) throws XMLSignatureException {
         try {
-            this.signatureAlgorithm.update(input);
+            getSignature().update(input);
         } catch (SignatureException ex) {
             throw new XMLSignatureException(ex);
         }
@@ -231,7 +228,7 @@ public class SignatureDSA extends SignatureAlgorithmSpi {
      */
     protected void engineUpdate(byte buf[], int offset, int len) throws XMLSignatureException {
         try {
-            this.signatureAlgorithm.update(buf, offset, len);
+            getSignature().update(buf, offset, len);
         } catch (SignatureException ex) {
             throw new XMLSignatureException(ex);
         }
@@ -243,7 +240,7 @@ public class SignatureDSA extends SignatureAlgorithmSpi {
      * @inheritDoc
      */
     protected String engineGetJCEAlgorithmString() {
-        return this.signatureAlgorithm.getAlgorithm();
+        return algorithmID;
     }
 
     /**
@@ -252,7 +249,27 @@ public class SignatureDSA extends SignatureAlgorithmSpi {
      * @inheritDoc
      */
     protected String engineGetJCEProviderName() {
-        return this.signatureAlgorithm.getProvider().getName();
+        return providerName;
+    }
+
+    /** @inheritDoc */
+    protected void engineRelease() {
+        if (signatureAlgorithm != null && !parametersSet) {
+            // an engine cannot be uninitialised, so it must not keep a private key in the cache
+            if (!privateKeySet) {
+                JCEEngineCache.repoolSignature(algorithmID, provider, signatureAlgorithm);
+            }
+            signatureAlgorithm = null;
+            privateKeySet = false;
+        }
+    }
+
+    private Signature getSignature() throws XMLSignatureException {
+        if (signatureAlgorithm == null) {
+            signatureAlgorithm = JCEEngineCache.getSignature(algorithmID, provider);
+            providerName = signatureAlgorithm.getProvider().getName();
+        }
+        return signatureAlgorithm;
     }
 
     /**
@@ -22,7 +22,6 @@ import java.io.IOException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.Key;
-import java.security.NoSuchProviderException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.SecureRandom;
@@ -30,6 +29,7 @@ import java.security.Signature;
 import java.security.SignatureException;
 import java.security.spec.AlgorithmParameterSpec;
 
+import org.apache.xml.security.algorithms.JCEEngineCache;
 import org.apache.xml.security.algorithms.JCEMapper;
 import org.apache.xml.security.algorithms.SignatureAlgorithmSpi;
 import org.apache.xml.security.signature.XMLSignature;
@@ -52,6 +52,22 @@ public abstract class SignatureECDSA extends SignatureAlgorithmSpi {
     /** Field algorithm */
     private Signature signatureAlgorithm = null;
 
+    /** The JCE algorithm ID and provider that the engine is looked up with */
+    private final String algorithmID;
+    private final String provider;
+
+    /** Whether parameters were set on the engine, in which case it is not released */
+    private boolean parametersSet;
+
+    /**
+     * Whether the engine was initialised with a private key, in which case it is discarded
+     * rather than returned to the cache
+     */
+    private boolean privateKeySet;
+
+    /** The name of the provider of the last engine that was looked up */
+    private String providerName;
+
     /**
      * Converts an ASN.1 ECDSA value to a XML Signature ECDSA Value.
      *
@@ -182,34 +198,21 @@ public abstract class SignatureECDSA extends SignatureAlgorithmSpi {
      */
     public SignatureECDSA() throws XMLSignatureException {
 
-        String algorithmID = JCEMapper.translateURItoJCEID(this.engineGetURI());
+        algorithmID = JCEMapper.translateURItoJCEID(this.engineGetURI());
 
         if (log.isDebugEnabled()) {
             log.debug("Created SignatureECDSA using " + algorithmID);
         }
-        String provider = JCEMapper.getProviderId();
-        try {
-            if (provider == null) {
-                this.signatureAlgorithm = Signature.getInstance(algorithmID);
-            } else {
-                this.signatureAlgorithm = Signature.getInstance(algorithmID,provider);
-            }
-        } catch (java.security.NoSuchAlgorithmException ex) {
-            Object[] exArgs = { algorithmID, ex.getLocalizedMessage() };
-
-            throw new XMLSignatureException("algorithms.NoSuchAlgorithm", exArgs);
-        } catch (NoSuchProviderException ex) {
-            Object[] exArgs = { algorithmID, ex.getLocalizedMessage() };
-
-            throw new XMLSignatureException("algorithms.NoSuchAlgorithm", exArgs);
-        }
+        provider = JCEMapper.getProviderId();
+        getSignature();
     }
 
     /** @inheritDoc */
     protected void engineSetParameter(AlgorithmParameterSpec params)
         throws XMLSignatureException {
         try {
-            this.signatureAlgorithm.setParameter(params);
+            parametersSet = true;
+            getSignature().setParameter(params);
         } catch (InvalidAlgorithmParameterException ex) {
             throw new XMLSignatureException(ex);
         }
@@ -224,7 +227,7 @@ public abstract class SignatureECDSA extends SignatureAlgorithmSpi {
                 log.debug("Called ECDSA.verify() on " + Base64.encode(signature));
             }
 
-            return this.signatureAlgorithm.verify(jcebytes);
+            return getSignature().verify(jcebytes);
         } catch (SignatureException ex) {
             throw new XMLSignatureException(ex);
         } catch (IOException ex) {
@@ -247,21 +250,12 @@ public abstract class SignatureECDSA extends SignatureAlgorithmSpi {
         }
 
         try {
-            this.signatureAlgorithm.initVerify((PublicKey) publicKey);
+            getSignature().initVerify((PublicKey) publicKey);
+            privateKeySet = false;
         } catch (InvalidKeyException ex) {
-            // reinstantiate Signature object to work around bug in JDK
+            // discard Signature object to work around bug in JDK
             // see: http://bugs.sun.com/view_bug.do?bug_id=4953555
-            Signature sig = this.signatureAlgorithm;
-            try {
-                this.signatureAlgorithm = Signature.getInstance(signatureAlgorithm.getAlgorithm());
-            } catch (Exception e) {
-                // this shouldn't occur, but if it does, restore previous
-                // Signature
-                if (log.isDebugEnabled()) {
-                    log.debug("Exception when reinstantiating Signature:" + e);
-                }
-                this.signatureAlgorithm = sig;
-            }
+            this.signatureAlgorithm = null;
             throw new XMLSignatureException(ex);
         }
     }
@@ -269,7 +263,7 @@ public abstract class SignatureECDSA extends SignatureAlgorithmSpi {
     /** @inheritDoc */
     protected byte[] engineSign() throws XMLSignatureException {
         try {
-            byte jcebytes[] = this.signatureAlgorithm.sign();
+            byte jcebytes[] = getSignature().sign();
 
             return SignatureECDSA.convertASN1toXMLDSIG(jcebytes);
         } catch (SignatureException ex) {
@@ -295,10 +289,11 @@ public abstract class SignatureECDSA extends SignatureAlgorithmSpi {
 
         try {
             if (secureRandom == null) {
-                this.signatureAlgorithm.initSign((PrivateKey) privateKey);
+                getSignature().initSign((PrivateKey) privateKey);
             } else {
-                this.signatureAlgorithm.initSign((PrivateKey) privateKey, secureRandom);
+                getSignature().initSign((PrivateKey) privateKey, secureRandom);
             }
+            privateKeySet = true;
         } catch (InvalidKeyException ex) {
             throw new XMLSignatureException(ex);
         }
@@ -312,7 +307,7 @@ public abstract class SignatureECDSA extends SignatureAlgorithmSpi {
     /** @inheritDoc */
     protected void engineUpdate(byte[] input) throws XMLSignatureException {
         try {
-            this.signatureAlgorithm.update(input);
+            getSignature().update(input);
         } catch (SignatureException ex) {
             throw new XMLSignatureException(ex);
         }
@@ -321,7 +316,7 @@ public abstract class SignatureECDSA extends SignatureAlgorithmSpi {
     /** @inheritDoc */
     protected void engineUpdate(byte input) throws XMLSignatureException {
         try {
-            this.signatureAlgorithm.update(input);
+            getSignature().update(input);
         } catch (SignatureException ex) {
             throw new XMLSignatureException(ex);
         }
@@ -330,7 +325,7 @@ public abstract class SignatureECDSA extends SignatureAlgorithmSpi {
     /** @inheritDoc */
     protected void engineUpdate(byte buf[], int offset, int len) throws XMLSignatureException {
         try {
-            this.signatureAlgorithm.update(buf, offset, len);
+            getSignature().update(buf, offset, len);
         } catch (SignatureException ex) {
             throw new XMLSignatureException(ex);
         }
@@ -338,12 +333,32 @@ public abstract class SignatureECDSA extends SignatureAlgorithmSpi {
 
     /** @inheritDoc */
     protected String engineGetJCEAlgorithmString() {
-        return this.signatureAlgorithm.getAlgorithm();
+        return algorithmID;
     }
 
     /** @inheritDoc */
     protected String engineGetJCEProviderName() {
-        return this.signatureAlgorithm.getProvider().getName();
+        return providerName;
+    }
+
+    /** @inheritDoc */
+    protected void engineRelease() {
+        if (signatureAlgorithm != null && !parametersSet) {
+            // an engine cannot be uninitialised, so it must not keep a private key in the cache
+            if (!privateKeySet) {
+                JCEEngineCache.repoolSignature(algorithmID, provider, signatureAlgorithm);
+            }
+            signatureAlgorithm = null;
+            privateKeySet = false;
+        }
+    }
+
+    private Signature getSignature() throws XMLSignatureException {
+        if (signatureAlgorithm == null) {
+            signatureAlgorithm = JCEEngineCache.getSignature(algorithmID, provider);
+            providerName = signatureAlgorithm.getProvider().getName();
+        }
+        return signatureAlgorithm;
     }
 
     /** @inheritDoc */
@@ -98,8 +98,10 @@ public class Canonicalizer {
     private static Map<String, Class<? extends CanonicalizerSpi>> canonicalizerHash = 
         new ConcurrentHashMap<String, Class<? extends CanonicalizerSpi>>();
     
+    private final String algorithmURI;
     private final CanonicalizerSpi canonicalizerSpi;
     private boolean secureValidation;
+    private boolean released;
     
     /**
      * Constructor Canonicalizer
@@ -108,12 +110,33 @@ public class Canonicalizer {
      * @throws InvalidCanonicalizerException
      */
     private Canonicalizer(String algorithmURI) throws InvalidCanonicalizerException {
+        this.algorithmURI = algorithmURI;
+        canonicalizerSpi = CanonicalizerPool.getInstance(algorithmURI);
+    }
+
+    /**
+     * Method getInstance. The returned Canonicalizer is not thread-safe; once it is no
+     * longer needed it can be handed back with {@link #release()}.
+     *
+     * @param algorithmURI
+     * @return a Canonicalizer instance ready for the job
+     * @throws InvalidCanonicalizerException
+     */
+    public static final Canonicalizer getInstance(String algorithmURI)
+        throws InvalidCanonicalizerException {
+        return new Canonicalizer(algorithmURI);
+    }
+
+    /**
+     * Creates a new instance of the CanonicalizerSpi registered for the given URI.
+     */
+    static CanonicalizerSpi newCanonicalizerSpi(String algorithmURI)
+        throws InvalidCanonicalizerException {
         try {
             Class<? extends CanonicalizerSpi> implementingClass = 
                 canonicalizerHash.get(algorithmURI);
 
-            canonicalizerSpi = implementingClass.newInstance();
-            canonicalizerSpi.reset = true;
+            return implementingClass.newInstance();
         } catch (Exception e) {
             Object exArgs[] = { algorithmURI };
             throw new InvalidCanonicalizerException(
@@ -123,15 +146,10 @@ public class Canonicalizer {
     }
 
     /**
-     * Method getInstance
-     *
-     * @param algorithmURI
-     * @return a Canonicalizer instance ready for the job
-     * @throws InvalidCanonicalizerException
+     * Returns the CanonicalizerSpi class registered for the given URI, or null.
      */
-    public static final Canonicalizer getInstance(String algorithmURI)
-        throws InvalidCanonicalizerException {
-        return new Canonicalizer(algorithmURI);
+    static Class<? extends CanonicalizerSpi> getImplementingClass(String algorithmURI) {
+        return canonicalizerHash.get(algorithmURI);
     }
 
     /**
@@ -416,6 +434,17 @@ public class Canonicalizer {
         canonicalizerSpi.reset = false;
     }
 
+    /**
+     * Returns the underlying CanonicalizerSpi to the {@link CanonicalizerPool}. This
+     * Canonicalizer must not be used after it has been released.
+     */
+    public void release() {
+        if (!released) {
+            released = true;
+            CanonicalizerPool.repool(algorithmURI, canonicalizerSpi);
+        }
+    }
+
     public boolean isSecureValidation() {
         return secureValidation;
     }
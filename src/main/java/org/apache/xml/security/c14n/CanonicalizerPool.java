@@ -0,0 +1,150 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.c14n;
+
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingDeque;
+
+/**
+ * A bounded pool of {@link CanonicalizerSpi} instances, keyed by their implementing class.
+ * <p>
+ * A CanonicalizerSpi is not thread-safe, so an instance taken from the pool is confined
+ * to the calling thread until it is returned with {@link #repool(CanonicalizerSpi)}.
+ * Returned instances are reset via {@link CanonicalizerSpi#engineReset()}, which releases
+ * any references to the last input and output; instances that do not support a reset are
+ * discarded. Instances that are never returned are simply
+ * garbage collected. At most <code>org.apache.xml.security.c14n.poolSize</code> (default 16)
+ * idle instances are kept per class. Setting this property to 0 disables the pool, in
+ * which case every request creates a new instance.
+ * <p>
+ * Callers which need a particular implementation, such as the C14N transforms, take it
+ * with {@link #poll(Class)} and create it themselves if none is idle. Callers which only
+ * know an algorithm URI use {@link #getInstance(String)}, which looks up the class
+ * registered with {@link Canonicalizer}.
+ */
+public final class CanonicalizerPool {
+
+    private static final int MAX_IDLE_INSTANCES =
+        AccessController.doPrivileged(new PrivilegedAction<Integer>() {
+            public Integer run() {
+                return Integer.getInteger("org.apache.xml.security.c14n.poolSize", 16);
+            }
+        });
+
+    private static final ConcurrentMap<Class<?>, BlockingDeque<CanonicalizerSpi>> pools =
+        new ConcurrentHashMap<Class<?>, BlockingDeque<CanonicalizerSpi>>();
+
+    private CanonicalizerPool() {
+        // complete
+    }
+
+    /**
+     * Returns whether idle instances are pooled at all.
+     *
+     * @return false if the pool has been disabled by setting its size to 0
+     */
+    public static boolean isEnabled() {
+        return MAX_IDLE_INSTANCES > 0;
+    }
+
+    /**
+     * Returns a CanonicalizerSpi for the given algorithm, either an idle pooled instance or
+     * a newly created one.
+     *
+     * @param algorithmURI
+     * @return a CanonicalizerSpi in the state of a freshly constructed instance
+     * @throws InvalidCanonicalizerException if no canonicalizer is registered for the URI
+     */
+    public static CanonicalizerSpi getInstance(String algorithmURI)
+        throws InvalidCanonicalizerException {
+        Class<? extends CanonicalizerSpi> implementingClass =
+            Canonicalizer.getImplementingClass(algorithmURI);
+        if (implementingClass != null) {
+            CanonicalizerSpi canonicalizerSpi = poll(implementingClass);
+            if (canonicalizerSpi != null) {
+                return canonicalizerSpi;
+            }
+        }
+        CanonicalizerSpi canonicalizerSpi = Canonicalizer.newCanonicalizerSpi(algorithmURI);
+        canonicalizerSpi.reset = true;
+        return canonicalizerSpi;
+    }
+
+    /**
+     * Returns an idle pooled instance of the given class.
+     *
+     * @param implementingClass the class of the instance
+     * @return an instance in the state of a freshly constructed one, or null if none is idle
+     */
+    public static <T extends CanonicalizerSpi> T poll(Class<T> implementingClass) {
+        BlockingDeque<CanonicalizerSpi> idleInstances = pools.get(implementingClass);
+        if (idleInstances == null) {
+            return null;
+        }
+        CanonicalizerSpi canonicalizerSpi = idleInstances.pollFirst();
+        return canonicalizerSpi == null ? null : implementingClass.cast(canonicalizerSpi);
+    }
+
+    /**
+     * Resets the given CanonicalizerSpi and makes it available for reuse, if it is an
+     * instance of the class registered for the given URI.
+     *
+     * @param algorithmURI the algorithm URI the instance was obtained for
+     * @param canonicalizerSpi
+     * @return whether the instance was added to the pool
+     */
+    public static boolean repool(String algorithmURI, CanonicalizerSpi canonicalizerSpi) {
+        if (algorithmURI == null || canonicalizerSpi == null
+            || Canonicalizer.getImplementingClass(algorithmURI) != canonicalizerSpi.getClass()) {
+            return false;
+        }
+        return repool(canonicalizerSpi);
+    }
+
+    /**
+     * Resets the given CanonicalizerSpi and makes it available for reuse. An instance must
+     * be returned at most once, and the caller must not use it afterwards.
+     *
+     * @param canonicalizerSpi
+     * @return whether the instance was added to the pool
+     */
+    public static boolean repool(CanonicalizerSpi canonicalizerSpi) {
+        if (MAX_IDLE_INSTANCES <= 0 || canonicalizerSpi == null
+            || !canonicalizerSpi.engineReset()) {
+            return false;
+        }
+        Class<?> implementingClass = canonicalizerSpi.getClass();
+        BlockingDeque<CanonicalizerSpi> idleInstances = pools.get(implementingClass);
+        if (idleInstances == null) {
+            BlockingDeque<CanonicalizerSpi> newIdleInstances =
+                new LinkedBlockingDeque<CanonicalizerSpi>(MAX_IDLE_INSTANCES);
+            idleInstances = pools.putIfAbsent(implementingClass, newIdleInstances);
+            if (idleInstances == null) {
+                idleInstances = newIdleInstances;
+            }
+        }
+        canonicalizerSpi.reset = true;
+        // most recently used first, so that the instances with warm buffers are reused
+        return idleInstances.offerFirst(canonicalizerSpi);
+    }
+}
@@ -174,6 +174,21 @@ public abstract class CanonicalizerSpi {
      */
     public abstract void setWriter(OutputStream os);
 
+    /**
+     * Restores the state of a freshly constructed instance, so that the same instance can
+     * be used for another canonicalization. This is called by the {@link CanonicalizerPool}
+     * when an instance is returned. Implementations that support reuse must override this
+     * method, call <code>super.engineReset()</code> and return true.
+     *
+     * @return true if this instance has been reset and can be reused, false (the default)
+     *    if it must be discarded
+     */
+    protected boolean engineReset() {
+        reset = false;
+        secureValidation = false;
+        return false;
+    }
+
     public boolean isSecureValidation() {
         return secureValidation;
     }
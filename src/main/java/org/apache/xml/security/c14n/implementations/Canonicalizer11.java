@@ -74,6 +74,13 @@ public abstract class Canonicalizer11 extends CanonicalizerBase {
         XmlsStackElement cur;
         List<XmlsStackElement> levels = new ArrayList<XmlsStackElement>();   
         
+        void reset() {
+            currentLevel = 0;
+            lastlevel = 0;
+            cur = null;
+            levels.clear();
+        }
+
         void push(int level) {
             currentLevel = level;
             if (currentLevel == -1) {
@@ -193,6 +200,15 @@ public abstract class Canonicalizer11 extends CanonicalizerBase {
         super(includeComments);
     }
 
+    @Override
+    protected boolean engineReset() {
+        super.engineReset();
+        firstCall = true;
+        xmlattrStack.reset();
+        result.clear();
+        return true;
+    }
+
     /**
      * Always throws a CanonicalizationException because this is inclusive c14n.
      *
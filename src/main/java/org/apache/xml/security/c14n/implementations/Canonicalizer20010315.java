@@ -68,6 +68,13 @@ public abstract class Canonicalizer20010315 extends CanonicalizerBase {
         XmlsStackElement cur;
         List<XmlsStackElement> levels = new ArrayList<XmlsStackElement>();
         
+        void reset() {
+            currentLevel = 0;
+            lastlevel = 0;
+            cur = null;
+            levels.clear();
+        }
+
         void push(int level) {
             currentLevel = level;
             if (currentLevel == -1) {
@@ -147,6 +154,15 @@ public abstract class Canonicalizer20010315 extends CanonicalizerBase {
     public Canonicalizer20010315(boolean includeComments) {
         super(includeComments);
     }
+
+    @Override
+    protected boolean engineReset() {
+        super.engineReset();
+        firstCall = true;
+        xmlattrStack.reset();
+        result.clear();
+        return true;
+    }
     
     /**
      * Always throws a CanonicalizationException because this is inclusive c14n.
@@ -77,6 +77,15 @@ public abstract class Canonicalizer20010315Excl extends CanonicalizerBase {
         super(includeComments);
     }
 
+    @Override
+    protected boolean engineReset() {
+        super.engineReset();
+        inclusiveNSSet = null;
+        propagateDefaultNamespace = false;
+        result.clear();
+        return true;
+    }
+
     /**
      * Method engineCanonicalizeSubTree
      * @inheritDoc
@@ -66,15 +66,12 @@ public abstract class CanonicalizerBase extends CanonicalizerSpi {
     private static final byte[] BEGIN_PI = {'<','?'};
     private static final byte[] END_COMM = {'-','-','>'};
     private static final byte[] BEGIN_COMM = {'<','!','-','-'};
-    private static final byte[] XA = {'&','#','x','A',';'};
-    private static final byte[] X9 = {'&','#','x','9',';'};
-    private static final byte[] QUOT = {'&','q','u','o','t',';'};
     private static final byte[] XD = {'&','#','x','D',';'};
-    private static final byte[] GT = {'&','g','t',';'};
-    private static final byte[] LT = {'&','l','t',';'};
     private static final byte[] END_TAG = {'<','/'};
-    private static final byte[] AMP = {'&','a','m','p',';'};
     private static final byte[] EQUALS_STR = {'=','\"'};
+
+    /** The largest internal buffer which is kept when the instance is reset */
+    private static final int MAX_RETAINED_BUFFER_SIZE = 8 * 1024;
     
     protected static final int NODE_BEFORE_DOCUMENT_ELEMENT = -1;
     protected static final int NODE_NOT_BEFORE_OR_AFTER_DOCUMENT_ELEMENT = 0;
@@ -82,6 +79,7 @@ public abstract class CanonicalizerBase extends CanonicalizerSpi {
     
     private List<NodeFilter> nodeFilter;
 
+    private final boolean defaultIncludeComments;
     private boolean includeComments;  
     private Set<Node> xpathNodeSet;
 
@@ -90,7 +88,10 @@ public abstract class CanonicalizerBase extends CanonicalizerSpi {
      * in subtree canonicalizations.
      */
     private Node excludeNode;
-    private OutputStream writer = new ByteArrayOutputStream();
+    private InternalBuffer buffer = new InternalBuffer();
+    private OutputStream writer = buffer;
+    private final EscapingEncoder escapingEncoder = new EscapingEncoder();
+    private final NameSpaceSymbTable nameSpaceSymbTable = new NameSpaceSymbTable();
 
    /**
     * The null xmlns definition.
@@ -103,9 +104,33 @@ public abstract class CanonicalizerBase extends CanonicalizerSpi {
      * @param includeComments
      */
     public CanonicalizerBase(boolean includeComments) {
+        this.defaultIncludeComments = includeComments;
         this.includeComments = includeComments;
     }
 
+    /**
+     * Drops the references to the last input and output and restores the internal
+     * buffer as the writer. A buffer which has grown past a few kilobytes is replaced, so
+     * that pooled instances do not hold on to their largest output.
+     */
+    @Override
+    protected boolean engineReset() {
+        super.engineReset();
+        nodeFilter = null;
+        includeComments = defaultIncludeComments;
+        xpathNodeSet = null;
+        excludeNode = null;
+        nullNode = null;
+        nameSpaceSymbTable.reset();
+        if (buffer.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+            buffer = new InternalBuffer();
+        } else {
+            buffer.reset();
+        }
+        writer = buffer;
+        return true;
+    }
+
     /**
      * Method engineCanonicalizeSubTree
      * @inheritDoc
@@ -187,7 +212,8 @@ public abstract class CanonicalizerBase extends CanonicalizerSpi {
         throws CanonicalizationException {
         this.excludeNode = excludeNode;
         try {
-            NameSpaceSymbTable ns = new NameSpaceSymbTable();
+            NameSpaceSymbTable ns = nameSpaceSymbTable;
+            ns.reset();
             int nodeLevel = NODE_BEFORE_DOCUMENT_ELEMENT;
             if (rootNode != null && Node.ELEMENT_NODE == rootNode.getNodeType()) {
                 //Fills the nssymbtable with the definitions of the parent of the root subnode
@@ -389,7 +415,8 @@ public abstract class CanonicalizerBase extends CanonicalizerSpi {
             return;
         }
         boolean currentNodeIsVisible = false;	  
-        NameSpaceSymbTable ns = new NameSpaceSymbTable();
+        NameSpaceSymbTable ns = nameSpaceSymbTable;
+        ns.reset();
         if (currentNode != null && Node.ELEMENT_NODE == currentNode.getNodeType()) {
             getParentNameSpaces((Element)currentNode, ns);
         }
@@ -681,57 +708,14 @@ public abstract class CanonicalizerBase extends CanonicalizerSpi {
      * @param writer 
      * @throws IOException
      */
-    protected static final void outputAttrToWriter(
+    protected final void outputAttrToWriter(
         final String name, final String value, 
         final OutputStream writer, final Map<String, byte[]> cache
     ) throws IOException {
         writer.write(' ');
         UtfHelpper.writeByte(name, writer, cache);
         writer.write(EQUALS_STR.clone());
-        byte[] toWrite;
-        final int length = value.length();
-        int i = 0;
-        while (i < length) {        
-            int c = value.codePointAt(i);
-            i += Character.charCount(c);
-
-            switch (c) {
-
-            case '&' :
-                toWrite = AMP.clone();
-                break;
-
-            case '<' :
-                toWrite = LT.clone();
-                break;
-
-            case '"' :
-                toWrite = QUOT.clone();
-                break;
-
-            case 0x09 :    // '\t'
-                toWrite = X9.clone();
-                break;
-
-            case 0x0A :    // '\n'
-                toWrite = XA.clone();
-                break;
-
-            case 0x0D :    // '\r'
-                toWrite = XD.clone();
-                break;
-
-            default :
-                if (c < 0x80) {
-                    writer.write(c);
-                } else {
-                    UtfHelpper.writeCodePointToUtf8(c, writer);
-                }
-                continue;
-            }
-            writer.write(toWrite);
-        }
-
+        escapingEncoder.writeAttributeValue(value, writer);
         writer.write('\"');
     }
 
@@ -836,43 +820,10 @@ public abstract class CanonicalizerBase extends CanonicalizerSpi {
      * @param writer writer where to write the things
      * @throws IOException
      */
-    protected static final void outputTextToWriter(
+    protected final void outputTextToWriter(
         final String text, final OutputStream writer
     ) throws IOException {
-        final int length = text.length();
-        byte[] toWrite;
-        for (int i = 0; i < length; ) {
-            int c = text.codePointAt(i);
-            i += Character.charCount(c);
-
-            switch (c) {
-
-            case '&' :
-                toWrite = AMP.clone();
-                break;
-
-            case '<' :
-                toWrite = LT.clone();
-                break;
-
-            case '>' :
-                toWrite = GT.clone();
-                break;
-
-            case 0xD :
-                toWrite = XD.clone();
-                break;
-
-            default :
-                if (c < 0x80) {
-                    writer.write(c);
-                } else {
-                    UtfHelpper.writeCodePointToUtf8(c, writer);
-                }
-                continue;
-            }
-            writer.write(toWrite);
-        }
+        escapingEncoder.writeText(text, writer);
     }
 
     // The null xmlns definition.
@@ -889,4 +840,13 @@ public abstract class CanonicalizerBase extends CanonicalizerSpi {
         return nullNode;
     } 
 
+    /**
+     * The internal buffer, which tells how large its array has grown.
+     */
+    private static final class InternalBuffer extends ByteArrayOutputStream {
+
+        int capacity() {
+            return buf.length;
+        }
+    }
 }
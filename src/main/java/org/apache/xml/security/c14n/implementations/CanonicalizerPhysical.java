@@ -59,6 +59,13 @@ public class CanonicalizerPhysical extends CanonicalizerBase {
         super(true);
     }
 
+    @Override
+    protected boolean engineReset() {
+        super.engineReset();
+        result.clear();
+        return true;
+    }
+
     /**
      * Always throws a CanonicalizationException.
      *
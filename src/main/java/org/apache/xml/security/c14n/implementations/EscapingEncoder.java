@@ -0,0 +1,143 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.c14n.implementations;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Escapes text and attribute values as required by the canonicalization specs and
+ * writes them UTF-8 encoded. The characters are classified with lookup tables and the
+ * output is collected in a reusable buffer, so runs of characters which don't need to be
+ * escaped are written with one OutputStream.write(byte[], int, int) call.
+ * <p/>
+ * An instance is not thread-safe and is meant to be owned by one canonicalizer.
+ */
+public final class EscapingEncoder {
+
+    private static final byte[] XA = {'&','#','x','A',';'};
+    private static final byte[] X9 = {'&','#','x','9',';'};
+    private static final byte[] QUOT = {'&','q','u','o','t',';'};
+    private static final byte[] XD = {'&','#','x','D',';'};
+    private static final byte[] GT = {'&','g','t',';'};
+    private static final byte[] LT = {'&','l','t',';'};
+    private static final byte[] AMP = {'&','a','m','p',';'};
+
+    // replacements of the ASCII characters, null if the character is written as is
+    private static final byte[][] TEXT_ESCAPES = new byte[0x80][];
+    private static final byte[][] ATTR_ESCAPES = new byte[0x80][];
+
+    static {
+        TEXT_ESCAPES['&'] = AMP;
+        TEXT_ESCAPES['<'] = LT;
+        TEXT_ESCAPES['>'] = GT;
+        TEXT_ESCAPES[0x0D] = XD;
+
+        ATTR_ESCAPES['&'] = AMP;
+        ATTR_ESCAPES['<'] = LT;
+        ATTR_ESCAPES['"'] = QUOT;
+        ATTR_ESCAPES[0x09] = X9;
+        ATTR_ESCAPES[0x0A] = XA;
+        ATTR_ESCAPES[0x0D] = XD;
+    }
+
+    private static final int BUFFER_SIZE = 1024;
+    // the longest UTF-8 sequence written by UtfHelpper.writeCodePointToUtf8
+    private static final int MAX_ENCODED_LENGTH = 6;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final char[] chars = new char[BUFFER_SIZE];
+
+    /**
+     * Writes a text node, escaping &amp;, &lt;, &gt; and #xD.
+     */
+    public void writeText(final String text, final OutputStream out) throws IOException {
+        write(text, TEXT_ESCAPES, out);
+    }
+
+    /**
+     * Writes a text node, escaping &amp;, &lt;, &gt; and #xD.
+     */
+    public void writeText(final char[] text, final OutputStream out) throws IOException {
+        write(text, 0, text.length, TEXT_ESCAPES, out);
+    }
+
+    /**
+     * Writes an attribute value, escaping &amp;, &lt;, &quot;, #x9, #xA and #xD.
+     */
+    public void writeAttributeValue(final String value, final OutputStream out) throws IOException {
+        write(value, ATTR_ESCAPES, out);
+    }
+
+    private void write(final String str, final byte[][] escapes, final OutputStream out) throws IOException {
+        final int length = str.length();
+        int start = 0;
+        while (start < length) {
+            int end = Math.min(start + chars.length, length);
+            // don't split a surrogate pair
+            if (end < length && Character.isHighSurrogate(str.charAt(end - 1))) {
+                end--;
+            }
+            str.getChars(start, end, chars, 0);
+            write(chars, 0, end - start, escapes, out);
+            start = end;
+        }
+    }
+
+    private void write(
+        final char[] text, final int off, final int len, final byte[][] escapes, final OutputStream out
+    ) throws IOException {
+        final byte[] buf = buffer;
+        int pos = 0;
+        final int end = off + len;
+        for (int i = off; i < end; i++) {
+            final char c = text[i];
+            if (c < 0x80) {
+                final byte[] escaped = escapes[c];
+                if (escaped == null) {
+                    if (pos == buf.length) {
+                        out.write(buf, 0, pos);
+                        pos = 0;
+                    }
+                    buf[pos++] = (byte)c;
+                } else {
+                    if (pos + escaped.length > buf.length) {
+                        out.write(buf, 0, pos);
+                        pos = 0;
+                    }
+                    System.arraycopy(escaped, 0, buf, pos, escaped.length);
+                    pos += escaped.length;
+                }
+            } else {
+                int codePoint = c;
+                if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text[i + 1])) {
+                    codePoint = Character.toCodePoint(c, text[++i]);
+                }
+                if (pos + MAX_ENCODED_LENGTH > buf.length) {
+                    out.write(buf, 0, pos);
+                    pos = 0;
+                }
+                pos = UtfHelpper.writeCodePointToUtf8(codePoint, buf, pos);
+            }
+        }
+        if (pos > 0) {
+            out.write(buf, 0, pos);
+        }
+    }
+}
@@ -18,46 +18,66 @@
  */
 package org.apache.xml.security.c14n.implementations;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Iterator;
-import java.util.List;
-
 
 import org.w3c.dom.Attr;
 import org.w3c.dom.Node;
 
 /**
  * A stack based Symbol Table.
- *<br>For speed reasons all the symbols are introduced in the same map,
- * and at the same time in a list so it can be removed when the frame is pop back.
+ *<br>Every prefix is given an integer id the first time it is seen, and the current
+ * definitions are kept in an array indexed by that id. Instead of copying the table on a
+ * push, every change made in a frame is recorded in an undo log together with the entry
+ * it replaced, and the log is played back when the frame is popped.
  * @author Raul Benito
  */
 public class NameSpaceSymbTable {
 
     private static final String XMLNS = "xmlns";
-    private static final SymbMap initialMap = new SymbMap();
+    private static final NameSpaceSymbEntry initialEntry;
     
     static {
-        NameSpaceSymbEntry ne = new NameSpaceSymbEntry("", null, true, XMLNS);
-        ne.lastrendered = "";		
-        initialMap.put(XMLNS, ne);
+        initialEntry = new NameSpaceSymbEntry("", null, true, XMLNS);
+        initialEntry.lastrendered = "";
+        // never owned by a frame, so it is copied before it is modified
+        initialEntry.level = -1;
     }
     
-    /**The map betwen prefix-> entry table. */
-    private SymbMap symb;
+    /**The prefix -> id table. */
+    private final PrefixIndex prefixes = new PrefixIndex();
+    
+    /**The current entry of every prefix, indexed by prefix id. */
+    private NameSpaceSymbEntry[] entries = new NameSpaceSymbEntry[16];
     
-    /**The stacks for removing the definitions when doing pop.*/
-    private List<SymbMap> level;
-    private boolean cloned = true;
+    /**The undo log: the prefix ids changed and the entries they had before the change.*/
+    private int[] undoIds = new int[32];
+    private NameSpaceSymbEntry[] undoEntries = new NameSpaceSymbEntry[32];
+    private int undoSize;
+    
+    /**The size of the undo log at each push.*/
+    private int[] levels = new int[16];
+    private int levelSize;
     
     /**
      * Default constractor
      **/		
-    public NameSpaceSymbTable() {    	
-        level = new ArrayList<SymbMap>();
-        //Insert the default binding for xmlns.    	
-        symb = (SymbMap) initialMap.clone();
+    public NameSpaceSymbTable() {
+        //Insert the default binding for xmlns.
+        entries[prefixes.getOrAdd(XMLNS)] = initialEntry;
+    }
+
+    /**
+     * Clears all the definitions and frames, so that the table can be used again
+     * for another document.
+     **/
+    public void reset() {
+        Arrays.fill(entries, null);
+        Arrays.fill(undoEntries, 0, undoSize, null);
+        undoSize = 0;
+        levelSize = 0;
+        prefixes.clear();
+        entries[prefixes.getOrAdd(XMLNS)] = initialEntry;
     }
 
     /**
@@ -65,18 +85,14 @@ public class NameSpaceSymbTable {
      * For Inclusive rendering
      * @param result the list where to fill the unrendered xmlns definitions.
      **/       
-    public void getUnrenderedNodes(Collection<Attr> result) {		
-        Iterator<NameSpaceSymbEntry> it = symb.entrySet().iterator();
-        while (it.hasNext()) {	   	   
-            NameSpaceSymbEntry n = it.next();
+    public void getUnrenderedNodes(Collection<Attr> result) {
+        int size = prefixes.size();
+        for (int id = 0; id < size; id++) {
+            NameSpaceSymbEntry n = entry(id);
             //put them rendered?
-            if (!n.rendered && n.n != null) {
-                n = (NameSpaceSymbEntry) n.clone();
-                needsClone();
-                symb.put(n.prefix, n);         
-                n.lastrendered = n.uri;
-                n.rendered = true;
-
+            //an xmlns="" is never unrendered, as the SymbMap.entrySet() used before skipped it
+            if (n != null && !n.rendered && n.n != null && !"".equals(n.uri)) {
+                n = markRendered(id, n);
                 result.add(n.n);
             }
         }	   
@@ -102,9 +118,11 @@ public class NameSpaceSymbTable {
      * Inclusive or Exclusive.
      **/
     public void push() {		
-        //Put the number of namespace definitions in the stack.
-        level.add(null);
-        cloned = false;
+        //Put the size of the undo log in the stack.
+        if (levelSize == levels.length) {
+            levels = Arrays.copyOf(levels, levelSize << 1);
+        }
+        levels[levelSize++] = undoSize;
     }
 
     /**
@@ -112,37 +130,23 @@ public class NameSpaceSymbTable {
      * Inclusive or Exclusive.
      **/
     public void pop() {
-        int size = level.size() - 1;
-        Object ob = level.remove(size);
-        if (ob != null) {
-            symb = (SymbMap)ob;
-            if (size == 0) {
-                cloned = false;   
-            } else {
-                cloned = level.get(size - 1) != symb;
-            }
-        } else {
-            cloned = false;
-        }
-    }
-
-    final void needsClone() {
-        if (!cloned) {			
-            level.set(level.size() - 1, symb);
-            symb = (SymbMap) symb.clone();
-            cloned = true;
+        int mark = levels[--levelSize];
+        while (undoSize > mark) {
+            undoSize--;
+            entries[undoIds[undoSize]] = undoEntries[undoSize];
+            undoEntries[undoSize] = null;
         }
     }
 
-
     /**
      * Gets the attribute node that defines the binding for the prefix.      
      * @param prefix the prefix to obtain the attribute.
      * @return null if there is no need to render the prefix. Otherwise the node of
      * definition.
      **/
-    public Attr getMapping(String prefix) {					
-        NameSpaceSymbEntry entry = symb.get(prefix);
+    public Attr getMapping(String prefix) {
+        int id = prefixes.get(prefix);
+        NameSpaceSymbEntry entry = id < 0 ? null : entry(id);
         if (entry == null) {
             //There is no definition for the prefix(a bug?).
             return null;
@@ -152,11 +156,7 @@ public class NameSpaceSymbTable {
             return null;		
         }
         // Mark this entry as render.
-        entry = (NameSpaceSymbEntry) entry.clone();
-        needsClone();
-        symb.put(prefix, entry);
-        entry.rendered = true;
-        entry.lastrendered = entry.uri;				
+        entry = markRendered(id, entry);
         // Return the node for outputing.
         return entry.n;
     }
@@ -167,8 +167,8 @@ public class NameSpaceSymbTable {
      * @param prefix The prefix whose definition is neaded.
      * @return the attr to render, null if there is no need to render
      **/
-    public Attr getMappingWithoutRendered(String prefix) {					
-        NameSpaceSymbEntry entry = symb.get(prefix);
+    public Attr getMappingWithoutRendered(String prefix) {
+        NameSpaceSymbEntry entry = get(prefix);
         if (entry == null) {		   
             return null;
         }
@@ -185,16 +185,16 @@ public class NameSpaceSymbTable {
      * @param n the attribute that have the definition
      * @return true if there is already defined.
      **/
-    public boolean addMapping(String prefix, String uri, Attr n) {						
-        NameSpaceSymbEntry ob = symb.get(prefix);		
+    public boolean addMapping(String prefix, String uri, Attr n) {
+        int id = prefixes.getOrAdd(prefix);
+        NameSpaceSymbEntry ob = entry(id);
         if (ob != null && uri.equals(ob.uri)) {
             //If we have it previously defined. Don't keep working.
             return false;
         }			
         //Creates and entry in the table for this new definition.
         NameSpaceSymbEntry ne = new NameSpaceSymbEntry(uri, n, false, prefix);		
-        needsClone();
-        symb.put(prefix, ne);
+        put(id, ne);
         if (ob != null) {
             //We have a previous definition store it for the pop.			
             //Check if a previous definition(not the inmidiatly one) has been rendered.			
@@ -215,16 +215,13 @@ public class NameSpaceSymbTable {
      * @param n the attribute that have the definition
      * @return the attr to render, null if there is no need to render
      **/
-    public Node addMappingAndRender(String prefix, String uri, Attr n) {                     
-        NameSpaceSymbEntry ob = symb.get(prefix);
+    public Node addMappingAndRender(String prefix, String uri, Attr n) {
+        int id = prefixes.getOrAdd(prefix);
+        NameSpaceSymbEntry ob = entry(id);
 
         if (ob != null && uri.equals(ob.uri)) {
             if (!ob.rendered) {                 
-                ob = (NameSpaceSymbEntry) ob.clone();
-                needsClone();
-                symb.put(prefix, ob);         
-                ob.lastrendered = uri;
-                ob.rendered = true;
+                ob = markRendered(id, ob);
                 return ob.n;
             }           
             return null;
@@ -232,8 +229,7 @@ public class NameSpaceSymbTable {
 
         NameSpaceSymbEntry ne = new NameSpaceSymbEntry(uri,n,true,prefix);
         ne.lastrendered = uri;
-        needsClone();
-        symb.put(prefix, ne);
+        put(id, ne);
         if (ob != null && ob.lastrendered != null && ob.lastrendered.equals(uri)) {
             ne.rendered = true;
             return null;
@@ -242,36 +238,82 @@ public class NameSpaceSymbTable {
     }
 
     public int getLevel() {
-        return level.size();
+        return levelSize;
     }
 
     public void removeMapping(String prefix) {
-        NameSpaceSymbEntry ob = symb.get(prefix);
+        int id = prefixes.get(prefix);
+        NameSpaceSymbEntry ob = id < 0 ? null : entry(id);
 
         if (ob != null) {
-            needsClone();
-            symb.put(prefix, null);         
+            put(id, null);
         }
     }
 
     public void removeMappingIfNotRender(String prefix) {
-        NameSpaceSymbEntry ob = symb.get(prefix);
+        int id = prefixes.get(prefix);
+        NameSpaceSymbEntry ob = id < 0 ? null : entry(id);
 
         if (ob != null && !ob.rendered) {
-            needsClone();
-            symb.put(prefix, null);         
+            put(id, null);
         }
     }
 
     public boolean removeMappingIfRender(String prefix) {
-        NameSpaceSymbEntry ob = symb.get(prefix);
+        int id = prefixes.get(prefix);
+        NameSpaceSymbEntry ob = id < 0 ? null : entry(id);
 
         if (ob != null && ob.rendered) {
-            needsClone();
-            symb.put(prefix, null);         
+            put(id, null);
         }
         return false;
     }
+
+    private NameSpaceSymbEntry get(String prefix) {
+        int id = prefixes.get(prefix);
+        return id < 0 ? null : entry(id);
+    }
+
+    private NameSpaceSymbEntry entry(int id) {
+        return id < entries.length ? entries[id] : null;
+    }
+
+    /**
+     * Marks the entry of the given prefix id as rendered. An entry that was defined in an
+     * outer frame is copied first, so that the outer definition is restored on pop.
+     */
+    private NameSpaceSymbEntry markRendered(int id, NameSpaceSymbEntry entry) {
+        if (entry.level != levelSize) {
+            entry = (NameSpaceSymbEntry) entry.clone();
+            put(id, entry);
+        }
+        entry.lastrendered = entry.uri;
+        entry.rendered = true;
+        return entry;
+    }
+
+    /**
+     * Sets the entry of the given prefix id in the current frame and logs the entry
+     * it replaces.
+     */
+    private void put(int id, NameSpaceSymbEntry entry) {
+        if (id >= entries.length) {
+            entries = Arrays.copyOf(entries, Math.max(entries.length << 1, id + 1));
+        }
+        if (levelSize > 0) {
+            if (undoSize == undoIds.length) {
+                undoIds = Arrays.copyOf(undoIds, undoSize << 1);
+                undoEntries = Arrays.copyOf(undoEntries, undoSize << 1);
+            }
+            undoIds[undoSize] = id;
+            undoEntries[undoSize] = entries[id];
+            undoSize++;
+        }
+        if (entry != null) {
+            entry.level = levelSize;
+        }
+        entries[id] = entry;
+    }
 }
 
 /**
@@ -293,6 +335,9 @@ class NameSpaceSymbEntry implements Cloneable {
     /**The attribute to include.*/
     Attr n;     
     
+    /**The frame this entry was added in, only entries of the current frame are modified in place.*/
+    int level;
+    
     NameSpaceSymbEntry(String name, Attr n, boolean rendered, String prefix) {
         this.uri = name;          
         this.rendered = rendered;
@@ -310,95 +355,77 @@ class NameSpaceSymbEntry implements Cloneable {
     }
 }
 
-class SymbMap implements Cloneable {
-    int free = 23;
-    NameSpaceSymbEntry[] entries;
-    String[] keys;
+/**
+ * An open addressing map from prefix to a small integer id. Ids are handed out
+ * consecutively from 0 and are never removed, except by {@link #clear()}.
+ */
+class PrefixIndex {
+    private String[] keys = new String[32];
+    private int[] ids = new int[32];
+    private int size;
     
-    SymbMap() {
-        entries = new NameSpaceSymbEntry[free];
-        keys = new String[free];
+    int size() {
+        return size;
     }
     
-    void put(String key, NameSpaceSymbEntry value) {		
-        int index = index(key);
-        Object oldKey = keys[index];
-        keys[index] = key;
-        entries[index] = value;
-        if ((oldKey == null || !oldKey.equals(key)) && --free == 0) {	        	        
-            free = entries.length;
-            int newCapacity = free << 2;				
-            rehash(newCapacity);			
+    int get(String key) {
+        String[] set = keys;
+        int mask = set.length - 1;
+        int index = key.hashCode() & mask;
+        String cur;
+        while ((cur = set[index]) != null) {
+            if (cur == key || cur.equals(key)) {
+                return ids[index];
+            }
+            index = (index + 1) & mask;
         }
+        return -1;
     }
-
-    List<NameSpaceSymbEntry> entrySet() {
-        List<NameSpaceSymbEntry> a = new ArrayList<NameSpaceSymbEntry>();
-        for (int i = 0;i < entries.length;i++) {
-            if (entries[i] != null && !"".equals(entries[i].uri)) {
-                a.add(entries[i]);
+    
+    int getOrAdd(String key) {
+        String[] set = keys;
+        int mask = set.length - 1;
+        int index = key.hashCode() & mask;
+        String cur;
+        while ((cur = set[index]) != null) {
+            if (cur == key || cur.equals(key)) {
+                return ids[index];
             }
+            index = (index + 1) & mask;
         }
-        return a;		
-    }
-
-    protected int index(Object obj) {		
-        Object[] set = keys;
-        int length = set.length;
-        //abs of index
-        int index = (obj.hashCode() & 0x7fffffff) % length;
-        Object cur = set[index];
-
-        if (cur == null || cur.equals(obj)) {
-            return index;
+        set[index] = key;
+        ids[index] = size;
+        if (++size * 3 > set.length << 1) {
+            rehash(set.length << 1);
         }
-        length--;
-        do {
-            index = index == length ? 0 : ++index;
-            cur = set[index];
-        } while (cur != null && !cur.equals(obj));       
-        return index;
+        return size - 1;
+    }
+    
+    void clear() {
+        Arrays.fill(keys, null);
+        size = 0;
     }
 
     /**
      * rehashes the map to the new capacity.
      *
-     * @param newCapacity an <code>int</code> value
+     * @param newCapacity a power of two
      */
-    protected void rehash(int newCapacity) {
-        int oldCapacity = keys.length;
-        String oldKeys[] = keys;
-        NameSpaceSymbEntry oldVals[] = entries;
-
-        keys = new String[newCapacity];        
-        entries = new NameSpaceSymbEntry[newCapacity];
-
-        for (int i = oldCapacity; i-- > 0;) {
+    private void rehash(int newCapacity) {
+        String[] oldKeys = keys;
+        int[] oldIds = ids;
+        keys = new String[newCapacity];
+        ids = new int[newCapacity];
+        int mask = newCapacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
             if (oldKeys[i] != null) {
-                String o = oldKeys[i];
-                int index = index(o);
-                keys[index] = o;
-                entries[index] = oldVals[i];
+                int index = oldKeys[i].hashCode() & mask;
+                while (keys[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = oldKeys[i];
+                ids[index] = oldIds[i];
             }
         }
     }
-
-    NameSpaceSymbEntry get(String key) {
-        return entries[index(key)];
-    }
-
-    protected Object clone()  {
-        try {
-            SymbMap copy = (SymbMap) super.clone();
-            copy.entries = new NameSpaceSymbEntry[entries.length];
-            System.arraycopy(entries, 0, copy.entries, 0, entries.length);
-            copy.keys = new String[keys.length];
-            System.arraycopy(keys, 0, copy.keys, 0, keys.length);
-
-            return copy;
-        } catch (CloneNotSupportedException e) {
-            e.printStackTrace();
-        }
-        return null;
-    }
 }
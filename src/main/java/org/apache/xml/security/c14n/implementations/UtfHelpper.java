@@ -118,6 +118,46 @@ public final class UtfHelpper {
         }
     }
 
+    /**
+     * Encodes a code point like {@link #writeCodePointToUtf8(int, OutputStream)} into the given
+     * buffer, which must have room for at least 6 bytes starting at pos.
+     *
+     * @return the position after the last written byte
+     */
+    public static int writeCodePointToUtf8(final int c, final byte[] buf, int pos) {
+        if (!Character.isValidCodePoint(c) || c >= 0xD800 && c <= 0xDBFF || c >= 0xDC00 && c <= 0xDFFF) {
+            // valid code point: c >= 0x0000 && c <= 0x10FFFF
+            buf[pos++] = 0x3f;
+            return pos;
+        }
+        if (OLD_UTF8 && c >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            // version 2 or before output 2 question mark characters for 32 bit chars
+            buf[pos++] = 0x3f;
+            buf[pos++] = 0x3f;
+            return pos;
+        }
+        if (c < 0x80) {
+            buf[pos++] = (byte)c;
+            return pos;
+        }
+        byte extraByte;
+        if (c < 0x800) {
+            extraByte = 1;
+        } else if (c < 0x10000) {
+            extraByte = 2;
+        } else {
+            // c <= 0x10FFFF since it is a valid code point
+            extraByte = 3;
+        }
+        int shift = 6 * extraByte;
+        buf[pos++] = (byte)((0xFE << (6 - extraByte)) | (c >>> shift));
+        for (int i = extraByte - 1; i >= 0; i--) {
+            shift -= 6;
+            buf[pos++] = (byte)(0x80 | ((c >>> shift) & 0x3F));
+        }
+        return pos;
+    }
+
     public static void writeStringToUtf8(
         final String str, final OutputStream out
     ) throws IOException {
@@ -18,14 +18,19 @@
  */
 package org.apache.xml.security.encryption;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.xml.security.c14n.Canonicalizer;
+import org.apache.xml.security.utils.UnsyncBufferedOutputStream;
 import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
@@ -38,6 +43,8 @@ import org.w3c.dom.NodeList;
  */
 public abstract class AbstractSerializer implements Serializer {
     
+    private static final String CONTEXT_SUFFIX = "</dummy>";
+
     protected Canonicalizer canon;
     protected boolean secureValidation;
     
@@ -128,6 +135,37 @@ public abstract class AbstractSerializer implements Serializer {
         return baos.toByteArray();
     }
 
+    /**
+     * Writes the canonicalization of the specified <code>Element</code> to an
+     * <code>OutputStream</code>, without collecting it in memory first.
+     *
+     * @param element the <code>Element</code> to serialize.
+     * @param os the <code>OutputStream</code> to write to, which is flushed but not closed.
+     * @throws Exception
+     */
+    public void serialize(Element element, OutputStream os) throws Exception {
+        canonSerialize(element, os);
+    }
+
+    /**
+     * Writes the canonicalization of the specified <code>NodeList</code> to an
+     * <code>OutputStream</code>, without collecting it in memory first.
+     *
+     * @param content the <code>NodeList</code> to serialize.
+     * @param os the <code>OutputStream</code> to write to, which is flushed but not closed.
+     * @throws Exception
+     */
+    public void serialize(NodeList content, OutputStream os) throws Exception {
+        OutputStream writer = createWriter(os);
+        canon.setSecureValidation(secureValidation);
+        canon.setWriter(writer);
+        canon.notReset();
+        for (int i = 0; i < content.getLength(); i++) {
+            canon.canonicalizeSubtree(content.item(i));
+        }
+        writer.flush();
+    }
+
     /**
      * Use the Canonicalizer to serialize the node
      * @param node
@@ -160,6 +198,21 @@ public abstract class AbstractSerializer implements Serializer {
         return baos.toByteArray();
     }
 
+    /**
+     * Use the Canonicalizer to write the canonicalization of the node to an OutputStream
+     * @param node
+     * @param os the OutputStream to write to, which is flushed but not closed
+     * @throws Exception
+     */
+    public void canonSerialize(Node node, OutputStream os) throws Exception {
+        OutputStream writer = createWriter(os);
+        canon.setSecureValidation(secureValidation);
+        canon.setWriter(writer);
+        canon.notReset();
+        canon.canonicalizeSubtree(node);
+        writer.flush();
+    }
+
     /**
      * @param source
      * @param ctx
@@ -176,52 +229,67 @@ public abstract class AbstractSerializer implements Serializer {
      */
     public abstract Node deserialize(byte[] source, Node ctx) throws XMLEncryptionException;
 
-    protected static byte[] createContext(byte[] source, Node ctx) throws XMLEncryptionException {
-        // Create the context to parse the document against
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+    /**
+     * @param source the octets to parse, which are read up to their end but not closed
+     * @param ctx
+     * @return the Node resulting from the parse of the source
+     * @throws XMLEncryptionException
+     */
+    public Node deserialize(InputStream source, Node ctx) throws XMLEncryptionException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
         try {
-            OutputStreamWriter outputStreamWriter = new OutputStreamWriter(byteArrayOutputStream, "UTF-8");
-            outputStreamWriter.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?><dummy");
-
-            // Run through each node up to the document node and find any xmlns: nodes
-            Map<String, String> storedNamespaces = new HashMap<String, String>();
-            Node wk = ctx;
-            while (wk != null) {
-                NamedNodeMap atts = wk.getAttributes();
-                if (atts != null) {
-                    for (int i = 0; i < atts.getLength(); ++i) {
-                        Node att = atts.item(i);
-                        String nodeName = att.getNodeName();
-                        if ((nodeName.equals("xmlns") || nodeName.startsWith("xmlns:"))
-                                && !storedNamespaces.containsKey(att.getNodeName())) {
-                            outputStreamWriter.write(" ");
-                            outputStreamWriter.write(nodeName);
-                            outputStreamWriter.write("=\"");
-                            outputStreamWriter.write(att.getNodeValue());
-                            outputStreamWriter.write("\"");
-                            storedNamespaces.put(nodeName, att.getNodeValue());
-                        }
-                    }
-                }
-                wk = wk.getParentNode();
+            int read;
+            while ((read = source.read(buffer)) != -1) {
+                baos.write(buffer, 0, read);
             }
-            outputStreamWriter.write(">");
-            outputStreamWriter.flush();
-            byteArrayOutputStream.write(source);
-
-            outputStreamWriter.write("</dummy>");
-            outputStreamWriter.close();
+        } catch (IOException e) {
+            throw new XMLEncryptionException(e);
+        }
+        return deserialize(baos.toByteArray(), ctx);
+    }
 
-            return byteArrayOutputStream.toByteArray();
+    protected static byte[] createContext(byte[] source, Node ctx) throws XMLEncryptionException {
+        // Create the context to parse the document against
+        try {
+            byte[] prefix = createContextPrefix(ctx).getBytes("UTF-8");
+            byte[] suffix = CONTEXT_SUFFIX.getBytes("UTF-8");
+            byte[] context = new byte[prefix.length + source.length + suffix.length];
+            System.arraycopy(prefix, 0, context, 0, prefix.length);
+            System.arraycopy(source, 0, context, prefix.length, source.length);
+            System.arraycopy(suffix, 0, context, prefix.length + source.length, suffix.length);
+            return context;
         } catch (UnsupportedEncodingException e) {
             throw new XMLEncryptionException(e);
-        } catch (IOException e) {
+        }
+    }
+
+    /**
+     * Surrounds the source with the context to parse it against, without copying it.
+     *
+     * @param source the octets to parse
+     * @param ctx
+     * @return a stream of the source within the context
+     * @throws XMLEncryptionException
+     */
+    protected static InputStream createContext(InputStream source, Node ctx)
+        throws XMLEncryptionException {
+        try {
+            InputStream prefix =
+                new ByteArrayInputStream(createContextPrefix(ctx).getBytes("UTF-8"));
+            InputStream suffix = new ByteArrayInputStream(CONTEXT_SUFFIX.getBytes("UTF-8"));
+            return new SequenceInputStream(new SequenceInputStream(prefix, source), suffix);
+        } catch (UnsupportedEncodingException e) {
             throw new XMLEncryptionException(e);
         }
     }
     
     protected static String createContext(String source, Node ctx) {
         // Create the context to parse the document against
+        return createContextPrefix(ctx) + source + CONTEXT_SUFFIX;
+    }
+
+    private static String createContextPrefix(Node ctx) {
         StringBuilder sb = new StringBuilder();
         sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?><dummy");
 
@@ -248,8 +316,6 @@ public abstract class AbstractSerializer implements Serializer {
             wk = wk.getParentNode();
         }
         sb.append(">");
-        sb.append(source);
-        sb.append("</dummy>");
         return sb.toString();
     }
 
@@ -261,4 +327,22 @@ public abstract class AbstractSerializer implements Serializer {
         this.secureValidation = secureValidation;
     }
     
+    /**
+     * The Canonicalizer writes single characters and closes its writer after each subtree,
+     * so the writer buffers the octets and only flushes the OutputStream when it is closed.
+     */
+    private static OutputStream createWriter(OutputStream os) {
+        return new UnsyncBufferedOutputStream(new FilterOutputStream(os) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        });
+    }
+
 }
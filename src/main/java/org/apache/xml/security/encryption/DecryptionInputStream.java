@@ -0,0 +1,115 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.encryption;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+
+/**
+ * An InputStream which decrypts the octets of the underlying stream with an initialized
+ * Cipher. Unlike javax.crypto.CipherInputStream, which swallows the failures of
+ * Cipher.doFinal() on older JDKs, a bad padding or authentication tag is thrown as an
+ * IOException once the end of the underlying stream is reached, so a reader never sees
+ * the end of the plaintext of corrupted cipher text.
+ */
+class DecryptionInputStream extends InputStream {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final InputStream in;
+    private final Cipher cipher;
+
+    private final byte[] input = new byte[BUFFER_SIZE];
+    private byte[] output;
+    private int outputPos;
+    private int outputLength;
+    private boolean finished;
+
+    /**
+     * @param in the cipher text
+     * @param cipher a Cipher initialized for decryption
+     */
+    DecryptionInputStream(InputStream in, Cipher cipher) {
+        this.in = in;
+        this.cipher = cipher;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return output[outputPos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int n = Math.min(len, outputLength - outputPos);
+        System.arraycopy(output, outputPos, b, off, n);
+        outputPos += n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return outputLength - outputPos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Decrypts more of the underlying stream until there is plaintext to read.
+     *
+     * @return false if the end of the plaintext is reached
+     */
+    private boolean fill() throws IOException {
+        while (outputPos == outputLength) {
+            if (finished) {
+                return false;
+            }
+            int n = in.read(input);
+            if (n == -1) {
+                finished = true;
+                try {
+                    output = cipher.doFinal();
+                } catch (GeneralSecurityException e) {
+                    throw new IOException(e);
+                }
+            } else {
+                output = cipher.update(input, 0, n);
+            }
+            outputPos = 0;
+            outputLength = output == null ? 0 : output.length;
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,172 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.encryption;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.xml.security.utils.Constants;
+import org.w3c.dom.CharacterData;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Builds the content of the document element of a parsed document as a DocumentFragment
+ * of another Document, so that no intermediate Document has to be built and imported. The
+ * document element itself, which is the context the content was parsed in, is dropped.
+ * <p>
+ * The nodes are the ones a namespace aware, non-coalescing DocumentBuilder would create:
+ * entity references are expanded and CDATA sections and comments are kept.
+ */
+class DocumentFragmentBuilder extends DefaultHandler implements LexicalHandler {
+
+    private final Document document;
+
+    private final DocumentFragment fragment;
+
+    private Node current;
+
+    private int depth;
+
+    private boolean inCDATA;
+
+    private final List<String[]> namespaceDeclarations = new ArrayList<String[]>();
+
+    /**
+     * @param document the Document to create the nodes in
+     */
+    DocumentFragmentBuilder(Document document) {
+        this.document = document;
+        fragment = document.createDocumentFragment();
+        current = fragment;
+    }
+
+    /**
+     * @return the content of the document element
+     */
+    DocumentFragment getFragment() {
+        return fragment;
+    }
+
+    @Override
+    public void startPrefixMapping(String prefix, String uri) throws SAXException {
+        if (depth > 0) {
+            namespaceDeclarations.add(new String[] {prefix, uri});
+        }
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes)
+        throws SAXException {
+        if (depth++ == 0) {
+            // the context element
+            return;
+        }
+        Element element = document.createElementNS(uri.length() == 0 ? null : uri, qName);
+        for (String[] declaration : namespaceDeclarations) {
+            String name = declaration[0].length() == 0 ? "xmlns" : "xmlns:" + declaration[0];
+            element.setAttributeNS(Constants.NamespaceSpecNS, name, declaration[1]);
+        }
+        namespaceDeclarations.clear();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            String attributeURI = attributes.getURI(i);
+            element.setAttributeNS(
+                attributeURI.length() == 0 ? null : attributeURI,
+                attributes.getQName(i), attributes.getValue(i)
+            );
+        }
+        current.appendChild(element);
+        current = element;
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        if (--depth > 0) {
+            current = current.getParentNode();
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+        if (depth == 0) {
+            return;
+        }
+        Node last = current.getLastChild();
+        int type = inCDATA ? Node.CDATA_SECTION_NODE : Node.TEXT_NODE;
+        if (last != null && last.getNodeType() == type) {
+            // the parser may report the text of one node in several chunks
+            ((CharacterData)last).appendData(new String(ch, start, length));
+        } else if (inCDATA) {
+            current.appendChild(document.createCDATASection(new String(ch, start, length)));
+        } else {
+            current.appendChild(document.createTextNode(new String(ch, start, length)));
+        }
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+        characters(ch, start, length);
+    }
+
+    @Override
+    public void processingInstruction(String target, String data) throws SAXException {
+        if (depth > 0) {
+            current.appendChild(document.createProcessingInstruction(target, data));
+        }
+    }
+
+    public void comment(char[] ch, int start, int length) throws SAXException {
+        if (depth > 0) {
+            current.appendChild(document.createComment(new String(ch, start, length)));
+        }
+    }
+
+    public void startCDATA() throws SAXException {
+        inCDATA = true;
+        // a new CDATA section is not merged with a preceding one
+        current.appendChild(document.createCDATASection(""));
+    }
+
+    public void endCDATA() throws SAXException {
+        inCDATA = false;
+    }
+
+    public void startDTD(String name, String publicId, String systemId) throws SAXException {
+        // complete
+    }
+
+    public void endDTD() throws SAXException {
+        // complete
+    }
+
+    public void startEntity(String name) throws SAXException {
+        // entity references are expanded
+    }
+
+    public void endEntity(String name) throws SAXException {
+        // entity references are expanded
+    }
+
+}
@@ -20,10 +20,13 @@ package org.apache.xml.security.encryption;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringReader;
 
+import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
 
 import org.apache.xml.security.utils.XMLUtils;
 import org.w3c.dom.Document;
@@ -32,11 +35,15 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 
 /**
  * Converts <code>String</code>s into <code>Node</code>s and visa versa.
  */
 public class DocumentSerializer extends AbstractSerializer {
+
+    /** The configured factories, without and with doctype declarations disallowed */
+    private static final SAXParserFactory[] saxParserFactories = new SAXParserFactory[2];
     
     /**
      * @param source
@@ -60,6 +67,61 @@ public class DocumentSerializer extends AbstractSerializer {
         return deserialize(ctx, new InputSource(new StringReader(fragment)));
     }
     
+    /**
+     * Parses the source while it is read, and creates the nodes directly in the Document of
+     * the context, so neither the source nor the parsed nodes are copied.
+     *
+     * @param source the octets to parse, which are read up to their end
+     * @param ctx
+     * @return the Node resulting from the parse of the source
+     * @throws XMLEncryptionException
+     */
+    @Override
+    public Node deserialize(InputStream source, Node ctx) throws XMLEncryptionException {
+        Document contextDocument = null;
+        if (Node.DOCUMENT_NODE == ctx.getNodeType()) {
+            contextDocument = (Document)ctx;
+        } else {
+            contextDocument = ctx.getOwnerDocument();
+        }
+        DocumentFragmentBuilder builder = new DocumentFragmentBuilder(contextDocument);
+        try {
+            XMLReader reader = createXMLReader(secureValidation);
+            reader.setContentHandler(builder);
+            reader.setErrorHandler(builder);
+            reader.setProperty("http://xml.org/sax/properties/lexical-handler", builder);
+            reader.parse(new InputSource(createContext(source, ctx)));
+            return builder.getFragment();
+        } catch (SAXException se) {
+            throw new XMLEncryptionException(se);
+        } catch (ParserConfigurationException pce) {
+            throw new XMLEncryptionException(pce);
+        } catch (IOException ioe) {
+            throw new XMLEncryptionException(ioe);
+        }
+    }
+
+    private static XMLReader createXMLReader(boolean disAllowDocTypeDeclarations)
+        throws ParserConfigurationException, SAXException {
+        int idx = disAllowDocTypeDeclarations ? 1 : 0;
+        // a SAXParserFactory is not guaranteed to be thread safe
+        synchronized (saxParserFactories) {
+            SAXParserFactory factory = saxParserFactories[idx];
+            if (factory == null) {
+                factory = SAXParserFactory.newInstance();
+                factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, Boolean.TRUE);
+                if (disAllowDocTypeDeclarations) {
+                    factory.setFeature(
+                        "http://apache.org/xml/features/disallow-doctype-decl", true
+                    );
+                }
+                factory.setNamespaceAware(true);
+                saxParserFactories[idx] = factory;
+            }
+            return factory.newSAXParser().getXMLReader();
+        }
+    }
+
     /**
      * @param ctx
      * @param inputSource
@@ -18,8 +18,11 @@
  */
 package org.apache.xml.security.encryption;
 
-import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.CharArrayWriter;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -39,6 +42,7 @@ import java.util.Map;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
+import javax.crypto.CipherOutputStream;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.spec.OAEPParameterSpec;
@@ -59,6 +63,7 @@ import org.apache.xml.security.stax.ext.XMLSecurityConstants;
 import org.apache.xml.security.transforms.InvalidTransformException;
 import org.apache.xml.security.transforms.TransformationException;
 import org.apache.xml.security.utils.Base64;
+import org.apache.xml.security.utils.Base64EncodingOutputStream;
 import org.apache.xml.security.utils.Constants;
 import org.apache.xml.security.utils.ElementProxy;
 import org.apache.xml.security.utils.EncryptionConstants;
@@ -283,6 +288,8 @@ public class XMLCipher {
     
     private boolean secureValidation;
     
+    private boolean streamingDecryption;
+    
     private String digestAlg;
     
     /** List of internal KeyResolvers for DECRYPT and UNWRAP modes. */
@@ -671,6 +678,21 @@ public class XMLCipher {
         this.secureValidation = secureValidation;
     }
     
+    /**
+     * Set whether EncryptedData is decrypted by parsing the decrypted octets while they are
+     * decrypted, directly into the document of the EncryptedData, instead of decrypting all
+     * octets first and importing the nodes from a Document parsed from them. This requires
+     * an AbstractSerializer, and the DocumentSerializer to build the nodes directly. The
+     * default is false.
+     * <p>
+     * The decrypted octets are never held in memory at once, but the nodes parsed from them
+     * before a padding or authentication failure is detected have been created in the
+     * document, even though they are not added to it.
+     */
+    public void setStreamingDecryption(boolean streamingDecryption) {
+        this.streamingDecryption = streamingDecryption;
+    }
+    
     /**
      * This method is used to add a custom {@link KeyResolverSpi} to an XMLCipher.
      * These KeyResolvers are used in KeyInfo objects in DECRYPT and
@@ -1066,7 +1088,9 @@ public class XMLCipher {
      * you want to have full control over the serialization of the element
      * or element content.
      *
-     * This does not change the source document in any way.
+     * This does not change the source document in any way. The data is
+     * encrypted while it is read, but the Base64 encoded cipher text is held
+     * in memory as the value of the <code>CipherValue</code>.
      *
      * @param context the context <code>Document</code>.
      * @param type a URI identifying type information about the plaintext form
@@ -1099,7 +1123,11 @@ public class XMLCipher {
      * you want to have full control over the contents of the
      * <code>EncryptedData</code> structure.
      *
-     * This does not change the source document in any way.
+     * This does not change the source document in any way. The element is
+     * encrypted while it is serialized, but the Base64 encoded cipher text is
+     * held in memory as the value of the <code>CipherValue</code>. Use
+     * {@link #encryptData(Document, Element, boolean, String, OutputStream)}
+     * to write the cipher text elsewhere.
      *
      * @param context the context <code>Document</code>.
      * @param element the <code>Element</code> that will be encrypted.
@@ -1131,11 +1159,102 @@ public class XMLCipher {
         }
     }
 
+    /**
+     * Returns an <code>EncryptedData</code> interface with a
+     * <code>CipherReference</code> to the encrypted octets, which are written
+     * to the specified <code>OutputStream</code> while the element or element
+     * content is serialized and encrypted.
+     *
+     * This does not change the source document in any way. A new
+     * <code>EncryptedData</code> is returned, with the Id, MimeType, Encoding,
+     * KeyInfo and EncryptionProperties of the one being built, which is left
+     * unchanged.
+     *
+     * @param context the context <code>Document</code>.
+     * @param element the <code>Element</code> that will be encrypted.
+     * @param contentMode <code>true</code> to encrypt element's content only,
+     *    <code>false</code> otherwise
+     * @param cipherReferenceURI the URI the encrypted octets can be retrieved from
+     * @param encryptedOctets the <code>OutputStream</code> the IV and the cipher
+     *    text are written to, which is flushed but not closed
+     * @return the <code>EncryptedData</code>
+     * @throws Exception
+     */
+    public EncryptedData encryptData(
+        Document context, Element element, boolean contentMode,
+        String cipherReferenceURI, OutputStream encryptedOctets
+    ) throws /* XMLEncryption */ Exception {
+        if (log.isDebugEnabled()) {
+            log.debug("Encrypting element...");
+        }
+        if (null == context) {
+            throw new XMLEncryptionException("empty", "Context document unexpectedly null...");
+        }
+        if (null == element) {
+            throw new XMLEncryptionException("empty", "Element unexpectedly null...");
+        }
+        if (null == encryptedOctets) {
+            throw new XMLEncryptionException("empty", "OutputStream unexpectedly null...");
+        }
+        if (cipherMode != ENCRYPT_MODE) {
+            throw new XMLEncryptionException("empty", "XMLCipher unexpectedly not in ENCRYPT_MODE...");
+        }
+
+        String type =
+            contentMode ? EncryptionConstants.TYPE_CONTENT : EncryptionConstants.TYPE_ELEMENT;
+        contextDocument = context;
+        encryptData(element, type, null, encryptedOctets);
+
+        // ed keeps its CipherValue, so that this XMLCipher can still encrypt to one
+        EncryptedData referenceData =
+            createEncryptedData(CipherData.REFERENCE_TYPE, cipherReferenceURI);
+        referenceData.setId(ed.getId());
+        referenceData.setMimeType(ed.getMimeType());
+        referenceData.setEncoding(ed.getEncoding());
+        referenceData.setKeyInfo(ed.getKeyInfo());
+        referenceData.setEncryptionProperties(ed.getEncryptionProperties());
+        setEncryptedDataTypeAndMethod(referenceData, type);
+        return referenceData;
+    }
+
     private EncryptedData encryptData(
         Document context, Element element, String type, InputStream serializedData
     ) throws /* XMLEncryption */ Exception {
         contextDocument = context;
 
+        // The encrypted octets are Base64 encoded while they are produced, with the same
+        // line breaks as Base64.encode(byte[]). The CipherValue holds them as one String, so
+        // they are collected in memory; only the plain text is not.
+        CharArrayWriter cipherValue = new CharArrayWriter();
+        OutputStream base64EncoderStream =
+            new Base64EncodingOutputStream(
+                cipherValue, XMLUtils.ignoreLineBreaks() ? 0 : Base64.BASE64DEFAULTLENGTH
+            );
+        encryptData(element, type, serializedData, base64EncoderStream);
+        base64EncoderStream.close();
+        String base64EncodedEncryptedOctets = cipherValue.toString();
+
+        if (log.isDebugEnabled()) {
+            log.debug("Encrypted octets:\n" + base64EncodedEncryptedOctets);
+            log.debug("Encrypted octets length = " + base64EncodedEncryptedOctets.length());
+        }
+
+        CipherData cd = ed.getCipherData();
+        CipherValue cv = cd.getCipherValue();
+        cv.setValue(base64EncodedEncryptedOctets);
+
+        setEncryptedDataTypeAndMethod(ed, type);
+        return ed;
+    }
+
+    /**
+     * Writes the IV and the cipher text of the element, the element content or the
+     * serialized data to an OutputStream. The plain text is encrypted while it is
+     * serialized, so neither of them is held in memory at once.
+     */
+    private void encryptData(
+        Element element, String type, InputStream serializedData, OutputStream encryptedOctets
+    ) throws /* XMLEncryption */ Exception {
         if (algorithm == null) {
             throw new XMLEncryptionException("empty", "XMLCipher instance without transformation specified");
         }
@@ -1145,26 +1264,11 @@ public class XMLCipher {
         if (element != null && element.getParentNode() == null) {
             throw new XMLEncryptionException("empty", "The element can't be serialized as it has no parent");
         }
-
-        byte[] serializedOctets = null;
-        if (serializedData == null) {
-            if (type.equals(EncryptionConstants.TYPE_CONTENT)) {
-                NodeList children = element.getChildNodes();
-                if (null != children) {
-                    serializedOctets = serializer.serializeToByteArray(children);
-                } else {
-                    throw new XMLEncryptionException("empty", "Element has no content.");
-                }
-            } else {
-                serializedOctets = serializer.serializeToByteArray(element);
-            }
-            if (log.isDebugEnabled()) {
-                log.debug("Serialized octets:\n" + new String(serializedOctets, "UTF-8"));
-            }
+        if (serializedData == null && type.equals(EncryptionConstants.TYPE_CONTENT)
+            && element.getChildNodes() == null) {
+            throw new XMLEncryptionException("empty", "Element has no content.");
         }
 
-        byte[] encryptedBytes = null;
-
         // Now create the working cipher if none was created already
         Cipher c;
         if (contextCipher == null) {
@@ -1183,70 +1287,70 @@ public class XMLCipher {
             throw new XMLEncryptionException(ike);
         }
 
+        // Get IV from Cipher Object. If this is null (see BouncyCastle issue BJA-473) then use
+        // the original IV that was generated
+        if (c.getIV() != null) {
+            iv = c.getIV();
+        }
+
         try {
+            // A properly XML Encryption encoded octet stream starts with the IV
+            encryptedOctets.write(iv);
+            // The CipherOutputStream is only flushed, so that the final block is encrypted
+            // below, where a failure is reported, and the OutputStream is not closed
+            OutputStream cipherOutputStream = new CipherOutputStream(encryptedOctets, c);
             if (serializedData != null) {
                 int numBytes;
                 byte[] buf = new byte[8192];
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
                 while ((numBytes = serializedData.read(buf)) != -1) {
-                    byte[] data = c.update(buf, 0, numBytes);
-                    baos.write(data);
+                    cipherOutputStream.write(buf, 0, numBytes);
+                }
+            } else if (serializer instanceof AbstractSerializer) {
+                AbstractSerializer abstractSerializer = (AbstractSerializer)serializer;
+                if (type.equals(EncryptionConstants.TYPE_CONTENT)) {
+                    abstractSerializer.serialize(element.getChildNodes(), cipherOutputStream);
+                } else {
+                    abstractSerializer.serialize(element, cipherOutputStream);
                 }
-                baos.write(c.doFinal());
-                encryptedBytes = baos.toByteArray();
             } else {
-                encryptedBytes = c.doFinal(serializedOctets);
+                byte[] serializedOctets;
+                if (type.equals(EncryptionConstants.TYPE_CONTENT)) {
+                    serializedOctets = serializer.serializeToByteArray(element.getChildNodes());
+                } else {
+                    serializedOctets = serializer.serializeToByteArray(element);
+                }
                 if (log.isDebugEnabled()) {
-                    log.debug("Expected cipher.outputSize = " +
-                        Integer.toString(c.getOutputSize(serializedOctets.length)));
+                    log.debug("Serialized octets:\n" + new String(serializedOctets, "UTF-8"));
                 }
+                cipherOutputStream.write(serializedOctets);
             }
-            if (log.isDebugEnabled()) {
-                log.debug("Actual cipher.outputSize = " 
-                             + Integer.toString(encryptedBytes.length));
-            }
+            cipherOutputStream.flush();
+            encryptedOctets.write(c.doFinal());
+            encryptedOctets.flush();
         } catch (IllegalStateException ise) {
             throw new XMLEncryptionException(ise);
         } catch (IllegalBlockSizeException ibse) {
             throw new XMLEncryptionException(ibse);
         } catch (BadPaddingException bpe) {
             throw new XMLEncryptionException(bpe);
-        } catch (UnsupportedEncodingException uee) {
-            throw new XMLEncryptionException(uee);
-        }
-
-        // Get IV from Cipher Object. If this is null (see BouncyCastle issue BJA-473) then use
-        // the original IV that was generated
-        if (c.getIV() != null) {
-            iv = c.getIV();
-        }
-        // Now build up to a properly XML Encryption encoded octet stream
-        byte[] finalEncryptedBytes = new byte[iv.length + encryptedBytes.length];
-        System.arraycopy(iv, 0, finalEncryptedBytes, 0, iv.length);
-        System.arraycopy(encryptedBytes, 0, finalEncryptedBytes, iv.length, encryptedBytes.length);
-        String base64EncodedEncryptedOctets = Base64.encode(finalEncryptedBytes);
-
-        if (log.isDebugEnabled()) {
-            log.debug("Encrypted octets:\n" + base64EncodedEncryptedOctets);
-            log.debug("Encrypted octets length = " + base64EncodedEncryptedOctets.length());
+        } catch (IOException ioe) {
+            throw new XMLEncryptionException(ioe);
         }
+    }
 
+    private void setEncryptedDataTypeAndMethod(EncryptedData encryptedData, String type)
+        throws XMLEncryptionException {
         try {
-            CipherData cd = ed.getCipherData();
-            CipherValue cv = cd.getCipherValue();
-            cv.setValue(base64EncodedEncryptedOctets);
-
             if (type != null) {
-                ed.setType(new URI(type).toString());
+                encryptedData.setType(new URI(type).toString());
             }
             EncryptionMethod method =
                 factory.newEncryptionMethod(new URI(algorithm).toString());
             method.setDigestAlgorithm(digestAlg);
-            ed.setEncryptionMethod(method);
+            encryptedData.setEncryptionMethod(method);
         } catch (URISyntaxException ex) {
             throw new XMLEncryptionException(ex);
         }
-        return ed;
     }
 
     /**
@@ -1709,14 +1813,31 @@ public class XMLCipher {
             throw new XMLEncryptionException("empty", "XMLCipher unexpectedly not in DECRYPT_MODE...");
         }
 
-        byte[] octets = decryptToByteArray(element);
+        Node sourceParent = element.getParentNode();
+        Node decryptedNode;
+        if (streamingDecryption && serializer instanceof AbstractSerializer) {
+            InputStream decryptedStream = decryptToInputStream(element);
+            try {
+                decryptedNode =
+                    ((AbstractSerializer)serializer).deserialize(decryptedStream, sourceParent);
+            } finally {
+                try {
+                    decryptedStream.close();
+                } catch (IOException e) {
+                    if (log.isDebugEnabled()) {
+                        log.debug(e.getMessage(), e);
+                    }
+                }
+            }
+        } else {
+            byte[] octets = decryptToByteArray(element);
 
-        if (log.isDebugEnabled()) {
-            log.debug("Decrypted octets:\n" + new String(octets));
-        }
+            if (log.isDebugEnabled()) {
+                log.debug("Decrypted octets:\n" + new String(octets));
+            }
 
-        Node sourceParent = element.getParentNode();
-        Node decryptedNode = serializer.deserialize(octets, sourceParent);
+            decryptedNode = serializer.deserialize(octets, sourceParent);
+        }
 
         // The de-serialiser returns a node whose children we need to take on.
         if (sourceParent != null && Node.DOCUMENT_NODE == sourceParent.getNodeType()) {
@@ -1772,7 +1893,61 @@ public class XMLCipher {
 
         EncryptedData encryptedData = factory.newEncryptedData(element);
         String encMethodAlgorithm = encryptedData.getEncryptionMethod().getAlgorithm();
+        resolveDecryptionKey(encryptedData, encMethodAlgorithm);
+
+        // Obtain the encrypted octets 
+        XMLCipherInput cipherInput = new XMLCipherInput(encryptedData);
+        cipherInput.setSecureValidation(secureValidation);
+        byte[] encryptedBytes = cipherInput.getBytes();
+
+        int ivLen = JCEMapper.getIVLengthFromURI(encMethodAlgorithm) / 8;
+        Cipher c = createDecryptionCipher(encMethodAlgorithm, encryptedBytes, ivLen);
+
+        try {
+            return c.doFinal(encryptedBytes, ivLen, encryptedBytes.length - ivLen);
+        } catch (IllegalBlockSizeException ibse) {
+            throw new XMLEncryptionException(ibse);
+        } catch (BadPaddingException bpe) {
+            throw new XMLEncryptionException(bpe);
+        }
+    }
+
+    /**
+     * Decrypt an EncryptedData element to a stream, which decrypts the encrypted octets
+     * while it is read, so that the decrypted octets are never held in memory at once.
+     *
+     * Does not modify the source document.
+     * @param element
+     * @return the stream of the bytes resulting from the decryption. Reading it throws an
+     *    IOException if the encrypted octets cannot be decrypted.
+     * @throws XMLEncryptionException
+     */
+    private InputStream decryptToInputStream(Element element) throws XMLEncryptionException {
+        if (log.isDebugEnabled()) {
+            log.debug("Decrypting to InputStream...");
+        }
+
+        EncryptedData encryptedData = factory.newEncryptedData(element);
+        String encMethodAlgorithm = encryptedData.getEncryptionMethod().getAlgorithm();
+        resolveDecryptionKey(encryptedData, encMethodAlgorithm);
+
+        XMLCipherInput cipherInput = new XMLCipherInput(encryptedData);
+        cipherInput.setSecureValidation(secureValidation);
+        byte[] encryptedBytes = cipherInput.getBytes();
 
+        int ivLen = JCEMapper.getIVLengthFromURI(encMethodAlgorithm) / 8;
+        Cipher c = createDecryptionCipher(encMethodAlgorithm, encryptedBytes, ivLen);
+
+        return new DecryptionInputStream(
+            new ByteArrayInputStream(encryptedBytes, ivLen, encryptedBytes.length - ivLen), c
+        );
+    }
+
+    /**
+     * Resolves the key from the KeyInfo of the EncryptedData, if no key has been set.
+     */
+    private void resolveDecryptionKey(EncryptedData encryptedData, String encMethodAlgorithm)
+        throws XMLEncryptionException {
         if (key == null) {
             KeyInfo ki = encryptedData.getKeyInfo();
             if (ki != null) {
@@ -1802,12 +1977,14 @@ public class XMLCipher {
                 throw new XMLEncryptionException("empty", "encryption.nokey");
             }
         }
+    }
 
-        // Obtain the encrypted octets 
-        XMLCipherInput cipherInput = new XMLCipherInput(encryptedData);
-        cipherInput.setSecureValidation(secureValidation);
-        byte[] encryptedBytes = cipherInput.getBytes();
-
+    /**
+     * Creates the Cipher to decrypt the given encrypted octets with, which start with the IV.
+     */
+    private Cipher createDecryptionCipher(
+        String encMethodAlgorithm, byte[] encryptedBytes, int ivLen
+    ) throws XMLEncryptionException {
         // Now create the working cipher
         String jceAlgorithm = 
             JCEMapper.translateURItoJCEID(encMethodAlgorithm);
@@ -1830,7 +2007,6 @@ public class XMLCipher {
             throw new XMLEncryptionException(nspae);
         }
 
-        int ivLen = JCEMapper.getIVLengthFromURI(encMethodAlgorithm) / 8;
         byte[] ivBytes = new byte[ivLen];
 
         // You may be able to pass the entire piece in to IvParameterSpec
@@ -1854,13 +2030,7 @@ public class XMLCipher {
             throw new XMLEncryptionException(iape);
         }
 
-        try {
-            return c.doFinal(encryptedBytes, ivLen, encryptedBytes.length - ivLen);
-        } catch (IllegalBlockSizeException ibse) {
-            throw new XMLEncryptionException(ibse);
-        } catch (BadPaddingException bpe) {
-            throw new XMLEncryptionException(bpe);
-        }
+        return c;
     }
 
     /*
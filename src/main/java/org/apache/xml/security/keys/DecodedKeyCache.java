@@ -0,0 +1,226 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.keys;
+
+import java.io.UnsupportedEncodingException;
+import java.security.AccessController;
+import java.security.MessageDigest;
+import java.security.PrivilegedAction;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.xml.security.algorithms.JCEEngineCache;
+import org.apache.xml.security.signature.XMLSignatureException;
+import org.apache.xml.security.utils.Base64;
+
+/**
+ * A bounded cache of the PublicKeys and X509Certificates decoded from KeyInfo content, such
+ * as a KeyValue or a Base64 encoded X509Certificate, keyed by a SHA-256 digest of that
+ * content.
+ * <p>
+ * Decoding a certificate or building a public key from its XML representation is
+ * comparatively expensive, and the same few keys tend to be received over and over again.
+ * Only content which determines the decoded key on its own may be cached; keys which are
+ * looked up somewhere else, for instance by X509IssuerSerial in a StorageResolver, are
+ * resolved every time.
+ * <p>
+ * At most <code>org.apache.xml.security.decodedKeyCache.size</code> (default 256) entries
+ * are kept, and the least recently used one is evicted first. An entry expires
+ * <code>org.apache.xml.security.decodedKeyCache.timeToLive</code> milliseconds (default one
+ * hour) after it was added. Setting the size to 0 disables the cache.
+ */
+public final class DecodedKeyCache {
+
+    private static final int MAXIMUM_SIZE =
+        AccessController.doPrivileged(new PrivilegedAction<Integer>() {
+            public Integer run() {
+                return Integer.getInteger("org.apache.xml.security.decodedKeyCache.size", 256);
+            }
+        });
+
+    private static final long TIME_TO_LIVE =
+        AccessController.doPrivileged(new PrivilegedAction<Long>() {
+            public Long run() {
+                return Long.getLong(
+                    "org.apache.xml.security.decodedKeyCache.timeToLive", 60L * 60L * 1000L
+                );
+            }
+        });
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private static final Map<String, Entry> entries =
+        new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > MAXIMUM_SIZE;
+            }
+        };
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+
+    private DecodedKeyCache() {
+        // complete
+    }
+
+    /**
+     * Returns whether decoded keys are cached at all.
+     *
+     * @return false if the cache has been disabled by setting its size to 0
+     */
+    public static boolean isEnabled() {
+        return MAXIMUM_SIZE > 0;
+    }
+
+    /**
+     * Returns the number of lookups that were served with a cached key.
+     *
+     * @return the number of cache hits since the class was loaded
+     */
+    public static long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of lookups that did not find a cached key.
+     *
+     * @return the number of cache misses since the class was loaded
+     */
+    public static long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the ratio of cache hits to all lookups.
+     *
+     * @return the hit rate between 0 and 1, or 0 if nothing has been looked up yet
+     */
+    public static double getHitRate() {
+        long hitCount = hits.get();
+        long lookups = hitCount + misses.get();
+        return lookups == 0 ? 0 : (double)hitCount / lookups;
+    }
+
+    /**
+     * Removes all entries. This is done whenever the library wide KeyResolvers change, since
+     * they may decode the same content differently.
+     */
+    public static void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Computes the cache key of some content.
+     *
+     * @param type the kind of content, such as the local name of the element it was read from
+     * @param parts the content, which must determine the decoded key on its own
+     * @return the cache key, or null if the cache is disabled or no digest is available
+     */
+    public static String getKey(String type, byte[]... parts) {
+        if (!isEnabled()) {
+            return null;
+        }
+        MessageDigest md;
+        try {
+            md = JCEEngineCache.getMessageDigest(DIGEST_ALGORITHM, null);
+        } catch (XMLSignatureException ex) {
+            return null;
+        }
+        try {
+            md.update(type.getBytes("UTF-8"));
+            for (byte[] part : parts) {
+                // the length keeps the parts apart
+                int length = part == null ? -1 : part.length;
+                md.update(new byte[] {
+                    (byte)(length >>> 24), (byte)(length >>> 16), (byte)(length >>> 8), (byte)length
+                });
+                if (part != null) {
+                    md.update(part);
+                }
+            }
+            return type + ':' + Base64.encode(md.digest());
+        } catch (UnsupportedEncodingException ex) {
+            return null;
+        } finally {
+            JCEEngineCache.repoolMessageDigest(DIGEST_ALGORITHM, null, md);
+        }
+    }
+
+    /**
+     * Looks up a decoded key.
+     *
+     * @param key the cache key from {@link #getKey}, or null
+     * @param type the expected type of the decoded key
+     * @return the decoded key, or null if it is not cached
+     */
+    public static <T> T get(String key, Class<T> type) {
+        if (key == null) {
+            return null;
+        }
+        Object value = null;
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (entry.expires > System.currentTimeMillis()) {
+                    value = entry.value;
+                } else {
+                    entries.remove(key);
+                }
+            }
+        }
+        if (type.isInstance(value)) {
+            hits.incrementAndGet();
+            return type.cast(value);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Adds a decoded key.
+     *
+     * @param key the cache key from {@link #getKey}, or null
+     * @param value the decoded key, or null
+     */
+    public static void put(String key, Object value) {
+        if (key == null || value == null) {
+            return;
+        }
+        Entry entry = new Entry(value, System.currentTimeMillis() + TIME_TO_LIVE);
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    private static class Entry {
+        private final Object value;
+        private final long expires;
+
+        Entry(Object value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+}
@@ -18,10 +18,12 @@
  */
 package org.apache.xml.security.keys;
 
+import java.io.UnsupportedEncodingException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
@@ -55,6 +57,7 @@ import org.apache.xml.security.utils.XMLUtils;
 import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 
 /**
@@ -855,6 +858,16 @@ public class KeyInfo extends SignatureElementProxy {
      * @throws KeyResolverException
      */
     PublicKey getPublicKeyFromStaticResolvers() throws KeyResolverException {
+        String cacheKey = getDecodedKeyCacheKey("PublicKey");
+        PublicKey pk = DecodedKeyCache.get(cacheKey, PublicKey.class);
+        if (pk == null) {
+            pk = resolvePublicKeyFromStaticResolvers();
+            DecodedKeyCache.put(cacheKey, pk);
+        }
+        return pk;
+    }
+
+    private PublicKey resolvePublicKeyFromStaticResolvers() throws KeyResolverException {
         Iterator<KeyResolverSpi> it = KeyResolver.iterator();
         while (it.hasNext()) {
             KeyResolverSpi keyResolver = it.next();
@@ -968,6 +981,17 @@ public class KeyInfo extends SignatureElementProxy {
                 + " resolvers"
             );
         }
+        String cacheKey = getDecodedKeyCacheKey("X509Certificate");
+        X509Certificate cert = DecodedKeyCache.get(cacheKey, X509Certificate.class);
+        if (cert == null) {
+            cert = resolveX509CertificateFromStaticResolvers();
+            DecodedKeyCache.put(cacheKey, cert);
+        }
+        return cert;
+    }
+
+    private X509Certificate resolveX509CertificateFromStaticResolvers()
+        throws KeyResolverException {
         String uri = this.getBaseURI();
         Iterator<KeyResolverSpi> it = KeyResolver.iterator();
         while (it.hasNext()) {
@@ -981,6 +1005,99 @@ public class KeyInfo extends SignatureElementProxy {
         return null;
     }
 
+    /**
+     * Returns the {@link DecodedKeyCache} key of this KeyInfo, if the key the library wide
+     * KeyResolvers find in it only depends on its content, i.e. if it only holds KeyValues,
+     * DEREncodedKeyValues and X509Data with nothing but X509Certificates.
+     *
+     * @param type what is resolved
+     * @return the cache key, or null if the result must not be cached
+     */
+    private String getDecodedKeyCacheKey(String type) {
+        if (!DecodedKeyCache.isEnabled()) {
+            return null;
+        }
+        StringBuilder content = new StringBuilder();
+        for (Node child = getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() != Node.ELEMENT_NODE) {
+                continue;
+            }
+            String namespace = child.getNamespaceURI();
+            String localName = child.getLocalName();
+            if (Constants.SignatureSpecNS.equals(namespace)
+                && Constants._TAG_X509DATA.equals(localName)) {
+                for (Node data = child.getFirstChild(); data != null; data = data.getNextSibling()) {
+                    if (data.getNodeType() == Node.ELEMENT_NODE
+                        && !(Constants.SignatureSpecNS.equals(data.getNamespaceURI())
+                            && Constants._TAG_X509CERTIFICATE.equals(data.getLocalName()))) {
+                        return null;
+                    }
+                }
+            } else if (!(Constants.SignatureSpecNS.equals(namespace)
+                    && Constants._TAG_KEYVALUE.equals(localName)
+                || Constants.SignatureSpec11NS.equals(namespace)
+                    && Constants._TAG_DERENCODEDKEYVALUE.equals(localName))) {
+                return null;
+            }
+            appendContent(child, content);
+        }
+        if (content.length() == 0) {
+            return null;
+        }
+        try {
+            return DecodedKeyCache.getKey(
+                type + (secureValidation ? ":secure" : ""), content.toString().getBytes("UTF-8")
+            );
+        } catch (UnsupportedEncodingException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Appends the elements, attributes and text of a subtree, without the whitespace in
+     * the text, which is not significant in Base64 and CryptoBinary values.
+     */
+    private static void appendContent(Node node, StringBuilder content) {
+        switch (node.getNodeType()) {
+        case Node.ELEMENT_NODE:
+            content.append('{').append(node.getNamespaceURI()).append('}');
+            content.append(node.getLocalName()).append('(');
+            NamedNodeMap attributes = node.getAttributes();
+            List<String> attrs = new ArrayList<String>(attributes.getLength());
+            for (int i = 0; i < attributes.getLength(); i++) {
+                Node attr = attributes.item(i);
+                if (!Constants.NamespaceSpecNS.equals(attr.getNamespaceURI())) {
+                    attrs.add(
+                        "{" + attr.getNamespaceURI() + "}" + attr.getLocalName()
+                        + "=" + attr.getNodeValue()
+                    );
+                }
+            }
+            Collections.sort(attrs);
+            for (String attr : attrs) {
+                content.append(attr).append(' ');
+            }
+            content.append(')');
+            for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                appendContent(child, content);
+            }
+            content.append(';');
+            break;
+        case Node.TEXT_NODE:
+        case Node.CDATA_SECTION_NODE:
+            String text = node.getNodeValue();
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c != ' ' && c != '\t' && c != '\r' && c != '\n') {
+                    content.append(c);
+                }
+            }
+            break;
+        default:
+            break;
+        }
+    }
+
     private X509Certificate applyCurrentResolver(
         String uri, KeyResolverSpi keyResolver
     ) throws KeyResolverException {
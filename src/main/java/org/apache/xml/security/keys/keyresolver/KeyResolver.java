@@ -27,6 +27,7 @@ import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.crypto.SecretKey;
 
+import org.apache.xml.security.keys.DecodedKeyCache;
 import org.apache.xml.security.keys.keyresolver.implementations.DEREncodedKeyValueResolver;
 import org.apache.xml.security.keys.keyresolver.implementations.DSAKeyValueResolver;
 import org.apache.xml.security.keys.keyresolver.implementations.KeyInfoReferenceResolver;
@@ -245,6 +246,7 @@ public class KeyResolver {
         } else {
             resolverVector.add(resolver);
         }
+        DecodedKeyCache.clear();
     }
     
     /**
@@ -274,6 +276,7 @@ public class KeyResolver {
             keyResolverList.add(new KeyResolver(keyResolverSpi));
         }
         resolverVector.addAll(keyResolverList);
+        DecodedKeyCache.clear();
     }
     
     /**
@@ -294,6 +297,7 @@ public class KeyResolver {
         keyResolverList.add(new KeyResolver(new X509DigestResolver()));
         
         resolverVector.addAll(keyResolverList);
+        DecodedKeyCache.clear();
     }
 
     /**
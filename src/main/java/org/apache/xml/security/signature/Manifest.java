@@ -25,14 +25,21 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 import javax.xml.parsers.ParserConfigurationException;
 
 import org.apache.xml.security.c14n.CanonicalizationException;
 import org.apache.xml.security.c14n.InvalidCanonicalizerException;
 import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.transforms.Transform;
 import org.apache.xml.security.transforms.Transforms;
+import org.apache.xml.security.utils.ConcurrentTasks;
 import org.apache.xml.security.utils.Constants;
+import org.apache.xml.security.utils.DocumentIdIndex;
 import org.apache.xml.security.utils.I18n;
 import org.apache.xml.security.utils.SignatureElementProxy;
 import org.apache.xml.security.utils.XMLUtils;
@@ -74,6 +81,12 @@ public class Manifest extends SignatureElementProxy {
     
     private boolean secureValidation;
 
+    /** Field referenceVerificationExecutor */
+    private Executor referenceVerificationExecutor = null;
+
+    /** Field digestGenerationExecutor */
+    private Executor digestGenerationExecutor = null;
+
     /**
      * Constructs {@link Manifest}
      *
@@ -199,6 +212,10 @@ public class Manifest extends SignatureElementProxy {
      */
     public void generateDigestValues()
         throws XMLSignatureException, ReferenceNotInitializedException {
+        if (digestGenerationExecutor != null && this.getLength() > 1 && !Reference.isUseC14N11()) {
+            generateDigestValuesConcurrently();
+            return;
+        }
         for (int i = 0; i < this.getLength(); i++) {
             // update the cached Reference object, the Element content is automatically updated
             Reference currentRef = this.references.get(i);
@@ -206,6 +223,83 @@ public class Manifest extends SignatureElementProxy {
         }
     }
 
+    /**
+     * Calculates the DigestValues on the digestGenerationExecutor, and writes them to the
+     * References in document order in the calling thread. A Reference whose data may contain
+     * this element, and with it the DigestValues of the others, is digested afterwards, in the
+     * calling thread.
+     *
+     * @throws ReferenceNotInitializedException
+     * @throws XMLSignatureException
+     */
+    private void generateDigestValuesConcurrently()
+        throws XMLSignatureException, ReferenceNotInitializedException {
+        List<Reference> independentRefs = new ArrayList<Reference>(this.getLength());
+        List<Reference> dependentRefs = new ArrayList<Reference>();
+        List<Callable<byte[]>> calculations = new ArrayList<Callable<byte[]>>(this.getLength());
+        try {
+            boolean circumvent = false;
+            for (int i = 0; i < this.getLength(); i++) {
+                final Reference currentRef = this.references.get(i);
+                if (mayContainThis(currentRef)) {
+                    dependentRefs.add(currentRef);
+                    continue;
+                }
+                independentRefs.add(currentRef);
+                circumvent |= hasXPathTransform(currentRef);
+
+                calculations.add(new Callable<byte[]>() {
+                    public byte[] call() throws XMLSignatureException {
+                        return currentRef.calculateDigest(false);
+                    }
+                });
+            }
+
+            List<FutureTask<byte[]>> digests = ConcurrentTasks.newTasks(calculations, null);
+            runConcurrently(digests, digestGenerationExecutor, circumvent);
+            for (int i = 0; i < independentRefs.size(); i++) {
+                independentRefs.get(i).setDigestValueElement(getResult(digests.get(i)));
+            }
+        } catch (XMLSignatureException ex) {
+            throw ex;
+        } catch (XMLSecurityException ex) {
+            throw new XMLSignatureException(ex);
+        }
+
+        for (Reference currentRef : dependentRefs) {
+            currentRef.generateDigestValue();
+        }
+    }
+
+    /**
+     * @return true if the data of the given Reference may contain the element of this
+     * Manifest, or one of its References
+     */
+    private boolean mayContainThis(Reference reference) {
+        String uri = reference.getURI();
+        if (uri == null || uri.length() == 0) {
+            return true;
+        }
+        if (uri.charAt(0) != '#') {
+            return false;
+        }
+
+        String id = uri.substring(1);
+        if (id.startsWith("xpointer(id(")) {
+            int i1 = id.indexOf('\'');
+            int i2 = id.indexOf('\'', i1 + 1);
+            if (i1 < 0 || i2 < 0) {
+                return true;
+            }
+            id = id.substring(i1 + 1, i2);
+        } else if (id.startsWith("xpointer(")) {
+            return true;
+        }
+        Element target = getDocument().getElementById(id);
+        return target == null || XMLUtils.isDescendantOrSelf(target, getElement())
+            || XMLUtils.isDescendantOrSelf(getElement(), target);
+    }
+
     /**
      * Return the nonnegative number of added references.
      *
@@ -321,102 +415,232 @@ public class Manifest extends SignatureElementProxy {
             throw new XMLSecurityException("signature.tooManyReferences", exArgs);
         }
 
-        this.verificationResults = new boolean[referencesEl.length];
-        boolean verify = true;
-        for (int i = 0; i < this.referencesEl.length; i++) {
-            Reference currentRef =
-                new Reference(referencesEl[i], this.baseURI, this, secureValidation);
-
-            this.references.set(i, currentRef);
-
-            // if only one item does not verify, the whole verification fails
-            try {
-                boolean currentRefVerified = currentRef.verify();
+        // the ID attributes of this document are marked by now, so index them once for
+        // all References instead of walking the tree for every one of them
+        Document doc = getElement().getOwnerDocument();
+        DocumentIdIndex.pin(doc);
+        try {
+            this.verificationResults = new boolean[referencesEl.length];
+            List<FutureTask<Boolean>> verifications = null;
+            if (referenceVerificationExecutor != null && referencesEl.length > 1) {
+                verifications = verifyConcurrently();
+            }
+            boolean verify = true;
+            for (int i = 0; i < this.referencesEl.length; i++) {
+                Reference currentRef = null;
+                if (verifications == null) {
+                    currentRef = new Reference(referencesEl[i], this.baseURI, this, secureValidation);
+                    this.references.set(i, currentRef);
+                } else {
+                    currentRef = this.references.get(i);
+                }
 
-                this.setVerificationResult(i, currentRefVerified);
+                // if only one item does not verify, the whole verification fails
+                try {
+                    boolean currentRefVerified = 
+                        verifications == null ? currentRef.verify() : getResult(verifications.get(i));
 
-                if (!currentRefVerified) {
-                    verify = false;
-                }
-                if (log.isDebugEnabled()) {
-                    log.debug("The Reference has Type " + currentRef.getType());
-                }
+                    this.setVerificationResult(i, currentRefVerified);
 
-                // was verification successful till now and do we want to verify the Manifest?
-                if (verify && followManifests && currentRef.typeIsReferenceToManifest()) {
+                    if (!currentRefVerified) {
+                        verify = false;
+                    }
                     if (log.isDebugEnabled()) {
-                        log.debug("We have to follow a nested Manifest");
+                        log.debug("The Reference has Type " + currentRef.getType());
                     }
 
-                    try {
-                        XMLSignatureInput signedManifestNodes =
-                            currentRef.dereferenceURIandPerformTransforms(null);
-                        Set<Node> nl = signedManifestNodes.getNodeSet();
-                        Manifest referencedManifest = null;
-                        Iterator<Node> nlIterator = nl.iterator();
-
-                        while (nlIterator.hasNext()) {
-                            Node n = nlIterator.next();
-
-                            if (n.getNodeType() == Node.ELEMENT_NODE
-                                && ((Element) n).getNamespaceURI().equals(Constants.SignatureSpecNS) 
-                                && ((Element) n).getLocalName().equals(Constants._TAG_MANIFEST)
-                            ) {
-                                try {
-                                    referencedManifest =
-                                        new Manifest(
-                                             (Element)n, signedManifestNodes.getSourceURI(), secureValidation
-                                        );
-                                    break;
-                                } catch (XMLSecurityException ex) {
-                                    if (log.isDebugEnabled()) {
-                                        log.debug(ex.getMessage(), ex);
+                    // was verification successful till now and do we want to verify the Manifest?
+                    if (verify && followManifests && currentRef.typeIsReferenceToManifest()) {
+                        if (log.isDebugEnabled()) {
+                            log.debug("We have to follow a nested Manifest");
+                        }
+
+                        try {
+                            XMLSignatureInput signedManifestNodes =
+                                currentRef.dereferenceURIandPerformTransforms(null);
+                            Set<Node> nl = signedManifestNodes.getNodeSet();
+                            Manifest referencedManifest = null;
+                            Iterator<Node> nlIterator = nl.iterator();
+
+                            while (nlIterator.hasNext()) {
+                                Node n = nlIterator.next();
+
+                                if (n.getNodeType() == Node.ELEMENT_NODE
+                                    && ((Element) n).getNamespaceURI().equals(Constants.SignatureSpecNS) 
+                                    && ((Element) n).getLocalName().equals(Constants._TAG_MANIFEST)
+                                ) {
+                                    try {
+                                        referencedManifest =
+                                            new Manifest(
+                                                 (Element)n, signedManifestNodes.getSourceURI(), secureValidation
+                                            );
+                                        break;
+                                    } catch (XMLSecurityException ex) {
+                                        if (log.isDebugEnabled()) {
+                                            log.debug(ex.getMessage(), ex);
+                                        }
+                                        // Hm, seems not to be a ds:Manifest
                                     }
-                                    // Hm, seems not to be a ds:Manifest
                                 }
                             }
-                        }
 
-                        if (referencedManifest == null) {
-                            // The Reference stated that it points to a ds:Manifest
-                            // but we did not find a ds:Manifest in the signed area
-                            throw new MissingResourceFailureException(currentRef, "empty",
-                                                                      new Object[]{"No Manifest found"});
-                        }
+                            if (referencedManifest == null) {
+                                // The Reference stated that it points to a ds:Manifest
+                                // but we did not find a ds:Manifest in the signed area
+                                throw new MissingResourceFailureException(currentRef, "empty",
+                                                                          new Object[]{"No Manifest found"});
+                            }
 
-                        referencedManifest.perManifestResolvers = this.perManifestResolvers;
-                        referencedManifest.resolverProperties = this.resolverProperties;
+                            referencedManifest.perManifestResolvers = this.perManifestResolvers;
+                            referencedManifest.resolverProperties = this.resolverProperties;
+                            referencedManifest.referenceVerificationExecutor =
+                                this.referenceVerificationExecutor;
 
-                        boolean referencedManifestValid =
-                            referencedManifest.verifyReferences(followManifests);
+                            boolean referencedManifestValid =
+                                referencedManifest.verifyReferences(followManifests);
 
-                        if (!referencedManifestValid) {
-                            verify = false;
+                            if (!referencedManifestValid) {
+                                verify = false;
 
-                            log.warn("The nested Manifest was invalid (bad)");
-                        } else {
-                            if (log.isDebugEnabled()) {
-                                log.debug("The nested Manifest was valid (good)");
+                                log.warn("The nested Manifest was invalid (bad)");
+                            } else {
+                                if (log.isDebugEnabled()) {
+                                    log.debug("The nested Manifest was valid (good)");
+                                }
                             }
+                        } catch (IOException ex) {
+                            throw new ReferenceNotInitializedException(ex);
+                        } catch (ParserConfigurationException ex) {
+                            throw new ReferenceNotInitializedException(ex);
+                        } catch (SAXException ex) {
+                            throw new ReferenceNotInitializedException(ex);
                         }
-                    } catch (IOException ex) {
-                        throw new ReferenceNotInitializedException(ex);
-                    } catch (ParserConfigurationException ex) {
-                        throw new ReferenceNotInitializedException(ex);
-                    } catch (SAXException ex) {
-                        throw new ReferenceNotInitializedException(ex);
                     }
+                } catch (ReferenceNotInitializedException ex) {
+                    Object exArgs[] = { currentRef.getURI() };
+
+                    throw new MissingResourceFailureException(
+                        ex, currentRef, "signature.Verification.Reference.NoInput", exArgs
+                    );
                 }
-            } catch (ReferenceNotInitializedException ex) {
-                Object exArgs[] = { currentRef.getURI() };
+            }
 
-                throw new MissingResourceFailureException(
-                    ex, currentRef, "signature.Verification.Reference.NoInput", exArgs
-                );
+            return verify;
+        } finally {
+            DocumentIdIndex.unpin(doc);
+        }
+    }
+
+    /**
+     * Verifies all References on the referenceVerificationExecutor, and waits until all of
+     * them are done. The References are created here, in the calling thread, as is
+     * everything that is done with their results.
+     *
+     * @return the verification of every Reference, in document order
+     * @throws XMLSecurityException
+     */
+    private List<FutureTask<Boolean>> verifyConcurrently() throws XMLSecurityException {
+        List<Callable<Boolean>> callables = new ArrayList<Callable<Boolean>>(referencesEl.length);
+        boolean circumvent = false;
+        for (int i = 0; i < referencesEl.length; i++) {
+            final Reference currentRef =
+                new Reference(referencesEl[i], this.baseURI, this, secureValidation);
+            this.references.set(i, currentRef);
+            circumvent |= hasXPathTransform(currentRef);
+
+            callables.add(new Callable<Boolean>() {
+                public Boolean call() throws XMLSecurityException {
+                    return currentRef.verify();
+                }
+            });
+        }
+
+        // an invalid Reference does not stop the verification of the others, an exception does
+        List<FutureTask<Boolean>> verifications = ConcurrentTasks.newTasks(callables, null);
+        runConcurrently(verifications, referenceVerificationExecutor, circumvent);
+        return verifications;
+    }
+
+    /**
+     * Runs the given tasks on the given Executor, and waits until all of them are done. The
+     * tasks only read the document, which is prepared for this first. If a per-Manifest
+     * ResourceResolver is not thread safe, or if the calling thread is itself running a task,
+     * the tasks are run one after the other in the calling thread instead.
+     *
+     * @param tasks the tasks
+     * @param executor the Executor
+     * @param circumvent whether a task has an XPath transform
+     * @throws XMLSecurityException if the calling thread is interrupted
+     */
+    private <T> void runConcurrently(
+        List<FutureTask<T>> tasks, Executor executor, boolean circumvent
+    ) throws XMLSecurityException {
+        if (perManifestResolvers != null) {
+            for (ResourceResolver resolver : perManifestResolvers) {
+                if (resolver != null && !resolver.isThreadSafe()) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Processing the References one after the other, as a "
+                            + "per-Manifest ResourceResolver is not thread safe");
+                    }
+                    executor = null;
+                    break;
+                }
             }
         }
 
-        return verify;
+        try {
+            if (executor == null || ConcurrentTasks.isRunningTask()) {
+                ConcurrentTasks.runAll(tasks, null);
+                return;
+            }
+
+            Document doc = getDocument();
+            if (circumvent) {
+                // otherwise done by the XPath transforms while the others read the document
+                XMLUtils.circumventBug2650(doc);
+            }
+            XMLUtils.prepareForConcurrentReading(doc);
+            ConcurrentTasks.runAll(tasks, executor);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new XMLSecurityException(ex);
+        }
+    }
+
+    private static boolean hasXPathTransform(Reference reference) throws XMLSecurityException {
+        Transforms transforms = reference.getTransforms();
+        if (transforms != null) {
+            for (int i = 0; i < transforms.getLength(); i++) {
+                Transform transform = transforms.item(i);
+                if (Transforms.TRANSFORM_XPATH.equals(transform.getURI())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the result of a task which is done
+     * @throws XMLSecurityException the exception thrown by the task
+     */
+    private static <T> T getResult(FutureTask<T> task) throws XMLSecurityException {
+        try {
+            return task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new XMLSecurityException(ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof XMLSecurityException) {
+                throw (XMLSecurityException)cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new XMLSecurityException(ex);
+        }
     }
 
     /**
@@ -498,6 +722,69 @@ public class Manifest extends SignatureElementProxy {
         perManifestResolvers.add(new ResourceResolver(resolverSpi));
     }
 
+    /**
+     * Sets the Executor on which {@link #verifyReferences(boolean)} verifies the References
+     * concurrently, instead of one after the other in the calling thread. Nested Manifests
+     * which are followed use the same Executor. The results, and the exceptions thrown, are
+     * the same as when the References are verified one after the other.
+     * <p>
+     * The document must not be modified by any thread while the References are verified.
+     * Before the verification, the document is prepared with
+     * {@link XMLUtils#prepareForConcurrentReading(Document)}, and a per-Manifest
+     * ResourceResolver which is not thread safe makes the References be verified one after
+     * the other. The DOM API does not promise that a document can be read by several threads
+     * at once, though, and Xerces, which the JDK uses, does not either: its NodeLists, such as
+     * those of getChildNodes and getElementsByTagName, cache the last position read, and
+     * Document.getElementById is only safe while the IDs are indexed by this library during
+     * the verification. An Executor must therefore only be set where the DOM implementation,
+     * the transforms and the ResourceResolvers in use are known to read the document safely.
+     * <p>
+     * Once a Reference throws an exception, the References after it are no longer verified.
+     * If the calling thread is itself running a task of this library, such as the
+     * verification of a signature in an {@link XMLSignatureBatchVerifier}, the References
+     * are verified one after the other in that thread, so that the tasks of both levels
+     * cannot wait for each other on a bounded Executor.
+     *
+     * @param executor the Executor, or null to verify the References in the calling thread
+     */
+    public void setReferenceVerificationExecutor(Executor executor) {
+        this.referenceVerificationExecutor = executor;
+    }
+
+    /**
+     * Sets the Executor on which {@link #generateDigestValues()} calculates the DigestValues
+     * concurrently, instead of one after the other in the calling thread. The DigestValues are
+     * written to the References in the calling thread, in document order, after all of them
+     * are calculated. A Reference whose data may contain this Manifest, such as a Reference to
+     * the whole document, is digested after that, in the calling thread.
+     * <p>
+     * As with {@link #setReferenceVerificationExecutor(Executor)}, the document must not be
+     * modified by any thread until the DigestValues are generated. If an explicit C14N11
+     * transform may be added to the References while digesting them, they are digested one
+     * after the other.
+     *
+     * @param executor the Executor, or null to digest the References in the calling thread
+     */
+    public void setDigestGenerationExecutor(Executor executor) {
+        this.digestGenerationExecutor = executor;
+    }
+
+    /**
+     * Get the Executor on which the DigestValues are calculated concurrently
+     * @return the Executor, or null if the References are digested in the calling thread
+     */
+    public Executor getDigestGenerationExecutor() {
+        return digestGenerationExecutor;
+    }
+
+    /**
+     * Get the Executor on which the References are verified concurrently
+     * @return the Executor, or null if the References are verified in the calling thread
+     */
+    public Executor getReferenceVerificationExecutor() {
+        return referenceVerificationExecutor;
+    }
+
     /**
      * Get the Per-Manifest Resolver List
      * @return the per-manifest Resolver List
@@ -19,6 +19,7 @@
 package org.apache.xml.security.signature;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
@@ -131,6 +132,13 @@ public class Reference extends SignatureElementProxy {
     private static final org.slf4j.Logger log =
         org.slf4j.LoggerFactory.getLogger(Reference.class);
 
+    /**
+     * @return true if calculating the digest when signing may add a C14N11 transform
+     */
+    static boolean isUseC14N11() {
+        return useC14N11;
+    }
+
     private Manifest manifest;
     private XMLSignatureInput transformsOutput;
 
@@ -142,6 +150,8 @@ public class Reference extends SignatureElementProxy {
     
     private ReferenceData referenceData;
 
+    private boolean digestInputBuffered;
+
     /**
      * Constructor Reference
      *
@@ -381,7 +391,7 @@ public class Reference extends SignatureElementProxy {
      *
      * @param digestValue
      */
-    private void setDigestValueElement(byte[] digestValue) {
+    void setDigestValueElement(byte[] digestValue) {
         Node n = digestValueElement.getFirstChild();
         while (n != null) {
             digestValueElement.removeChild(n);
@@ -583,6 +593,15 @@ public class Reference extends SignatureElementProxy {
         return this.transformsOutput;
     }
     
+    /**
+     * This method only works after a call to verify or to generate the digest value.
+     * @return true if the octets that were digested were first held in memory as a whole,
+     * instead of being written to the digest as the transforms produced them.
+     */
+    public boolean isDigestInputBuffered() {
+        return digestInputBuffered;
+    }
+
     /**
      * Get the ReferenceData that corresponds to the cached representation of the dereferenced
      * object before transformation.
@@ -602,14 +621,18 @@ public class Reference extends SignatureElementProxy {
      */
     protected XMLSignatureInput dereferenceURIandPerformTransforms(OutputStream os)
         throws XMLSignatureException {
+        XMLSignatureInput input = null;
         try {
-            XMLSignatureInput input = this.getContentsBeforeTransformation();
+            input = this.getContentsBeforeTransformation();
             cacheDereferencedElement(input);
             
             XMLSignatureInput output = this.getContentsAfterTransformation(input, os);
             this.transformsOutput = output;
             return output;
         } catch (XMLSecurityException ex) {
+            if (input != null) {
+                closeOctetStream(input);
+            }
             throw new ReferenceNotInitializedException(ex);
         }
     }
@@ -706,16 +729,22 @@ public class Reference extends SignatureElementProxy {
      * @throws ReferenceNotInitializedException
      * @throws XMLSignatureException
      */
-    private byte[] calculateDigest(boolean validating)
+    byte[] calculateDigest(boolean validating)
         throws ReferenceNotInitializedException, XMLSignatureException {
         OutputStream os = null;
+        MessageDigestAlgorithm mda = null;
+        XMLSignatureInput output = null;
         try {
-            MessageDigestAlgorithm mda = this.getMessageDigestAlgorithm();
+            mda = this.getMessageDigestAlgorithm();
 
             mda.reset();
             DigesterOutputStream diOs = new DigesterOutputStream(mda);
             os = new UnsyncBufferedOutputStream(diOs);
-            XMLSignatureInput output = this.dereferenceURIandPerformTransforms(os);         
+            output = this.dereferenceURIandPerformTransforms(os);         
+            digestInputBuffered = output.isByteArray() && !output.isOutputStreamSet();
+            if (digestInputBuffered && log.isDebugEnabled()) {
+                log.debug("The octets of Reference " + getURI() + " were buffered before digesting");
+            }
             // if signing and c14n11 property == true explicitly add
             // C14N11 transform if needed
             if (Reference.useC14N11 && !validating && !output.isOutputStreamSet() 
@@ -732,10 +761,6 @@ public class Reference extends SignatureElementProxy {
             }
             os.flush();
             
-            if (output.getOctetStreamReal() != null) {
-                output.getOctetStreamReal().close();
-            }
-            
             //this.getReferencedBytes(diOs);
             //mda.update(data);
 
@@ -745,12 +770,38 @@ public class Reference extends SignatureElementProxy {
         } catch (IOException ex) {
             throw new ReferenceNotInitializedException(ex);
         } finally {
-            if (os != null) {
-                try {
-                    os.close();
-                } catch (IOException ex) {
-                    throw new ReferenceNotInitializedException(ex);
-                } 
+            try {
+                if (output != null) {
+                    closeOctetStream(output);
+                }
+                if (os != null) {
+                    try {
+                        os.close();
+                    } catch (IOException ex) {
+                        throw new ReferenceNotInitializedException(ex);
+                    } 
+                }
+            } finally {
+                if (mda != null) {
+                    mda.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes the octet stream of the given input, if it has one, such as the response of
+     * an HTTP resolver that was streamed instead of being read into memory.
+     */
+    private static void closeOctetStream(XMLSignatureInput input) {
+        InputStream is = input.getOctetStreamReal();
+        if (is != null) {
+            try {
+                is.close();
+            } catch (IOException ex) {
+                if (log.isDebugEnabled()) {
+                    log.debug(ex.getMessage(), ex);
+                }
             }
         }
     }
@@ -210,7 +210,12 @@ public class SignedInfo extends Manifest {
                     Canonicalizer.getInstance(c14nMethodURI);
                 c14nizer.setSecureValidation(secureValidation);
 
-                byte[] c14nizedBytes = c14nizer.canonicalizeSubtree(element);
+                byte[] c14nizedBytes;
+                try {
+                    c14nizedBytes = c14nizer.canonicalizeSubtree(element);
+                } finally {
+                    c14nizer.release();
+                }
                 javax.xml.parsers.DocumentBuilder db = 
                     XMLUtils.createDocumentBuilder(false, secureValidation);
                 try {
@@ -275,10 +280,14 @@ public class SignedInfo extends Manifest {
             c14nizer.setSecureValidation(isSecureValidation());
 
             String inclusiveNamespaces = this.getInclusiveNamespaces();
-            if (inclusiveNamespaces == null) {
-                this.c14nizedBytes = c14nizer.canonicalizeSubtree(getElement());
-            } else {
-                this.c14nizedBytes = c14nizer.canonicalizeSubtree(getElement(), inclusiveNamespaces);
+            try {
+                if (inclusiveNamespaces == null) {
+                    this.c14nizedBytes = c14nizer.canonicalizeSubtree(getElement());
+                } else {
+                    this.c14nizedBytes = c14nizer.canonicalizeSubtree(getElement(), inclusiveNamespaces);
+                }
+            } finally {
+                c14nizer.release();
             }
         }
 
@@ -302,10 +311,14 @@ public class SignedInfo extends Manifest {
             c14nizer.setWriter(os);
             String inclusiveNamespaces = this.getInclusiveNamespaces();
 
-            if (inclusiveNamespaces == null) {
-                c14nizer.canonicalizeSubtree(getElement());
-            } else {
-                c14nizer.canonicalizeSubtree(getElement(), inclusiveNamespaces);
+            try {
+                if (inclusiveNamespaces == null) {
+                    c14nizer.canonicalizeSubtree(getElement());
+                } else {
+                    c14nizer.canonicalizeSubtree(getElement(), inclusiveNamespaces);
+                }
+            } finally {
+                c14nizer.release();
             }
         } else {
             try {
@@ -23,6 +23,7 @@ import java.io.OutputStream;
 import java.security.Key;
 import java.security.PublicKey;
 import java.security.cert.X509Certificate;
+import java.util.concurrent.Executor;
 
 import javax.crypto.SecretKey;
 
@@ -647,7 +648,11 @@ public final class XMLSignature extends SignatureElementProxy {
             }
 
             // set them on the SignatureValue element
-            this.setSignatureValueElement(sa.sign());
+            try {
+                this.setSignatureValueElement(sa.sign());
+            } finally {
+                sa.release();
+            }
         } catch (XMLSignatureException ex) {
             throw ex;
         } catch (CanonicalizationException ex) {
@@ -756,9 +761,13 @@ public final class XMLSignature extends SignatureElementProxy {
 
             // have SignatureAlgorithm sign the input bytes and compare them to 
             // the bytes that were stored in the signature.
-            if (!sa.verify(sigBytes)) {
-                log.warn("Signature verification failed.");
-                return false;
+            try {
+                if (!sa.verify(sigBytes)) {
+                    log.warn("Signature verification failed.");
+                    return false;
+                }
+            } finally {
+                sa.release();
             }
 
             return si.verify(this.followManifestsDuringValidation);
@@ -891,6 +900,30 @@ public final class XMLSignature extends SignatureElementProxy {
         this.followManifestsDuringValidation = followManifests;
     }
 
+    /**
+     * Sets the Executor on which the References of the SignedInfo, and of the Manifests
+     * which are followed, are verified concurrently. By default they are verified one
+     * after the other in the calling thread.
+     *
+     * @param executor the Executor, or null to verify the References in the calling thread
+     * @see Manifest#setReferenceVerificationExecutor(Executor)
+     */
+    public void setReferenceVerificationExecutor(Executor executor) {
+        this.getSignedInfo().setReferenceVerificationExecutor(executor);
+    }
+
+    /**
+     * Sets the Executor on which the DigestValues of the References of the SignedInfo are
+     * calculated concurrently when signing. By default they are calculated one after the
+     * other in the calling thread.
+     *
+     * @param executor the Executor, or null to digest the References in the calling thread
+     * @see Manifest#setDigestGenerationExecutor(Executor)
+     */
+    public void setDigestGenerationExecutor(Executor executor) {
+        this.getSignedInfo().setDigestGenerationExecutor(executor);
+    }
+
     /**
      * Get the local name of this element
      *
@@ -0,0 +1,300 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.signature;
+
+import java.io.UnsupportedEncodingException;
+import java.security.Key;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import org.apache.xml.security.c14n.Canonicalizer;
+import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.keys.KeyInfo;
+import org.apache.xml.security.utils.ConcurrentTasks;
+import org.apache.xml.security.utils.Constants;
+import org.apache.xml.security.utils.XMLUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Verifies many independent signatures at once, on an Executor, and returns the result of
+ * every signature instead of stopping at the first failure.
+ * <p>
+ * The JCA engines and the canonicalizers are pooled for all signatures anyway. What the batch
+ * shares in addition is the public keys resolved from the KeyInfos: signatures whose KeyInfo
+ * only holds KeyValues and X509Data with the same content are verified with the key resolved
+ * for the first of them. A KeyInfo with any other content, such as a RetrievalMethod, whose
+ * key may depend on the document, is resolved for every signature.
+ * <p>
+ * The signatures of the same Document are verified one after the other by one task, so that
+ * no Document is read by two threads at once. The Documents must not be modified while the
+ * batch is verified.
+ */
+public class XMLSignatureBatchVerifier {
+
+    private static final org.slf4j.Logger log =
+        org.slf4j.LoggerFactory.getLogger(XMLSignatureBatchVerifier.class);
+
+    private final Executor executor;
+
+    private boolean secureValidation;
+
+    private boolean followManifests;
+
+    /**
+     * @param executor the Executor on which the signatures are verified, or null to verify
+     * them in the calling thread
+     */
+    public XMLSignatureBatchVerifier(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @param secureValidation whether the signatures are verified with secure validation
+     */
+    public void setSecureValidation(boolean secureValidation) {
+        this.secureValidation = secureValidation;
+    }
+
+    /**
+     * @param followManifests whether the References of the Manifests are verified, too
+     * @see XMLSignature#setFollowNestedManifests(boolean)
+     */
+    public void setFollowNestedManifests(boolean followManifests) {
+        this.followManifests = followManifests;
+    }
+
+    /**
+     * Verifies the given signatures, and waits until all of them are verified.
+     *
+     * @param items the signatures
+     * @return the result of every signature, in the order of the items
+     * @throws XMLSecurityException if the calling thread is interrupted while waiting
+     */
+    public List<Result> verify(final List<Item> items) throws XMLSecurityException {
+        final Result[] results = new Result[items.size()];
+        final Map<String, PublicKey> keys = new ConcurrentHashMap<String, PublicKey>();
+
+        Map<Document, List<Integer>> itemsByDocument =
+            new IdentityHashMap<Document, List<Integer>>();
+        List<List<Integer>> groups = new ArrayList<List<Integer>>();
+        for (int i = 0; i < items.size(); i++) {
+            Document doc = XMLUtils.getOwnerDocument(items.get(i).getSignatureElement());
+            List<Integer> group = itemsByDocument.get(doc);
+            if (group == null) {
+                group = new ArrayList<Integer>();
+                itemsByDocument.put(doc, group);
+                groups.add(group);
+            }
+            group.add(i);
+        }
+
+        List<FutureTask<Void>> tasks = new ArrayList<FutureTask<Void>>(groups.size());
+        for (final List<Integer> group : groups) {
+            tasks.add(ConcurrentTasks.newTask(new Callable<Void>() {
+                public Void call() {
+                    for (Integer i : group) {
+                        results[i] = verify(items.get(i), keys);
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        try {
+            ConcurrentTasks.runAll(tasks, executor);
+            for (FutureTask<Void> task : tasks) {
+                try {
+                    task.get();
+                } catch (ExecutionException ex) {
+                    // verify catches every Exception
+                    if (ex.getCause() instanceof Error) {
+                        throw (Error)ex.getCause();
+                    }
+                    throw new XMLSecurityException(ex);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new XMLSecurityException(ex);
+        }
+
+        List<Result> resultList = new ArrayList<Result>(results.length);
+        Collections.addAll(resultList, results);
+        return resultList;
+    }
+
+    private Result verify(Item item, Map<String, PublicKey> keys) {
+        XMLSignature signature = null;
+        try {
+            signature =
+                new XMLSignature(item.getSignatureElement(), item.getBaseURI(), secureValidation);
+            signature.setFollowNestedManifests(followManifests);
+
+            Key key = item.getKey();
+            if (key == null) {
+                key = getPublicKey(signature.getKeyInfo(), keys);
+            }
+            return new Result(signature, signature.checkSignatureValue(key), null);
+        } catch (Exception ex) {
+            // the failure of one signature does not affect the others
+            if (log.isDebugEnabled()) {
+                log.debug(ex.getMessage(), ex);
+            }
+            return new Result(signature, false, ex);
+        }
+    }
+
+    private static PublicKey getPublicKey(KeyInfo keyInfo, Map<String, PublicKey> keys)
+        throws XMLSecurityException {
+        if (keyInfo == null) {
+            return null;
+        }
+        String keyInfoContent = getSelfContainedContent(keyInfo.getElement());
+        if (keyInfoContent != null) {
+            PublicKey key = keys.get(keyInfoContent);
+            if (key != null) {
+                return key;
+            }
+        }
+
+        PublicKey key = keyInfo.getPublicKey();
+        if (key != null && keyInfoContent != null) {
+            keys.put(keyInfoContent, key);
+        }
+        return key;
+    }
+
+    /**
+     * @return the canonical form of the KeyInfo, or null if the key it holds may depend on
+     * anything else than its content
+     */
+    private static String getSelfContainedContent(Element keyInfo) throws XMLSecurityException {
+        for (Node child = keyInfo.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() != Node.ELEMENT_NODE) {
+                continue;
+            }
+            String localName = child.getLocalName();
+            if (!(Constants.SignatureSpecNS.equals(child.getNamespaceURI())
+                && (Constants._TAG_KEYVALUE.equals(localName)
+                    || Constants._TAG_X509DATA.equals(localName)))) {
+                return null;
+            }
+        }
+
+        Canonicalizer canonicalizer =
+            Canonicalizer.getInstance(Canonicalizer.ALGO_ID_C14N_EXCL_OMIT_COMMENTS);
+        try {
+            return new String(canonicalizer.canonicalizeSubtree(keyInfo), "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new XMLSecurityException(ex);
+        } finally {
+            canonicalizer.release();
+        }
+    }
+
+    /**
+     * A signature to verify.
+     */
+    public static class Item {
+
+        private final Element signatureElement;
+
+        private final String baseURI;
+
+        private final Key key;
+
+        /**
+         * @param signatureElement the ds:Signature element
+         * @param baseURI the URI of the resource where the signature was stored
+         * @param key the key to verify the signature with, or null to resolve it from the
+         * KeyInfo of the signature
+         */
+        public Item(Element signatureElement, String baseURI, Key key) {
+            this.signatureElement = signatureElement;
+            this.baseURI = baseURI;
+            this.key = key;
+        }
+
+        public Element getSignatureElement() {
+            return signatureElement;
+        }
+
+        public String getBaseURI() {
+            return baseURI;
+        }
+
+        public Key getKey() {
+            return key;
+        }
+
+    }
+
+    /**
+     * The result of verifying a signature.
+     */
+    public static class Result {
+
+        private final XMLSignature signature;
+
+        private final boolean valid;
+
+        private final Exception exception;
+
+        Result(XMLSignature signature, boolean valid, Exception exception) {
+            this.signature = signature;
+            this.valid = valid;
+            this.exception = exception;
+        }
+
+        /**
+         * @return the signature, to get the results of its References, or null if the
+         * signature element could not be read
+         */
+        public XMLSignature getSignature() {
+            return signature;
+        }
+
+        /**
+         * @return true if the signature and all its References are valid
+         */
+        public boolean isValid() {
+            return valid;
+        }
+
+        /**
+         * @return the exception thrown while verifying the signature, or null
+         */
+        public Exception getException() {
+            return exception;
+        }
+
+    }
+
+}
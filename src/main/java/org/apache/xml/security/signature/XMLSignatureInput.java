@@ -24,7 +24,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -32,11 +31,13 @@ import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.ParserConfigurationException;
 
 import org.apache.xml.security.c14n.CanonicalizationException;
+import org.apache.xml.security.c14n.CanonicalizerPool;
 import org.apache.xml.security.c14n.implementations.Canonicalizer11_OmitComments;
 import org.apache.xml.security.c14n.implementations.Canonicalizer20010315OmitComments;
 import org.apache.xml.security.c14n.implementations.CanonicalizerBase;
 import org.apache.xml.security.exceptions.XMLSecurityRuntimeException;
 import org.apache.xml.security.utils.JavaUtils;
+import org.apache.xml.security.utils.SubtreeNodeSet;
 import org.apache.xml.security.utils.XMLUtils;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
@@ -126,7 +127,9 @@ public class XMLSignatureInput {
 
     /**
      * Constructs a <code>XMLSignatureInput</code> from an octet stream. The
-     * stream is directly read.
+     * stream is directly read, and closed once it has been read by
+     * {@link #getBytes()}, {@link #getNodeSet()} or {@link #updateOutputStream(OutputStream)}.
+     * Otherwise whoever reads it from {@link #getOctetStream()} has to close it.
      *
      * @param inputOctetStream
      */
@@ -212,14 +215,11 @@ public class XMLSignatureInput {
             if (circumvent) {
                 XMLUtils.circumventBug2650(XMLUtils.getOwnerDocument(subNode));
             }
-            inputNodeSet = new LinkedHashSet<Node>();
-            XMLUtils.getSet(subNode, inputNodeSet, excludeNode, excludeComments);
+            inputNodeSet = new SubtreeNodeSet(subNode, excludeNode, excludeComments);
             return inputNodeSet;
         } else if (isOctetStream()) {
             convertToNodes();
-            Set<Node> result = new LinkedHashSet<Node>();
-            XMLUtils.getSet(subNode, result, null, false); 
-            return result;
+            return new SubtreeNodeSet(subNode, null, false);
         }
 
         throw new RuntimeException("getNodeSet() called but no input data present");
@@ -268,8 +268,12 @@ public class XMLSignatureInput {
         if (inputBytes != null) {
             return inputBytes;
         }
-        Canonicalizer20010315OmitComments c14nizer = new Canonicalizer20010315OmitComments();                  
-        bytes = c14nizer.engineCanonicalize(this);         
+        CanonicalizerBase c14nizer = getCanonicalizer(false);
+        try {
+            bytes = c14nizer.engineCanonicalize(this);
+        } finally {
+            CanonicalizerPool.repool(c14nizer);
+        }
         return bytes;
     }
 
@@ -472,14 +476,13 @@ public class XMLSignatureInput {
         if (bytes != null) {
             diOs.write(bytes);
         } else if (inputOctetStreamProxy == null) {                    
-            CanonicalizerBase c14nizer = null;
-            if (c14n11) {
-                c14nizer = new Canonicalizer11_OmitComments();       
-            } else {
-                c14nizer = new Canonicalizer20010315OmitComments();       
+            CanonicalizerBase c14nizer = getCanonicalizer(c14n11);
+            try {
+                c14nizer.setWriter(diOs);
+                c14nizer.engineCanonicalize(this);
+            } finally {
+                CanonicalizerPool.repool(c14nizer);
             }
-            c14nizer.setWriter(diOs);
-            c14nizer.engineCanonicalize(this); 
         } else {
             byte[] buffer = new byte[4 * 1024];
             int bytesread = 0;
@@ -487,9 +490,8 @@ public class XMLSignatureInput {
                 while ((bytesread = inputOctetStreamProxy.read(buffer)) != -1) {
                     diOs.write(buffer, 0, bytesread);
                 }
-            } catch (IOException ex) {
+            } finally {
                 inputOctetStreamProxy.close();
-                throw ex;
             }
         }
     }
@@ -501,6 +503,22 @@ public class XMLSignatureInput {
         outputStream = os;
     }
 
+    private static CanonicalizerBase getCanonicalizer(boolean c14n11) {
+        CanonicalizerBase c14nizer = null;
+        if (c14n11) {
+            c14nizer = CanonicalizerPool.poll(Canonicalizer11_OmitComments.class);
+            if (c14nizer == null) {
+                c14nizer = new Canonicalizer11_OmitComments();
+            }
+        } else {
+            c14nizer = CanonicalizerPool.poll(Canonicalizer20010315OmitComments.class);
+            if (c14nizer == null) {
+                c14nizer = new Canonicalizer20010315OmitComments();
+            }
+        }
+        return c14nizer;
+    }
+
     private byte[] getBytesFromInputStream() throws IOException {       
         if (bytes != null) {
             return bytes;
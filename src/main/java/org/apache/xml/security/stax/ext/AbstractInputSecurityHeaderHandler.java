@@ -21,7 +21,9 @@ package org.apache.xml.security.stax.ext;
 import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
 import org.apache.xml.security.stax.impl.XMLSecurityEventReader;
+import org.apache.xml.security.stax.impl.util.XMLSecStructureBinder;
 
+import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
 import javax.xml.namespace.QName;
@@ -41,6 +43,11 @@ public abstract class AbstractInputSecurityHeaderHandler implements XMLSecurityH
     @SuppressWarnings("unchecked")
     protected <T> T parseStructure(final Deque<XMLSecEvent> eventDeque, final int index,
                                    final XMLSecurityProperties securityProperties) throws XMLSecurityException {
+        //the common xmldsig / xmlenc structures are bound without JAXB:
+        JAXBElement<?> structure = XMLSecStructureBinder.bind(eventDeque, index);
+        if (structure != null) {
+            return (T) structure;
+        }
         try {
             Unmarshaller unmarshaller = XMLSecurityConstants.getJaxbUnmarshaller(securityProperties.isDisableSchemaValidation());
             return (T) unmarshaller.unmarshal(new XMLSecurityEventReader(eventDeque, index));
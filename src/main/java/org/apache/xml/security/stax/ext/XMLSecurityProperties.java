@@ -25,6 +25,7 @@ import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 
 /**
@@ -54,6 +55,11 @@ public class XMLSecurityProperties {
     private SecurityTokenConstants.KeyIdentifier encryptionKeyIdentifier;
 
     private Key decryptionKey;
+    private Executor decryptionExecutor;
+    private boolean decryptionUseVirtualThreads = false;
+    private boolean decryptionInline = false;
+    private long decryptionInlineThreshold = 1024 * 1024;
+    private long decryptionGCMBufferThreshold = -1;
 
     private final List<SecurePart> signatureParts = new LinkedList<SecurePart>();
     private String signatureAlgorithm;
@@ -68,6 +74,7 @@ public class XMLSecurityProperties {
     private Key signatureVerificationKey;
 
     private int signaturePosition = 0;
+    private int signatureEventBufferThreshold = -1;
 
     public XMLSecurityProperties() {
     }
@@ -88,6 +95,11 @@ public class XMLSecurityProperties {
         this.encryptionTransportKey = xmlSecurityProperties.encryptionTransportKey;
         this.encryptionKeyIdentifier = xmlSecurityProperties.encryptionKeyIdentifier;
         this.decryptionKey = xmlSecurityProperties.decryptionKey;
+        this.decryptionExecutor = xmlSecurityProperties.decryptionExecutor;
+        this.decryptionUseVirtualThreads = xmlSecurityProperties.decryptionUseVirtualThreads;
+        this.decryptionInline = xmlSecurityProperties.decryptionInline;
+        this.decryptionInlineThreshold = xmlSecurityProperties.decryptionInlineThreshold;
+        this.decryptionGCMBufferThreshold = xmlSecurityProperties.decryptionGCMBufferThreshold;
         this.signatureParts.addAll(xmlSecurityProperties.signatureParts);
         this.signatureAlgorithm = xmlSecurityProperties.signatureAlgorithm;
         this.signatureDigestAlgorithm = xmlSecurityProperties.signatureDigestAlgorithm;
@@ -98,7 +110,8 @@ public class XMLSecurityProperties {
         this.signatureKeyIdentifier = xmlSecurityProperties.signatureKeyIdentifier;
         this.useSingleCert = xmlSecurityProperties.useSingleCert;
         this.signatureVerificationKey = xmlSecurityProperties.signatureVerificationKey;
-        this.signaturePosition = xmlSecurityProperties.signaturePosition;        
+        this.signaturePosition = xmlSecurityProperties.signaturePosition;
+        this.signatureEventBufferThreshold = xmlSecurityProperties.signatureEventBufferThreshold;
     }
 
     public SecurityTokenConstants.KeyIdentifier getSignatureKeyIdentifier() {
@@ -127,6 +140,22 @@ public class XMLSecurityProperties {
     public void setSignaturePosition(int signaturePosition) {
         this.signaturePosition = signaturePosition;
     }
+
+    public int getSignatureEventBufferThreshold() {
+        return signatureEventBufferThreshold;
+    }
+
+    /**
+     * Specifies the number of events which are kept in memory while an enveloped signature
+     * is verified. The document events are buffered until the end of the Signature element;
+     * when set, older events exceeding the threshold are buffered in a temporary file instead.
+     *
+     * @param signatureEventBufferThreshold the number of events or a negative value (the default)
+     *                                      to buffer all events in memory
+     */
+    public void setSignatureEventBufferThreshold(int signatureEventBufferThreshold) {
+        this.signatureEventBufferThreshold = signatureEventBufferThreshold;
+    }
     
     /**
      * returns the KeyIdentifierType which will be used in the secured document
@@ -172,6 +201,91 @@ public class XMLSecurityProperties {
         return decryptionKey;
     }
 
+    /**
+     * Returns the Executor which runs the streaming decryption tasks
+     *
+     * @return the Executor or null if the default Executor is used
+     */
+    public Executor getDecryptionExecutor() {
+        return decryptionExecutor;
+    }
+
+    /**
+     * Specifies the Executor which runs the streaming decryption tasks. Every EncryptedData
+     * structure needs its own task while its decrypted content is read, and a decryption task
+     * of nested EncryptedData depends on the task of the enclosing one. A bounded Executor must
+     * therefore provide enough threads for the expected number of concurrently processed
+     * (and nested) EncryptedData structures. By default a shared, pooled Executor is used.
+     *
+     * @param decryptionExecutor the Executor to use or null to use the default Executor
+     */
+    public void setDecryptionExecutor(Executor decryptionExecutor) {
+        this.decryptionExecutor = decryptionExecutor;
+    }
+
+    public boolean isDecryptionUseVirtualThreads() {
+        return decryptionUseVirtualThreads;
+    }
+
+    /**
+     * Specifies if the streaming decryption tasks should run in virtual threads when no
+     * decryption Executor is set. Falls back to the default Executor when the jvm
+     * doesn't support virtual threads.
+     *
+     * @param decryptionUseVirtualThreads true to use virtual threads
+     */
+    public void setDecryptionUseVirtualThreads(boolean decryptionUseVirtualThreads) {
+        this.decryptionUseVirtualThreads = decryptionUseVirtualThreads;
+    }
+
+    public boolean isDecryptionInline() {
+        return decryptionInline;
+    }
+
+    /**
+     * Specifies if the content of EncryptedData structures should be decrypted in the
+     * thread which reads the document. The encrypted data is then decrypted on demand
+     * instead of being handed over from a decryption task.
+     *
+     * @param decryptionInline true to decrypt in the reading thread
+     */
+    public void setDecryptionInline(boolean decryptionInline) {
+        this.decryptionInline = decryptionInline;
+    }
+
+    public long getDecryptionInlineThreshold() {
+        return decryptionInlineThreshold;
+    }
+
+    /**
+     * Specifies the number of CipherValue characters after which an inline decryption is
+     * handed over to a decryption task. Only used when decrypting inline.
+     *
+     * @param decryptionInlineThreshold the number of characters (by default: 1048576)
+     *                                  or a negative value to never hand over
+     */
+    public void setDecryptionInlineThreshold(long decryptionInlineThreshold) {
+        this.decryptionInlineThreshold = decryptionInlineThreshold;
+    }
+
+    public long getDecryptionGCMBufferThreshold() {
+        return decryptionGCMBufferThreshold;
+    }
+
+    /**
+     * Specifies the number of decrypted AES-GCM bytes which are kept in memory until the
+     * authentication tag is verified. When set, the plaintext exceeding the threshold is
+     * buffered in a temporary file instead, which is encrypted and authenticated with a
+     * temporary key. This only bounds the heap usage with JCE providers which return the
+     * plaintext from Cipher.update(); the SunJCE provider holds it back until Cipher.doFinal().
+     *
+     * @param decryptionGCMBufferThreshold the number of bytes or a negative value (the default)
+     *                                     to buffer the whole plaintext in memory
+     */
+    public void setDecryptionGCMBufferThreshold(long decryptionGCMBufferThreshold) {
+        this.decryptionGCMBufferThreshold = decryptionGCMBufferThreshold;
+    }
+
     public void setEncryptionTransportKey(Key encryptionTransportKey) {
         this.encryptionTransportKey = encryptionTransportKey;
     }
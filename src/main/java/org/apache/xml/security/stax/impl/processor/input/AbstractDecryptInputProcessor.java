@@ -18,7 +18,6 @@
  */
 package org.apache.xml.security.stax.impl.processor.input;
 
-import org.apache.commons.codec.binary.Base64OutputStream;
 import org.apache.xml.security.stax.securityToken.InboundSecurityToken;
 import org.apache.xml.security.stax.securityToken.SecurityTokenConstants;
 import org.apache.xml.security.stax.securityToken.SecurityTokenProvider;
@@ -40,6 +39,7 @@ import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
 import org.apache.xml.security.stax.impl.XMLSecurityEventReader;
 import org.apache.xml.security.stax.securityToken.SecurityTokenFactory;
 import org.apache.xml.security.stax.impl.util.*;
+import org.apache.xml.security.utils.Base64DecodingWriter;
 
 import javax.crypto.*;
 import javax.xml.bind.JAXBElement;
@@ -57,6 +57,9 @@ import java.security.Key;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Processor for decryption of EncryptedData XML structures
@@ -215,7 +218,7 @@ public abstract class AbstractDecryptInputProcessor extends AbstractInputProcess
                         : subInputProcessorChain.processEvent();
                 }
 
-                //create a new Thread for streaming decryption
+                //create a new task for streaming decryption
                 DecryptionThread decryptionThread =
                         new DecryptionThread(subInputProcessorChain, isSecurityHeaderEvent);
                 Key decryptionKey = 
@@ -224,6 +227,7 @@ public abstract class AbstractDecryptInputProcessor extends AbstractInputProcess
                 decryptionThread.setSecretKey(decryptionKey);
                 decryptionThread.setSymmetricCipher(symCipher);
                 decryptionThread.setIvLength(ivLength);
+                decryptionThread.setGCMBufferThreshold(getSecurityProperties().getDecryptionGCMBufferThreshold());
                 XMLSecStartElement parentXMLSecStartElement = xmlSecStartElement.getParentXMLSecStartElement();
                 if (encryptedHeader) {
                     parentXMLSecStartElement = parentXMLSecStartElement.getParentXMLSecStartElement();
@@ -249,19 +253,31 @@ public abstract class AbstractDecryptInputProcessor extends AbstractInputProcess
                             inboundSecurityToken, encryptedDataType);
                 }
 
-                Thread thread = new Thread(decryptionThread);
-                thread.setPriority(Thread.NORM_PRIORITY + 1);
-                thread.setName("decryption thread");
-                //when an exception in the decryption thread occurs, we want to forward them:
-                thread.setUncaughtExceptionHandler(decryptedEventReaderInputProcessor);
+                //when an exception in the decryption task occurs, we want to forward them:
+                decryptionThread.setUncaughtExceptionHandler(decryptedEventReaderInputProcessor);
 
-                decryptedEventReaderInputProcessor.setDecryptionThread(thread);
+                decryptedEventReaderInputProcessor.setDecryptionThread(decryptionThread);
 
-                //we have to start the thread before we call decryptionThread.getPipedInputStream().
-                //Otherwise we will end in a deadlock, because the StAX reader expects already data.
-                //@See some lines below:
-                log.debug("Starting decryption thread");
-                thread.start();
+                InputStream decryptInputStream;
+                if (getSecurityProperties().isDecryptionInline()) {
+                    //decrypt on demand in the current thread while the StAX reader requests more data.
+                    //Parts exceeding the threshold are handed over to a decryption task.
+                    decryptInputStream = new InlineDecryptionInputStream(
+                            decryptionThread, getDecryptionExecutor(),
+                            getSecurityProperties().getDecryptionInlineThreshold());
+                } else {
+                    decryptInputStream = decryptionThread.connectRingBuffer();
+
+                    //we have to start the task before we create the StAX reader.
+                    //Otherwise we will end in a deadlock, because the StAX reader expects already data.
+                    //@See some lines below:
+                    log.debug("Starting decryption thread");
+                    try {
+                        getDecryptionExecutor().execute(decryptionThread);
+                    } catch (RejectedExecutionException e) {
+                        throw new XMLSecurityException(e);
+                    }
+                }
 
                 InputStream prologInputStream;
                 InputStream epilogInputStream;
@@ -274,7 +290,6 @@ public abstract class AbstractDecryptInputProcessor extends AbstractInputProcess
                     throw new XMLSecurityException(e);
                 }
 
-                InputStream decryptInputStream = decryptionThread.getPipedInputStream();
                 decryptInputStream = applyTransforms(referenceType, decryptInputStream);
 
                 //spec says (4.2): "The cleartext octet sequence obtained in step 3 is
@@ -299,6 +314,17 @@ public abstract class AbstractDecryptInputProcessor extends AbstractInputProcess
         return xmlSecEvent;
     }
 
+    private Executor getDecryptionExecutor() {
+        Executor executor = getSecurityProperties().getDecryptionExecutor();
+        if (executor != null) {
+            return executor;
+        }
+        if (getSecurityProperties().isDecryptionUseVirtualThreads()) {
+            return DecryptionExecutors.getVirtualThreadExecutor();
+        }
+        return DecryptionExecutors.getDefaultExecutor();
+    }
+
     protected InputStream applyTransforms(ReferenceType referenceType, InputStream inputStream) throws XMLSecurityException {
         return inputStream;
     }
@@ -470,6 +496,13 @@ public abstract class AbstractDecryptInputProcessor extends AbstractInputProcess
         xmlSecEvents.push(XMLSecEventFactory.createXmlSecEndElement(XMLSecurityConstants.TAG_xenc_CipherData));
         xmlSecEvents.push(XMLSecEventFactory.createXmlSecEndElement(XMLSecurityConstants.TAG_xenc_EncryptedData));
 
+        @SuppressWarnings("unchecked")
+        JAXBElement<EncryptedDataType> boundEncryptedDataType =
+                (JAXBElement<EncryptedDataType>) XMLSecStructureBinder.bind(xmlSecEvents, 0);
+        if (boundEncryptedDataType != null) {
+            return boundEncryptedDataType.getValue();
+        }
+
         EncryptedDataType encryptedDataType;
 
         try {
@@ -561,7 +594,7 @@ public abstract class AbstractDecryptInputProcessor extends AbstractInputProcess
         private final InboundSecurityToken inboundSecurityToken;
         private boolean rootElementProcessed;
         private EncryptedDataType encryptedDataType;
-        private Thread decryptionThread;
+        private DecryptionThread decryptionThread;
 
         public AbstractDecryptedEventReaderInputProcessor(
                 XMLSecurityProperties securityProperties, SecurePart.Modifier encryptionModifier,
@@ -583,7 +616,7 @@ public abstract class AbstractDecryptInputProcessor extends AbstractInputProcess
             }
         }
 
-        public void setDecryptionThread(Thread decryptionThread) {
+        void setDecryptionThread(DecryptionThread decryptionThread) {
             this.decryptionThread = decryptionThread;
         }
 
@@ -608,7 +641,14 @@ public abstract class AbstractDecryptInputProcessor extends AbstractInputProcess
             //did a execption occur during decryption in the decryption thread?
             testAndThrowUncaughtException();
 
-            XMLSecEvent xmlSecEvent = XMLSecEventFactory.allocate(xmlStreamReader, parentXmlSecStartElement);
+            XMLSecEvent xmlSecEvent;
+            try {
+                xmlSecEvent = XMLSecEventFactory.allocate(xmlStreamReader, parentXmlSecStartElement);
+            } catch (XMLStreamException e) {
+                //when decrypting inline a decryption failure surfaces here as a reader exception
+                testAndThrowUncaughtException();
+                throw e;
+            }
             //here we request the next XMLEvent from the decryption thread
             //instead from the processor-chain as we normally would do
             switch (xmlSecEvent.getEventType()) {
@@ -667,13 +707,13 @@ public abstract class AbstractDecryptInputProcessor extends AbstractInputProcess
                             xmlSecEvent = inputProcessorChain.processEvent();
                         }
 
-                        //wait until the decryption thread dies...
+                        //wait until the decryption task finishes...
                         try {
                             decryptionThread.join();
                         } catch (InterruptedException e) {
                             throw new XMLStreamException(e);
                         }
-                        //...and test again for an exception in the decryption thread.
+                        //...and test again for an exception in the decryption task.
                         testAndThrowUncaughtException();
                         inputProcessorChain.removeProcessor(this);
                     }
@@ -707,35 +747,61 @@ public abstract class AbstractDecryptInputProcessor extends AbstractInputProcess
     }
 
     /**
-     * The DecryptionThread handles encrypted XML-Parts
+     * The DecryptionThread handles encrypted XML-Parts. It runs as a task in the
+     * configured Executor and hands the decrypted bytes over to the reading thread
+     * through a bounded ring buffer. When decrypting inline, the events are decrypted
+     * one by one on demand of the InlineDecryptionInputStream instead.
      */
     static class DecryptionThread implements Runnable {
 
         private final InputProcessorChain inputProcessorChain;
         private final boolean header;
-        private final PipedOutputStream pipedOutputStream;
-        private final PipedInputStream pipedInputStream;
+        private final ReplaceableOuputStream pipedOutputStream = new ReplaceableOuputStream(null);
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private Thread.UncaughtExceptionHandler uncaughtExceptionHandler;
         private Cipher symmetricCipher;
         private int ivLength;
         private Key secretKey;
+        private long gcmBufferThreshold = -1;
+        private SpillingBufferedOutputStream spillingBufferedOutputStream;
+        private Writer outputStreamWriter;
+        private long processedCharacters;
 
         protected DecryptionThread(InputProcessorChain inputProcessorChain,
                                    boolean header) throws XMLStreamException, XMLSecurityException {
 
             this.inputProcessorChain = inputProcessorChain;
             this.header = header;
+        }
 
-            //prepare the piped streams and connect them:
-            this.pipedInputStream = new PipedInputStream(8192 * 5);
-            try {
-                this.pipedOutputStream = new PipedOutputStream(pipedInputStream);
-            } catch (IOException e) {
-                throw new XMLStreamException(e);
-            }
+        /**
+         * Connects the decrypted output with a new ring buffer.
+         *
+         * @return the InputStream to read the decrypted bytes written from now on
+         */
+        InputStream connectRingBuffer() {
+            ByteRingBuffer byteRingBuffer = new ByteRingBuffer(8192 * 4);
+            connect(byteRingBuffer.getOutputStream());
+            return byteRingBuffer.getInputStream();
         }
 
-        public PipedInputStream getPipedInputStream() {
-            return pipedInputStream;
+        void connect(OutputStream outputStream) {
+            this.pipedOutputStream.setNewOutputStream(outputStream);
+        }
+
+        void setUncaughtExceptionHandler(Thread.UncaughtExceptionHandler uncaughtExceptionHandler) {
+            this.uncaughtExceptionHandler = uncaughtExceptionHandler;
+        }
+
+        /**
+         * Waits until the decryption task has finished
+         */
+        void join() throws InterruptedException {
+            finished.await();
+        }
+
+        long getProcessedCharacters() {
+            return processedCharacters;
         }
 
         private XMLSecEvent processNextEvent() throws XMLSecurityException, XMLStreamException {
@@ -749,83 +815,130 @@ public abstract class AbstractDecryptInputProcessor extends AbstractInputProcess
 
         @Override
         public void run() {
+            try {
+                while (decryptNextEvent(false)) { //NOPMD
+                    //decrypt until the CipherValue EndElement
+                }
+                log.debug("Decryption thread finished");
+            } catch (Exception e) {
+                failed(new UncheckedXMLSecurityException(e));
+            } catch (Throwable t) {
+                failed(t);
+            } finally {
+                finished.countDown();
+            }
+        }
 
+        /**
+         * Must be called when the decryption failed. Closes the decrypted output
+         * and forwards the exception to the UncaughtExceptionHandler.
+         */
+        void failed(Throwable t) {
             try {
-                final OutputStream outputStream;
+                //we have to close the pipe when an exception occurs. Otherwise we can run into a deadlock when
+                //an exception occurs before we have written any byte to the pipe.
+                this.pipedOutputStream.close();
+            } catch (IOException e) { //NOPMD
+                //ignore since we will forward the original exception below
+            }
+            if (spillingBufferedOutputStream != null) {
+                //the not authenticated plaintext must never be released
+                spillingBufferedOutputStream.discard();
+            }
+            if (uncaughtExceptionHandler == null) {
+                log.error(t.getMessage(), t);
+            } else {
+                uncaughtExceptionHandler.uncaughtException(Thread.currentThread(), t);
+            }
+        }
 
-                final Cipher cipher = getSymmetricCipher();
-                if (cipher.getAlgorithm().toUpperCase().contains("GCM")) {
-                    //we have to buffer the whole data until they are authenticated.
-                    //In GCM mode the authentication tag is appended after the last cipher block...
-                    outputStream = new FullyBufferedOutputStream(pipedOutputStream);
-                } else {
-                    outputStream = pipedOutputStream;
-                }
+        /**
+         * Marks the decryption as finished when it wasn't done in the Executor
+         */
+        void finishedInline() {
+            finished.countDown();
+        }
 
-                final CipherOutputStream cipherOutputStream = new CipherOutputStream(outputStream, cipher) {
-                    //override close() to workaround a bug in oracle-jdk:
-                    //authentication failures when using AEAD ciphers are silently ignored...
-                    @Override
-                    public void close() throws IOException {
-                        super.flush();
-                        try {
-                            byte[] bytes = cipher.doFinal();
-                            outputStream.write(bytes);
-                            outputStream.close();
-                        } catch (IllegalBlockSizeException e) {
-                            throw new IOException(e);
-                        } catch (BadPaddingException e) {
-                            throw new IOException(e);
-                        }
-                    }
-                };
-                IVSplittingOutputStream ivSplittingOutputStream = new IVSplittingOutputStream(
-                        cipherOutputStream,
-                        cipher, getSecretKey(), getIvLength());
-                //buffering seems not to help
-                //bufferedOutputStream = new BufferedOutputStream(new Base64OutputStream(ivSplittingOutputStream, false), 8192 * 5);
-                ReplaceableOuputStream replaceableOuputStream = new ReplaceableOuputStream(ivSplittingOutputStream);
-                OutputStream base64OutputStream = new Base64OutputStream(replaceableOuputStream, false);
-                ivSplittingOutputStream.setParentOutputStream(replaceableOuputStream);
-                OutputStreamWriter outputStreamWriter =
-                        new OutputStreamWriter(base64OutputStream, inputProcessorChain.getDocumentContext().getEncoding());
-
-                //read the encrypted data from the stream until an end-element occurs and write then
-                //to the decrypter-stream
-                exitLoop:
-                while (true) {
-                    XMLSecEvent xmlSecEvent = processNextEvent();
-
-                    switch (xmlSecEvent.getEventType()) {
-                        case XMLStreamConstants.END_ELEMENT:
-                            //this must be the CipherValue EndElement.                            
-                            break exitLoop;
-                        case XMLStreamConstants.CHARACTERS:
-                            final char[] data = xmlSecEvent.asCharacters().getText();
-                            outputStreamWriter.write(data);
-                            break;
-                        default:
-                            throw new XMLSecurityException(
-                                    "stax.unexpectedXMLEvent",
-                                    new Object[] {XMLSecurityUtils.getXMLEventAsString(xmlSecEvent)}
-                            );
-                    }
-                }
+        /**
+         * Reads the next encrypted event and writes the decrypted bytes to the connected OutputStream.
+         *
+         * @param flush true if the decrypted bytes must be written through immediately
+         * @return false if the CipherValue EndElement was reached and the decryption was finalized
+         */
+        boolean decryptNextEvent(boolean flush) throws XMLSecurityException, XMLStreamException, IOException {
+            if (outputStreamWriter == null) {
+                outputStreamWriter = createDecryptionWriter();
+            }
 
-                //close to get Cipher.doFinal() called
-                outputStreamWriter.close();
-                log.debug("Decryption thread finished");
+            XMLSecEvent xmlSecEvent = processNextEvent();
 
-            } catch (Exception e) {
-                try {
-                    //we have to close the pipe when an exception occurs. Otherwise we can run into a deadlock when an exception occurs
-                    //before we have written any byte to the pipe.
-                    this.pipedOutputStream.close();
-                } catch (IOException e1) { //NOPMD
-                    //ignore since we will throw the original exception below
+            switch (xmlSecEvent.getEventType()) {
+                case XMLStreamConstants.END_ELEMENT:
+                    //this must be the CipherValue EndElement.
+                    //close to get Cipher.doFinal() called
+                    outputStreamWriter.close();
+                    return false;
+                case XMLStreamConstants.CHARACTERS:
+                    final char[] data = xmlSecEvent.asCharacters().getText();
+                    outputStreamWriter.write(data);
+                    processedCharacters += data.length;
+                    if (flush) {
+                        outputStreamWriter.flush();
+                    }
+                    return true;
+                default:
+                    throw new XMLSecurityException(
+                            "stax.unexpectedXMLEvent",
+                            new Object[] {XMLSecurityUtils.getXMLEventAsString(xmlSecEvent)}
+                    );
+            }
+        }
+
+        private Writer createDecryptionWriter() throws XMLSecurityException, IOException {
+            final OutputStream outputStream;
+
+            final Cipher cipher = getSymmetricCipher();
+            if (cipher.getAlgorithm().toUpperCase().contains("GCM")) {
+                //we have to buffer the whole data until they are authenticated.
+                //In GCM mode the authentication tag is appended after the last cipher block...
+                if (gcmBufferThreshold >= 0) {
+                    //...in memory up to the threshold and in an encrypted temporary file beyond
+                    spillingBufferedOutputStream =
+                            new SpillingBufferedOutputStream(pipedOutputStream, gcmBufferThreshold);
+                    outputStream = spillingBufferedOutputStream;
+                } else {
+                    outputStream = new FullyBufferedOutputStream(pipedOutputStream);
                 }
-                throw new UncheckedXMLSecurityException(e);
+            } else {
+                outputStream = pipedOutputStream;
             }
+
+            final CipherOutputStream cipherOutputStream = new CipherOutputStream(outputStream, cipher) {
+                //override close() to workaround a bug in oracle-jdk:
+                //authentication failures when using AEAD ciphers are silently ignored...
+                @Override
+                public void close() throws IOException {
+                    super.flush();
+                    try {
+                        byte[] bytes = cipher.doFinal();
+                        outputStream.write(bytes);
+                        outputStream.close();
+                    } catch (IllegalBlockSizeException e) {
+                        throw new IOException(e);
+                    } catch (BadPaddingException e) {
+                        throw new IOException(e);
+                    }
+                }
+            };
+            IVSplittingOutputStream ivSplittingOutputStream = new IVSplittingOutputStream(
+                    cipherOutputStream,
+                    cipher, getSecretKey(), getIvLength());
+            //buffering seems not to help
+            //bufferedOutputStream = new BufferedOutputStream(new Base64OutputStream(ivSplittingOutputStream, false), 8192 * 5);
+            ReplaceableOuputStream replaceableOuputStream = new ReplaceableOuputStream(ivSplittingOutputStream);
+            ivSplittingOutputStream.setParentOutputStream(replaceableOuputStream);
+            //the characters are decoded directly, without encoding them to octets first
+            return new Base64DecodingWriter(replaceableOuputStream);
         }
 
         protected Cipher getSymmetricCipher() {
@@ -851,5 +964,153 @@ public abstract class AbstractDecryptInputProcessor extends AbstractInputProcess
         protected void setSecretKey(Key secretKey) {
             this.secretKey = secretKey;
         }
+
+        void setGCMBufferThreshold(long gcmBufferThreshold) {
+            this.gcmBufferThreshold = gcmBufferThreshold;
+        }
+    }
+
+    /**
+     * Pull-style InputStream which decrypts the CipherValue content in the reading thread.
+     * The encrypted events are requested from the processor chain only when the StAX reader
+     * needs more decrypted bytes. When the amount of processed CipherValue characters exceeds
+     * the threshold, the rest of the decryption is handed over to a task in the Executor.
+     */
+    static class InlineDecryptionInputStream extends InputStream {
+
+        private final DecryptionThread decryptionThread;
+        private final Executor executor;
+        private final long handOverThreshold;
+        private final DecryptedBytesBuffer buffer = new DecryptedBytesBuffer();
+        private InputStream handedOverInputStream;
+        private boolean finished = false;
+
+        InlineDecryptionInputStream(DecryptionThread decryptionThread, Executor executor, long handOverThreshold) {
+            this.decryptionThread = decryptionThread;
+            this.executor = executor;
+            this.handOverThreshold = handOverThreshold;
+            decryptionThread.connect(buffer);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int read = read(b, 0, 1);
+            if (read <= 0) {
+                return -1;
+            }
+            return b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (true) {
+                int read = buffer.read(b, off, len);
+                if (read > 0) {
+                    return read;
+                }
+                if (handedOverInputStream != null) {
+                    return handedOverInputStream.read(b, off, len);
+                }
+                if (finished) {
+                    return -1;
+                }
+                decryptNextEvent();
+            }
+        }
+
+        @Override
+        public int available() throws IOException {
+            int available = buffer.available();
+            if (available == 0 && handedOverInputStream != null) {
+                return handedOverInputStream.available();
+            }
+            return available;
+        }
+
+        private void decryptNextEvent() throws IOException {
+            try {
+                if (!decryptionThread.decryptNextEvent(true)) {
+                    finished = true;
+                    decryptionThread.finishedInline();
+                    return;
+                }
+            } catch (Exception e) {
+                finished = true;
+                decryptionThread.failed(new UncheckedXMLSecurityException(e));
+                decryptionThread.finishedInline();
+                throw new IOException(e);
+            }
+            if (handOverThreshold >= 0 && decryptionThread.getProcessedCharacters() > handOverThreshold) {
+                //the already decrypted bytes in the buffer will be read first
+                handedOverInputStream = decryptionThread.connectRingBuffer();
+                log.debug("Handing over decryption to a decryption thread");
+                try {
+                    executor.execute(decryptionThread);
+                } catch (RejectedExecutionException e) {
+                    finished = true;
+                    decryptionThread.failed(new UncheckedXMLSecurityException(e));
+                    decryptionThread.finishedInline();
+                    throw new IOException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Growable byte buffer which is filled by the decryption chain and drained by the
+     * InlineDecryptionInputStream in the same thread.
+     */
+    static class DecryptedBytesBuffer extends OutputStream {
+
+        private byte[] buf = new byte[8192];
+        private int readPos;
+        private int writePos;
+
+        @Override
+        public void write(int b) throws IOException {
+            ensureCapacity(1);
+            buf[writePos++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ensureCapacity(len);
+            System.arraycopy(b, off, buf, writePos, len);
+            writePos += len;
+        }
+
+        private void ensureCapacity(int len) {
+            if (readPos == writePos) {
+                readPos = writePos = 0;
+            }
+            if (writePos + len > buf.length) {
+                int remaining = writePos - readPos;
+                byte[] target = buf;
+                if (remaining + len > buf.length) {
+                    target = new byte[Math.max(buf.length << 1, remaining + len)];
+                }
+                System.arraycopy(buf, readPos, target, 0, remaining);
+                buf = target;
+                readPos = 0;
+                writePos = remaining;
+            }
+        }
+
+        int read(byte[] b, int off, int len) {
+            int toRead = Math.min(len, writePos - readPos);
+            if (toRead > 0) {
+                System.arraycopy(buf, readPos, b, off, toRead);
+                readPos += toRead;
+            }
+            return toRead;
+        }
+
+        int available() {
+            return writePos - readPos;
+        }
     }
 }
@@ -26,10 +26,10 @@ import org.apache.xml.security.stax.ext.XMLSecurityProperties;
 import org.apache.xml.security.stax.ext.stax.XMLSecEndElement;
 import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
 import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
+import org.apache.xml.security.stax.impl.util.XMLSecEventBuffer;
 
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
-import java.util.ArrayDeque;
 
 /**
  * Processor for XML Security.
@@ -85,7 +85,10 @@ public class XMLSecurityInputProcessor extends AbstractInputProcessor {
                         throw new XMLSecurityException("stax.multipleSignaturesNotSupported");
                     }
                     signatureElementFound = true;
-                    startIndexForProcessor = internalBufferProcessor.getXmlSecEventList().size() - 1;
+                    final XMLSecEventBuffer xmlSecEventBuffer = internalBufferProcessor.getXmlSecEventBuffer();
+                    startIndexForProcessor = xmlSecEventBuffer.size() - 1;
+                    // the Signature element must stay in memory for the XMLSignatureInputHandler
+                    xmlSecEventBuffer.setSpillingEnabled(false);
                 } else if (xmlSecStartElement.getName().equals(XMLSecurityConstants.TAG_xenc_EncryptedData)) {
                     encryptedDataElementFound = true;
 
@@ -97,9 +100,9 @@ public class XMLSecurityInputProcessor extends AbstractInputProcessor {
                     inputProcessorChain.addProcessor(decryptInputProcessor);
 
                     if (!decryptOnly) {
-                        final ArrayDeque<XMLSecEvent> xmlSecEventList = internalBufferProcessor.getXmlSecEventList();
+                        final XMLSecEventBuffer xmlSecEventBuffer = internalBufferProcessor.getXmlSecEventBuffer();
                         //remove the last event (EncryptedData)
-                        xmlSecEventList.pollFirst();
+                        xmlSecEventBuffer.pollFirst();
                     }
 
                     // temporary processor to return the EncryptedData element for the DecryptionProcessor
@@ -144,21 +147,23 @@ public class XMLSecurityInputProcessor extends AbstractInputProcessor {
                         && xmlSecEndElement.getName().equals(XMLSecurityConstants.TAG_dsig_Signature)) {
                     XMLSignatureInputHandler inputHandler = new XMLSignatureInputHandler();
 
-                    final ArrayDeque<XMLSecEvent> xmlSecEventList = internalBufferProcessor.getXmlSecEventList();
+                    final XMLSecEventBuffer xmlSecEventBuffer = internalBufferProcessor.getXmlSecEventBuffer();
+                    // older events may have been spilled, the Signature element is held in memory
                     inputHandler.handle(inputProcessorChain, getSecurityProperties(),
-                            xmlSecEventList, startIndexForProcessor);
+                            xmlSecEventBuffer.getXmlSecEventDeque(),
+                            startIndexForProcessor - xmlSecEventBuffer.getSpilledEventCount());
 
                     inputProcessorChain.removeProcessor(internalBufferProcessor);
 
                     //add the replay processor to the chain...
                     InternalReplayProcessor internalReplayProcessor =
-                            new InternalReplayProcessor(getSecurityProperties(), xmlSecEventList);
+                            new InternalReplayProcessor(getSecurityProperties(), xmlSecEventBuffer);
                     internalReplayProcessor.addBeforeProcessor(XMLSignatureReferenceVerifyInputProcessor.class.getName());
                     inputProcessorChain.addProcessor(internalReplayProcessor);
 
                     //...and let the SignatureVerificationProcessor process the buffered events (enveloped signature).
                     InputProcessorChain subInputProcessorChain = inputProcessorChain.createSubChain(this, false);
-                    while (!xmlSecEventList.isEmpty()) {
+                    while (!xmlSecEventBuffer.isEmpty()) {
                         subInputProcessorChain.reset();
                         subInputProcessorChain.processEvent();
                     }
@@ -175,6 +180,9 @@ public class XMLSecurityInputProcessor extends AbstractInputProcessor {
 
     @Override
     public void doFinal(InputProcessorChain inputProcessorChain) throws XMLStreamException, XMLSecurityException {
+        if (internalBufferProcessor != null) {
+            internalBufferProcessor.getXmlSecEventBuffer().discard();
+        }
         if (!signatureElementFound && !encryptedDataElementFound) {
             throw new XMLSecurityException("stax.unsecuredMessage");
         }
@@ -186,16 +194,17 @@ public class XMLSecurityInputProcessor extends AbstractInputProcessor {
      */
     public class InternalBufferProcessor extends AbstractInputProcessor {
 
-        private final ArrayDeque<XMLSecEvent> xmlSecEventList = new ArrayDeque<XMLSecEvent>();
+        private final XMLSecEventBuffer xmlSecEventBuffer;
 
         InternalBufferProcessor(XMLSecurityProperties securityProperties) {
             super(securityProperties);
+            xmlSecEventBuffer = new XMLSecEventBuffer(securityProperties.getSignatureEventBufferThreshold());
             setPhase(XMLSecurityConstants.Phase.POSTPROCESSING);
             addBeforeProcessor(XMLSecurityInputProcessor.class.getName());
         }
 
-        public ArrayDeque<XMLSecEvent> getXmlSecEventList() {
-            return xmlSecEventList;
+        public XMLSecEventBuffer getXmlSecEventBuffer() {
+            return xmlSecEventBuffer;
         }
 
         @Override
@@ -208,7 +217,7 @@ public class XMLSecurityInputProcessor extends AbstractInputProcessor {
         public XMLSecEvent processNextEvent(InputProcessorChain inputProcessorChain)
                 throws XMLStreamException, XMLSecurityException {
             XMLSecEvent xmlSecEvent = inputProcessorChain.processEvent();
-            xmlSecEventList.push(xmlSecEvent);
+            xmlSecEventBuffer.push(xmlSecEvent);
             return xmlSecEvent;
         }
     }
@@ -218,11 +227,11 @@ public class XMLSecurityInputProcessor extends AbstractInputProcessor {
      */
     public class InternalReplayProcessor extends AbstractInputProcessor {
 
-        private final ArrayDeque<XMLSecEvent> xmlSecEventList;
+        private final XMLSecEventBuffer xmlSecEventBuffer;
 
-        public InternalReplayProcessor(XMLSecurityProperties securityProperties, ArrayDeque<XMLSecEvent> xmlSecEventList) {
+        public InternalReplayProcessor(XMLSecurityProperties securityProperties, XMLSecEventBuffer xmlSecEventBuffer) {
             super(securityProperties);
-            this.xmlSecEventList = xmlSecEventList;
+            this.xmlSecEventBuffer = xmlSecEventBuffer;
         }
 
         @Override
@@ -235,8 +244,8 @@ public class XMLSecurityInputProcessor extends AbstractInputProcessor {
         public XMLSecEvent processNextEvent(InputProcessorChain inputProcessorChain)
                 throws XMLStreamException, XMLSecurityException {
 
-            if (!xmlSecEventList.isEmpty()) {
-                return xmlSecEventList.pollLast();
+            if (!xmlSecEventBuffer.isEmpty()) {
+                return xmlSecEventBuffer.pollLast();
             } else {
                 inputProcessorChain.removeProcessor(this);
                 return inputProcessorChain.processEvent();
@@ -18,7 +18,6 @@
  */
 package org.apache.xml.security.stax.impl.processor.output;
 
-import org.apache.commons.codec.binary.Base64OutputStream;
 import org.apache.xml.security.algorithms.JCEMapper;
 import org.apache.xml.security.encryption.XMLCipherUtil;
 import org.apache.xml.security.exceptions.XMLSecurityException;
@@ -31,6 +30,7 @@ import org.apache.xml.security.stax.ext.stax.*;
 import org.apache.xml.security.stax.impl.EncryptionPartDef;
 import org.apache.xml.security.stax.impl.XMLSecurityEventWriter;
 import org.apache.xml.security.stax.impl.util.TrimmerOutputStream;
+import org.apache.xml.security.utils.Base64EncodingOutputStream;
 
 import javax.crypto.Cipher;
 import javax.crypto.CipherOutputStream;
@@ -41,6 +41,7 @@ import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.Writer;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
@@ -123,7 +124,7 @@ public abstract class AbstractEncryptOutputProcessor extends AbstractOutputProce
     public abstract class AbstractInternalEncryptionOutputProcessor extends AbstractOutputProcessor {
 
         private EncryptionPartDef encryptionPartDef;
-        private CharacterEventGeneratorOutputStream characterEventGeneratorOutputStream;
+        private CharacterEventGeneratorWriter characterEventGeneratorWriter;
         private XMLEventWriter xmlEventWriter;
         private OutputStream cipherOutputStream;
         private String encoding;
@@ -163,9 +164,9 @@ public abstract class AbstractEncryptOutputProcessor extends AbstractOutputProce
                     XMLCipherUtil.constructBlockCipherParameters(encryptionSymAlgorithm, iv, this.getClass());
                 symmetricCipher.init(Cipher.ENCRYPT_MODE, encryptionPartDef.getSymmetricKey(), parameterSpec);
 
-                characterEventGeneratorOutputStream = new CharacterEventGeneratorOutputStream();
-                Base64OutputStream base64EncoderStream =
-                        new Base64OutputStream(characterEventGeneratorOutputStream, true, 0, null);
+                characterEventGeneratorWriter = new CharacterEventGeneratorWriter();
+                OutputStream base64EncoderStream =
+                        new Base64EncodingOutputStream(characterEventGeneratorWriter, 0);
                 base64EncoderStream.write(iv);
 
                 OutputStream outputStream = new CipherOutputStream(base64EncoderStream, symmetricCipher);
@@ -258,7 +259,7 @@ public abstract class AbstractEncryptOutputProcessor extends AbstractOutputProce
                     encryptEvent(xmlSecEvent);
 
                     //push all buffered encrypted character events through the chain
-                    final Deque<XMLSecCharacters> charactersBuffer = characterEventGeneratorOutputStream.getCharactersBuffer();
+                    final Deque<XMLSecCharacters> charactersBuffer = characterEventGeneratorWriter.getCharactersBuffer();
                     if (charactersBuffer.size() > 5) {
                         OutputProcessorChain subOutputProcessorChain = outputProcessorChain.createSubChain(this);
                         Iterator<XMLSecCharacters> charactersIterator = charactersBuffer.iterator();
@@ -332,7 +333,7 @@ public abstract class AbstractEncryptOutputProcessor extends AbstractOutputProce
             }
 
             //push all buffered encrypted character events through the chain
-            final Deque<XMLSecCharacters> charactersBuffer = characterEventGeneratorOutputStream.getCharactersBuffer();
+            final Deque<XMLSecCharacters> charactersBuffer = characterEventGeneratorWriter.getCharactersBuffer();
             if (!charactersBuffer.isEmpty()) {
                 Iterator<XMLSecCharacters> charactersIterator = charactersBuffer.iterator();
                 while (charactersIterator.hasNext()) {
@@ -373,9 +374,9 @@ public abstract class AbstractEncryptOutputProcessor extends AbstractOutputProce
     }
 
     /**
-     * Creates Character-XMLEvents from the byte stream
+     * Creates Character-XMLEvents from the Base64 encoded characters
      */
-    public class CharacterEventGeneratorOutputStream extends OutputStream {
+    public class CharacterEventGeneratorWriter extends Writer {
 
         private final Deque<XMLSecCharacters> charactersBuffer = new ArrayDeque<XMLSecCharacters>();
 
@@ -384,26 +385,19 @@ public abstract class AbstractEncryptOutputProcessor extends AbstractOutputProce
         }
 
         @Override
-        public void write(int b) throws IOException {
-            charactersBuffer.offer(createCharacters(new char[]{(char)b}));
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            //the encoder reuses its buffer
+            charactersBuffer.offer(createCharacters(Arrays.copyOfRange(cbuf, off, off + len)));
         }
 
         @Override
-        public void write(byte[] b) throws IOException {
-            charactersBuffer.offer(createCharacters(byteToCharArray(b, 0, b.length)));
+        public void flush() throws IOException {
+            //the buffered events are pushed through the chain by the processor
         }
 
         @Override
-        public void write(byte[] b, int off, int len) throws IOException {
-            charactersBuffer.offer(createCharacters(byteToCharArray(b, off, len)));
+        public void close() throws IOException {
+            //the buffered events are pushed through the chain by the processor
         }
     }
-
-    private char[] byteToCharArray(byte[]  bytes, int off, int len) {
-        char[] chars = new char[len];
-        for (int i = off; i < len; i++) {
-            chars[i] = (char)bytes[i];
-        }
-        return chars;
-    }
 }
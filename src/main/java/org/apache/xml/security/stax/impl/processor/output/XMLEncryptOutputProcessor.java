@@ -18,7 +18,7 @@
  */
 package org.apache.xml.security.stax.impl.processor.output;
 
-import org.apache.commons.codec.binary.Base64;
+import org.apache.xml.security.utils.Base64;
 import org.apache.xml.security.stax.securityToken.SecurityTokenConstants;
 import org.apache.xml.security.stax.securityToken.SecurityTokenProvider;
 import org.slf4j.Logger;
@@ -157,7 +157,7 @@ public class XMLEncryptOutputProcessor extends AbstractEncryptOutputProcessor {
                             byte[] oaepParams = getSecurityProperties().getEncryptionKeyTransportOAEPParams();
                             if (oaepParams != null) {
                                 createStartElementAndOutputAsEvent(outputProcessorChain, XMLSecurityConstants.TAG_xenc_OAEPparams, false, null);
-                                createCharactersAndOutputAsEvent(outputProcessorChain, Base64.encodeBase64String(oaepParams));
+                                createCharactersAndOutputAsEvent(outputProcessorChain, Base64.encode(oaepParams, 0));
                                 createEndElementAndOutputAsEvent(outputProcessorChain, XMLSecurityConstants.TAG_xenc_OAEPparams);
                             }
 
@@ -240,7 +240,7 @@ public class XMLEncryptOutputProcessor extends AbstractEncryptOutputProcessor {
                             }
                             byte[] encryptedEphemeralKey = cipher.wrap(sessionKey);
 
-                            createCharactersAndOutputAsEvent(outputProcessorChain, new Base64(76, new byte[]{'\n'}).encodeToString(encryptedEphemeralKey));
+                            createCharactersAndOutputAsEvent(outputProcessorChain, Base64.encode(encryptedEphemeralKey, Base64.BASE64DEFAULTLENGTH));
 
                         } catch (NoSuchPaddingException e) {
                             throw new XMLSecurityException(e);
@@ -22,6 +22,7 @@ import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.stax.ext.ResourceResolver;
 import org.apache.xml.security.stax.ext.ResourceResolverLookup;
 import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
+import org.apache.xml.security.utils.resolver.HttpResponseCache;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -100,7 +101,9 @@ public class ResolverHttp implements ResourceResolver, ResourceResolverLookup {
             } else {
                 urlConnection = (HttpURLConnection)url.openConnection();
             }
-            return urlConnection.getInputStream();
+            // the content is only read into memory if it is cached, otherwise it is streamed
+            HttpResponseCache.Response cached = HttpResponseCache.addValidators(urlConnection);
+            return HttpResponseCache.getResponse(urlConnection, cached).getInputStream();
         } catch (MalformedURLException e) {
             throw new XMLSecurityException(e);
         } catch (IOException e) {
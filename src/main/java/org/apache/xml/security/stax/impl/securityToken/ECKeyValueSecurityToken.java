@@ -20,6 +20,7 @@ package org.apache.xml.security.stax.impl.securityToken;
 
 import org.apache.xml.security.binding.xmldsig11.ECKeyValueType;
 import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.keys.DecodedKeyCache;
 import org.apache.xml.security.stax.ext.InboundSecurityContext;
 import org.apache.xml.security.stax.impl.algorithms.ECDSAUtils;
 import org.apache.xml.security.stax.impl.util.IDGenerator;
@@ -93,13 +94,21 @@ public class ECKeyValueSecurityToken extends AbstractInboundSecurityToken {
     @Override
     public PublicKey getPublicKey() throws XMLSecurityException {
         if (super.getPublicKey() == null) {
-            try {
-                setPublicKey(buildPublicKey(this.ecKeyValueType));
-            } catch (InvalidKeySpecException e) {
-                throw new XMLSecurityException(e);
-            } catch (NoSuchAlgorithmException e) {
-                throw new XMLSecurityException(e);
+            String cacheKey = DecodedKeyCache.getKey(
+                    "ECKeyValue:" + ecKeyValueType.getNamedCurve().getURI(),
+                    ecKeyValueType.getPublicKey());
+            PublicKey publicKey = DecodedKeyCache.get(cacheKey, PublicKey.class);
+            if (publicKey == null) {
+                try {
+                    publicKey = buildPublicKey(this.ecKeyValueType);
+                } catch (InvalidKeySpecException e) {
+                    throw new XMLSecurityException(e);
+                } catch (NoSuchAlgorithmException e) {
+                    throw new XMLSecurityException(e);
+                }
+                DecodedKeyCache.put(cacheKey, publicKey);
             }
+            setPublicKey(publicKey);
         }
         return super.getPublicKey();
     }
@@ -20,6 +20,7 @@ package org.apache.xml.security.stax.impl.securityToken;
 
 import org.apache.xml.security.binding.xmldsig.RSAKeyValueType;
 import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.keys.DecodedKeyCache;
 import org.apache.xml.security.stax.ext.InboundSecurityContext;
 import org.apache.xml.security.stax.impl.util.IDGenerator;
 import org.apache.xml.security.stax.securityToken.SecurityTokenConstants;
@@ -55,13 +56,20 @@ public class RsaKeyValueSecurityToken extends AbstractInboundSecurityToken {
     @Override
     public PublicKey getPublicKey() throws XMLSecurityException {
         if (super.getPublicKey() == null) {
-            try {
-                setPublicKey(buildPublicKey(this.rsaKeyValueType));
-            } catch (InvalidKeySpecException e) {
-                throw new XMLSecurityException(e);
-            } catch (NoSuchAlgorithmException e) {
-                throw new XMLSecurityException(e);
+            String cacheKey = DecodedKeyCache.getKey(
+                    "RSAKeyValue", rsaKeyValueType.getModulus(), rsaKeyValueType.getExponent());
+            PublicKey publicKey = DecodedKeyCache.get(cacheKey, PublicKey.class);
+            if (publicKey == null) {
+                try {
+                    publicKey = buildPublicKey(this.rsaKeyValueType);
+                } catch (InvalidKeySpecException e) {
+                    throw new XMLSecurityException(e);
+                } catch (NoSuchAlgorithmException e) {
+                    throw new XMLSecurityException(e);
+                }
+                DecodedKeyCache.put(cacheKey, publicKey);
             }
+            setPublicKey(publicKey);
         }
         return super.getPublicKey();
     }
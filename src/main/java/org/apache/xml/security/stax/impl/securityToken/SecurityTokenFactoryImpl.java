@@ -21,6 +21,7 @@ package org.apache.xml.security.stax.impl.securityToken;
 import org.apache.xml.security.binding.xmldsig.*;
 import org.apache.xml.security.binding.xmldsig11.ECKeyValueType;
 import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.keys.DecodedKeyCache;
 import org.apache.xml.security.stax.ext.*;
 import org.apache.xml.security.stax.impl.util.IDGenerator;
 import org.apache.xml.security.stax.securityToken.SecurityTokenConstants.TokenType;
@@ -268,12 +269,19 @@ public class SecurityTokenFactoryImpl extends SecurityTokenFactory {
      */
     private static X509Certificate getCertificateFromBytes(byte[] data)
             throws XMLSecurityException {
+        String cacheKey = DecodedKeyCache.getKey("X509Certificate", data);
+        X509Certificate cert = DecodedKeyCache.get(cacheKey, X509Certificate.class);
+        if (cert != null) {
+            return cert;
+        }
         InputStream in = new UnsynchronizedByteArrayInputStream(data);
         try {
             CertificateFactory factory = CertificateFactory.getInstance("X.509");
-            return (X509Certificate) factory.generateCertificate(in);
+            cert = (X509Certificate) factory.generateCertificate(in);
         } catch (CertificateException e) {
             throw new XMLSecurityException(e);
         }
+        DecodedKeyCache.put(cacheKey, cert);
+        return cert;
     }
 }
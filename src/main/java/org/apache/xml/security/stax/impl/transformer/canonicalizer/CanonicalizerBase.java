@@ -18,6 +18,7 @@
  */
 package org.apache.xml.security.stax.impl.transformer.canonicalizer;
 
+import org.apache.xml.security.c14n.implementations.EscapingEncoder;
 import org.apache.xml.security.c14n.implementations.UtfHelpper;
 import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.stax.ext.Transformer;
@@ -44,14 +45,8 @@ public abstract class CanonicalizerBase extends TransformIdentity {
     static final byte[] _BEGIN_PI = {'<', '?'};
     static final byte[] _END_COMM = {'-', '-', '>'};
     static final byte[] _BEGIN_COMM = {'<', '!', '-', '-'};
-    static final byte[] __XA_ = {'&', '#', 'x', 'A', ';'};
-    static final byte[] __X9_ = {'&', '#', 'x', '9', ';'};
-    static final byte[] _QUOT_ = {'&', 'q', 'u', 'o', 't', ';'};
     static final byte[] __XD_ = {'&', '#', 'x', 'D', ';'};
-    static final byte[] _GT_ = {'&', 'g', 't', ';'};
-    static final byte[] _LT_ = {'&', 'l', 't', ';'};
     static final byte[] _END_TAG = {'<', '/'};
-    static final byte[] _AMP_ = {'&', 'a', 'm', 'p', ';'};
     static final byte[] EQUAL_STRING = {'=', '\"'};
     static final byte[] NEWLINE = {'\n'};
 
@@ -67,6 +62,7 @@ public abstract class CanonicalizerBase extends TransformIdentity {
 
     private static final Map<String, byte[]> cache = new WeakHashMap<String, byte[]>();
     private final C14NStack<XMLSecEvent> outputStack = new C14NStack<XMLSecEvent>();
+    private final EscapingEncoder escapingEncoder = new EscapingEncoder();
     private boolean includeComments = false;
     private DocumentLevel currentDocumentLevel = DocumentLevel.NODE_BEFORE_DOCUMENT_ELEMENT;
 
@@ -396,8 +392,8 @@ public abstract class CanonicalizerBase extends TransformIdentity {
         }
     }
 
-    protected static void outputAttrToWriter(final String prefix, final String name, final String value, final OutputStream writer,
-                                             final Map<String, byte[]> cache) throws IOException {
+    protected void outputAttrToWriter(final String prefix, final String name, final String value, final OutputStream writer,
+                                      final Map<String, byte[]> cache) throws IOException {
         writer.write(' ');
         if (prefix != null) {
             UtfHelpper.writeByte(prefix, writer, cache);
@@ -405,50 +401,7 @@ public abstract class CanonicalizerBase extends TransformIdentity {
         }
         UtfHelpper.writeByte(name, writer, cache);
         writer.write(EQUAL_STRING);
-        byte[] toWrite;
-        final int length = value.length();
-        int i = 0;
-        while (i < length) {
-            final int c = value.codePointAt(i);
-            i += Character.charCount(c);
-
-            switch (c) {
-
-                case '&':
-                    toWrite = _AMP_;
-                    break;
-
-                case '<':
-                    toWrite = _LT_;
-                    break;
-
-                case '"':
-                    toWrite = _QUOT_;
-                    break;
-
-                case 0x09:    // '\t'
-                    toWrite = __X9_;
-                    break;
-
-                case 0x0A:    // '\n'
-                    toWrite = __XA_;
-                    break;
-
-                case 0x0D:    // '\r'
-                    toWrite = __XD_;
-                    break;
-
-                default:
-                    if (c < 0x80) {
-                        writer.write(c);
-                    } else {
-                        UtfHelpper.writeCodePointToUtf8(c, writer);
-                    }
-                    continue;
-            }
-            writer.write(toWrite);
-        }
-
+        escapingEncoder.writeAttributeValue(value, writer);
         writer.write('\"');
     }
 
@@ -459,82 +412,12 @@ public abstract class CanonicalizerBase extends TransformIdentity {
      * @param writer writer where to write the things
      * @throws IOException
      */
-    protected static void outputTextToWriter(final String text, final OutputStream writer) throws IOException {
-        final int length = text.length();
-        byte[] toWrite;
-        for (int i = 0; i < length; ) {
-            final int c = text.codePointAt(i);
-            i += Character.charCount(c);
-
-            switch (c) {
-
-                case '&':
-                    toWrite = _AMP_;
-                    break;
-
-                case '<':
-                    toWrite = _LT_;
-                    break;
-
-                case '>':
-                    toWrite = _GT_;
-                    break;
-
-                case 0xD:
-                    toWrite = __XD_;
-                    break;
-
-                default:
-                    if (c < 0x80) {
-                        writer.write(c);
-                    } else {
-                        UtfHelpper.writeCodePointToUtf8(c, writer);
-                    }
-                    continue;
-            }
-            writer.write(toWrite);
-        }
+    protected void outputTextToWriter(final String text, final OutputStream writer) throws IOException {
+        escapingEncoder.writeText(text, writer);
     }
 
-    protected static void outputTextToWriter(final char[] text, final OutputStream writer) throws IOException {
-        final int length = text.length;
-        byte[] toWrite;
-        for (int i = 0; i < length; i++) {
-            int c;
-            if (Character.isHighSurrogate(text[i]) && i + 1 != length && Character.isLowSurrogate(text[i+1])) {
-                c = Character.toCodePoint(text[i], text[++i]);
-            } else {
-                c = text[i];
-            }
-
-            switch (c) {
-
-                case '&':
-                    toWrite = _AMP_;
-                    break;
-
-                case '<':
-                    toWrite = _LT_;
-                    break;
-
-                case '>':
-                    toWrite = _GT_;
-                    break;
-
-                case 0xD:
-                    toWrite = __XD_;
-                    break;
-
-                default:
-                    if (c < 0x80) {
-                        writer.write(c);
-                    } else {
-                        UtfHelpper.writeCodePointToUtf8(c, writer);
-                    }
-                    continue;
-            }
-            writer.write(toWrite);
-        }
+    protected void outputTextToWriter(final char[] text, final OutputStream writer) throws IOException {
+        escapingEncoder.writeText(text, writer);
     }
 
     /**
@@ -0,0 +1,234 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.stax.impl.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded single-producer/single-consumer byte ring buffer which connects
+ * an OutputStream written by one thread with an InputStream read by another thread.
+ * In contrast to PipedInputStream/PipedOutputStream it doesn't use monitors and isn't
+ * bound to the identity of the reading and writing threads, so it can be used together
+ * with pooled threads.
+ *
+ * @author $Author$
+ * @version $Revision$ $Date$
+ */
+public class ByteRingBuffer {
+
+    private final byte[] buffer;
+    private final int mask;
+
+    //total number of bytes read resp. written. Only the owning side updates its counter
+    private final AtomicLong readPosition = new AtomicLong();
+    private final AtomicLong writePosition = new AtomicLong();
+
+    private volatile Thread waitingReader;
+    private volatile Thread waitingWriter;
+    private volatile boolean writerClosed;
+    private volatile boolean readerClosed;
+
+    private final InputStream inputStream = new RingBufferInputStream();
+    private final OutputStream outputStream = new RingBufferOutputStream();
+
+    /**
+     * @param capacity the minimum capacity of the buffer. It will be rounded up to the next power of two.
+     */
+    public ByteRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.buffer = new byte[size];
+        this.mask = size - 1;
+    }
+
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    public int getCapacity() {
+        return buffer.length;
+    }
+
+    private void park(boolean reader) throws InterruptedIOException {
+        //the waiting thread is registered before the condition is rechecked by the caller,
+        //the counterpart publishes its position before looking for a waiting thread.
+        //Therefore a wakeup can't get lost. Spurious wakeups are handled by the caller's loop.
+        LockSupport.park(this);
+        if (Thread.interrupted()) {
+            if (reader) {
+                waitingReader = null;
+            } else {
+                waitingWriter = null;
+            }
+            throw new InterruptedIOException();
+        }
+    }
+
+    class RingBufferInputStream extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int read = read(b, 0, 1);
+            if (read <= 0) {
+                return -1;
+            }
+            return b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (off < 0 || len < 0 || len > b.length - off) {
+                throw new IndexOutOfBoundsException();
+            }
+            if (len == 0) {
+                return 0;
+            }
+            if (readerClosed) {
+                throw new IOException("Pipe closed");
+            }
+            final long readPos = readPosition.get();
+            long available = writePosition.get() - readPos;
+            while (available == 0) {
+                //writerClosed must be read before the final check of the write position
+                //to not miss the last bytes written before close()
+                boolean closed = writerClosed;
+                available = writePosition.get() - readPos;
+                if (available != 0) {
+                    break;
+                }
+                if (closed) {
+                    return -1;
+                }
+                waitingReader = Thread.currentThread();
+                available = writePosition.get() - readPos;
+                if (available == 0 && !writerClosed) {
+                    park(true);
+                    available = writePosition.get() - readPos;
+                }
+                waitingReader = null;
+            }
+
+            final int toRead = (int) Math.min(available, len);
+            final int index = (int) (readPos & mask);
+            final int firstChunk = Math.min(toRead, buffer.length - index);
+            System.arraycopy(buffer, index, b, off, firstChunk);
+            if (firstChunk < toRead) {
+                System.arraycopy(buffer, 0, b, off + firstChunk, toRead - firstChunk);
+            }
+            readPosition.set(readPos + toRead);
+
+            Thread writer = waitingWriter;
+            if (writer != null) {
+                LockSupport.unpark(writer);
+            }
+            return toRead;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) (writePosition.get() - readPosition.get());
+        }
+
+        @Override
+        public void close() throws IOException {
+            readerClosed = true;
+            Thread writer = waitingWriter;
+            if (writer != null) {
+                LockSupport.unpark(writer);
+            }
+        }
+    }
+
+    class RingBufferOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (off < 0 || len < 0 || len > b.length - off) {
+                throw new IndexOutOfBoundsException();
+            }
+            if (writerClosed) {
+                throw new IOException("Pipe closed");
+            }
+            while (len > 0) {
+                final long writePos = writePosition.get();
+                long free = buffer.length - (writePos - readPosition.get());
+                while (free == 0) {
+                    if (readerClosed) {
+                        throw new IOException("Read end closed");
+                    }
+                    waitingWriter = Thread.currentThread();
+                    free = buffer.length - (writePos - readPosition.get());
+                    if (free == 0 && !readerClosed) {
+                        park(false);
+                        free = buffer.length - (writePos - readPosition.get());
+                    }
+                    waitingWriter = null;
+                }
+                if (readerClosed) {
+                    throw new IOException("Read end closed");
+                }
+
+                final int toWrite = (int) Math.min(free, len);
+                final int index = (int) (writePos & mask);
+                final int firstChunk = Math.min(toWrite, buffer.length - index);
+                System.arraycopy(b, off, buffer, index, firstChunk);
+                if (firstChunk < toWrite) {
+                    System.arraycopy(b, off + firstChunk, buffer, 0, toWrite - firstChunk);
+                }
+                writePosition.set(writePos + toWrite);
+                off += toWrite;
+                len -= toWrite;
+
+                Thread reader = waitingReader;
+                if (reader != null) {
+                    LockSupport.unpark(reader);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            writerClosed = true;
+            Thread reader = waitingReader;
+            if (reader != null) {
+                LockSupport.unpark(reader);
+            }
+        }
+    }
+}
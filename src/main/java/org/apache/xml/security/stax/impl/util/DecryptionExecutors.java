@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.stax.impl.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Provides the Executors which run the streaming decryption tasks when no
+ * Executor is configured in the XMLSecurityProperties.
+ *
+ * The streaming decryption task and the reader of the decrypted stream depend on each other,
+ * so the default Executor never queues a task: idle threads are reused and a new thread is
+ * only created when all pooled threads are busy.
+ *
+ * @author $Author$
+ * @version $Revision$ $Date$
+ */
+public final class DecryptionExecutors {
+
+    private static final transient Logger log = LoggerFactory.getLogger(DecryptionExecutors.class);
+
+    private static final ExecutorService defaultExecutor;
+    private static final ExecutorService virtualThreadExecutor;
+
+    static {
+        final AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(
+                0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "decryption thread-" + threadCount.incrementAndGet());
+                        thread.setPriority(Thread.NORM_PRIORITY + 1);
+                        //idle pooled threads must not prevent the jvm from shutting down
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        defaultExecutor = Executors.unconfigurableExecutorService(threadPoolExecutor);
+
+        ExecutorService executorService = null;
+        try {
+            //virtual threads are only available in newer jdk's
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            executorService = (ExecutorService) method.invoke(null);
+        } catch (Exception e) {
+            log.debug("Virtual threads are not available: " + e.getMessage());
+        }
+        virtualThreadExecutor = executorService;
+    }
+
+    private DecryptionExecutors() {
+    }
+
+    /**
+     * @return the shared, pooled Executor which is used by default
+     */
+    public static Executor getDefaultExecutor() {
+        return defaultExecutor;
+    }
+
+    /**
+     * @return true if the running jvm supports virtual threads
+     */
+    public static boolean isVirtualThreadExecutorAvailable() {
+        return virtualThreadExecutor != null;
+    }
+
+    /**
+     * Returns an Executor which starts a new virtual thread per task. When the running jvm
+     * doesn't support virtual threads, the default Executor is returned instead.
+     *
+     * @return the virtual thread Executor if available, the default Executor otherwise
+     */
+    public static Executor getVirtualThreadExecutor() {
+        if (virtualThreadExecutor == null) {
+            log.debug("Virtual threads are not supported by this jvm, falling back to the default executor");
+            return defaultExecutor;
+        }
+        return virtualThreadExecutor;
+    }
+}
@@ -0,0 +1,266 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.stax.impl.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+
+/**
+ * Buffers all written bytes like the FullyBufferedOutputStream until it is closed.
+ * Once more bytes than the given threshold were written, the buffered bytes are
+ * moved to a temporary file so that the heap usage stays bounded. The temporary file
+ * is deleted after its content was written to the underlying stream or when the
+ * buffered content is discarded.
+ * <p/>
+ * The bytes never reach the disk in the clear: they are encrypted with AES/CTR and a
+ * temporary key which is only held by this instance, and every chunk of the file carries
+ * an HMAC-SHA256 over its position and content, which is verified before the chunk
+ * is decrypted and written to the underlying stream.
+ *
+ * @author $Author$
+ * @version $Revision$ $Date$
+ */
+public class SpillingBufferedOutputStream extends FilterOutputStream {
+
+    private static final int CHUNK_SIZE = 8192;
+    private static final String SPILL_CIPHER_ALGORITHM = "AES/CTR/NoPadding";
+    private static final String SPILL_MAC_ALGORITHM = "HmacSHA256";
+
+    private final long threshold;
+    private UnsynchronizedByteArrayOutputStream buf = new UnsynchronizedByteArrayOutputStream();
+    private File tempFile;
+    private DataOutputStream tempFileOutputStream;
+
+    private SecretKey spillKey;
+    private SecretKey macKey;
+    private byte[] iv;
+    private Cipher encryptCipher;
+    private Mac mac;
+    private byte[] chunk;
+    private int chunkLength;
+    private long chunkCount;
+
+    /**
+     * @param out       the OutputStream which receives the buffered bytes on close()
+     * @param threshold the number of bytes which are kept in memory
+     */
+    public SpillingBufferedOutputStream(OutputStream out, long threshold) {
+        super(out);
+        this.threshold = threshold;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b) throws IOException {
+        write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (tempFileOutputStream == null && buf.size() + (long) len > threshold) {
+            spill();
+        }
+        if (tempFileOutputStream != null) {
+            writeToChunks(b, off, len);
+        } else {
+            buf.write(b, off, len);
+        }
+    }
+
+    private void spill() throws IOException {
+        try {
+            KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+            keyGenerator.init(128);
+            spillKey = keyGenerator.generateKey();
+            macKey = KeyGenerator.getInstance(SPILL_MAC_ALGORITHM).generateKey();
+            iv = new byte[16];
+            new SecureRandom().nextBytes(iv);
+            encryptCipher = Cipher.getInstance(SPILL_CIPHER_ALGORITHM);
+            encryptCipher.init(Cipher.ENCRYPT_MODE, spillKey, new IvParameterSpec(iv));
+            mac = Mac.getInstance(SPILL_MAC_ALGORITHM);
+            mac.init(macKey);
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+        chunk = new byte[CHUNK_SIZE];
+        tempFile = File.createTempFile("xmlsec-", ".tmp");
+        tempFileOutputStream =
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), CHUNK_SIZE));
+        byte[] buffered = buf.toByteArray();
+        buf = null;
+        writeToChunks(buffered, 0, buffered.length);
+    }
+
+    private void writeToChunks(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(CHUNK_SIZE - chunkLength, len);
+            System.arraycopy(b, off, chunk, chunkLength, n);
+            chunkLength += n;
+            off += n;
+            len -= n;
+            if (chunkLength == CHUNK_SIZE) {
+                writeChunk(encryptCipher.update(chunk, 0, chunkLength));
+            }
+        }
+    }
+
+    private void writeChunk(byte[] encrypted) throws IOException {
+        if (encrypted == null) {
+            encrypted = new byte[0];
+        }
+        tempFileOutputStream.writeInt(encrypted.length);
+        tempFileOutputStream.write(encrypted);
+        tempFileOutputStream.write(authenticate(chunkCount, encrypted));
+        chunkCount++;
+        chunkLength = 0;
+    }
+
+    private byte[] authenticate(long index, byte[] encrypted) {
+        for (int i = 56; i >= 0; i -= 8) {
+            mac.update((byte) (index >>> i));
+        }
+        return mac.doFinal(encrypted);
+    }
+
+    public boolean isSpilled() {
+        return tempFile != null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (tempFileOutputStream != null) {
+            try {
+                try {
+                    writeChunk(encryptCipher.doFinal(chunk, 0, chunkLength));
+                } catch (GeneralSecurityException e) {
+                    throw new IOException(e);
+                }
+                tempFileOutputStream.close();
+                writeSpilledChunks();
+            } finally {
+                deleteTempFile();
+            }
+        } else if (buf != null) {
+            buf.writeTo(out);
+            buf = null;
+        }
+        out.close();
+    }
+
+    /**
+     * Verifies, decrypts and writes the chunks of the temporary file to the underlying stream.
+     */
+    private void writeSpilledChunks() throws IOException {
+        Cipher decryptCipher;
+        try {
+            decryptCipher = Cipher.getInstance(SPILL_CIPHER_ALGORITHM);
+            decryptCipher.init(Cipher.DECRYPT_MODE, spillKey, new IvParameterSpec(iv));
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+        int macLength = mac.getMacLength();
+        DataInputStream inputStream =
+                new DataInputStream(new BufferedInputStream(new FileInputStream(tempFile), CHUNK_SIZE));
+        try {
+            byte[] tag = new byte[macLength];
+            for (long i = 0; i < chunkCount; i++) {
+                int length = inputStream.readInt();
+                if (length < 0 || length > 2 * CHUNK_SIZE) {
+                    throw new IOException("The temporary buffer file was modified");
+                }
+                byte[] encrypted = new byte[length];
+                inputStream.readFully(encrypted);
+                inputStream.readFully(tag);
+                if (!MessageDigest.isEqual(tag, authenticate(i, encrypted))) {
+                    throw new IOException("The temporary buffer file was modified");
+                }
+                byte[] plain;
+                try {
+                    plain = i == chunkCount - 1
+                            ? decryptCipher.doFinal(encrypted) : decryptCipher.update(encrypted);
+                } catch (GeneralSecurityException e) {
+                    throw new IOException(e);
+                }
+                if (plain != null) {
+                    out.write(plain);
+                }
+            }
+            if (inputStream.read() != -1) {
+                throw new IOException("The temporary buffer file was modified");
+            }
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Drops the buffered bytes without writing them to the underlying stream.
+     */
+    public void discard() {
+        buf = null;
+        if (tempFileOutputStream != null) {
+            try {
+                tempFileOutputStream.close();
+            } catch (IOException e) { //NOPMD
+                //ignore, the file will be deleted anyway
+            }
+            deleteTempFile();
+        }
+    }
+
+    private void deleteTempFile() {
+        if (tempFile != null && !tempFile.delete()) {
+            tempFile.deleteOnExit();
+        }
+        tempFile = null;
+        tempFileOutputStream = null;
+        spillKey = null;
+        macKey = null;
+        iv = null;
+        encryptCipher = null;
+        mac = null;
+        chunk = null;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        //nothing to do here
+    }
+}
@@ -0,0 +1,472 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.stax.impl.util;
+
+import org.apache.xml.security.stax.ext.stax.XMLSecAttribute;
+import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
+import org.apache.xml.security.stax.ext.stax.XMLSecNamespace;
+import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
+import org.apache.xml.security.stax.impl.stax.XMLSecAttributeImpl;
+import org.apache.xml.security.stax.impl.stax.XMLSecCharactersImpl;
+import org.apache.xml.security.stax.impl.stax.XMLSecCommentImpl;
+import org.apache.xml.security.stax.impl.stax.XMLSecDTDImpl;
+import org.apache.xml.security.stax.impl.stax.XMLSecEndDocumentImpl;
+import org.apache.xml.security.stax.impl.stax.XMLSecEndElementImpl;
+import org.apache.xml.security.stax.impl.stax.XMLSecEntityReferenceImpl;
+import org.apache.xml.security.stax.impl.stax.XMLSecNamespaceImpl;
+import org.apache.xml.security.stax.impl.stax.XMLSecProcessingInstructionImpl;
+import org.apache.xml.security.stax.impl.stax.XMLSecStartDocumentImpl;
+import org.apache.xml.security.stax.impl.stax.XMLSecStartElementImpl;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Characters;
+import javax.xml.stream.events.Comment;
+import javax.xml.stream.events.DTD;
+import javax.xml.stream.events.EntityReference;
+import javax.xml.stream.events.ProcessingInstruction;
+import javax.xml.stream.events.StartDocument;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Buffers XMLSecEvents in document order until they are replayed. The most recent events
+ * are kept as objects. Once more events than the given threshold are buffered, the oldest
+ * ones are moved to a temporary file in a compact binary encoding, with element and
+ * namespace names written only once, so that the heap usage stays bounded. Spilled events
+ * are decoded again, including their parent elements, when they are replayed. The
+ * temporary file is deleted once all events are replayed or the buffer is discarded.
+ *
+ * @author $Author$
+ * @version $Revision$ $Date$
+ */
+public class XMLSecEventBuffer {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int CHARACTERS_CDATA = 1;
+    private static final int CHARACTERS_IGNORABLE_WHITESPACE = 2;
+    private static final int CHARACTERS_WHITESPACE = 4;
+
+    private final int threshold;
+    /** the buffered events which are held in memory, the most recent one first */
+    private final Deque<XMLSecEvent> xmlSecEventDeque = new ArrayDeque<XMLSecEvent>();
+    private boolean spillingEnabled = true;
+
+    private File tempFile;
+    private DataOutputStream tempFileOutputStream;
+    private DataInputStream tempFileInputStream;
+    private int spilledEventCount;
+    private final Map<String, Integer> writtenNames = new HashMap<String, Integer>();
+    private final List<String> readNames = new ArrayList<String>();
+    /** the parent of the first spilled event, as seen from the spilled events */
+    private XMLSecStartElement spilledEventsParent;
+    private XMLSecStartElement currentReadParent;
+
+    /**
+     * @param threshold the number of events which are kept in memory or a negative value
+     *                  to keep all events in memory
+     */
+    public XMLSecEventBuffer(int threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Adds an event after all other buffered events.
+     */
+    public void push(XMLSecEvent xmlSecEvent) throws XMLStreamException {
+        xmlSecEventDeque.push(xmlSecEvent);
+        if (spillingEnabled && tempFileInputStream == null && threshold >= 0) {
+            // keep at least the most recent event in memory, so that it can be polled
+            while (xmlSecEventDeque.size() > Math.max(threshold, 1)) {
+                spill(xmlSecEventDeque.pollLast());
+            }
+        }
+    }
+
+    /**
+     * Removes the most recently added event.
+     */
+    public XMLSecEvent pollFirst() {
+        return xmlSecEventDeque.pollFirst();
+    }
+
+    /**
+     * Removes the oldest buffered event, decoding it from the temporary file if necessary.
+     *
+     * @return the oldest event or null if the buffer is empty
+     */
+    public XMLSecEvent pollLast() throws XMLStreamException {
+        if (spilledEventCount > 0) {
+            try {
+                if (tempFileInputStream == null) {
+                    tempFileOutputStream.close();
+                    tempFileOutputStream = null;
+                    tempFileInputStream =
+                        new DataInputStream(new BufferedInputStream(new FileInputStream(tempFile), 8192));
+                    currentReadParent = spilledEventsParent;
+                }
+                XMLSecEvent xmlSecEvent = readEvent();
+                if (--spilledEventCount == 0) {
+                    discardTempFile();
+                }
+                return xmlSecEvent;
+            } catch (IOException e) {
+                discard();
+                throw new XMLStreamException(e);
+            }
+        }
+        return xmlSecEventDeque.pollLast();
+    }
+
+    public boolean isEmpty() {
+        return spilledEventCount == 0 && xmlSecEventDeque.isEmpty();
+    }
+
+    /**
+     * @return the number of all buffered events, including the spilled ones
+     */
+    public int size() {
+        return spilledEventCount + xmlSecEventDeque.size();
+    }
+
+    /**
+     * @return the number of events which were moved to the temporary file
+     */
+    public int getSpilledEventCount() {
+        return spilledEventCount;
+    }
+
+    /**
+     * Returns the events which are held in memory, the most recent one first. These are the
+     * last <code>size() - getSpilledEventCount()</code> events.
+     */
+    public Deque<XMLSecEvent> getXmlSecEventDeque() {
+        return xmlSecEventDeque;
+    }
+
+    /**
+     * Controls whether further events may be moved to the temporary file. When disabled, all
+     * events added from now on are kept in memory.
+     */
+    public void setSpillingEnabled(boolean spillingEnabled) {
+        this.spillingEnabled = spillingEnabled;
+    }
+
+    /**
+     * Drops all buffered events and deletes the temporary file.
+     */
+    public void discard() {
+        xmlSecEventDeque.clear();
+        spilledEventCount = 0;
+        discardTempFile();
+    }
+
+    private void discardTempFile() {
+        try {
+            if (tempFileOutputStream != null) {
+                tempFileOutputStream.close();
+            }
+            if (tempFileInputStream != null) {
+                tempFileInputStream.close();
+            }
+        } catch (IOException e) { //NOPMD
+            //ignore, the file will be deleted anyway
+        }
+        if (tempFile != null && !tempFile.delete()) {
+            tempFile.deleteOnExit();
+        }
+        tempFile = null;
+        tempFileOutputStream = null;
+        tempFileInputStream = null;
+        spilledEventsParent = null;
+        currentReadParent = null;
+        writtenNames.clear();
+        readNames.clear();
+    }
+
+    private void spill(XMLSecEvent xmlSecEvent) throws XMLStreamException {
+        try {
+            if (tempFile == null) {
+                tempFile = File.createTempFile("xmlsec-events-", ".tmp");
+                tempFileOutputStream =
+                    new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 8192));
+                spilledEventsParent = xmlSecEvent.getParentXMLSecStartElement();
+            }
+            writeEvent(xmlSecEvent);
+            spilledEventCount++;
+        } catch (IOException e) {
+            discard();
+            throw new XMLStreamException(e);
+        }
+    }
+
+    private void writeEvent(XMLSecEvent xmlSecEvent) throws IOException, XMLStreamException {
+        final DataOutputStream out = tempFileOutputStream;
+        final int eventType = xmlSecEvent.getEventType();
+        out.writeByte(eventType);
+        switch (eventType) {
+            case XMLStreamConstants.START_ELEMENT: {
+                XMLSecStartElement xmlSecStartElement = xmlSecEvent.asStartElement();
+                writeQName(xmlSecStartElement.getName());
+                List<XMLSecNamespace> namespaces = xmlSecStartElement.getOnElementDeclaredNamespaces();
+                writeInt(namespaces.size());
+                for (int i = 0; i < namespaces.size(); i++) {
+                    XMLSecNamespace xmlSecNamespace = namespaces.get(i);
+                    writeName(xmlSecNamespace.getPrefix());
+                    writeName(xmlSecNamespace.getNamespaceURI());
+                }
+                List<XMLSecAttribute> attributes = xmlSecStartElement.getOnElementDeclaredAttributes();
+                writeInt(attributes.size());
+                for (int i = 0; i < attributes.size(); i++) {
+                    XMLSecAttribute xmlSecAttribute = attributes.get(i);
+                    writeQName(xmlSecAttribute.getName());
+                    writeText(xmlSecAttribute.getValue());
+                }
+                break;
+            }
+            case XMLStreamConstants.END_ELEMENT:
+                writeQName(xmlSecEvent.asEndElement().getName());
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.SPACE:
+            case XMLStreamConstants.CDATA: {
+                Characters characters = (Characters) xmlSecEvent;
+                int flags = 0;
+                if (characters.isCData()) {
+                    flags |= CHARACTERS_CDATA;
+                }
+                if (characters.isIgnorableWhiteSpace()) {
+                    flags |= CHARACTERS_IGNORABLE_WHITESPACE;
+                }
+                if (characters.isWhiteSpace()) {
+                    flags |= CHARACTERS_WHITESPACE;
+                }
+                out.writeByte(flags);
+                writeText(characters.getData());
+                break;
+            }
+            case XMLStreamConstants.COMMENT:
+                writeText(((Comment) xmlSecEvent).getText());
+                break;
+            case XMLStreamConstants.PROCESSING_INSTRUCTION: {
+                ProcessingInstruction processingInstruction = (ProcessingInstruction) xmlSecEvent;
+                writeName(processingInstruction.getTarget());
+                writeText(processingInstruction.getData());
+                break;
+            }
+            case XMLStreamConstants.DTD:
+                writeText(((DTD) xmlSecEvent).getDocumentTypeDeclaration());
+                break;
+            case XMLStreamConstants.ENTITY_REFERENCE:
+                writeName(((EntityReference) xmlSecEvent).getName());
+                break;
+            case XMLStreamConstants.START_DOCUMENT: {
+                StartDocument startDocument = (StartDocument) xmlSecEvent;
+                writeText(startDocument.getSystemId());
+                writeText(startDocument.encodingSet() ? startDocument.getCharacterEncodingScheme() : null);
+                out.writeByte(startDocument.standaloneSet() ? (startDocument.isStandalone() ? 2 : 1) : 0);
+                writeText(startDocument.getVersion());
+                break;
+            }
+            case XMLStreamConstants.END_DOCUMENT:
+                break;
+            default:
+                throw new XMLStreamException("Unsupported event type " + eventType + " in the event buffer");
+        }
+    }
+
+    private XMLSecEvent readEvent() throws IOException, XMLStreamException {
+        final DataInputStream in = tempFileInputStream;
+        final int eventType = in.readByte();
+        switch (eventType) {
+            case XMLStreamConstants.START_ELEMENT: {
+                QName name = readQName();
+                int namespaceCount = readInt();
+                List<XMLSecNamespace> namespaces = null;
+                if (namespaceCount > 0) {
+                    namespaces = new ArrayList<XMLSecNamespace>(namespaceCount);
+                    for (int i = 0; i < namespaceCount; i++) {
+                        String prefix = readName();
+                        namespaces.add(XMLSecNamespaceImpl.getInstance(prefix, readName()));
+                    }
+                }
+                int attributeCount = readInt();
+                List<XMLSecAttribute> attributes = null;
+                if (attributeCount > 0) {
+                    attributes = new ArrayList<XMLSecAttribute>(attributeCount);
+                    for (int i = 0; i < attributeCount; i++) {
+                        QName attributeName = readQName();
+                        attributes.add(new XMLSecAttributeImpl(attributeName, readText()));
+                    }
+                }
+                XMLSecStartElement xmlSecStartElement =
+                    new XMLSecStartElementImpl(name, attributes, namespaces, currentReadParent);
+                currentReadParent = xmlSecStartElement;
+                return xmlSecStartElement;
+            }
+            case XMLStreamConstants.END_ELEMENT: {
+                XMLSecEvent xmlSecEndElement = new XMLSecEndElementImpl(readQName(), currentReadParent);
+                if (currentReadParent != null) {
+                    currentReadParent = currentReadParent.getParentXMLSecStartElement();
+                }
+                return xmlSecEndElement;
+            }
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.SPACE:
+            case XMLStreamConstants.CDATA: {
+                int flags = in.readByte();
+                return new XMLSecCharactersImpl(readText(),
+                        (flags & CHARACTERS_CDATA) != 0,
+                        (flags & CHARACTERS_IGNORABLE_WHITESPACE) != 0,
+                        (flags & CHARACTERS_WHITESPACE) != 0,
+                        currentReadParent);
+            }
+            case XMLStreamConstants.COMMENT:
+                return new XMLSecCommentImpl(readText(), currentReadParent);
+            case XMLStreamConstants.PROCESSING_INSTRUCTION: {
+                String target = readName();
+                return new XMLSecProcessingInstructionImpl(target, readText(), currentReadParent);
+            }
+            case XMLStreamConstants.DTD:
+                return new XMLSecDTDImpl(readText(), currentReadParent);
+            case XMLStreamConstants.ENTITY_REFERENCE:
+                return new XMLSecEntityReferenceImpl(readName(), null, currentReadParent);
+            case XMLStreamConstants.START_DOCUMENT: {
+                String systemId = readText();
+                String characterEncodingScheme = readText();
+                int standalone = in.readByte();
+                return new XMLSecStartDocumentImpl(systemId, characterEncodingScheme,
+                        standalone == 0 ? null : Boolean.valueOf(standalone == 2), readText());
+            }
+            case XMLStreamConstants.END_DOCUMENT:
+                return new XMLSecEndDocumentImpl();
+            default:
+                throw new XMLStreamException("Unsupported event type " + eventType + " in the event buffer");
+        }
+    }
+
+    private void writeQName(QName qName) throws IOException {
+        writeName(qName.getNamespaceURI());
+        writeName(qName.getLocalPart());
+        writeName(qName.getPrefix());
+    }
+
+    private QName readQName() throws IOException {
+        String namespaceURI = readName();
+        String localPart = readName();
+        return new QName(namespaceURI, localPart, readName());
+    }
+
+    /**
+     * Writes a name, which is only written out on its first occurrence and referred to by
+     * its index afterwards: 0 stands for null, 1 for a new name and i + 2 for the i-th name.
+     */
+    private void writeName(String name) throws IOException {
+        if (name == null) {
+            writeInt(0);
+            return;
+        }
+        Integer index = writtenNames.get(name);
+        if (index != null) {
+            writeInt(index + 2);
+        } else {
+            writeInt(1);
+            writtenNames.put(name, writtenNames.size());
+            writeText(name);
+        }
+    }
+
+    private String readName() throws IOException {
+        int index = readInt();
+        if (index == 0) {
+            return null;
+        } else if (index == 1) {
+            String name = readText();
+            readNames.add(name);
+            return name;
+        }
+        return readNames.get(index - 2);
+    }
+
+    /**
+     * Writes a string as its UTF-8 length (0 for null, length + 1 otherwise) followed by
+     * its UTF-8 bytes.
+     */
+    private void writeText(String text) throws IOException {
+        if (text == null) {
+            writeInt(0);
+            return;
+        }
+        byte[] bytes = text.getBytes(UTF8);
+        writeInt(bytes.length + 1);
+        tempFileOutputStream.write(bytes);
+    }
+
+    private String readText() throws IOException {
+        int length = readInt();
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        tempFileInputStream.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * Writes a non-negative int in 7 bit groups, least significant group first.
+     */
+    private void writeInt(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            tempFileOutputStream.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        tempFileOutputStream.writeByte(value);
+    }
+
+    private int readInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = tempFileInputStream.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed event buffer");
+    }
+}
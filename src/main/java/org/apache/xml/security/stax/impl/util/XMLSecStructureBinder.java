@@ -0,0 +1,852 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.stax.impl.util;
+
+import org.apache.xml.security.binding.excc14n.InclusiveNamespaces;
+import org.apache.xml.security.binding.xmldsig.*;
+import org.apache.xml.security.binding.xmlenc.CipherDataType;
+import org.apache.xml.security.binding.xmlenc.EncryptedDataType;
+import org.apache.xml.security.binding.xmlenc.EncryptedKeyType;
+import org.apache.xml.security.binding.xmlenc.EncryptedType;
+import org.apache.xml.security.binding.xmlenc.EncryptionMethodType;
+import org.apache.xml.security.binding.xmlenc.ReferenceList;
+import org.apache.xml.security.binding.xmlenc11.MGFType;
+import org.apache.xml.security.exceptions.Base64DecodingException;
+import org.apache.xml.security.stax.ext.XMLSecurityConstants;
+import org.apache.xml.security.stax.ext.stax.XMLSecAttribute;
+import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
+import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
+import org.apache.xml.security.utils.Base64;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.events.Attribute;
+import java.math.BigInteger;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Binds the xmldsig and xmlenc structures consumed by the inbound handlers (Signature, SignedInfo,
+ * EncryptedKey and EncryptedData) directly from buffered XMLSecEvents into the binding classes,
+ * without going through a JAXB Unmarshaller.
+ * <p>
+ * The binder only covers the commonly used parts of the schemas. It checks the content model of every
+ * element it binds, the attributes, and the lexical form of ID, anyURI, integer and base64 values. As
+ * soon as it meets anything it does not know (an extension element, an unexpected attribute,
+ * a duplicate ID, ...) it gives up and returns null, so that the caller can fall back to JAXB, which
+ * then applies the configured schema validation as before.
+ *
+ * @author $Author$
+ * @version $Revision$ $Date$
+ */
+public class XMLSecStructureBinder {
+
+    private static final QName TAG_dsig_XPath =
+            new QName(XMLSecurityConstants.NS_DSIG, "XPath", XMLSecurityConstants.PREFIX_DSIG);
+    private static final QName TAG_dsig_RetrievalMethod =
+            new QName(XMLSecurityConstants.NS_DSIG, "RetrievalMethod", XMLSecurityConstants.PREFIX_DSIG);
+    private static final QName TAG_dsig_X509CRL =
+            new QName(XMLSecurityConstants.NS_DSIG, "X509CRL", XMLSecurityConstants.PREFIX_DSIG);
+    private static final QName TAG_xenc_KeySize =
+            new QName(XMLSecurityConstants.NS_XMLENC, "KeySize", XMLSecurityConstants.PREFIX_XENC);
+    private static final QName TAG_xenc_KeyReference =
+            new QName(XMLSecurityConstants.NS_XMLENC, "KeyReference", XMLSecurityConstants.PREFIX_XENC);
+    private static final QName TAG_xenc_CarriedKeyName =
+            new QName(XMLSecurityConstants.NS_XMLENC, "CarriedKeyName", XMLSecurityConstants.PREFIX_XENC);
+    private static final QName ATT_NULL_Recipient = new QName(null, "Recipient");
+
+    private static final org.apache.xml.security.binding.xmldsig.ObjectFactory dsigObjectFactory =
+            new org.apache.xml.security.binding.xmldsig.ObjectFactory();
+    private static final org.apache.xml.security.binding.xmlenc.ObjectFactory xencObjectFactory =
+            new org.apache.xml.security.binding.xmlenc.ObjectFactory();
+    private static final org.apache.xml.security.binding.xmlenc11.ObjectFactory xenc11ObjectFactory =
+            new org.apache.xml.security.binding.xmlenc11.ObjectFactory();
+    private static final org.apache.xml.security.binding.excc14n.ObjectFactory excc14nObjectFactory =
+            new org.apache.xml.security.binding.excc14n.ObjectFactory();
+
+    private static final UnsupportedStructureException UNSUPPORTED_STRUCTURE = new UnsupportedStructureException();
+
+    private final Iterator<XMLSecEvent> xmlSecEventIterator;
+    private final StringBuilder text = new StringBuilder();
+    private final Set<String> ids = new HashSet<String>();
+
+    private XMLSecStructureBinder(Deque<XMLSecEvent> xmlSecEvents, int fromIndex) {
+        this.xmlSecEventIterator = xmlSecEvents.descendingIterator();
+        int curIdx = 0;
+        while (curIdx++ < fromIndex) {
+            this.xmlSecEventIterator.next();
+        }
+    }
+
+    /**
+     * Binds the element which starts at the given index of the event deque. The deque is read in the
+     * same order as by the XMLSecurityEventReader, i.e. from the last to the first element.
+     *
+     * @param xmlSecEvents the buffered events
+     * @param fromIndex the index of the start element (leading document events are skipped)
+     * @return a JAXBElement holding the bound structure, or null if the structure is not supported
+     *         by this binder and has to be unmarshalled by JAXB
+     */
+    public static JAXBElement<?> bind(Deque<XMLSecEvent> xmlSecEvents, int fromIndex) {
+        try {
+            return new XMLSecStructureBinder(xmlSecEvents, fromIndex).bindRootElement();
+        } catch (UnsupportedStructureException e) {
+            return null;
+        }
+    }
+
+    private JAXBElement<?> bindRootElement() throws UnsupportedStructureException {
+        XMLSecStartElement startElement = null;
+        while (startElement == null && xmlSecEventIterator.hasNext()) {
+            XMLSecEvent xmlSecEvent = xmlSecEventIterator.next();
+            switch (xmlSecEvent.getEventType()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    startElement = xmlSecEvent.asStartElement();
+                    break;
+                case XMLStreamConstants.START_DOCUMENT:
+                case XMLStreamConstants.COMMENT:
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                case XMLStreamConstants.SPACE:
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                    if (!isWhiteSpace(xmlSecEvent.asCharacters().getData())) {
+                        throw UNSUPPORTED_STRUCTURE;
+                    }
+                    break;
+                default:
+                    throw UNSUPPORTED_STRUCTURE;
+            }
+        }
+        if (startElement == null) {
+            throw UNSUPPORTED_STRUCTURE;
+        }
+
+        QName name = startElement.getName();
+        if (XMLSecurityConstants.TAG_dsig_Signature.equals(name)) {
+            return dsigObjectFactory.createSignature(bindSignature(startElement));
+        } else if (XMLSecurityConstants.TAG_dsig_SignedInfo.equals(name)) {
+            return dsigObjectFactory.createSignedInfo(bindSignedInfo(startElement));
+        } else if (XMLSecurityConstants.TAG_xenc_EncryptedKey.equals(name)) {
+            return xencObjectFactory.createEncryptedKey(bindEncryptedKey(startElement));
+        } else if (XMLSecurityConstants.TAG_xenc_EncryptedData.equals(name)) {
+            return xencObjectFactory.createEncryptedData(bindEncryptedData(startElement));
+        }
+        throw UNSUPPORTED_STRUCTURE;
+    }
+
+    private SignatureType bindSignature(XMLSecStartElement startElement) throws UnsupportedStructureException {
+        checkAttributes(startElement, XMLSecurityConstants.ATT_NULL_Id);
+        SignatureType signatureType = new SignatureType();
+        signatureType.setId(getIdAttribute(startElement));
+
+        XMLSecEvent xmlSecEvent = nextChild(false);
+        signatureType.setSignedInfo(bindSignedInfo(expect(xmlSecEvent, XMLSecurityConstants.TAG_dsig_SignedInfo)));
+        xmlSecEvent = nextChild(false);
+        signatureType.setSignatureValue(
+                bindSignatureValue(expect(xmlSecEvent, XMLSecurityConstants.TAG_dsig_SignatureValue)));
+        xmlSecEvent = nextChild(false);
+        if (isStartElement(xmlSecEvent, XMLSecurityConstants.TAG_dsig_KeyInfo)) {
+            signatureType.setKeyInfo(bindKeyInfo(xmlSecEvent.asStartElement()));
+            xmlSecEvent = nextChild(false);
+        }
+        //ds:Object may contain anything and is left to JAXB
+        expectEndElement(xmlSecEvent);
+        return signatureType;
+    }
+
+    private SignedInfoType bindSignedInfo(XMLSecStartElement startElement) throws UnsupportedStructureException {
+        checkAttributes(startElement, XMLSecurityConstants.ATT_NULL_Id);
+        SignedInfoType signedInfoType = new SignedInfoType();
+        signedInfoType.setId(getIdAttribute(startElement));
+
+        XMLSecEvent xmlSecEvent = nextChild(false);
+        signedInfoType.setCanonicalizationMethod(
+                bindCanonicalizationMethod(expect(xmlSecEvent, XMLSecurityConstants.TAG_dsig_CanonicalizationMethod)));
+        xmlSecEvent = nextChild(false);
+        signedInfoType.setSignatureMethod(
+                bindSignatureMethod(expect(xmlSecEvent, XMLSecurityConstants.TAG_dsig_SignatureMethod)));
+        xmlSecEvent = nextChild(false);
+        signedInfoType.getReference().add(bindReference(expect(xmlSecEvent, XMLSecurityConstants.TAG_dsig_Reference)));
+        xmlSecEvent = nextChild(false);
+        while (isStartElement(xmlSecEvent, XMLSecurityConstants.TAG_dsig_Reference)) {
+            signedInfoType.getReference().add(bindReference(xmlSecEvent.asStartElement()));
+            xmlSecEvent = nextChild(false);
+        }
+        expectEndElement(xmlSecEvent);
+        return signedInfoType;
+    }
+
+    private CanonicalizationMethodType bindCanonicalizationMethod(XMLSecStartElement startElement)
+            throws UnsupportedStructureException {
+        checkAttributes(startElement, XMLSecurityConstants.ATT_NULL_Algorithm);
+        CanonicalizationMethodType canonicalizationMethodType = new CanonicalizationMethodType();
+        canonicalizationMethodType.setAlgorithm(getRequiredURIAttribute(startElement, XMLSecurityConstants.ATT_NULL_Algorithm));
+
+        List<Object> content = canonicalizationMethodType.getContent();
+        XMLSecEvent xmlSecEvent = nextMixedChild(content);
+        while (isStartElement(xmlSecEvent, XMLSecurityConstants.TAG_c14nExcl_InclusiveNamespaces)) {
+            content.add(excc14nObjectFactory.createInclusiveNamespaces(bindInclusiveNamespaces(xmlSecEvent.asStartElement())));
+            xmlSecEvent = nextMixedChild(content);
+        }
+        expectEndElement(xmlSecEvent);
+        return canonicalizationMethodType;
+    }
+
+    private InclusiveNamespaces bindInclusiveNamespaces(XMLSecStartElement startElement)
+            throws UnsupportedStructureException {
+        checkAttributes(startElement, XMLSecurityConstants.ATT_NULL_PrefixList);
+        InclusiveNamespaces inclusiveNamespaces = new InclusiveNamespaces();
+        String prefixList = getAttribute(startElement, XMLSecurityConstants.ATT_NULL_PrefixList);
+        if (prefixList != null) {
+            //like JAXB an empty list is set for an empty attribute
+            List<String> prefixes = inclusiveNamespaces.getPrefixList();
+            String[] tokens = prefixList.split("[ \t\r\n]+");
+            for (int i = 0; i < tokens.length; i++) {
+                if (tokens[i].length() > 0) {
+                    prefixes.add(tokens[i]);
+                }
+            }
+        }
+        expectEmptyContent();
+        return inclusiveNamespaces;
+    }
+
+    private SignatureMethodType bindSignatureMethod(XMLSecStartElement startElement)
+            throws UnsupportedStructureException {
+        checkAttributes(startElement, XMLSecurityConstants.ATT_NULL_Algorithm);
+        SignatureMethodType signatureMethodType = new SignatureMethodType();
+        signatureMethodType.setAlgorithm(getRequiredURIAttribute(startElement, XMLSecurityConstants.ATT_NULL_Algorithm));
+
+        List<Object> content = signatureMethodType.getContent();
+        XMLSecEvent xmlSecEvent = nextMixedChild(content);
+        if (isStartElement(xmlSecEvent, XMLSecurityConstants.TAG_dsig_HMACOutputLength)) {
+            checkAttributes(xmlSecEvent.asStartElement());
+            content.add(dsigObjectFactory.createSignatureMethodTypeHMACOutputLength(parseInteger(readSimpleContent())));
+            xmlSecEvent = nextMixedChild(content);
+        }
+        expectEndElement(xmlSecEvent);
+        return signatureMethodType;
+    }
+
+    private ReferenceType bindReference(XMLSecStartElement startElement) throws UnsupportedStructureException {
+        checkAttributes(startElement,
+                XMLSecurityConstants.ATT_NULL_Id, XMLSecurityConstants.ATT_NULL_URI, XMLSecurityConstants.ATT_NULL_Type);
+        ReferenceType referenceType = new ReferenceType();
+        referenceType.setId(getIdAttribute(startElement));
+        referenceType.setURI(getURIAttribute(startElement, XMLSecurityConstants.ATT_NULL_URI));
+        referenceType.setType(getURIAttribute(startElement, XMLSecurityConstants.ATT_NULL_Type));
+
+        XMLSecEvent xmlSecEvent = nextChild(false);
+        if (isStartElement(xmlSecEvent, XMLSecurityConstants.TAG_dsig_Transforms)) {
+            referenceType.setTransforms(bindTransforms(xmlSecEvent.asStartElement()));
+            xmlSecEvent = nextChild(false);
+        }
+        referenceType.setDigestMethod(bindDigestMethod(expect(xmlSecEvent, XMLSecurityConstants.TAG_dsig_DigestMethod)));
+        xmlSecEvent = nextChild(false);
+        checkAttributes(expect(xmlSecEvent, XMLSecurityConstants.TAG_dsig_DigestValue));
+        referenceType.setDigestValue(decodeBase64(readSimpleContent()));
+        expectEndElement(nextChild(false));
+        return referenceType;
+    }
+
+    private TransformsType bindTransforms(XMLSecStartElement startElement) throws UnsupportedStructureException {
+        checkAttributes(startElement);
+        TransformsType transformsType = new TransformsType();
+        XMLSecEvent xmlSecEvent = nextChild(false);
+        transformsType.getTransform().add(bindTransform(expect(xmlSecEvent, XMLSecurityConstants.TAG_dsig_Transform)));
+        xmlSecEvent = nextChild(false);
+        while (isStartElement(xmlSecEvent, XMLSecurityConstants.TAG_dsig_Transform)) {
+            transformsType.getTransform().add(bindTransform(xmlSecEvent.asStartElement()));
+            xmlSecEvent = nextChild(false);
+        }
+        expectEndElement(xmlSecEvent);
+        return transformsType;
+    }
+
+    private TransformType bindTransform(XMLSecStartElement startElement) throws UnsupportedStructureException {
+        checkAttributes(startElement, XMLSecurityConstants.ATT_NULL_Algorithm);
+        TransformType transformType = new TransformType();
+        transformType.setAlgorithm(getRequiredURIAttribute(startElement, XMLSecurityConstants.ATT_NULL_Algorithm));
+
+        List<Object> content = transformType.getContent();
+        XMLSecEvent xmlSecEvent = nextMixedChild(content);
+        while (xmlSecEvent.isStartElement()) {
+            if (isStartElement(xmlSecEvent, XMLSecurityConstants.TAG_c14nExcl_InclusiveNamespaces)) {
+                content.add(excc14nObjectFactory.createInclusiveNamespaces(bindInclusiveNamespaces(xmlSecEvent.asStartElement())));
+            } else if (isStartElement(xmlSecEvent, TAG_dsig_XPath)) {
+                checkAttributes(xmlSecEvent.asStartElement());
+                content.add(dsigObjectFactory.createTransformTypeXPath(readSimpleContent()));
+            } else {
+                throw UNSUPPORTED_STRUCTURE;
+            }
+            xmlSecEvent = nextMixedChild(content);
+        }
+        return transformType;
+    }
+
+    private DigestMethodType bindDigestMethod(XMLSecStartElement startElement) throws UnsupportedStructureException {
+        checkAttributes(startElement, XMLSecurityConstants.ATT_NULL_Algorithm);
+        DigestMethodType digestMethodType = new DigestMethodType();
+        digestMethodType.setAlgorithm(getRequiredURIAttribute(startElement, XMLSecurityConstants.ATT_NULL_Algorithm));
+        expectEndElement(nextMixedChild(digestMethodType.getContent()));
+        return digestMethodType;
+    }
+
+    private SignatureValueType bindSignatureValue(XMLSecStartElement startElement) throws UnsupportedStructureException {
+        checkAttributes(startElement, XMLSecurityConstants.ATT_NULL_Id);
+        SignatureValueType signatureValueType = new SignatureValueType();
+        signatureValueType.setId(getIdAttribute(startElement));
+        signatureValueType.setValue(decodeBase64(readSimpleContent()));
+        return signatureValueType;
+    }
+
+    private KeyInfoType bindKeyInfo(XMLSecStartElement startElement) throws UnsupportedStructureException {
+        checkAttributes(startElement, XMLSecurityConstants.ATT_NULL_Id);
+        KeyInfoType keyInfoType = new KeyInfoType();
+        keyInfoType.setId(getIdAttribute(startElement));
+
+        List<Object> content = keyInfoType.getContent();
+        XMLSecEvent xmlSecEvent = nextMixedChild(content);
+        if (!xmlSecEvent.isStartElement()) {
+            //at least one child is required
+            throw UNSUPPORTED_STRUCTURE;
+        }
+        do {
+            QName name = xmlSecEvent.asStartElement().getName();
+            if (XMLSecurityConstants.TAG_dsig_KeyName.equals(name)) {
+                checkAttributes(xmlSecEvent.asStartElement());
+                content.add(dsigObjectFactory.createKeyName(readSimpleContent()));
+            } else if (XMLSecurityConstants.TAG_dsig_KeyValue.equals(name)) {
+                content.add(dsigObjectFactory.createKeyValue(bindKeyValue(xmlSecEvent.asStartElement())));
+            } else if (XMLSecurityConstants.TAG_dsig_X509Data.equals(name)) {
+                content.add(dsigObjectFactory.createX509Data(bindX509Data(xmlSecEvent.asStartElement())));
+            } else if (TAG_dsig_RetrievalMethod.equals(name)) {
+                content.add(dsigObjectFactory.createRetrievalMethod(bindRetrievalMethod(xmlSecEvent.asStartElement())));
+            } else if (XMLSecurityConstants.TAG_xenc_EncryptedKey.equals(name)) {
+                content.add(xencObjectFactory.createEncryptedKey(bindEncryptedKey(xmlSecEvent.asStartElement())));
+            } else {
+                throw UNSUPPORTED_STRUCTURE;
+            }
+            xmlSecEvent = nextMixedChild(content);
+        } while (xmlSecEvent.isStartElement());
+        return keyInfoType;
+    }
+
+    private KeyValueType bindKeyValue(XMLSecStartElement startElement) throws UnsupportedStructureException {
+        checkAttributes(startElement);
+        KeyValueType keyValueType = new KeyValueType();
+        List<Object> content = keyValueType.getContent();
+        XMLSecEvent xmlSecEvent = nextMixedChild(content);
+        if (isStartElement(xmlSecEvent, XMLSecurityConstants.TAG_dsig_RSAKeyValue)) {
+            content.add(dsigObjectFactory.createRSAKeyValue(bindRSAKeyValue(xmlSecEvent.asStartElement())));
+        } else if (isStartElement(xmlSecEvent, XMLSecurityConstants.TAG_dsig_DSAKeyValue)) {
+            content.add(dsigObjectFactory.createDSAKeyValue(bindDSAKeyValue(xmlSecEvent.asStartElement())));
+        } else {
+            throw UNSUPPORTED_STRUCTURE;
+        }
+        expectEndElement(nextMixedChild(content));
+        return keyValueType;
+    }
+
+    private RSAKeyValueType bindRSAKeyValue(XMLSecStartElement startElement) throws UnsupportedStructureException {
+        checkAttributes(startElement);
+        RSAKeyValueType rsaKeyValueType = new RSAKeyValueType();
+        rsaKeyValueType.setModulus(readBase64Element(nextChild(false), XMLSecurityConstants.TAG_dsig_Modulus));
+        rsaKeyValueType.setExponent(readBase64Element(nextChild(false), XMLSecurityConstants.TAG_dsig_Exponent));
+        expectEndElement(nextChild(false));
+        return rsaKeyValueType;
+    }
+
+    private DSAKeyValueType bindDSAKeyValue(XMLSecStartElement startElement) throws UnsupportedStructureException {
+        checkAttributes(startElement);
+        DSAKeyValueType dsaKeyValueType = new DSAKeyValueType();
+        XMLSecEvent xmlSecEvent = nextChild(false);
+        if (isStartElement(xmlSecEvent, XMLSecurityConstants.TAG_dsig_P)) {
+            dsaKeyValueType.setP(readBase64Element(xmlSecEvent, XMLSecurityConstants.TAG_dsig_P));
+            dsaKeyValueType.setQ(readBase64Element(nextChild(false), XMLSecurityConstants.TAG_dsig_Q));
+            xmlSecEvent = nextChild(false);
+        }
+        if (isStartElement(xmlSecEvent, XMLSecurityConstants.TAG_dsig_G)) {
+            dsaKeyValueType.setG(readBase64Element(xmlSecEvent, XMLSecurityConstants.TAG_dsig_G));
+            xmlSecEvent = nextChild(false);
+        }
+        dsaKeyValueType.setY(readBase64Element(xmlSecEvent, XMLSecurityConstants.TAG_dsig_Y));
+        xmlSecEvent = nextChild(false);
+        if (isStartElement(xmlSecEvent, XMLSecurityConstants.TAG_dsig_J)) {
+            dsaKeyValueType.setJ(readBase64Element(xmlSecEvent, XMLSecurityConstants.TAG_dsig_J));
+            xmlSecEvent = nextChild(false);
+        }
+        if (isStartElement(xmlSecEvent, XMLSecurityConstants.TAG_dsig_Seed)) {
+            dsaKeyValueType.setSeed(readBase64Element(xmlSecEvent, XMLSecurityConstants.TAG_dsig_Seed));
+            dsaKeyValueType.setPgenCounter(readBase64Element(nextChild(false), XMLSecurityConstants.TAG_dsig_PgenCounter));
+            xmlSecEvent = nextChild(false);
+        }
+        expectEndElement(xmlSecEvent);
+        return dsaKeyValueType;
+    }
+
+    private X509DataType bindX509Data(XMLSecStartElement startElement) throws UnsupportedStructureException {
+        checkAttributes(startElement);
+        X509DataType x509DataType = new X509DataType();
+        List<Object> content = x509DataType.getX509IssuerSerialOrX509SKIOrX509SubjectName();
+        XMLSecEvent xmlSecEvent = nextChild(false);
+        if (!xmlSecEvent.isStartElement()) {
+            //at least one child is required
+            throw UNSUPPORTED_STRUCTURE;
+        }
+        do {
+            XMLSecStartElement childStartElement = xmlSecEvent.asStartElement();
+            QName name = childStartElement.getName();
+            if (XMLSecurityConstants.TAG_dsig_X509IssuerSerial.equals(name)) {
+                content.add(dsigObjectFactory.createX509DataTypeX509IssuerSerial(bindX509IssuerSerial(childStartElement)));
+            } else if (XMLSecurityConstants.TAG_dsig_X509SKI.equals(name)) {
+                content.add(dsigObjectFactory.createX509DataTypeX509SKI(readBase64Element(xmlSecEvent, name)));
+            } else if (XMLSecurityConstants.TAG_dsig_X509SubjectName.equals(name)) {
+                checkAttributes(childStartElement);
+                content.add(dsigObjectFactory.createX509DataTypeX509SubjectName(readSimpleContent()));
+            } else if (XMLSecurityConstants.TAG_dsig_X509Certificate.equals(name)) {
+                content.add(dsigObjectFactory.createX509DataTypeX509Certificate(readBase64Element(xmlSecEvent, name)));
+            } else if (TAG_dsig_X509CRL.equals(name)) {
+                content.add(dsigObjectFactory.createX509DataTypeX509CRL(readBase64Element(xmlSecEvent, name)));
+            } else {
+                throw UNSUPPORTED_STRUCTURE;
+            }
+            xmlSecEvent = nextChild(false);
+        } while (xmlSecEvent.isStartElement());
+        return x509DataType;
+    }
+
+    private X509IssuerSerialType bindX509IssuerSerial(XMLSecStartElement startElement)
+            throws UnsupportedStructureException {
+        checkAttributes(startElement);
+        X509IssuerSerialType x509IssuerSerialType = new X509IssuerSerialType();
+        checkAttributes(expect(nextChild(false), XMLSecurityConstants.TAG_dsig_X509IssuerName));
+        x509IssuerSerialType.setX509IssuerName(readSimpleContent());
+        checkAttributes(expect(nextChild(false), XMLSecurityConstants.TAG_dsig_X509SerialNumber));
+        x509IssuerSerialType.setX509SerialNumber(parseInteger(readSimpleContent()));
+        expectEndElement(nextChild(false));
+        return x509IssuerSerialType;
+    }
+
+    private RetrievalMethodType bindRetrievalMethod(XMLSecStartElement startElement)
+            throws UnsupportedStructureException {
+        checkAttributes(startElement, XMLSecurityConstants.ATT_NULL_URI, XMLSecurityConstants.ATT_NULL_Type);
+        RetrievalMethodType retrievalMethodType = new RetrievalMethodType();
+        retrievalMethodType.setURI(getURIAttribute(startElement, XMLSecurityConstants.ATT_NULL_URI));
+        retrievalMethodType.setType(getURIAttribute(startElement, XMLSecurityConstants.ATT_NULL_Type));
+        XMLSecEvent xmlSecEvent = nextChild(false);
+        if (isStartElement(xmlSecEvent, XMLSecurityConstants.TAG_dsig_Transforms)) {
+            retrievalMethodType.setTransforms(bindTransforms(xmlSecEvent.asStartElement()));
+            xmlSecEvent = nextChild(false);
+        }
+        expectEndElement(xmlSecEvent);
+        return retrievalMethodType;
+    }
+
+    private EncryptedDataType bindEncryptedData(XMLSecStartElement startElement) throws UnsupportedStructureException {
+        checkAttributes(startElement,
+                XMLSecurityConstants.ATT_NULL_Id, XMLSecurityConstants.ATT_NULL_Type,
+                XMLSecurityConstants.ATT_NULL_MimeType, XMLSecurityConstants.ATT_NULL_Encoding);
+        EncryptedDataType encryptedDataType = new EncryptedDataType();
+        expectEndElement(bindEncryptedType(startElement, encryptedDataType));
+        return encryptedDataType;
+    }
+
+    private EncryptedKeyType bindEncryptedKey(XMLSecStartElement startElement) throws UnsupportedStructureException {
+        checkAttributes(startElement,
+                XMLSecurityConstants.ATT_NULL_Id, XMLSecurityConstants.ATT_NULL_Type,
+                XMLSecurityConstants.ATT_NULL_MimeType, XMLSecurityConstants.ATT_NULL_Encoding, ATT_NULL_Recipient);
+        EncryptedKeyType encryptedKeyType = new EncryptedKeyType();
+        encryptedKeyType.setRecipient(getAttribute(startElement, ATT_NULL_Recipient));
+
+        XMLSecEvent xmlSecEvent = bindEncryptedType(startElement, encryptedKeyType);
+        if (isStartElement(xmlSecEvent, XMLSecurityConstants.TAG_xenc_ReferenceList)) {
+            encryptedKeyType.setReferenceList(bindReferenceList(xmlSecEvent.asStartElement()));
+            xmlSecEvent = nextChild(false);
+        }
+        if (isStartElement(xmlSecEvent, TAG_xenc_CarriedKeyName)) {
+            checkAttributes(xmlSecEvent.asStartElement());
+            encryptedKeyType.setCarriedKeyName(readSimpleContent());
+            xmlSecEvent = nextChild(false);
+        }
+        expectEndElement(xmlSecEvent);
+        return encryptedKeyType;
+    }
+
+    /**
+     * Binds the content common to EncryptedData and EncryptedKey and returns the event following CipherData.
+     */
+    private XMLSecEvent bindEncryptedType(XMLSecStartElement startElement, EncryptedType encryptedType)
+            throws UnsupportedStructureException {
+        encryptedType.setId(getIdAttribute(startElement));
+        encryptedType.setType(getURIAttribute(startElement, XMLSecurityConstants.ATT_NULL_Type));
+        encryptedType.setMimeType(getAttribute(startElement, XMLSecurityConstants.ATT_NULL_MimeType));
+        encryptedType.setEncoding(getURIAttribute(startElement, XMLSecurityConstants.ATT_NULL_Encoding));
+
+        XMLSecEvent xmlSecEvent = nextChild(false);
+        if (isStartElement(xmlSecEvent, XMLSecurityConstants.TAG_xenc_EncryptionMethod)) {
+            encryptedType.setEncryptionMethod(bindEncryptionMethod(xmlSecEvent.asStartElement()));
+            xmlSecEvent = nextChild(false);
+        }
+        if (isStartElement(xmlSecEvent, XMLSecurityConstants.TAG_dsig_KeyInfo)) {
+            encryptedType.setKeyInfo(bindKeyInfo(xmlSecEvent.asStartElement()));
+            xmlSecEvent = nextChild(false);
+        }
+        encryptedType.setCipherData(bindCipherData(expect(xmlSecEvent, XMLSecurityConstants.TAG_xenc_CipherData)));
+        //xenc:EncryptionProperties is left to JAXB
+        return nextChild(false);
+    }
+
+    private EncryptionMethodType bindEncryptionMethod(XMLSecStartElement startElement)
+            throws UnsupportedStructureException {
+        checkAttributes(startElement, XMLSecurityConstants.ATT_NULL_Algorithm);
+        EncryptionMethodType encryptionMethodType = new EncryptionMethodType();
+        encryptionMethodType.setAlgorithm(getRequiredURIAttribute(startElement, XMLSecurityConstants.ATT_NULL_Algorithm));
+
+        List<Object> content = encryptionMethodType.getContent();
+        XMLSecEvent xmlSecEvent = nextMixedChild(content);
+        if (isStartElement(xmlSecEvent, TAG_xenc_KeySize)) {
+            checkAttributes(xmlSecEvent.asStartElement());
+            content.add(xencObjectFactory.createEncryptionMethodTypeKeySize(parseInteger(readSimpleContent())));
+            xmlSecEvent = nextMixedChild(content);
+        }
+        if (isStartElement(xmlSecEvent, XMLSecurityConstants.TAG_xenc_OAEPparams)) {
+            content.add(xencObjectFactory.createEncryptionMethodTypeOAEPparams(
+                    readBase64Element(xmlSecEvent, XMLSecurityConstants.TAG_xenc_OAEPparams)));
+            xmlSecEvent = nextMixedChild(content);
+        }
+        while (xmlSecEvent.isStartElement()) {
+            if (isStartElement(xmlSecEvent, XMLSecurityConstants.TAG_dsig_DigestMethod)) {
+                content.add(dsigObjectFactory.createDigestMethod(bindDigestMethod(xmlSecEvent.asStartElement())));
+            } else if (isStartElement(xmlSecEvent, XMLSecurityConstants.TAG_xenc11_MGF)) {
+                content.add(xenc11ObjectFactory.createMGF(bindMGF(xmlSecEvent.asStartElement())));
+            } else {
+                throw UNSUPPORTED_STRUCTURE;
+            }
+            xmlSecEvent = nextMixedChild(content);
+        }
+        return encryptionMethodType;
+    }
+
+    private MGFType bindMGF(XMLSecStartElement startElement) throws UnsupportedStructureException {
+        checkAttributes(startElement, XMLSecurityConstants.ATT_NULL_Algorithm);
+        MGFType mgfType = new MGFType();
+        mgfType.setAlgorithm(getRequiredURIAttribute(startElement, XMLSecurityConstants.ATT_NULL_Algorithm));
+        expectEmptyContent();
+        return mgfType;
+    }
+
+    private CipherDataType bindCipherData(XMLSecStartElement startElement) throws UnsupportedStructureException {
+        checkAttributes(startElement);
+        CipherDataType cipherDataType = new CipherDataType();
+        //xenc:CipherReference is left to JAXB
+        cipherDataType.setCipherValue(readBase64Element(nextChild(false), XMLSecurityConstants.TAG_xenc_CipherValue));
+        expectEndElement(nextChild(false));
+        return cipherDataType;
+    }
+
+    private ReferenceList bindReferenceList(XMLSecStartElement startElement) throws UnsupportedStructureException {
+        checkAttributes(startElement);
+        ReferenceList referenceList = new ReferenceList();
+        XMLSecEvent xmlSecEvent = nextChild(false);
+        if (!xmlSecEvent.isStartElement()) {
+            //at least one reference is required
+            throw UNSUPPORTED_STRUCTURE;
+        }
+        do {
+            if (isStartElement(xmlSecEvent, XMLSecurityConstants.TAG_xenc_DataReference)) {
+                referenceList.getDataReferenceOrKeyReference().add(
+                        xencObjectFactory.createReferenceListDataReference(bindXencReference(xmlSecEvent.asStartElement())));
+            } else if (isStartElement(xmlSecEvent, TAG_xenc_KeyReference)) {
+                referenceList.getDataReferenceOrKeyReference().add(
+                        xencObjectFactory.createReferenceListKeyReference(bindXencReference(xmlSecEvent.asStartElement())));
+            } else {
+                throw UNSUPPORTED_STRUCTURE;
+            }
+            xmlSecEvent = nextChild(false);
+        } while (xmlSecEvent.isStartElement());
+        return referenceList;
+    }
+
+    private org.apache.xml.security.binding.xmlenc.ReferenceType bindXencReference(XMLSecStartElement startElement)
+            throws UnsupportedStructureException {
+        checkAttributes(startElement, XMLSecurityConstants.ATT_NULL_URI);
+        org.apache.xml.security.binding.xmlenc.ReferenceType referenceType =
+                new org.apache.xml.security.binding.xmlenc.ReferenceType();
+        referenceType.setURI(getRequiredURIAttribute(startElement, XMLSecurityConstants.ATT_NULL_URI));
+        expectEndElement(nextChild(false));
+        return referenceType;
+    }
+
+    /**
+     * Returns the next start or end element. Character data in between is collected in the text buffer
+     * and must be whitespace only, unless the content is mixed.
+     */
+    private XMLSecEvent nextChild(boolean mixed) throws UnsupportedStructureException {
+        text.setLength(0);
+        boolean whiteSpace = true;
+        while (xmlSecEventIterator.hasNext()) {
+            XMLSecEvent xmlSecEvent = xmlSecEventIterator.next();
+            switch (xmlSecEvent.getEventType()) {
+                case XMLStreamConstants.START_ELEMENT:
+                case XMLStreamConstants.END_ELEMENT:
+                    if (!mixed && !whiteSpace) {
+                        throw UNSUPPORTED_STRUCTURE;
+                    }
+                    return xmlSecEvent;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    String data = xmlSecEvent.asCharacters().getData();
+                    text.append(data);
+                    whiteSpace &= isWhiteSpace(data);
+                    break;
+                case XMLStreamConstants.COMMENT:
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    break;
+                default:
+                    throw UNSUPPORTED_STRUCTURE;
+            }
+        }
+        //the structure is incomplete
+        throw UNSUPPORTED_STRUCTURE;
+    }
+
+    private XMLSecEvent nextMixedChild(List<Object> content) throws UnsupportedStructureException {
+        XMLSecEvent xmlSecEvent = nextChild(true);
+        if (text.length() > 0) {
+            content.add(text.toString());
+        }
+        return xmlSecEvent;
+    }
+
+    private String readSimpleContent() throws UnsupportedStructureException {
+        XMLSecEvent xmlSecEvent = nextChild(true);
+        if (!xmlSecEvent.isEndElement()) {
+            throw UNSUPPORTED_STRUCTURE;
+        }
+        return text.toString();
+    }
+
+    private byte[] readBase64Element(XMLSecEvent xmlSecEvent, QName name) throws UnsupportedStructureException {
+        checkAttributes(expect(xmlSecEvent, name));
+        return decodeBase64(readSimpleContent());
+    }
+
+    private void expectEmptyContent() throws UnsupportedStructureException {
+        XMLSecEvent xmlSecEvent = nextChild(true);
+        if (!xmlSecEvent.isEndElement() || text.length() > 0) {
+            throw UNSUPPORTED_STRUCTURE;
+        }
+    }
+
+    private static XMLSecStartElement expect(XMLSecEvent xmlSecEvent, QName name) throws UnsupportedStructureException {
+        if (!isStartElement(xmlSecEvent, name)) {
+            throw UNSUPPORTED_STRUCTURE;
+        }
+        return xmlSecEvent.asStartElement();
+    }
+
+    private static void expectEndElement(XMLSecEvent xmlSecEvent) throws UnsupportedStructureException {
+        if (!xmlSecEvent.isEndElement()) {
+            throw UNSUPPORTED_STRUCTURE;
+        }
+    }
+
+    private static boolean isStartElement(XMLSecEvent xmlSecEvent, QName name) {
+        return xmlSecEvent.isStartElement() && xmlSecEvent.asStartElement().getName().equals(name);
+    }
+
+    private static void checkAttributes(XMLSecStartElement startElement, QName... allowedAttributes)
+            throws UnsupportedStructureException {
+        List<XMLSecAttribute> attributes = startElement.getOnElementDeclaredAttributes();
+        loop:
+        for (int i = 0; i < attributes.size(); i++) {
+            QName name = attributes.get(i).getName();
+            for (int j = 0; j < allowedAttributes.length; j++) {
+                if (allowedAttributes[j].equals(name)) {
+                    continue loop;
+                }
+            }
+            throw UNSUPPORTED_STRUCTURE;
+        }
+    }
+
+    private static String getAttribute(XMLSecStartElement startElement, QName name) {
+        Attribute attribute = startElement.getAttributeByName(name);
+        if (attribute == null) {
+            return null;
+        }
+        return attribute.getValue();
+    }
+
+    private String getIdAttribute(XMLSecStartElement startElement) throws UnsupportedStructureException {
+        String id = getAttribute(startElement, XMLSecurityConstants.ATT_NULL_Id);
+        if (id != null && (!isNCName(id) || !ids.add(id))) {
+            throw UNSUPPORTED_STRUCTURE;
+        }
+        return id;
+    }
+
+    private static String getURIAttribute(XMLSecStartElement startElement, QName name)
+            throws UnsupportedStructureException {
+        String uri = getAttribute(startElement, name);
+        if (uri != null && !isURI(uri)) {
+            throw UNSUPPORTED_STRUCTURE;
+        }
+        return uri;
+    }
+
+    private static String getRequiredURIAttribute(XMLSecStartElement startElement, QName name)
+            throws UnsupportedStructureException {
+        String uri = getURIAttribute(startElement, name);
+        if (uri == null) {
+            throw UNSUPPORTED_STRUCTURE;
+        }
+        return uri;
+    }
+
+    /**
+     * A conservative NCName check which only accepts ASCII names.
+     */
+    private static boolean isNCName(String value) {
+        if (value.length() == 0) {
+            return false;
+        }
+        char c = value.charAt(0);
+        if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_')) {
+            return false;
+        }
+        for (int i = 1; i < value.length(); i++) {
+            c = value.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9'
+                    || c == '_' || c == '-' || c == '.')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A conservative anyURI check: only RFC 3986 characters (without IP literals), well-formed
+     * percent-encodings, at most one fragment and a valid scheme if there is one.
+     */
+    private static boolean isURI(String value) {
+        int fragments = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9') {
+                continue;
+            }
+            if (c == '#') {
+                if (++fragments > 1) {
+                    return false;
+                }
+            } else if (c == '%') {
+                if (i + 2 >= value.length() || !isHexDigit(value.charAt(i + 1)) || !isHexDigit(value.charAt(i + 2))) {
+                    return false;
+                }
+            } else if ("-._~:/?@!$&'()*+,;=".indexOf(c) < 0) {
+                return false;
+            }
+        }
+        //a colon in the first segment has to terminate a scheme
+        int colon = value.indexOf(':');
+        if (colon < 0) {
+            return true;
+        }
+        for (int i = 0; i < colon; i++) {
+            char c = value.charAt(i);
+            if (c == '/' || c == '?' || c == '#') {
+                return true;
+            }
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z'
+                    || i > 0 && (c >= '0' && c <= '9' || c == '+' || c == '-' || c == '.'))) {
+                return false;
+            }
+        }
+        return colon > 0;
+    }
+
+    private static boolean isWhiteSpace(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != ' ' && c != '\t' && c != '\r' && c != '\n') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isHexDigit(char c) {
+        return c >= '0' && c <= '9' || c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F';
+    }
+
+    private static BigInteger parseInteger(String value) throws UnsupportedStructureException {
+        String trimmed = value.trim();
+        int start = 0;
+        if (trimmed.length() > 0 && (trimmed.charAt(0) == '+' || trimmed.charAt(0) == '-')) {
+            start = 1;
+        }
+        if (start == trimmed.length()) {
+            throw UNSUPPORTED_STRUCTURE;
+        }
+        for (int i = start; i < trimmed.length(); i++) {
+            char c = trimmed.charAt(i);
+            if (c < '0' || c > '9') {
+                throw UNSUPPORTED_STRUCTURE;
+            }
+        }
+        if (trimmed.charAt(0) == '+') {
+            trimmed = trimmed.substring(1);
+        }
+        return new BigInteger(trimmed);
+    }
+
+    private static byte[] decodeBase64(String value) throws UnsupportedStructureException {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 0x7F) {
+                throw UNSUPPORTED_STRUCTURE;
+            }
+        }
+        try {
+            return Base64.decode(value);
+        } catch (Base64DecodingException e) {
+            throw UNSUPPORTED_STRUCTURE;
+        }
+    }
+
+    /**
+     * Signals that a structure is not covered by the binder. A shared instance without a stack trace
+     * is used, since it only controls the fallback to JAXB.
+     */
+    private static final class UnsupportedStructureException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+}
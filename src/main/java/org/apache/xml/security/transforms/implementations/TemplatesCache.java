@@ -0,0 +1,196 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.transforms.implementations;
+
+import java.io.ByteArrayInputStream;
+import java.security.AccessController;
+import java.security.MessageDigest;
+import java.security.PrivilegedAction;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.XMLConstants;
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.xml.security.algorithms.JCEEngineCache;
+import org.apache.xml.security.signature.XMLSignatureException;
+import org.apache.xml.security.utils.Base64;
+
+/**
+ * A bounded cache of the compiled XSLT stylesheets of the XSLT Transform, keyed by a SHA-256
+ * digest of the serialized stylesheet octets.
+ * <p>
+ * Compiling a stylesheet is far more expensive than applying it, and the stylesheet of an
+ * XSLT Transform tends to be the same in every message of a partner. All stylesheets are
+ * compiled by one TransformerFactory, which processes them in a secure manner.
+ * <p>
+ * At most <code>org.apache.xml.security.templatesCache.size</code> (default 32) compiled
+ * stylesheets are kept, and the least recently used one is evicted first. Setting the size to
+ * 0 disables the cache.
+ */
+public final class TemplatesCache {
+
+    private static final int MAXIMUM_SIZE =
+        AccessController.doPrivileged(new PrivilegedAction<Integer>() {
+            public Integer run() {
+                return Integer.getInteger("org.apache.xml.security.templatesCache.size", 32);
+            }
+        });
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private static final Map<String, Templates> entries =
+        new LinkedHashMap<String, Templates>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Templates> eldest) {
+                return size() > MAXIMUM_SIZE;
+            }
+        };
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+
+    private static TransformerFactory transformerFactory;
+
+    private TemplatesCache() {
+        // complete
+    }
+
+    /**
+     * Returns whether compiled stylesheets are cached at all.
+     *
+     * @return false if the cache has been disabled by setting its size to 0
+     */
+    public static boolean isEnabled() {
+        return MAXIMUM_SIZE > 0;
+    }
+
+    /**
+     * Returns the number of stylesheets that did not have to be compiled.
+     *
+     * @return the number of cache hits since the class was loaded
+     */
+    public static long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of stylesheets that had to be compiled.
+     *
+     * @return the number of cache misses since the class was loaded
+     */
+    public static long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Removes all compiled stylesheets.
+     */
+    public static void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Returns the compiled stylesheet, compiling it if it is not cached.
+     *
+     * @param stylesheet the serialized octets of the stylesheet
+     * @return the compiled stylesheet, from which a Transformer is created for each use
+     * @throws TransformerConfigurationException if the stylesheet can't be compiled, or the
+     *    TransformerFactory does not support secure processing
+     */
+    public static Templates getTemplates(byte[] stylesheet)
+        throws TransformerConfigurationException {
+        String key = getKey(stylesheet);
+        if (key != null) {
+            Templates templates;
+            synchronized (entries) {
+                templates = entries.get(key);
+            }
+            if (templates != null) {
+                hits.incrementAndGet();
+                return templates;
+            }
+        }
+        misses.incrementAndGet();
+        Templates templates = newTemplates(stylesheet);
+        if (key != null) {
+            synchronized (entries) {
+                entries.put(key, templates);
+            }
+        }
+        return templates;
+    }
+
+    private static String getKey(byte[] stylesheet) {
+        if (!isEnabled()) {
+            return null;
+        }
+        MessageDigest md;
+        try {
+            md = JCEEngineCache.getMessageDigest(DIGEST_ALGORITHM, null);
+        } catch (XMLSignatureException ex) {
+            return null;
+        }
+        try {
+            return Base64.encode(md.digest(stylesheet));
+        } finally {
+            JCEEngineCache.repoolMessageDigest(DIGEST_ALGORITHM, null, md);
+        }
+    }
+
+    /**
+     * Returns a new identity Transformer of the shared TransformerFactory, to serialize a
+     * stylesheet with.
+     *
+     * @return a new identity Transformer
+     * @throws TransformerConfigurationException if the TransformerFactory does not support
+     *    secure processing
+     */
+    public static synchronized Transformer newIdentityTransformer()
+        throws TransformerConfigurationException {
+        return getTransformerFactory().newTransformer();
+    }
+
+    private static synchronized Templates newTemplates(byte[] stylesheet)
+        throws TransformerConfigurationException {
+        return getTransformerFactory().newTemplates(
+            new StreamSource(new ByteArrayInputStream(stylesheet))
+        );
+    }
+
+    private static synchronized TransformerFactory getTransformerFactory()
+        throws TransformerConfigurationException {
+        if (transformerFactory == null) {
+            TransformerFactory tFactory = TransformerFactory.newInstance();
+            // Process XSLT stylesheets in a secure manner
+            tFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, Boolean.TRUE);
+            transformerFactory = tFactory;
+        }
+        return transformerFactory;
+    }
+}
@@ -21,6 +21,7 @@ package org.apache.xml.security.transforms.implementations;
 import java.io.OutputStream;
 
 import org.apache.xml.security.c14n.CanonicalizationException;
+import org.apache.xml.security.c14n.CanonicalizerPool;
 import org.apache.xml.security.c14n.implementations.Canonicalizer20010315OmitComments;
 import org.apache.xml.security.signature.XMLSignatureInput;
 import org.apache.xml.security.transforms.Transform;
@@ -49,13 +50,21 @@ public class TransformC14N extends TransformSpi {
     protected XMLSignatureInput enginePerformTransform(
         XMLSignatureInput input, OutputStream os, Transform transformObject
     ) throws CanonicalizationException {   
-        Canonicalizer20010315OmitComments c14n = new Canonicalizer20010315OmitComments();
+        Canonicalizer20010315OmitComments c14n =
+            CanonicalizerPool.poll(Canonicalizer20010315OmitComments.class);
+        if (c14n == null) {
+            c14n = new Canonicalizer20010315OmitComments();
+        }
         c14n.setSecureValidation(secureValidation);
         if (os != null) {
             c14n.setWriter(os);
         }
-        byte[] result = null;                
-        result = c14n.engineCanonicalize(input);         		         	         
+        byte[] result = null;
+        try {
+            result = c14n.engineCanonicalize(input);
+        } finally {
+            CanonicalizerPool.repool(c14n);
+        }
         XMLSignatureInput output = new XMLSignatureInput(result);
         output.setSecureValidation(secureValidation);
         if (os != null) {
@@ -21,6 +21,7 @@ package org.apache.xml.security.transforms.implementations;
 import java.io.OutputStream;
 
 import org.apache.xml.security.c14n.CanonicalizationException;
+import org.apache.xml.security.c14n.CanonicalizerPool;
 import org.apache.xml.security.c14n.implementations.Canonicalizer11_OmitComments;
 import org.apache.xml.security.signature.XMLSignatureInput;
 import org.apache.xml.security.transforms.Transform;
@@ -42,13 +43,21 @@ public class TransformC14N11 extends TransformSpi {
     protected XMLSignatureInput enginePerformTransform(
         XMLSignatureInput input, OutputStream os, Transform transform
     ) throws CanonicalizationException {   
-        Canonicalizer11_OmitComments c14n = new Canonicalizer11_OmitComments();
+        Canonicalizer11_OmitComments c14n =
+            CanonicalizerPool.poll(Canonicalizer11_OmitComments.class);
+        if (c14n == null) {
+            c14n = new Canonicalizer11_OmitComments();
+        }
         c14n.setSecureValidation(secureValidation);
         if (os != null) {
             c14n.setWriter(os);
         }
-        byte[] result = null;                
-        result = c14n.engineCanonicalize(input);         		         	         
+        byte[] result = null;
+        try {
+            result = c14n.engineCanonicalize(input);
+        } finally {
+            CanonicalizerPool.repool(c14n);
+        }
         XMLSignatureInput output = new XMLSignatureInput(result);
         output.setSecureValidation(secureValidation);
         if (os != null) {
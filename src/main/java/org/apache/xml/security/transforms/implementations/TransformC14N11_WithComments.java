@@ -21,6 +21,7 @@ package org.apache.xml.security.transforms.implementations;
 import java.io.OutputStream;
 
 import org.apache.xml.security.c14n.CanonicalizationException;
+import org.apache.xml.security.c14n.CanonicalizerPool;
 import org.apache.xml.security.c14n.implementations.Canonicalizer11_WithComments;
 import org.apache.xml.security.signature.XMLSignatureInput;
 import org.apache.xml.security.transforms.Transform;
@@ -43,14 +44,21 @@ public class TransformC14N11_WithComments extends TransformSpi {
         XMLSignatureInput input, OutputStream os, Transform transform
     ) throws CanonicalizationException {
       
-        Canonicalizer11_WithComments c14n = new Canonicalizer11_WithComments();
+        Canonicalizer11_WithComments c14n =
+            CanonicalizerPool.poll(Canonicalizer11_WithComments.class);
+        if (c14n == null) {
+            c14n = new Canonicalizer11_WithComments();
+        }
         c14n.setSecureValidation(secureValidation);
         if (os != null) {
             c14n.setWriter(os);
         }
-        
         byte[] result = null;
-        result = c14n.engineCanonicalize(input);         		         	         
+        try {
+            result = c14n.engineCanonicalize(input);
+        } finally {
+            CanonicalizerPool.repool(c14n);
+        }
         XMLSignatureInput output = new XMLSignatureInput(result);
         output.setSecureValidation(secureValidation);
         if (os != null) {
@@ -21,6 +21,7 @@ package org.apache.xml.security.transforms.implementations;
 import java.io.OutputStream;
 
 import org.apache.xml.security.c14n.CanonicalizationException;
+import org.apache.xml.security.c14n.CanonicalizerPool;
 import org.apache.xml.security.c14n.implementations.Canonicalizer20010315ExclOmitComments;
 import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.signature.XMLSignatureInput;
@@ -74,12 +75,20 @@ public class TransformC14NExclusive extends TransformSpi {
             }
 
             Canonicalizer20010315ExclOmitComments c14n =
-                new Canonicalizer20010315ExclOmitComments();
+                CanonicalizerPool.poll(Canonicalizer20010315ExclOmitComments.class);
+            if (c14n == null) {
+                c14n = new Canonicalizer20010315ExclOmitComments();
+            }
             c14n.setSecureValidation(secureValidation);
             if (os != null) {
                 c14n.setWriter(os);
             }
-            byte[] result = c14n.engineCanonicalize(input, inclusiveNamespaces);
+            byte[] result = null;
+            try {
+                result = c14n.engineCanonicalize(input, inclusiveNamespaces);
+            } finally {
+                CanonicalizerPool.repool(c14n);
+            }
 
             XMLSignatureInput output = new XMLSignatureInput(result);
             output.setSecureValidation(secureValidation);
@@ -21,6 +21,7 @@ package org.apache.xml.security.transforms.implementations;
 import java.io.OutputStream;
 
 import org.apache.xml.security.c14n.CanonicalizationException;
+import org.apache.xml.security.c14n.CanonicalizerPool;
 import org.apache.xml.security.c14n.implementations.Canonicalizer20010315WithComments;
 import org.apache.xml.security.signature.XMLSignatureInput;
 import org.apache.xml.security.transforms.Transform;
@@ -49,14 +50,21 @@ public class TransformC14NWithComments extends TransformSpi {
         XMLSignatureInput input, OutputStream os, Transform transformObject
     ) throws CanonicalizationException {
 
-        Canonicalizer20010315WithComments c14n = new Canonicalizer20010315WithComments();
+        Canonicalizer20010315WithComments c14n =
+            CanonicalizerPool.poll(Canonicalizer20010315WithComments.class);
+        if (c14n == null) {
+            c14n = new Canonicalizer20010315WithComments();
+        }
         c14n.setSecureValidation(secureValidation);
         if (os != null) {
             c14n.setWriter(os);
         }
-
         byte[] result = null;
-        result = c14n.engineCanonicalize(input);         		         	         
+        try {
+            result = c14n.engineCanonicalize(input);
+        } finally {
+            CanonicalizerPool.repool(c14n);
+        }
         XMLSignatureInput output = new XMLSignatureInput(result);  
         output.setSecureValidation(secureValidation);
         if (os != null) {
@@ -19,6 +19,10 @@
 package org.apache.xml.security.transforms.implementations;
 
 import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.xml.transform.TransformerException;
 
@@ -30,12 +34,15 @@ import org.apache.xml.security.transforms.TransformSpi;
 import org.apache.xml.security.transforms.TransformationException;
 import org.apache.xml.security.transforms.Transforms;
 import org.apache.xml.security.utils.Constants;
+import org.apache.xml.security.utils.DOMNamespaceContext;
 import org.apache.xml.security.utils.XMLUtils;
 import org.apache.xml.security.utils.XPathAPI;
 import org.apache.xml.security.utils.XPathFactory;
+import org.w3c.dom.Attr;
 import org.w3c.dom.DOMException;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
 
 /**
  * Class TransformXPath
@@ -103,7 +110,7 @@ public class TransformXPath extends TransformSpi {
             
             XPathFactory xpathFactory = XPathFactory.newInstance();
             XPathAPI xpathAPIInstance = xpathFactory.newXPathAPI();
-            input.addNodeFilter(new XPathNodeFilter(xpathElement, xpathnode, str, xpathAPIInstance));
+            input.addNodeFilter(newNodeFilter(xpathElement, xpathnode, str, xpathAPIInstance));
             input.setNodeSet(true);
             return input;
         } catch (DOMException ex) {
@@ -119,6 +126,282 @@ public class TransformXPath extends TransformSpi {
         return str.indexOf("namespace") != -1 || str.indexOf("name()") != -1;
     }
 
+    /**
+     * Returns the cheapest filter that gives the same result as evaluating the expression
+     * once per node: the ancestor-or-self shapes used by most signatures are answered by
+     * walking the ancestor axis, other expressions are evaluated once as a node-set, and
+     * only expressions depending on the context position, on names or on here() are still
+     * evaluated per node.
+     */
+    private static NodeFilter newNodeFilter(
+        Element xpathElement, Node xpathnode, String str, XPathAPI xPathAPI
+    ) {
+        NodeFilter filter = AncestorNodeFilter.newInstance(xpathElement, xpathnode, str);
+        if (filter != null) {
+            return filter;
+        }
+        // removing all whitespace can only reveal more context dependent function calls
+        if (XPathNodeSetFilter.isNodeSetExpression(str.replaceAll("\\s", ""))) {
+            return new XPathNodeSetFilter(xpathElement, xpathnode, str, xPathAPI);
+        }
+        return new XPathNodeFilter(xpathElement, xpathnode, str, xPathAPI);
+    }
+
+    /**
+     * Evaluates <CODE>ancestor-or-self::p:l</CODE>, <CODE>not(ancestor-or-self::p:l)</CODE>
+     * and the enveloped signature expression of the XML Signature specification
+     * (<CODE>count(ancestor-or-self::p:l | here()/ancestor::p:l[1]) &gt;
+     * count(ancestor-or-self::p:l)</CODE>) by walking the ancestors of the node.
+     */
+    static class AncestorNodeFilter implements NodeFilter {
+
+        private static final String QNAME = 
+            "((?:[A-Za-z_][\\w.\\-]*:)?[A-Za-z_][\\w.\\-]*)";
+
+        /**
+         * Whitespace, which is only allowed between the tokens of the expression, so that
+         * operator names like "or" can't be joined with a name test
+         */
+        private static final String WS = "\\s*";
+
+        private static final String ANCESTOR_OR_SELF =
+            "ancestor-or-self" + WS + "::" + WS + QNAME;
+
+        private static final Pattern INCLUDE_PATTERN = 
+            Pattern.compile(WS + ANCESTOR_OR_SELF + WS);
+
+        private static final Pattern EXCLUDE_PATTERN = 
+            Pattern.compile(WS + "not" + WS + "\\(" + WS + ANCESTOR_OR_SELF + WS + "\\)" + WS);
+
+        private static final Pattern HERE_PATTERN = 
+            Pattern.compile(WS + "count" + WS + "\\(" + WS + ANCESTOR_OR_SELF + WS + "\\|"
+                + WS + "here" + WS + "\\(" + WS + "\\)" + WS + "/" + WS + "ancestor" + WS + "::"
+                + WS + QNAME + WS + "\\[" + WS + "1" + WS + "\\]" + WS + "\\)" + WS + ">"
+                + WS + "count" + WS + "\\(" + WS + ANCESTOR_OR_SELF + WS + "\\)" + WS);
+
+        private final String namespaceURI;
+        private final String localName;
+        private final boolean exclude;
+        private final boolean here;
+        private final Element hereElement;
+
+        private AncestorNodeFilter(
+            String namespaceURI, String localName, boolean exclude, boolean here, Element hereElement
+        ) {
+            this.namespaceURI = namespaceURI;
+            this.localName = localName;
+            this.exclude = exclude;
+            this.here = here;
+            this.hereElement = hereElement;
+        }
+
+        /**
+         * @param xpathElement the ds:XPath element, used to resolve prefixes
+         * @param xpathnode the text node of the expression, the target of here()
+         * @param expression the expression
+         * @return the filter, or null if the expression does not have one of the known shapes
+         */
+        static AncestorNodeFilter newInstance(
+            Element xpathElement, Node xpathnode, String expression
+        ) {
+            Matcher matcher = EXCLUDE_PATTERN.matcher(expression);
+            boolean exclude = matcher.matches();
+            if (!exclude) {
+                matcher = INCLUDE_PATTERN.matcher(expression);
+                if (!matcher.matches()) {
+                    matcher = HERE_PATTERN.matcher(expression);
+                    if (!matcher.matches() || !matcher.group(1).equals(matcher.group(2))
+                        || !matcher.group(1).equals(matcher.group(3))) {
+                        return null;
+                    }
+                }
+            }
+
+            String qname = matcher.group(1);
+            String prefix = null;
+            String localName = qname;
+            int colon = qname.indexOf(':');
+            if (colon != -1) {
+                prefix = qname.substring(0, colon);
+                localName = qname.substring(colon + 1);
+            }
+            String namespaceURI = null;
+            if (prefix != null) {
+                namespaceURI = new DOMNamespaceContext(xpathElement).getNamespaceURI(prefix);
+                if (namespaceURI == null) {
+                    // leave the error reporting to the XPath engine
+                    return null;
+                }
+            }
+
+            AncestorNodeFilter filter = 
+                new AncestorNodeFilter(namespaceURI, localName, exclude, false, null);
+            if (matcher.groupCount() == 1) {
+                return filter;
+            }
+
+            Element hereElement = null;
+            for (Node parent = xpathnode.getParentNode(); parent != null && hereElement == null; 
+                parent = parent.getParentNode()) {
+                if (parent.getNodeType() == Node.ELEMENT_NODE && filter.matches((Element)parent)) {
+                    hereElement = (Element)parent;
+                }
+            }
+            return new AncestorNodeFilter(namespaceURI, localName, true, true, hereElement);
+        }
+
+        private boolean matches(Element element) {
+            if (here) {
+                return element == hereElement;
+            }
+            if (!localName.equals(element.getLocalName())) {
+                return false;
+            }
+            String elementNamespaceURI = element.getNamespaceURI();
+            if (namespaceURI == null) {
+                return elementNamespaceURI == null || elementNamespaceURI.length() == 0;
+            }
+            return namespaceURI.equals(elementNamespaceURI);
+        }
+
+        /**
+         * @see org.apache.xml.security.signature.NodeFilter#isNodeInclude(org.w3c.dom.Node)
+         */
+        public int isNodeInclude(Node currentNode) {
+            if (here && hereElement == null) {
+                // the here() operand of the union is empty, so no node is selected
+                return 0;
+            }
+            Node node = currentNode;
+            if (node.getNodeType() == Node.ATTRIBUTE_NODE) {
+                node = ((Attr)node).getOwnerElement();
+            }
+            while (node != null) {
+                if (node.getNodeType() == Node.ELEMENT_NODE && matches((Element)node)) {
+                    return exclude ? -1 : 1;
+                }
+                node = node.getParentNode();
+            }
+            return exclude ? 1 : 0;
+        }
+
+        public int isNodeIncludeDO(Node n, int level) {
+            return isNodeInclude(n);
+        }
+
+    }
+
+    /**
+     * Evaluates the expression once for the whole document, as the predicate of a
+     * location path selecting every node, and then answers from the resulting set.
+     */
+    static class XPathNodeSetFilter implements NodeFilter {
+
+        private static final String[] CONTEXT_DEPENDENT_FUNCTIONS = 
+            { "namespace", "name(", "position(", "last(", "here(", "current(" };
+
+        XPathAPI xPathAPI;
+        Node xpathnode; 
+        Element xpathElement;
+        String str;
+        Set<Node> includedNodes;
+
+        XPathNodeSetFilter(Element xpathElement, Node xpathnode, String str, XPathAPI xPathAPI) {
+            this.xpathnode = xpathnode;
+            this.str = str;
+            this.xpathElement = xpathElement;
+            this.xPathAPI = xPathAPI;
+        }
+
+        /**
+         * @param expression the expression with all whitespace removed
+         * @return true if the expression gives the same result as a predicate as it does
+         * when evaluated with the node as the only node of the context
+         */
+        static boolean isNodeSetExpression(String expression) {
+            for (int i = 0; i < CONTEXT_DEPENDENT_FUNCTIONS.length; i++) {
+                if (expression.indexOf(CONTEXT_DEPENDENT_FUNCTIONS[i]) != -1) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @see org.apache.xml.security.signature.NodeFilter#isNodeInclude(org.w3c.dom.Node)
+         */
+        public int isNodeInclude(Node currentNode) {
+            try {
+                Node node = currentNode;
+                switch (node.getNodeType()) {
+                case Node.ATTRIBUTE_NODE :
+                    if (Constants.NamespaceSpecNS.equals(node.getNamespaceURI())) {
+                        // namespace nodes are not selected by the attribute axis
+                        return evaluate(currentNode);
+                    }
+                    break;
+                case Node.TEXT_NODE :
+                case Node.CDATA_SECTION_NODE :
+                    // adjacent text nodes are a single text node in the XPath data model
+                    while (node.getPreviousSibling() != null && isText(node.getPreviousSibling())) {
+                        node = node.getPreviousSibling();
+                    }
+                    break;
+                case Node.ELEMENT_NODE :
+                case Node.COMMENT_NODE :
+                case Node.PROCESSING_INSTRUCTION_NODE :
+                case Node.DOCUMENT_NODE :
+                    break;
+                default :
+                    return evaluate(currentNode);
+                }
+                if (includedNodes == null) {
+                    includedNodes = selectIncludedNodes(XMLUtils.getOwnerDocument(currentNode));
+                }
+                if (includedNodes.contains(node)) {
+                    return 1;
+                }
+                return 0;
+            } catch (TransformerException e) {
+                Object[] eArgs = {currentNode};
+                throw new XMLSecurityRuntimeException("signature.Transform.node", eArgs, e);
+            } catch (Exception e) {
+                Object[] eArgs = {currentNode, currentNode.getNodeType()};
+                throw new XMLSecurityRuntimeException("signature.Transform.nodeAndType",eArgs, e);
+            }
+        }
+
+        public int isNodeIncludeDO(Node n, int level) {
+            return isNodeInclude(n);
+        }
+
+        private int evaluate(Node currentNode) throws TransformerException {
+            if (xPathAPI.evaluate(currentNode, xpathnode, str, xpathElement)) {
+                return 1;
+            }
+            return 0;
+        }
+
+        private Set<Node> selectIncludedNodes(Node document) throws TransformerException {
+            NodeList nodeList = 
+                xPathAPI.selectNodeList(
+                    document, xpathnode, "(//. | //@*)[boolean(" + str + ")]", xpathElement
+                );
+            int length = nodeList.getLength();
+            Set<Node> nodes = new HashSet<Node>(length * 4 / 3 + 1);
+            for (int i = 0; i < length; i++) {
+                nodes.add(nodeList.item(i));
+            }
+            return nodes;
+        }
+
+        private static boolean isText(Node node) {
+            return node.getNodeType() == Node.TEXT_NODE 
+                || node.getNodeType() == Node.CDATA_SECTION_NODE;
+        }
+
+    }
+
     static class XPathNodeFilter implements NodeFilter {
         
         XPathAPI xPathAPI;
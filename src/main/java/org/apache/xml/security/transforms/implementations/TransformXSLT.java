@@ -23,12 +23,10 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 
-import javax.xml.XMLConstants;
 import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
@@ -87,10 +85,6 @@ public class TransformXSLT extends TransformSpi {
                 throw new TransformationException("xml.WrongContent", exArgs);
             }
 
-            TransformerFactory tFactory = TransformerFactory.newInstance();
-            // Process XSLT stylesheets in a secure manner
-            tFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, Boolean.TRUE);
-
             /*
              * This transform requires an octet stream as input. If the actual
              * input is an XPath node-set, then the signature application should
@@ -99,29 +93,32 @@ public class TransformXSLT extends TransformSpi {
              */
             Source xmlSource =
                 new StreamSource(new ByteArrayInputStream(input.getBytes()));
-            Source stylesheet;
 
             /*
-             * This complicated transformation of the stylesheet itself is necessary
+             * This transformation of the stylesheet itself is necessary
              * because of the need to get the pure style sheet. If we simply say
              * Source stylesheet = new DOMSource(this.xsltElement);
              * whereby this.xsltElement is not the rootElement of the Document,
              * this causes problems;
-             * so we convert the stylesheet to byte[] and use this as input stream
+             * so we convert the stylesheet to byte[] and use this as input stream.
+             * Unlike Canonical XML, this does not import the xml:* attributes of
+             * the ancestors, such as xml:space, into the stylesheet. The octets
+             * also identify the compiled stylesheet in the TemplatesCache, so
+             * that the same stylesheet is only compiled once.
              */
+            byte[] stylesheet;
             {
                 ByteArrayOutputStream os = new ByteArrayOutputStream();
-                Transformer transformer = tFactory.newTransformer();
+                Transformer transformer = TemplatesCache.newIdentityTransformer();
                 DOMSource source = new DOMSource(xsltElement);
                 StreamResult result = new StreamResult(os);
 
                 transformer.transform(source, result);
 
-                stylesheet =
-                    new StreamSource(new ByteArrayInputStream(os.toByteArray()));
+                stylesheet = os.toByteArray();
             }
 
-            Transformer transformer = tFactory.newTransformer(stylesheet);
+            Transformer transformer = TemplatesCache.getTemplates(stylesheet).newTransformer();
 
             // Force Xalan to use \n as line separator on all OSes. This 
             // avoids OS specific signature validation failures due to line
@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 
 import org.apache.xml.security.exceptions.Base64DecodingException;
 import org.w3c.dom.Document;
@@ -46,49 +47,8 @@ public class Base64 {
     /** Field BASE64DEFAULTLENGTH */
     public static final int BASE64DEFAULTLENGTH = 76;
     
-    private static final int BASELENGTH = 255;
-    private static final int LOOKUPLENGTH = 64;
-    private static final int TWENTYFOURBITGROUP = 24;
-    private static final int EIGHTBIT = 8;
-    private static final int SIXTEENBIT = 16;
-    private static final int FOURBYTE = 4;
-    private static final int SIGN = -128;
-    private static final char PAD = '=';   
-    private static final byte [] base64Alphabet = new byte[BASELENGTH];
-    private static final char [] lookUpBase64Alphabet = new char[LOOKUPLENGTH];
-
-    static {
-        for (int i = 0; i < BASELENGTH; i++) {
-            base64Alphabet[i] = -1;
-        }
-        for (int i = 'Z'; i >= 'A'; i--) {
-            base64Alphabet[i] = (byte) (i - 'A');
-        }
-        for (int i = 'z'; i>= 'a'; i--) {
-            base64Alphabet[i] = (byte) (i - 'a' + 26);
-        }
-
-        for (int i = '9'; i >= '0'; i--) {
-            base64Alphabet[i] = (byte) (i - '0' + 52);
-        }
-
-        base64Alphabet['+'] = 62;
-        base64Alphabet['/'] = 63;
-
-        for (int i = 0; i <= 25; i++) {
-            lookUpBase64Alphabet[i] = (char)('A' + i);
-        }
-
-        for (int i = 26,  j = 0; i <= 51; i++, j++) {
-            lookUpBase64Alphabet[i] = (char)('a' + j);
-        }
-
-        for (int i = 52,  j = 0; i <= 61; i++, j++) {
-            lookUpBase64Alphabet[i] = (char)('0' + j);
-        }
-        lookUpBase64Alphabet[62] = '+';
-        lookUpBase64Alphabet[63] = '/';
-    }
+    /** The number of characters decoded at once into an OutputStream */
+    private static final int DECODE_CHUNK_LENGTH = 4096;
 
     private Base64() {
         // we don't allow instantiation
@@ -252,18 +212,42 @@ public class Base64 {
     public static final byte[] decode(Element element) throws Base64DecodingException {
 
         Node sibling = element.getFirstChild();
-        StringBuilder sb = new StringBuilder();
+        Text text = null;
+        int length = 0;
+        boolean single = true;
 
         while (sibling != null) {
             if (sibling.getNodeType() == Node.TEXT_NODE) {
-                Text t = (Text) sibling;
+                single = text == null;
+                text = (Text) sibling;
+                length += text.getLength();
+            }
+            sibling = sibling.getNextSibling();
+        }
 
-                sb.append(t.getData());
+        if (text == null) {
+            return new byte[0];
+        }
+        if (single) {
+            // the common case, which is decoded without a copy of the text
+            return decode(text.getData());
+        }
+
+        // several text nodes are decoded one after the other
+        Base64Decoder decoder = new Base64Decoder();
+        byte[] decodedData = new byte[decoder.getMaxDecodedLength(length)];
+        int decodedLength = 0;
+        sibling = element.getFirstChild();
+        while (sibling != null) {
+            if (sibling.getNodeType() == Node.TEXT_NODE) {
+                String data = ((Text) sibling).getData();
+                decodedLength += decoder.decode(data, 0, data.length(), decodedData, decodedLength);
             }
             sibling = sibling.getNextSibling();
         }
+        decoder.finish();
 
-        return decode(sb.toString());
+        return trim(decodedData, decodedLength);
     }
 
     /**
@@ -292,8 +276,22 @@ public class Base64 {
      * @throws Base64DecodingException
      *
      */
-    public static final byte[] decode(byte[] base64) throws Base64DecodingException  {   	   
-        return decodeInternal(base64, -1);
+    public static final byte[] decode(byte[] base64) throws Base64DecodingException  {
+        Base64Decoder decoder = new Base64Decoder();
+        byte[] decodedData = new byte[decoder.getMaxDecodedLength(base64.length)];
+        int decodedLength = decoder.decode(ByteBuffer.wrap(base64), decodedData, 0);
+        decoder.finish();
+
+        return trim(decodedData, decodedLength);
+    }
+
+    private static byte[] trim(byte[] data, int length) {
+        if (length == data.length) {
+            return data;
+        }
+        byte[] result = new byte[length];
+        System.arraycopy(data, 0, result, 0, length);
+        return result;
     }
 
     /**
@@ -338,14 +336,6 @@ public class Base64 {
         return retBytes;
     }
 
-    protected static final boolean isWhiteSpace(byte octet) {
-        return octet == 0x20 || octet == 0xd || octet == 0xa || octet == 0x9;
-    }
-
-    protected static final boolean isPad(byte octet) {
-        return octet == PAD;
-    }
-
     /**
      * Encodes hex octets into Base64
      *
@@ -361,103 +351,14 @@ public class Base64 {
      * @return a <code>String</code> with encoded data
      */
     public static final String  encode(byte[] binaryData, int length) {
-        if (length < 4) {
-            length = Integer.MAX_VALUE;
-        }
-
         if (binaryData == null) {
             return null;
         }
 
-        int lengthDataBits = binaryData.length * EIGHTBIT;
-        if (lengthDataBits == 0) {
-            return "";
-        }
-
-        int fewerThan24bits = lengthDataBits % TWENTYFOURBITGROUP;
-        int numberTriplets = lengthDataBits / TWENTYFOURBITGROUP;
-        int numberQuartet = fewerThan24bits != 0 ? numberTriplets + 1 : numberTriplets;
-        int quartesPerLine = length / 4;
-        int numberLines = (numberQuartet - 1) / quartesPerLine;
-        char encodedData[] = null;
-
-        encodedData = new char[numberQuartet * 4 + numberLines];
-
-        byte k = 0, l = 0, b1 = 0, b2 = 0, b3 = 0;
-        int encodedIndex = 0;
-        int dataIndex = 0;
-        int i = 0;
-
-        for (int line = 0; line < numberLines; line++) {
-            for (int quartet = 0; quartet < 19; quartet++) {
-                b1 = binaryData[dataIndex++];
-                b2 = binaryData[dataIndex++];
-                b3 = binaryData[dataIndex++];
-
-                l  = (byte)(b2 & 0x0f);
-                k  = (byte)(b1 & 0x03);
-
-                byte val1 = ((b1 & SIGN) == 0) ? (byte)(b1 >> 2): (byte)((b1) >> 2 ^ 0xc0);
-
-                byte val2 = ((b2 & SIGN) == 0) ? (byte)(b2 >> 4) : (byte)((b2) >> 4 ^ 0xf0);
-                byte val3 = ((b3 & SIGN) == 0) ? (byte)(b3 >> 6) : (byte)((b3) >> 6 ^ 0xfc);
-
-
-                encodedData[encodedIndex++] = lookUpBase64Alphabet[val1];
-                encodedData[encodedIndex++] = lookUpBase64Alphabet[val2 | (k << 4)];
-                encodedData[encodedIndex++] = lookUpBase64Alphabet[(l << 2) | val3];
-                encodedData[encodedIndex++] = lookUpBase64Alphabet[b3 & 0x3f];
-
-                i++;
-            }           
-            encodedData[encodedIndex++] = 0xa;           
-        }
-
-        for (; i < numberTriplets; i++) {
-            b1 = binaryData[dataIndex++];
-            b2 = binaryData[dataIndex++];
-            b3 = binaryData[dataIndex++];
-
-            l  = (byte)(b2 & 0x0f);
-            k  = (byte)(b1 & 0x03);
-
-            byte val1 = ((b1 & SIGN) == 0) ? (byte)(b1 >> 2) : (byte)((b1) >> 2 ^ 0xc0);
-
-            byte val2 = ((b2 & SIGN) == 0) ? (byte)(b2 >> 4) : (byte)((b2) >> 4 ^ 0xf0);
-            byte val3 = ((b3 & SIGN) == 0) ? (byte)(b3 >> 6) : (byte)((b3) >> 6 ^ 0xfc);
-    
-    
-            encodedData[encodedIndex++] = lookUpBase64Alphabet[val1];
-            encodedData[encodedIndex++] = lookUpBase64Alphabet[val2 | (k << 4)];
-            encodedData[encodedIndex++] = lookUpBase64Alphabet[(l << 2) | val3];
-            encodedData[encodedIndex++] = lookUpBase64Alphabet[b3 & 0x3f];
-        }
-
-        // form integral number of 6-bit groups
-        if (fewerThan24bits == EIGHTBIT) {
-            b1 = binaryData[dataIndex];
-            k = (byte) (b1 &0x03);
-            byte val1 = ((b1 & SIGN) == 0) ? (byte)(b1 >> 2):(byte)((b1) >> 2 ^ 0xc0);
-            encodedData[encodedIndex++] = lookUpBase64Alphabet[val1];
-            encodedData[encodedIndex++] = lookUpBase64Alphabet[k << 4];
-            encodedData[encodedIndex++] = PAD;
-            encodedData[encodedIndex++] = PAD;
-        } else if (fewerThan24bits == SIXTEENBIT) {
-            b1 = binaryData[dataIndex];
-            b2 = binaryData[dataIndex +1 ];
-            l = ( byte ) (b2 & 0x0f);
-            k = ( byte ) (b1 & 0x03);
-
-            byte val1 = ((b1 & SIGN) == 0) ? (byte)(b1 >> 2) : (byte)((b1) >> 2 ^ 0xc0);
-            byte val2 = ((b2 & SIGN) == 0) ? (byte)(b2 >> 4) : (byte)((b2) >> 4 ^ 0xf0);
-    
-            encodedData[encodedIndex++] = lookUpBase64Alphabet[val1];
-            encodedData[encodedIndex++] = lookUpBase64Alphabet[val2 | (k << 4)];
-            encodedData[encodedIndex++] = lookUpBase64Alphabet[l << 2];
-            encodedData[encodedIndex++] = PAD;
-        }
-
-        //encodedData[encodedIndex] = 0xa;
+        char[] encodedData = new char[Base64Encoder.getEncodedLength(binaryData.length, length)];
+        Base64Encoder encoder = new Base64Encoder(length);
+        int encodedIndex = encoder.encode(binaryData, 0, binaryData.length, encodedData, 0);
+        encoder.finish(encodedData, encodedIndex);
 
         return new String(encodedData);
     }
@@ -473,108 +374,18 @@ public class Base64 {
         if (encoded == null) {
             return null;
         }
-        byte[] bytes = new byte[encoded.length()];
-        int len = getBytesInternal(encoded, bytes);
-        return decodeInternal(bytes, len);
-    }
-
-    protected static final int getBytesInternal(String s, byte[] result) {
-        int length = s.length();
-
-        int newSize = 0;
-        for (int i = 0; i < length; i++) {
-            byte dataS = (byte)s.charAt(i);
-            if (!isWhiteSpace(dataS)) {
-                result[newSize++] = dataS;
-            }
-        }
-        return newSize;
-    }
-
-    protected static final byte[] decodeInternal(byte[] base64Data, int len) 
-        throws Base64DecodingException {
-        // remove white spaces
-        if (len == -1) {
-            len = removeWhiteSpace(base64Data);
-        }
-
-        if (len % FOURBYTE != 0) {
+        int length = encoded.length();
+        int decodedLength = Base64Decoder.getDecodedLength(encoded, 0, length);
+        if (decodedLength < 0) {
             throw new Base64DecodingException("decoding.divisible.four");
             //should be divisible by four
         }
 
-        int numberQuadruple = len / FOURBYTE;
-
-        if (numberQuadruple == 0) {
-            return new byte[0];
-        }
-
-        byte decodedData[] = null;
-        byte b1 = 0, b2 = 0, b3 = 0, b4 = 0;
-
-        int i = 0;
-        int encodedIndex = 0;
-        int dataIndex = 0;
-
-        //decodedData = new byte[ (numberQuadruple)*3];
-        dataIndex = (numberQuadruple - 1) * 4;
-        encodedIndex = (numberQuadruple - 1) * 3;
-        //first last bits.
-        b1 = base64Alphabet[base64Data[dataIndex++]];
-        b2 = base64Alphabet[base64Data[dataIndex++]];
-        if (b1 == -1 || b2 == -1) {
-             //if found "no data" just return null
-            throw new Base64DecodingException("decoding.general");
-        }
-
-
-        byte d3, d4;
-        b3 = base64Alphabet[d3 = base64Data[dataIndex++]];
-        b4 = base64Alphabet[d4 = base64Data[dataIndex++]];
-        if (b3 == -1 || b4 == -1) {
-            //Check if they are PAD characters
-            if (isPad(d3) && isPad(d4)) {               //Two PAD e.g. 3c[Pad][Pad]
-                if ((b2 & 0xf) != 0) { //last 4 bits should be zero
-                    throw new Base64DecodingException("decoding.general");
-                }
-                decodedData = new byte[encodedIndex + 1];                
-                decodedData[encodedIndex]   = (byte)(b1 << 2 | b2 >> 4) ;                
-            } else if (!isPad(d3) && isPad(d4)) {               //One PAD  e.g. 3cQ[Pad]                
-                if ((b3 & 0x3) != 0) { //last 2 bits should be zero
-                    throw new Base64DecodingException("decoding.general");
-                }
-                decodedData = new byte[encodedIndex + 2];                
-                decodedData[encodedIndex++] = (byte)(b1 << 2 | b2 >> 4);
-                decodedData[encodedIndex] = (byte)(((b2 & 0xf) << 4) |((b3 >> 2) & 0xf));                
-            } else {
-                //an error  like "3c[Pad]r", "3cdX", "3cXd", "3cXX" where X is non data
-                throw new Base64DecodingException("decoding.general");
-            }
-        } else {
-            //No PAD e.g 3cQl
-            decodedData = new byte[encodedIndex+3];
-            decodedData[encodedIndex++] = (byte)(b1 << 2 | b2 >> 4) ;
-            decodedData[encodedIndex++] = (byte)(((b2 & 0xf) << 4) | ((b3 >> 2) & 0xf));
-            decodedData[encodedIndex++] = (byte)(b3 << 6 | b4);
-        }
-        encodedIndex = 0;
-        dataIndex = 0;
-        //the begin
-        for (i = numberQuadruple - 1; i > 0; i--) {
-            b1 = base64Alphabet[base64Data[dataIndex++]];
-            b2 = base64Alphabet[base64Data[dataIndex++]];
-            b3 = base64Alphabet[base64Data[dataIndex++]];
-            b4 = base64Alphabet[base64Data[dataIndex++]];
-
-            if (b1 == -1 || b2 == -1 || b3 == -1 || b4 == -1) {
-                //if found "no data" just return null   
-                throw new Base64DecodingException("decoding.general");
-            }
-
-            decodedData[encodedIndex++] = (byte)(b1 << 2 | b2 >> 4) ;
-            decodedData[encodedIndex++] = (byte)(((b2 & 0xf) << 4) |((b3 >> 2) & 0xf));
-            decodedData[encodedIndex++] = (byte)(b3 << 6 | b4 );
-        }            
+        // the characters are decoded in place, without a copy as octets
+        byte[] decodedData = new byte[decodedLength];
+        Base64Decoder decoder = new Base64Decoder();
+        decoder.decode(encoded, 0, length, decodedData, 0);
+        decoder.finish();
         return decodedData;
     }
 
@@ -588,9 +399,15 @@ public class Base64 {
      */
     public static final void decode(String base64Data, OutputStream os) 
         throws Base64DecodingException, IOException {
-        byte[] bytes = new byte[base64Data.length()];
-        int len = getBytesInternal(base64Data, bytes);
-        decode(bytes, os, len);
+        Base64Decoder decoder = new Base64Decoder();
+        byte[] decodedData = new byte[decoder.getMaxDecodedLength(DECODE_CHUNK_LENGTH)];
+        int length = base64Data.length();
+        for (int start = 0; start < length; start += DECODE_CHUNK_LENGTH) {
+            int end = Math.min(start + DECODE_CHUNK_LENGTH, length);
+            int decodedLength = decoder.decode(base64Data, start, end, decodedData, 0);
+            os.write(decodedData, 0, decodedLength);
+        }
+        decoder.finish();
     }
 
     /**
@@ -602,83 +419,16 @@ public class Base64 {
      * @throws Base64DecodingException
      */
     public static final void decode(byte[] base64Data, OutputStream os) 
-        throws Base64DecodingException, IOException {	    
-        decode(base64Data, os, -1);
-    }
-
-    protected static final void decode(byte[] base64Data, OutputStream os, int len) 
-        throws Base64DecodingException, IOException {	    
-        // remove white spaces
-        if (len == -1) {
-            len = removeWhiteSpace(base64Data);
-        }
-
-        if (len % FOURBYTE != 0) {
-            throw new Base64DecodingException("decoding.divisible.four");
-            //should be divisible by four
-        }
-
-        int numberQuadruple = len / FOURBYTE;
-
-        if (numberQuadruple == 0) {
-            return;
-        }
-
-        //byte decodedData[] = null;
-        byte b1 = 0, b2 = 0, b3 = 0, b4 = 0;
-
-        int i = 0;
-        int dataIndex = 0;    
-
-        //the begin
-        for (i = numberQuadruple - 1; i > 0; i--) {
-            b1 = base64Alphabet[base64Data[dataIndex++]];
-            b2 = base64Alphabet[base64Data[dataIndex++]];
-            b3 = base64Alphabet[base64Data[dataIndex++]];
-            b4 = base64Alphabet[base64Data[dataIndex++]];
-            if (b1 == -1 || b2 == -1 || b3 == -1 || b4 == -1) {
-                //if found "no data" just return null
-                throw new Base64DecodingException("decoding.general");
-            }
-
-            os.write((byte)(b1 << 2 | b2 >> 4));
-            os.write((byte)(((b2 & 0xf) << 4 ) | ((b3 >> 2) & 0xf)));
-            os.write((byte)(b3 << 6 | b4));
-        }   
-        b1 = base64Alphabet[base64Data[dataIndex++]];
-        b2 = base64Alphabet[base64Data[dataIndex++]];
-
-        //  first last bits.
-        if (b1 == -1 || b2 == -1) {
-            //if found "no data" just return null
-            throw new Base64DecodingException("decoding.general");
-        }
-
-        byte d3, d4;
-        b3 = base64Alphabet[d3 = base64Data[dataIndex++]];
-        b4 = base64Alphabet[d4 = base64Data[dataIndex++]];
-        if (b3 == -1 || b4 == -1) { //Check if they are PAD characters
-            if (isPad(d3) && isPad(d4)) {               //Two PAD e.g. 3c[Pad][Pad]
-                if ((b2 & 0xf) != 0) { //last 4 bits should be zero
-                    throw new Base64DecodingException("decoding.general");
-                }
-                os.write((byte)(b1 << 2 | b2 >> 4));                
-            } else if (!isPad(d3) && isPad(d4)) {               //One PAD  e.g. 3cQ[Pad]             
-                if ((b3 & 0x3 ) != 0) { //last 2 bits should be zero
-                    throw new Base64DecodingException("decoding.general");
-                }
-                os.write((byte)(b1 << 2 | b2 >> 4));
-                os.write((byte)(((b2 & 0xf) << 4) | ((b3 >> 2) & 0xf)));                
-            } else {
-                //an error  like "3c[Pad]r", "3cdX", "3cXd", "3cXX" where X is non data
-                throw new Base64DecodingException("decoding.general");
-            }
-        } else {
-            //No PAD e.g 3cQl         
-            os.write((byte)(b1 << 2 | b2 >> 4));
-            os.write( (byte)(((b2 & 0xf) << 4) | ((b3 >> 2) & 0xf)));
-            os.write((byte)(b3 << 6 | b4));
-        }
+        throws Base64DecodingException, IOException {
+        Base64Decoder decoder = new Base64Decoder();
+        byte[] decodedData = new byte[decoder.getMaxDecodedLength(DECODE_CHUNK_LENGTH)];
+        for (int start = 0; start < base64Data.length; start += DECODE_CHUNK_LENGTH) {
+            int length = Math.min(DECODE_CHUNK_LENGTH, base64Data.length - start);
+            int decodedLength =
+                decoder.decode(ByteBuffer.wrap(base64Data, start, length), decodedData, 0);
+            os.write(decodedData, 0, decodedLength);
+        }
+        decoder.finish();
     }
 
     /**
@@ -691,95 +441,14 @@ public class Base64 {
      */
     public static final void decode(InputStream is, OutputStream os) 
         throws Base64DecodingException, IOException {
-        //byte decodedData[] = null;
-        byte b1 = 0, b2 = 0, b3 = 0, b4 = 0;    
-
-        int index = 0;
-        byte[] data = new byte[4];
+        Base64Decoder decoder = new Base64Decoder();
+        byte[] data = new byte[DECODE_CHUNK_LENGTH];
+        byte[] decodedData = new byte[decoder.getMaxDecodedLength(DECODE_CHUNK_LENGTH)];
         int read;
-        //the begin
-        while ((read = is.read()) > 0) {
-            byte readed = (byte)read;
-            if (isWhiteSpace(readed)) {
-                continue;
-            }
-            if (isPad(readed)) {
-                data[index++] = readed;
-                if (index == 3) {
-                    data[index++] = (byte)is.read();
-                }
-                break;   
-            }
-
-            if ((data[index++] = readed) == -1) {
-                //if found "no data" just return null
-                throw new Base64DecodingException("decoding.general");
-            } 
-
-            if (index != 4) {
-                continue;
-            }
-            index = 0;
-            b1 = base64Alphabet[data[0]];
-            b2 = base64Alphabet[data[1]];
-            b3 = base64Alphabet[data[2]];
-            b4 = base64Alphabet[data[3]];
-
-            os.write((byte)(b1 << 2 | b2 >> 4));
-            os.write((byte)(((b2 & 0xf) << 4) | ((b3 >> 2) & 0xf)));
-            os.write((byte)(b3 << 6 | b4));
-        }       
-
-        byte d1 = data[0], d2 = data[1], d3 = data[2], d4 = data[3];
-        b1 = base64Alphabet[d1];
-        b2 = base64Alphabet[d2];
-        b3 = base64Alphabet[d3];
-        b4 = base64Alphabet[d4];
-        if (b3 == -1 || b4 == -1) { //Check if they are PAD characters
-            if (isPad(d3) && isPad(d4)) {               //Two PAD e.g. 3c[Pad][Pad]
-                if ((b2 & 0xf) != 0) { //last 4 bits should be zero
-                    throw new Base64DecodingException("decoding.general");
-                }
-                os.write((byte)(b1 << 2 | b2 >> 4));                
-            } else if (!isPad(d3) && isPad(d4)) {               //One PAD  e.g. 3cQ[Pad]
-                b3 = base64Alphabet[d3];
-                if ((b3 & 0x3) != 0) { //last 2 bits should be zero
-                    throw new Base64DecodingException("decoding.general");
-                }
-                os.write((byte)(b1 << 2 | b2 >> 4));
-                os.write((byte)(((b2 & 0xf) << 4) | ((b3 >> 2) & 0xf)));                
-            } else {
-                //an error  like "3c[Pad]r", "3cdX", "3cXd", "3cXX" where X is non data
-                throw new Base64DecodingException("decoding.general");
-            }
-        } else {
-            //No PAD e.g 3cQl         
-            os.write((byte)(b1 << 2 | b2 >> 4));
-            os.write((byte)(((b2 & 0xf) << 4) | ((b3 >> 2) & 0xf)));
-            os.write((byte)(b3 << 6 | b4));
-        }
-    }
-
-    /**
-     * remove WhiteSpace from MIME containing encoded Base64 data.
-     * 
-     * @param data  the byte array of base64 data (with WS)
-     * @return      the new length
-     */
-    protected static final int removeWhiteSpace(byte[] data) {
-        if (data == null) {
-            return 0;
-        }
-
-        // count characters that's not whitespace
-        int newSize = 0;
-        int len = data.length;
-        for (int i = 0; i < len; i++) {
-            byte dataS = data[i];
-            if (!isWhiteSpace(dataS)) {
-                data[newSize++] = dataS;
-            }
+        while ((read = is.read(data)) != -1) {
+            int decodedLength = decoder.decode(ByteBuffer.wrap(data, 0, read), decodedData, 0);
+            os.write(decodedData, 0, decodedLength);
         }
-        return newSize;
+        decoder.finish();
     }
 }
@@ -0,0 +1,280 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.utils;
+
+import java.nio.ByteBuffer;
+
+import org.apache.xml.security.exceptions.Base64DecodingException;
+
+/**
+ * A streaming Base64 decoder, which decodes characters directly from a
+ * <code>CharSequence</code>, a <code>char[]</code> or a <code>ByteBuffer</code>.
+ * <p>
+ * The characters may be passed in any number of ranges, for instance one for each text node
+ * of an element; the decoder keeps the characters of an incomplete group of four in between.
+ * White space is skipped, and padding is only accepted at the end, where the unused bits must
+ * be zero. Any other character is rejected, as by {@link Base64#decode(String)}.
+ * <p>
+ * An instance is not thread-safe.
+ */
+public final class Base64Decoder {
+
+    private static final int WHITE_SPACE = -2;
+
+    private static final int PAD = -3;
+
+    private static final int INVALID = -1;
+
+    /** The value of each ASCII character, or one of the negative markers */
+    private static final int[] VALUES = new int[128];
+
+    static {
+        for (int i = 0; i < VALUES.length; i++) {
+            VALUES[i] = INVALID;
+        }
+        for (int i = 'A'; i <= 'Z'; i++) {
+            VALUES[i] = i - 'A';
+        }
+        for (int i = 'a'; i <= 'z'; i++) {
+            VALUES[i] = i - 'a' + 26;
+        }
+        for (int i = '0'; i <= '9'; i++) {
+            VALUES[i] = i - '0' + 52;
+        }
+        VALUES['+'] = 62;
+        VALUES['/'] = 63;
+        VALUES['='] = PAD;
+        VALUES[' '] = WHITE_SPACE;
+        VALUES['\t'] = WHITE_SPACE;
+        VALUES['\r'] = WHITE_SPACE;
+        VALUES['\n'] = WHITE_SPACE;
+    }
+
+    private int group;
+
+    private int groupCount;
+
+    private int padCount;
+
+    /**
+     * Returns the number of octets the characters are decoded in at once.
+     *
+     * @param src the characters
+     * @param start the start of the range
+     * @param end the end of the range
+     * @return the number of octets, or -1 if the number of data and padding characters is not
+     *    divisible by four, in which case the characters can't be decoded
+     */
+    public static int getDecodedLength(CharSequence src, int start, int end) {
+        int count = 0;
+        int pads = 0;
+        for (int i = start; i < end; i++) {
+            char c = src.charAt(i);
+            if (c == '=') {
+                pads++;
+                count++;
+            } else if (c > ' ' || VALUES[c] != WHITE_SPACE) {
+                count++;
+            }
+        }
+        if (count % 4 != 0) {
+            return -1;
+        }
+        return count / 4 * 3 - Math.min(pads, 2);
+    }
+
+    /**
+     * Returns the number of octets a following call of decode writes at most.
+     *
+     * @param length the number of characters passed to decode
+     * @return the size of the range of the <code>byte[]</code> which is sufficient
+     */
+    public int getMaxDecodedLength(int length) {
+        return (groupCount + length) / 4 * 3;
+    }
+
+    /**
+     * Decodes a range of characters. Up to three characters are kept until more characters
+     * are passed, or the decoding is finished.
+     *
+     * @param src the characters
+     * @param start the start of the range
+     * @param end the end of the range
+     * @param dst the octets, which must have room for {@link #getMaxDecodedLength}
+     * @param dstOff the offset to write the octets at
+     * @return the number of octets written
+     * @throws Base64DecodingException if a character is not valid at its position
+     */
+    public int decode(CharSequence src, int start, int end, byte[] dst, int dstOff)
+        throws Base64DecodingException {
+        int d = dstOff;
+        int i = start;
+        while (i < end) {
+            if (groupCount == 0 && end - i >= 4) {
+                // a whole group of four, which is looked up at once
+                char c0 = src.charAt(i);
+                char c1 = src.charAt(i + 1);
+                char c2 = src.charAt(i + 2);
+                char c3 = src.charAt(i + 3);
+                if ((c0 | c1 | c2 | c3) < 128) {
+                    int v0 = VALUES[c0];
+                    int v1 = VALUES[c1];
+                    int v2 = VALUES[c2];
+                    int v3 = VALUES[c3];
+                    // no marker, which are all negative
+                    if ((v0 | v1 | v2 | v3) >= 0 && padCount == 0) {
+                        int bits = v0 << 18 | v1 << 12 | v2 << 6 | v3;
+                        dst[d] = (byte)(bits >> 16);
+                        dst[d + 1] = (byte)(bits >> 8);
+                        dst[d + 2] = (byte)bits;
+                        d += 3;
+                        i += 4;
+                        continue;
+                    }
+                }
+            }
+            d = decode(src.charAt(i++), dst, d);
+        }
+        return d - dstOff;
+    }
+
+    /**
+     * Decodes a range of characters, as {@link #decode(CharSequence, int, int, byte[], int)}.
+     *
+     * @param src the characters
+     * @param off the offset of the range
+     * @param len the length of the range
+     * @param dst the octets, which must have room for {@link #getMaxDecodedLength}
+     * @param dstOff the offset to write the octets at
+     * @return the number of octets written
+     * @throws Base64DecodingException if a character is not valid at its position
+     */
+    public int decode(char[] src, int off, int len, byte[] dst, int dstOff)
+        throws Base64DecodingException {
+        int d = dstOff;
+        int i = off;
+        int end = off + len;
+        while (i < end) {
+            if (groupCount == 0 && end - i >= 4) {
+                // a whole group of four, which is looked up at once
+                char c0 = src[i];
+                char c1 = src[i + 1];
+                char c2 = src[i + 2];
+                char c3 = src[i + 3];
+                if ((c0 | c1 | c2 | c3) < 128) {
+                    int v0 = VALUES[c0];
+                    int v1 = VALUES[c1];
+                    int v2 = VALUES[c2];
+                    int v3 = VALUES[c3];
+                    // no marker, which are all negative
+                    if ((v0 | v1 | v2 | v3) >= 0 && padCount == 0) {
+                        int bits = v0 << 18 | v1 << 12 | v2 << 6 | v3;
+                        dst[d] = (byte)(bits >> 16);
+                        dst[d + 1] = (byte)(bits >> 8);
+                        dst[d + 2] = (byte)bits;
+                        d += 3;
+                        i += 4;
+                        continue;
+                    }
+                }
+            }
+            d = decode(src[i++], dst, d);
+        }
+        return d - dstOff;
+    }
+
+    /**
+     * Decodes the remaining octets of a buffer as ASCII characters, as
+     * {@link #decode(CharSequence, int, int, byte[], int)}.
+     *
+     * @param src the characters between the position and the limit, which is advanced to
+     *    the limit
+     * @param dst the octets, which must have room for {@link #getMaxDecodedLength}
+     * @param dstOff the offset to write the octets at
+     * @return the number of octets written
+     * @throws Base64DecodingException if a character is not valid at its position
+     */
+    public int decode(ByteBuffer src, byte[] dst, int dstOff) throws Base64DecodingException {
+        int d = dstOff;
+        while (src.hasRemaining()) {
+            d = decode((char)(src.get() & 0xff), dst, d);
+        }
+        return d - dstOff;
+    }
+
+    /**
+     * Checks that the characters passed ended with a complete group of four, and resets the
+     * decoder.
+     *
+     * @throws Base64DecodingException if a group of four is incomplete
+     */
+    public void finish() throws Base64DecodingException {
+        boolean complete = groupCount == 0;
+        group = 0;
+        groupCount = 0;
+        padCount = 0;
+        if (!complete) {
+            throw new Base64DecodingException("decoding.divisible.four");
+        }
+    }
+
+    private int decode(char c, byte[] dst, int d) throws Base64DecodingException {
+        int value = c < 128 ? VALUES[c] : INVALID;
+        if (value == WHITE_SPACE) {
+            return d;
+        }
+        if (value == PAD) {
+            // "xx==" or "xxx="
+            if (groupCount < 2) {
+                throw new Base64DecodingException("decoding.general");
+            }
+            padCount++;
+            if (++groupCount < 4) {
+                return d;
+            }
+            groupCount = 0;
+            if (padCount == 2) {
+                if ((group & 0xf) != 0) { //last 4 bits should be zero
+                    throw new Base64DecodingException("decoding.general");
+                }
+                dst[d++] = (byte)(group >> 4);
+            } else {
+                if ((group & 0x3) != 0) { //last 2 bits should be zero
+                    throw new Base64DecodingException("decoding.general");
+                }
+                dst[d++] = (byte)(group >> 10);
+                dst[d++] = (byte)(group >> 2);
+            }
+            return d;
+        }
+        if (value == INVALID || padCount > 0) {
+            // nothing may follow the padding
+            throw new Base64DecodingException("decoding.general");
+        }
+        group = group << 6 | value;
+        if (++groupCount == 4) {
+            dst[d++] = (byte)(group >> 16);
+            dst[d++] = (byte)(group >> 8);
+            dst[d++] = (byte)group;
+            group = 0;
+            groupCount = 0;
+        }
+        return d;
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+import org.apache.xml.security.exceptions.Base64DecodingException;
+
+/**
+ * A Writer which Base64 decodes the characters written to it, and writes the octets to an
+ * OutputStream.
+ * <p>
+ * The characters are decoded directly from the <code>char[]</code> passed in chunks into a
+ * reused <code>byte[]</code>, without converting them to octets first. Characters which are
+ * not valid Base64 are reported as an IOException caused by a Base64DecodingException. Closing
+ * the Writer checks that the characters ended with a complete group of four, and closes the
+ * OutputStream.
+ */
+public class Base64DecodingWriter extends Writer {
+
+    private static final int CHUNK_LENGTH = 4 * 1024;
+
+    private final OutputStream out;
+
+    private final Base64Decoder decoder = new Base64Decoder();
+
+    private final byte[] bytes;
+
+    private boolean closed;
+
+    /**
+     * @param out the OutputStream the octets are written to
+     */
+    public Base64DecodingWriter(OutputStream out) {
+        this.out = out;
+        // room for the characters kept by the decoder, too
+        bytes = new byte[decoder.getMaxDecodedLength(CHUNK_LENGTH + 3)];
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("writer closed");
+        }
+        int end = off + len;
+        try {
+            while (off < end) {
+                int chunkLength = Math.min(CHUNK_LENGTH, end - off);
+                int decodedLength = decoder.decode(cbuf, off, chunkLength, bytes, 0);
+                if (decodedLength > 0) {
+                    out.write(bytes, 0, decodedLength);
+                }
+                off += chunkLength;
+            }
+        } catch (Base64DecodingException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("writer closed");
+        }
+        int end = off + len;
+        try {
+            while (off < end) {
+                int chunkEnd = Math.min(off + CHUNK_LENGTH, end);
+                int decodedLength = decoder.decode(str, off, chunkEnd, bytes, 0);
+                if (decodedLength > 0) {
+                    out.write(bytes, 0, decodedLength);
+                }
+                off = chunkEnd;
+            }
+        } catch (Base64DecodingException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            decoder.finish();
+        } catch (Base64DecodingException e) {
+            throw new IOException(e);
+        }
+        out.close();
+    }
+}
@@ -0,0 +1,202 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A streaming Base64 encoder, which encodes octets directly into a <code>char[]</code>.
+ * <p>
+ * The octets may be passed in any number of ranges; the encoder keeps the octets of an
+ * incomplete group of three and the position in the current line in between. Lines are
+ * separated by a single line feed, and the last line is not terminated, as by
+ * {@link Base64#encode(byte[], int)}.
+ * <p>
+ * An instance is not thread-safe.
+ */
+public final class Base64Encoder {
+
+    private static final char[] ALPHABET =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    private static final char PAD = '=';
+
+    private static final char LINE_SEPARATOR = '\n';
+
+    private final int lineLength;
+
+    private int pending;
+
+    private int pendingCount;
+
+    private int linePosition;
+
+    /**
+     * @param lineLength the maximum number of characters in a line, which is rounded down to a
+     *    multiple of four, or a value less than four for no line breaks at all
+     */
+    public Base64Encoder(int lineLength) {
+        this.lineLength = lineLength < 4 ? 0 : lineLength / 4 * 4;
+    }
+
+    /**
+     * Returns the number of characters the octets are encoded in at once, including the
+     * padding and the line breaks.
+     *
+     * @param length the number of octets
+     * @param lineLength the maximum number of characters in a line, as for the constructor
+     * @return the number of characters
+     */
+    public static int getEncodedLength(int length, int lineLength) {
+        if (length == 0) {
+            return 0;
+        }
+        int chars = (length + 2) / 3 * 4;
+        int charsPerLine = lineLength < 4 ? 0 : lineLength / 4 * 4;
+        if (charsPerLine > 0) {
+            chars += (chars - 1) / charsPerLine;
+        }
+        return chars;
+    }
+
+    /**
+     * Returns the number of characters a following call of {@link #encode} or
+     * {@link #finish} writes at most.
+     *
+     * @param length the number of octets passed to encode, or 0 for finish
+     * @return the size of the range of the <code>char[]</code> which is sufficient
+     */
+    public int getMaxEncodedLength(int length) {
+        int chars = (pendingCount + length + 2) / 3 * 4;
+        if (lineLength > 0) {
+            chars += chars / lineLength + 1;
+        }
+        return chars;
+    }
+
+    /**
+     * Encodes a range of octets. Up to two octets are kept until more octets are passed, or
+     * the encoding is finished.
+     *
+     * @param src the octets
+     * @param off the offset of the range
+     * @param len the length of the range
+     * @param dst the characters, which must have room for {@link #getMaxEncodedLength}
+     * @param dstOff the offset to write the characters at
+     * @return the number of characters written
+     */
+    public int encode(byte[] src, int off, int len, char[] dst, int dstOff) {
+        int end = off + len;
+        int d = dstOff;
+        // complete a group of three which has been started by a previous call
+        while (pendingCount > 0 && off < end) {
+            pending = pending << 8 | src[off++] & 0xff;
+            if (++pendingCount == 3) {
+                d = writeGroup(pending, dst, d);
+                pending = 0;
+                pendingCount = 0;
+            }
+        }
+        // whole groups of three
+        while (end - off >= 3) {
+            int group = (src[off] & 0xff) << 16 | (src[off + 1] & 0xff) << 8 | src[off + 2] & 0xff;
+            off += 3;
+            if (lineLength == 0 || linePosition + 4 <= lineLength) {
+                // the common case without a line break, which needs no checks
+                dst[d] = ALPHABET[group >>> 18];
+                dst[d + 1] = ALPHABET[group >>> 12 & 0x3f];
+                dst[d + 2] = ALPHABET[group >>> 6 & 0x3f];
+                dst[d + 3] = ALPHABET[group & 0x3f];
+                d += 4;
+                linePosition += 4;
+            } else {
+                d = writeGroup(group, dst, d);
+            }
+        }
+        while (off < end) {
+            pending = pending << 8 | src[off++] & 0xff;
+            pendingCount++;
+        }
+        return d - dstOff;
+    }
+
+    /**
+     * Encodes the remaining octets of a buffer, as {@link #encode(byte[], int, int, char[], int)}.
+     *
+     * @param src the octets between the position and the limit, which is advanced to the limit
+     * @param dst the characters, which must have room for {@link #getMaxEncodedLength}
+     * @param dstOff the offset to write the characters at
+     * @return the number of characters written
+     */
+    public int encode(ByteBuffer src, char[] dst, int dstOff) {
+        int length = src.remaining();
+        if (src.hasArray()) {
+            int written =
+                encode(src.array(), src.arrayOffset() + src.position(), length, dst, dstOff);
+            src.position(src.limit());
+            return written;
+        }
+        int d = dstOff;
+        byte[] chunk = new byte[Math.min(length, 3 * 1024)];
+        while (src.hasRemaining()) {
+            int chunkLength = Math.min(src.remaining(), chunk.length);
+            src.get(chunk, 0, chunkLength);
+            d += encode(chunk, 0, chunkLength, dst, d);
+        }
+        return d - dstOff;
+    }
+
+    /**
+     * Encodes the octets kept from previous calls with padding, and resets the encoder.
+     *
+     * @param dst the characters, which must have room for {@link #getMaxEncodedLength}
+     * @param dstOff the offset to write the characters at
+     * @return the number of characters written
+     */
+    public int finish(char[] dst, int dstOff) {
+        int d = dstOff;
+        if (pendingCount > 0) {
+            if (lineLength > 0 && linePosition == lineLength) {
+                dst[d++] = LINE_SEPARATOR;
+            }
+            int group = pending << (pendingCount == 1 ? 16 : 8);
+            dst[d++] = ALPHABET[group >>> 18];
+            dst[d++] = ALPHABET[group >>> 12 & 0x3f];
+            dst[d++] = pendingCount == 1 ? PAD : ALPHABET[group >>> 6 & 0x3f];
+            dst[d++] = PAD;
+        }
+        pending = 0;
+        pendingCount = 0;
+        linePosition = 0;
+        return d - dstOff;
+    }
+
+    private int writeGroup(int group, char[] dst, int d) {
+        if (lineLength > 0 && linePosition == lineLength) {
+            dst[d++] = LINE_SEPARATOR;
+            linePosition = 0;
+        }
+        dst[d] = ALPHABET[group >>> 18];
+        dst[d + 1] = ALPHABET[group >>> 12 & 0x3f];
+        dst[d + 2] = ALPHABET[group >>> 6 & 0x3f];
+        dst[d + 3] = ALPHABET[group & 0x3f];
+        linePosition += 4;
+        return d + 4;
+    }
+}
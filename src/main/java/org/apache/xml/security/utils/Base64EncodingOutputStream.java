@@ -0,0 +1,97 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * An OutputStream which Base64 encodes the octets written to it, and writes the characters to
+ * a Writer, with the same line breaks as {@link Base64#encode(byte[], int)}.
+ * <p>
+ * The octets are encoded in chunks into a reused <code>char[]</code>, which is passed to
+ * the Writer. Closing the stream writes the padding and closes the Writer.
+ */
+public class Base64EncodingOutputStream extends OutputStream {
+
+    private static final int CHUNK_LENGTH = 3 * 1024;
+
+    private final Writer out;
+
+    private final Base64Encoder encoder;
+
+    private final char[] chars;
+
+    private boolean closed;
+
+    /**
+     * @param out the Writer the characters are written to
+     * @param lineLength the maximum number of characters in a line, or 0 for no line breaks
+     */
+    public Base64EncodingOutputStream(Writer out, int lineLength) {
+        this.out = out;
+        encoder = new Base64Encoder(lineLength);
+        // room for the octets kept by the encoder, too
+        chars = new char[encoder.getMaxEncodedLength(CHUNK_LENGTH + 2)];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte)b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("stream closed");
+        }
+        int end = off + len;
+        while (off < end) {
+            int chunkLength = Math.min(CHUNK_LENGTH, end - off);
+            int encodedLength = encoder.encode(b, off, chunkLength, chars, 0);
+            if (encodedLength > 0) {
+                out.write(chars, 0, encodedLength);
+            }
+            off += chunkLength;
+        }
+    }
+
+    /**
+     * Flushes the Writer. Up to two octets are kept until more octets are written or the
+     * stream is closed, since they can only be encoded with padding.
+     */
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        int encodedLength = encoder.finish(chars, 0);
+        if (encodedLength > 0) {
+            out.write(chars, 0, encodedLength);
+        }
+        out.close();
+    }
+}
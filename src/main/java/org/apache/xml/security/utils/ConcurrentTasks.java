@@ -0,0 +1,177 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the tasks of an operation, such as the verification of every Reference of a Manifest,
+ * on an Executor and waits until all of them are done.
+ * <p>
+ * The tasks are run in the calling thread, one after the other, if that thread is itself
+ * running a task created here, for instance when the References of a signature are verified
+ * while the signature is verified in a batch. Otherwise the outer tasks could occupy every
+ * thread of a bounded Executor shared by both levels, waiting for inner tasks which never
+ * get a thread.
+ */
+public final class ConcurrentTasks {
+
+    private static final ThreadLocal<Boolean> RUNNING_TASK = new ThreadLocal<Boolean>();
+
+    private ConcurrentTasks() {
+        // complete
+    }
+
+    /**
+     * @return whether the calling thread is running a task created by this class
+     */
+    public static boolean isRunningTask() {
+        return RUNNING_TASK.get() != null;
+    }
+
+    /**
+     * Creates a task for the given callable, independent of any other task.
+     *
+     * @param callable
+     * @return the task
+     */
+    public static <T> FutureTask<T> newTask(Callable<T> callable) {
+        return new FutureTask<T>(new Task<T>(callable, null, null, 0));
+    }
+
+    /**
+     * Creates a task for every given callable. The caller takes the results in the order of
+     * the callables, and stops at the first one which fails, by throwing an exception or by
+     * returning the given result. Once a task has failed, the tasks after it are therefore not
+     * run any more, and complete with a CancellationException instead.
+     *
+     * @param callables
+     * @param failedResult the result which fails the operation, or null if only an
+     *    exception does
+     * @return the tasks, in the order of the callables
+     */
+    public static <T> List<FutureTask<T>> newTasks(
+        List<? extends Callable<T>> callables, T failedResult
+    ) {
+        AtomicInteger firstFailure = new AtomicInteger(Integer.MAX_VALUE);
+        List<FutureTask<T>> tasks = new ArrayList<FutureTask<T>>(callables.size());
+        for (int i = 0; i < callables.size(); i++) {
+            tasks.add(new FutureTask<T>(
+                new Task<T>(callables.get(i), failedResult, firstFailure, i)
+            ));
+        }
+        return tasks;
+    }
+
+    /**
+     * Runs the given tasks on the given Executor, and waits until all of them are done. A
+     * task is run in the calling thread if the Executor rejects it, or if the calling thread is
+     * itself running a task. The exceptions thrown by the tasks are left to the caller, who
+     * takes them from the tasks.
+     *
+     * @param tasks the tasks
+     * @param executor the Executor, or null to run the tasks in the calling thread
+     * @throws InterruptedException if the calling thread is interrupted while waiting, in which
+     *    case the tasks which have not started are cancelled
+     */
+    public static <T> void runAll(List<FutureTask<T>> tasks, Executor executor)
+        throws InterruptedException {
+        boolean inCallingThread = executor == null || isRunningTask();
+        try {
+            for (FutureTask<T> task : tasks) {
+                if (inCallingThread) {
+                    task.run();
+                } else {
+                    try {
+                        executor.execute(task);
+                    } catch (RejectedExecutionException ex) {
+                        task.run();
+                    }
+                }
+            }
+            for (FutureTask<T> task : tasks) {
+                try {
+                    task.get();
+                } catch (ExecutionException ex) {
+                    // taken from the task by the caller
+                } catch (CancellationException ex) {
+                    // a task is only cancelled here
+                }
+            }
+        } catch (InterruptedException ex) {
+            for (FutureTask<T> task : tasks) {
+                task.cancel(false);
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Marks the thread which runs the callable, and skips the callable if a task before it
+     * has failed.
+     */
+    private static class Task<T> implements Callable<T> {
+
+        private final Callable<T> callable;
+        private final T failedResult;
+        private final AtomicInteger firstFailure;
+        private final int index;
+
+        Task(Callable<T> callable, T failedResult, AtomicInteger firstFailure, int index) {
+            this.callable = callable;
+            this.failedResult = failedResult;
+            this.firstFailure = firstFailure;
+            this.index = index;
+        }
+
+        public T call() throws Exception {
+            if (firstFailure != null && index > firstFailure.get()) {
+                throw new CancellationException("A previous task has failed");
+            }
+            boolean outermost = RUNNING_TASK.get() == null;
+            if (outermost) {
+                RUNNING_TASK.set(Boolean.TRUE);
+            }
+            boolean failed = true;
+            try {
+                T result = callable.call();
+                failed = failedResult != null && failedResult.equals(result);
+                return result;
+            } finally {
+                if (outermost) {
+                    RUNNING_TASK.remove();
+                }
+                if (failed && firstFailure != null) {
+                    int failure = firstFailure.get();
+                    while (index < failure && !firstFailure.compareAndSet(failure, index)) {
+                        failure = firstFailure.get();
+                    }
+                }
+            }
+        }
+    }
+}
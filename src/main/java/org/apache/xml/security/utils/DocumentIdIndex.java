@@ -0,0 +1,303 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.utils;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.events.Event;
+import org.w3c.dom.events.EventListener;
+import org.w3c.dom.events.EventTarget;
+
+/**
+ * An index of the ID attributes of a Document, built in a single pass over the tree of the
+ * document element. It maps every ID value to the first Element carrying it, and records the
+ * values that are carried by more than one ID attribute, so that both looking up a
+ * same-document reference and checking it against wrapping attacks do not have to walk the
+ * tree again for every Reference.
+ * <p>
+ * Marking an attribute as an ID attribute is not a mutation of the document, so an index
+ * can't be kept up to date by the DOM. It is therefore only kept with the Document while a
+ * verification has it pinned, see {@link #pin(Document)}, and every pin builds it anew.
+ * Mutations of the document drop the pinned index as well, provided the DOM implementation
+ * supports mutation events. Without a pin, {@link #getInstance(Document)} builds a new index
+ * on every call.
+ */
+public final class DocumentIdIndex {
+
+    private static final String USER_DATA_KEY = DocumentIdIndex.class.getName();
+
+    private static final String SUBTREE_MODIFIED = "DOMSubtreeModified";
+
+    private static final org.slf4j.Logger log =
+        org.slf4j.LoggerFactory.getLogger(DocumentIdIndex.class);
+
+    private final Map<String, Element> elements = new HashMap<String, Element>();
+
+    /** ID values carried by more than one ID attribute */
+    private final Set<String> duplicates = new HashSet<String>();
+
+    /** ID values carried by more than one Element */
+    private final Set<String> shared = new HashSet<String>();
+
+    private DocumentIdIndex(Document doc) {
+        Node startNode = doc.getDocumentElement();
+        Node startParent = doc;
+        Node processedNode = null;
+
+        while (startNode != null) {
+            if (startNode.getNodeType() == Node.ELEMENT_NODE) {
+                NamedNodeMap attributes = startNode.getAttributes();
+                if (attributes != null) {
+                    for (int i = 0; i < attributes.getLength(); i++) {
+                        Attr attr = (Attr)attributes.item(i);
+                        if (attr.isId()) {
+                            add(attr.getValue(), (Element)startNode);
+                        }
+                    }
+                }
+            }
+
+            processedNode = startNode;
+            startNode = startNode.getFirstChild();
+
+            // no child, this node is done.
+            if (startNode == null) {
+                // close node processing, get sibling
+                startNode = processedNode.getNextSibling();
+            }
+
+            // no more siblings, get parent, all children
+            // of parent are processed.
+            while (startNode == null) {
+                processedNode = processedNode.getParentNode();
+                if (processedNode == startParent) {
+                    return;
+                }
+                // close parent node processing (processed node now)
+                startNode = processedNode.getNextSibling();
+            }
+        }
+    }
+
+    private void add(String id, Element element) {
+        Element previous = elements.get(id);
+        if (previous == null) {
+            elements.put(id, element);
+        } else {
+            duplicates.add(id);
+            if (previous != element) {
+                shared.add(id);
+            }
+        }
+    }
+
+    /**
+     * Returns the index pinned with the given Document, building it if it was dropped since
+     * the pin, or a new index if the document is not pinned.
+     *
+     * @param doc the document
+     * @return the index of the document
+     */
+    public static DocumentIdIndex getInstance(Document doc) {
+        synchronized (doc) {
+            Pin pin = (Pin)doc.getUserData(USER_DATA_KEY);
+            if (pin == null) {
+                return new DocumentIdIndex(doc);
+            }
+            if (pin.index == null) {
+                pin.index = new DocumentIdIndex(doc);
+                pin.listen(doc);
+            }
+            return pin.index;
+        }
+    }
+
+    /**
+     * Keeps a new index with the given Document until the matching call of
+     * {@link #unpin(Document)}. This is meant to be called at the start of a verification, once
+     * the ID attributes of the document are marked, and pins may be nested.
+     *
+     * @param doc the document
+     */
+    public static void pin(Document doc) {
+        synchronized (doc) {
+            Pin pin = (Pin)doc.getUserData(USER_DATA_KEY);
+            if (pin == null) {
+                pin = new Pin();
+                doc.setUserData(USER_DATA_KEY, pin, null);
+            }
+            pin.count++;
+            pin.index = null;
+        }
+    }
+
+    /**
+     * Releases a pin of the given Document, and drops its index if this was the last one.
+     *
+     * @param doc the document
+     */
+    public static void unpin(Document doc) {
+        synchronized (doc) {
+            Pin pin = (Pin)doc.getUserData(USER_DATA_KEY);
+            if (pin != null && --pin.count == 0) {
+                pin.unlisten(doc);
+                doc.setUserData(USER_DATA_KEY, null, null);
+            }
+        }
+    }
+
+    /**
+     * Drops the pinned index of the given Document, if there is one, so that it is built again
+     * on the next lookup.
+     *
+     * @param doc the document
+     */
+    public static void invalidate(Document doc) {
+        if (doc == null) {
+            return;
+        }
+        synchronized (doc) {
+            Pin pin = (Pin)doc.getUserData(USER_DATA_KEY);
+            if (pin != null) {
+                pin.index = null;
+            }
+        }
+    }
+
+    /**
+     * Returns the Element with the given ID. If the Document is pinned, the pinned index is
+     * used, and it is built again if it misses an ID the Document knows. Otherwise this is
+     * {@link Document#getElementById(String)}.
+     *
+     * @param doc the document
+     * @param id the value of the ID
+     * @return the element with the given ID, or null if there is none
+     */
+    public static Element getElementById(Document doc, String id) {
+        synchronized (doc) {
+            if (doc.getUserData(USER_DATA_KEY) == null) {
+                return doc.getElementById(id);
+            }
+        }
+        Element element = getInstance(doc).getElementById(id);
+        if (element == null && doc.getElementById(id) != null) {
+            invalidate(doc);
+            element = getInstance(doc).getElementById(id);
+        }
+        return element;
+    }
+
+    /**
+     * @param id the value of the ID
+     * @return the first Element in document order with the given ID, or null if there is none
+     */
+    public Element getElementById(String id) {
+        return elements.get(id);
+    }
+
+    /**
+     * @param id the value of the ID
+     * @return true if no more than one ID attribute has the given value
+     */
+    public boolean isUnique(String id) {
+        return !duplicates.contains(id);
+    }
+
+    /**
+     * @param id the value of the ID
+     * @param knownElement the element expected to have the given ID
+     * @return true if no other Element than knownElement has the given ID
+     */
+    public boolean isUnique(String id, Element knownElement) {
+        Element element = elements.get(id);
+        return element == null || (element == knownElement && !shared.contains(id));
+    }
+
+    /**
+     * The pins of a Document and the index they keep.
+     */
+    private static class Pin {
+
+        private int count;
+
+        private DocumentIdIndex index;
+
+        private InvalidationListener listener;
+
+        void listen(Document doc) {
+            if (listener != null || !(doc instanceof EventTarget)) {
+                return;
+            }
+            try {
+                listener = new InvalidationListener(doc);
+                ((EventTarget)doc).addEventListener(SUBTREE_MODIFIED, listener, false);
+            } catch (RuntimeException ex) {
+                // no mutation events, the index is kept until the pin is released
+                listener = null;
+                if (log.isDebugEnabled()) {
+                    log.debug(ex.getMessage(), ex);
+                }
+            }
+        }
+
+        void unlisten(Document doc) {
+            if (listener != null) {
+                ((EventTarget)doc).removeEventListener(SUBTREE_MODIFIED, listener, false);
+                listener = null;
+            }
+        }
+
+    }
+
+    /**
+     * Drops the pinned index on the first mutation of the Document, and then stops listening,
+     * until a new index is built.
+     */
+    private static class InvalidationListener implements EventListener {
+
+        private final Document doc;
+
+        InvalidationListener(Document doc) {
+            this.doc = doc;
+        }
+
+        public void handleEvent(Event evt) {
+            synchronized (doc) {
+                Pin pin = (Pin)doc.getUserData(USER_DATA_KEY);
+                if (pin != null) {
+                    pin.index = null;
+                    if (pin.listener == this) {
+                        pin.listener = null;
+                    }
+                }
+            }
+            ((EventTarget)doc).removeEventListener(SUBTREE_MODIFIED, this, false);
+        }
+
+    }
+
+}
@@ -387,7 +387,7 @@ public abstract class ElementProxy {
      * @throws XMLSecurityException
      */
     public byte[] getBytesFromTextChild() throws XMLSecurityException {
-        return Base64.decode(getTextFromTextChild());
+        return Base64.decode(getElement());
     }
 
     /**
@@ -0,0 +1,191 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Abstract base class for pooling objects with a bounded number of idle objects.
+ * The two public methods are {@link #getObject()} and {@link #repool(Object)}.
+ * <p>
+ * Idle objects are kept in several lock-free stripes, and a thread uses the stripe
+ * selected by its thread id, so that concurrent threads rarely touch the same stack.
+ * An empty stripe takes an idle object from the other stripes before a new object is
+ * created. Each stripe hands out the most recently returned object first. The bound
+ * applies to the idle objects of all stripes together, so a returned object is only
+ * refused if the whole pool is full. Whether an object is on loan is tracked by the
+ * object itself through {@link #setOnLoan(Object, boolean)}, so there is no global
+ * registry to lock.
+ * <p>
+ * Subclasses must implement {@link #createObject()} and {@link #setOnLoan(Object, boolean)}.
+ */
+public abstract class StripedObjectPool<T, E extends Throwable> {
+
+    private final Stripe<T>[] stripes;
+    private final int mask;
+    private final int maxIdle;
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    /**
+     * @param maxIdle the maximum number of idle objects kept by this pool
+     */
+    @SuppressWarnings("unchecked")
+    protected StripedObjectPool(int maxIdle) {
+        int stripeCount = 1;
+        int processors = Runtime.getRuntime().availableProcessors();
+        while (stripeCount < processors && stripeCount < 16) {
+            stripeCount <<= 1;
+        }
+        stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe<T>();
+        }
+        mask = stripeCount - 1;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Called whenever a new pool object is desired; subclasses must implement.
+     *
+     * @return object of the type desired by the subclass
+     * @throws parameterizable Throwable's subclass
+     */
+    protected abstract T createObject() throws E;
+
+    /**
+     * Atomically changes the loan state of an object created by this pool.
+     *
+     * @param obj the pooled object
+     * @param onLoan the new state
+     * @return false if the object was already in the requested state or does not
+     *    originate from this pool
+     */
+    protected abstract boolean setOnLoan(T obj, boolean onLoan);
+
+    /**
+     * Subclasses can subclass to return a more specific type.
+     *
+     * @return an idle object from the pool, or a new one if none is available
+     * @throws E
+     */
+    public T getObject() throws E {
+        int home = (int) Thread.currentThread().getId() & mask;
+        Stripe<T> stripe = stripes[home];
+        T retValue = stripe.poll();
+        for (int i = 1; retValue == null && i < stripes.length; i++) {
+            retValue = stripes[(home + i) & mask].poll();
+        }
+        if (retValue == null) {
+            stripe.misses.incrementAndGet();
+            retValue = createObject();
+        } else {
+            idleCount.decrementAndGet();
+            stripe.hits.incrementAndGet();
+        }
+        setOnLoan(retValue, true);
+        return retValue;
+    }
+
+    /**
+     * Adds the given object to the pool, provided that the object is on loan from
+     * this pool and the pool is not full.
+     *
+     * @param obj the object to return to the pool
+     * @return whether the object was successfully added as available
+     */
+    public boolean repool(T obj) {
+        if (obj == null || !setOnLoan(obj, false)) {
+            return false;
+        }
+        if (idleCount.incrementAndGet() > maxIdle) {
+            idleCount.decrementAndGet();
+            return false;
+        }
+        int home = (int) Thread.currentThread().getId() & mask;
+        stripes[home].push(obj);
+        return true;
+    }
+
+    /**
+     * @return the number of {@link #getObject()} calls that were served by an idle object
+     */
+    public long getHitCount() {
+        long count = 0;
+        for (Stripe<T> stripe : stripes) {
+            count += stripe.hits.get();
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of {@link #getObject()} calls that had to create a new object
+     */
+    public long getMissCount() {
+        long count = 0;
+        for (Stripe<T> stripe : stripes) {
+            count += stripe.misses.get();
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of idle objects currently held by this pool
+     */
+    public int getIdleCount() {
+        return idleCount.get();
+    }
+
+    /**
+     * A lock-free stack of idle objects.
+     */
+    private static final class Stripe<T> {
+        private final AtomicReference<Node<T>> top = new AtomicReference<Node<T>>();
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+
+        T poll() {
+            Node<T> node;
+            do {
+                node = top.get();
+                if (node == null) {
+                    return null;
+                }
+            } while (!top.compareAndSet(node, node.next));
+            return node.obj;
+        }
+
+        void push(T obj) {
+            Node<T> node = new Node<T>(obj);
+            do {
+                node.next = top.get();
+            } while (!top.compareAndSet(node.next, node));
+        }
+    }
+
+    private static final class Node<T> {
+        private final T obj;
+        private Node<T> next;
+
+        Node(T obj) {
+            this.obj = obj;
+        }
+    }
+}
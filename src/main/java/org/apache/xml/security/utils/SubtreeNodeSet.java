@@ -0,0 +1,308 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.utils;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * The node-set of a subtree, as collected by
+ * {@link XMLUtils#getSet(Node, Set, Node, boolean)}, represented by its root, the root of an
+ * excluded subtree and whether comments are included, instead of by its nodes. Membership is
+ * decided by walking the ancestors of a node, and iteration walks the subtree in document
+ * order, so that neither allocates per node.
+ * <p>
+ * The set is a view of the subtree, not a copy of it. It is copied into a LinkedHashSet on
+ * the first modification of the set itself.
+ */
+public class SubtreeNodeSet extends AbstractSet<Node> {
+
+    private final Node root;
+
+    private final Node exclude;
+
+    private final boolean comments;
+
+    private final boolean empty;
+
+    private Set<Node> nodes;
+
+    /**
+     * @param root the root of the subtree
+     * @param exclude the root of a subtree to leave out, may be null
+     * @param comments whether comments are included
+     */
+    public SubtreeNodeSet(Node root, Node exclude, boolean comments) {
+        this.root = root;
+        this.exclude = exclude;
+        this.comments = comments;
+        this.empty = exclude != null && XMLUtils.isDescendantOrSelf(exclude, root);
+    }
+
+    /**
+     * @return the root of the subtree
+     */
+    public Node getRoot() {
+        return root;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (nodes != null) {
+            return nodes.contains(o);
+        }
+        if (empty || !(o instanceof Node)) {
+            return false;
+        }
+        Node node = (Node)o;
+        if (node == root) {
+            return isRootIncluded();
+        }
+        switch (node.getNodeType()) {
+        case Node.ATTRIBUTE_NODE :
+            Node ownerElement = ((Attr)node).getOwnerElement();
+            if (ownerElement == root) {
+                return true;
+            }
+            return ownerElement != null && isDescendantIncluded(ownerElement);
+        case Node.TEXT_NODE :
+            // only the first node of adjacent text nodes is part of the set
+            Node previous = node.getPreviousSibling();
+            if (previous != null && previous.getNodeType() == Node.TEXT_NODE) {
+                return false;
+            }
+            return isAncestorIncluded(node.getParentNode());
+        case Node.COMMENT_NODE :
+            return comments && isDescendantIncluded(node);
+        case Node.DOCUMENT_NODE :
+        case Node.DOCUMENT_TYPE_NODE :
+            return false;
+        default :
+            return isDescendantIncluded(node);
+        }
+    }
+
+    private boolean isRootIncluded() {
+        switch (root.getNodeType()) {
+        case Node.COMMENT_NODE :
+            return comments;
+        case Node.DOCUMENT_NODE :
+        case Node.DOCUMENT_TYPE_NODE :
+            return false;
+        default :
+            return true;
+        }
+    }
+
+    private boolean isDescendantIncluded(Node node) {
+        return node != exclude && isAncestorIncluded(node.getParentNode());
+    }
+
+    /**
+     * @return true if the children of the given node are in the subtree
+     */
+    private boolean isAncestorIncluded(Node parent) {
+        while (parent != null && parent != exclude) {
+            if (parent == root) {
+                return isDescended(root);
+            }
+            if (parent.getNodeType() != Node.ELEMENT_NODE) {
+                return false;
+            }
+            parent = parent.getParentNode();
+        }
+        return false;
+    }
+
+    private boolean isDescended(Node node) {
+        int type = node.getNodeType();
+        if (node == root) {
+            return type == Node.ELEMENT_NODE || type == Node.DOCUMENT_NODE;
+        }
+        return type == Node.ELEMENT_NODE && node != exclude;
+    }
+
+    @Override
+    public Iterator<Node> iterator() {
+        if (nodes != null) {
+            return nodes.iterator();
+        }
+        return new SubtreeIterator();
+    }
+
+    @Override
+    public int size() {
+        if (nodes != null) {
+            return nodes.size();
+        }
+        int size = 0;
+        for (Iterator<Node> it = new SubtreeIterator(); it.hasNext(); it.next()) {
+            size++;
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return !iterator().hasNext();
+    }
+
+    @Override
+    public boolean add(Node node) {
+        return getNodes().add(node);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return getNodes().remove(o);
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        return getNodes().removeAll(c);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        return getNodes().retainAll(c);
+    }
+
+    @Override
+    public void clear() {
+        getNodes().clear();
+    }
+
+    private Set<Node> getNodes() {
+        if (nodes == null) {
+            Set<Node> result = new LinkedHashSet<Node>();
+            for (Iterator<Node> it = new SubtreeIterator(); it.hasNext(); ) {
+                result.add(it.next());
+            }
+            nodes = result;
+        }
+        return nodes;
+    }
+
+    /**
+     * Walks the subtree in the order of {@link XMLUtils#getSet(Node, Set, Node, boolean)},
+     * returning every element before its attributes and its children.
+     */
+    private class SubtreeIterator implements Iterator<Node> {
+
+        private Node current;
+
+        private NamedNodeMap attributes;
+
+        private int attributeIndex;
+
+        private Node next;
+
+        SubtreeIterator() {
+            if (!empty) {
+                next = advance(root);
+            }
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        public Node next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Node result = next;
+            if (attributes != null && attributeIndex < attributes.getLength()) {
+                next = attributes.item(attributeIndex++);
+            } else {
+                attributes = null;
+                next = advance(nextTreeNode(current));
+            }
+            return result;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private Node advance(Node node) {
+            while (node != null) {
+                current = node;
+                if (isIncluded(node)) {
+                    if (node.getNodeType() == Node.ELEMENT_NODE && node.hasAttributes()) {
+                        attributes = node.getAttributes();
+                        attributeIndex = 0;
+                    }
+                    return node;
+                }
+                node = nextTreeNode(node);
+            }
+            current = null;
+            return null;
+        }
+
+        private boolean isIncluded(Node node) {
+            if (node == root) {
+                return isRootIncluded();
+            }
+            switch (node.getNodeType()) {
+            case Node.TEXT_NODE :
+                Node previous = node.getPreviousSibling();
+                return previous == null || previous.getNodeType() != Node.TEXT_NODE;
+            case Node.COMMENT_NODE :
+                return comments && node != exclude;
+            case Node.DOCUMENT_NODE :
+            case Node.DOCUMENT_TYPE_NODE :
+                return false;
+            default :
+                return node != exclude;
+            }
+        }
+
+        private Node nextTreeNode(Node node) {
+            if (node == null) {
+                return null;
+            }
+            if (isDescended(node)) {
+                Node child = node.getFirstChild();
+                if (child != null) {
+                    return child;
+                }
+            }
+            while (node != root) {
+                Node sibling = node.getNextSibling();
+                if (sibling != null) {
+                    return sibling;
+                }
+                node = node.getParentNode();
+            }
+            return null;
+        }
+
+    }
+
+}
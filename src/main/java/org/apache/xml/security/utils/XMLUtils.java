@@ -29,6 +29,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
@@ -67,8 +68,15 @@ public final class XMLUtils {
             }
         });
     
-    @SuppressWarnings("unchecked")
-    private static final WeakObjectPool<DocumentBuilder, ParserConfigurationException> pools[] = new WeakObjectPool[4];
+    private static final int documentBuilderPoolSize =
+        AccessController.doPrivileged(new PrivilegedAction<Integer>() {
+            public Integer run() {
+                return Integer.getInteger
+                    ("org.apache.xml.security.documentBuilderPoolSize", 128);
+            }
+        });
+
+    private static final DocumentBuilderPool pools[] = new DocumentBuilderPool[4];
     static {
         pools[0] = new DocumentBuilderPool(false, false);
         pools[1] = new DocumentBuilderPool(false, true);
@@ -569,6 +577,38 @@ public final class XMLUtils {
         return set;
     }
 
+    /**
+     * Visits every node of a Document, including its attributes, so that a DOM implementation
+     * that creates its nodes lazily, the first time they are read, such as the deferred DOM
+     * of Xerces, has created all of them. This removes the largest modification that reading
+     * the document makes, but not every one: Xerces, for instance, still caches the last
+     * position read in the NodeLists of getChildNodes and getElementsByTagName. Whether
+     * several threads can then read the document at once depends on the DOM implementation
+     * and on how the document is read, and is not promised by the DOM API.
+     *
+     * @param doc the document
+     */
+    public static void prepareForConcurrentReading(Document doc) {
+        Node node = doc.getFirstChild();
+        while (node != null) {
+            if (node.getNodeType() == Node.ELEMENT_NODE && node.hasAttributes()) {
+                NamedNodeMap attributes = node.getAttributes();
+                for (int i = 0; i < attributes.getLength(); i++) {
+                    attributes.item(i).getNodeValue();
+                }
+            } else {
+                node.getNodeValue();
+            }
+
+            Node next = node.getFirstChild();
+            while (next == null && node != null) {
+                next = node.getNextSibling();
+                node = node.getParentNode();
+            }
+            node = next;
+        }
+    }
+
     /**
      * This method spreads all namespace attributes in a DOM document to their
      * children. This is needed because the XML Signature XPath transform
@@ -943,6 +983,8 @@ public final class XMLUtils {
      * two Elements have ID Attributes that match the "value" argument, if this is the case then
      * "false" is returned. Note that a return value of "true" does not necessarily mean that
      * a matching Element has been found, just that no wrapping attack has been detected.
+     * If startNode is the document element, the {@link DocumentIdIndex} of the document is
+     * used instead, which is only kept while a verification has the document pinned.
      */
     public static boolean protectAgainstWrappingAttack(Node startNode, String value) {
         String id = value.trim();
@@ -950,6 +992,14 @@ public final class XMLUtils {
             id = id.substring(1);
         }
         
+        if (isDocumentElement(startNode)) {
+            if (!DocumentIdIndex.getInstance(startNode.getOwnerDocument()).isUnique(id)) {
+                log.debug("Multiple elements with the same 'Id' attribute value!");
+                return false;
+            }
+            return true;
+        }
+
         Node startParent = null;
         Node processedNode = null;
         Element foundElement = null;
@@ -1005,6 +1055,8 @@ public final class XMLUtils {
      * This method is a tree-search to help prevent against wrapping attacks. It checks that no other
      * Element than the given "knownElement" argument has an ID attribute that matches the "value" 
      * argument, which is the ID value of "knownElement". If this is the case then "false" is returned.
+     * If startNode is the document element, the {@link DocumentIdIndex} of the document is
+     * used instead, which is only kept while a verification has the document pinned.
      */
     public static boolean protectAgainstWrappingAttack(
         Node startNode, Element knownElement, String value
@@ -1014,6 +1066,14 @@ public final class XMLUtils {
             id = id.substring(1);
         }
         
+        if (isDocumentElement(startNode)) {
+            if (!DocumentIdIndex.getInstance(startNode.getOwnerDocument()).isUnique(id, knownElement)) {
+                log.debug("Multiple elements with the same 'Id' attribute value!");
+                return false;
+            }
+            return true;
+        }
+
         Node startParent = null;
         Node processedNode = null;
         if (startNode != null) {
@@ -1059,6 +1119,15 @@ public final class XMLUtils {
         return true;
     }
     
+    /**
+     * The tree of the document element can be checked against the ID index of the document
+     * instead of being walked again.
+     */
+    private static boolean isDocumentElement(Node startNode) {
+        return startNode != null && startNode.getOwnerDocument() != null
+            && startNode == startNode.getOwnerDocument().getDocumentElement();
+    }
+
     public static DocumentBuilder createDocumentBuilder(boolean validating) throws ParserConfigurationException {
         return createDocumentBuilder(validating, true);
     }
@@ -1087,6 +1156,30 @@ public final class XMLUtils {
         return pools[idx].repool(db);
     }
 
+    /**
+     * @return the number of {@link #createDocumentBuilder} calls that reused a pooled
+     *    DocumentBuilder
+     */
+    public static long getDocumentBuilderPoolHitCount() {
+        long count = 0;
+        for (DocumentBuilderPool pool : pools) {
+            count += pool.getHitCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of {@link #createDocumentBuilder} calls that had to create
+     *    a new DocumentBuilder
+     */
+    public static long getDocumentBuilderPoolMissCount() {
+        long count = 0;
+        for (DocumentBuilderPool pool : pools) {
+            count += pool.getMissCount();
+        }
+        return count;
+    }
+
 
     /**
      * We need this proxy wrapping DocumentBuilder to record the value
@@ -1096,6 +1189,7 @@ public final class XMLUtils {
     private static class DocumentBuilderProxy extends DocumentBuilder {
         private final DocumentBuilder delegate;
         private final boolean disAllowDocTypeDeclarations;
+        private final AtomicBoolean onLoan = new AtomicBoolean();
         
         private DocumentBuilderProxy(DocumentBuilder actual, boolean disAllowDocTypeDeclarations) {
             delegate = actual;
@@ -1173,11 +1267,12 @@ public final class XMLUtils {
     }
 
     private static final class DocumentBuilderPool 
-        extends WeakObjectPool<DocumentBuilder, ParserConfigurationException> {
+        extends StripedObjectPool<DocumentBuilder, ParserConfigurationException> {
 
         private final boolean validating, disAllowDocTypeDeclarations;
         
         public DocumentBuilderPool(boolean validating, boolean disAllowDocTypeDeclarations) {
+            super(documentBuilderPoolSize);
             this.validating = validating;
             this.disAllowDocTypeDeclarations = disAllowDocTypeDeclarations;
         }
@@ -1193,10 +1288,15 @@ public final class XMLUtils {
             dfactory.setNamespaceAware(true);
             return new DocumentBuilderProxy(dfactory.newDocumentBuilder(), disAllowDocTypeDeclarations);
         }
+
+        @Override
+        protected boolean setOnLoan(DocumentBuilder db, boolean onLoan) {
+            return ((DocumentBuilderProxy)db).onLoan.compareAndSet(!onLoan, onLoan);
+        }
     }
 
     /**
-     * Maps the two boolean configuration options for the factories to the array index for the WeakObjectPool
+     * Maps the two boolean configuration options for the factories to the array index for the DocumentBuilderPool
      * @param validating
      * @param disAllowDocTypeDeclarations
      * @return the index to the {@link #pools}
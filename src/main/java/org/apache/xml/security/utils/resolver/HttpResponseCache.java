@@ -0,0 +1,271 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.utils.resolver;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.HttpURLConnection;
+import java.net.URLConnection;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.xml.security.utils.UnsyncByteArrayOutputStream;
+
+/**
+ * A local cache of the HTTP resources dereferenced by the HTTP resource resolvers.
+ * <p>
+ * Only successful responses with an ETag or a Last-Modified header, and without a no-store
+ * Cache-Control directive, are cached. A cached response is never used without asking the
+ * server first: its validators are sent as If-None-Match and If-Modified-Since headers, and it
+ * is only used if the server answers 304 Not Modified, so that the content does not have to be
+ * transferred again. Since the server decides, a response fetched with some credentials is not
+ * handed out for a request the server does not authorize.
+ * <p>
+ * Responses which are not cached are not read into memory, but streamed to the caller. A
+ * response is consumed and closed either way, so that the JDK can reuse the keep-alive
+ * connection for the next request to the same server.
+ * <p>
+ * The cached content takes up at most <code>org.apache.xml.security.httpResponseCache.size</code>
+ * bytes (default 1 MB), and the least recently used responses are evicted first. Setting the size
+ * to 0 disables the cache.
+ */
+public final class HttpResponseCache {
+
+    private static final long MAXIMUM_SIZE =
+        AccessController.doPrivileged(new PrivilegedAction<Long>() {
+            public Long run() {
+                return Long.getLong("org.apache.xml.security.httpResponseCache.size", 1024L * 1024L);
+            }
+        });
+
+    private static final Map<String, Response> entries =
+        new LinkedHashMap<String, Response>(16, 0.75f, true);
+
+    private static long size;
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+
+    private HttpResponseCache() {
+        // complete
+    }
+
+    /**
+     * Returns whether HTTP responses are cached at all.
+     *
+     * @return false if the cache has been disabled by setting its size to 0
+     */
+    public static boolean isEnabled() {
+        return MAXIMUM_SIZE > 0;
+    }
+
+    /**
+     * Returns the number of requests the server answered with 304 Not Modified.
+     *
+     * @return the number of cache hits since the class was loaded
+     */
+    public static long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of requests which had to transfer the content.
+     *
+     * @return the number of cache misses since the class was loaded
+     */
+    public static long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Removes all cached responses.
+     */
+    public static void clear() {
+        synchronized (entries) {
+            entries.clear();
+            size = 0;
+        }
+    }
+
+    /**
+     * Makes the request of a connection conditional on the validators of the cached response
+     * for its URL. This must be called before the connection is connected.
+     *
+     * @param connection the connection which has not been connected yet
+     * @return the cached response, which is to be passed to {@link #getResponse}, or null
+     */
+    public static Response addValidators(URLConnection connection) {
+        if (!isEnabled() || !(connection instanceof HttpURLConnection)) {
+            return null;
+        }
+        Response cached;
+        synchronized (entries) {
+            cached = entries.get(connection.getURL().toString());
+        }
+        if (cached != null) {
+            if (cached.eTag != null) {
+                connection.setRequestProperty("If-None-Match", cached.eTag);
+            }
+            if (cached.lastModified != null) {
+                connection.setRequestProperty("If-Modified-Since", cached.lastModified);
+            }
+        }
+        return cached;
+    }
+
+    /**
+     * Returns the response to the request of a connection. This is the cached response if the
+     * server answered 304 Not Modified, the content read and cached if it can be cached, or
+     * else the content streamed from the connection.
+     *
+     * @param connection the connection
+     * @param cached the cached response returned by {@link #addValidators}, or null
+     * @return the response
+     * @throws IOException if the content can't be read, or the server answered with an error
+     */
+    public static Response getResponse(URLConnection connection, Response cached)
+        throws IOException {
+        if (cached != null
+            && ((HttpURLConnection)connection).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            // there is no content, but the connection can only be reused once it is closed
+            connection.getInputStream().close();
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+
+        String contentType = connection.getContentType();
+        InputStream inputStream = connection.getInputStream();
+        if (!isCacheable(connection)) {
+            return new Response(inputStream, contentType);
+        }
+
+        UnsyncByteArrayOutputStream baos = new UnsyncByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int read;
+        long length = 0;
+        try {
+            while ((read = inputStream.read(buf)) != -1) {
+                baos.write(buf, 0, read);
+                length += read;
+                if (length > MAXIMUM_SIZE) {
+                    // too large after all, so the rest is streamed
+                    InputStream content = new ByteArrayInputStream(baos.toByteArray());
+                    return new Response(new SequenceInputStream(content, inputStream), contentType);
+                }
+            }
+            inputStream.close();
+        } catch (IOException ex) {
+            inputStream.close();
+            throw ex;
+        }
+
+        Response response =
+            new Response(
+                baos.toByteArray(), contentType,
+                connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified")
+            );
+        put(connection.getURL().toString(), response);
+        return response;
+    }
+
+    private static boolean isCacheable(URLConnection connection) throws IOException {
+        if (!isEnabled() || !(connection instanceof HttpURLConnection)
+            || ((HttpURLConnection)connection).getResponseCode() != HttpURLConnection.HTTP_OK
+            || connection.getHeaderField("ETag") == null
+                && connection.getHeaderField("Last-Modified") == null) {
+            return false;
+        }
+        String cacheControl = connection.getHeaderField("Cache-Control");
+        if (cacheControl != null && cacheControl.toLowerCase().contains("no-store")) {
+            return false;
+        }
+        return connection.getContentLength() <= MAXIMUM_SIZE;
+    }
+
+    private static void put(String url, Response response) {
+        synchronized (entries) {
+            Response previous = entries.put(url, response);
+            if (previous != null) {
+                size -= previous.content.length;
+            }
+            size += response.content.length;
+            Iterator<Response> iterator = entries.values().iterator();
+            while (size > MAXIMUM_SIZE) {
+                size -= iterator.next().content.length;
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * The response to an HTTP request, either read into memory or streamed from the connection.
+     */
+    public static final class Response {
+        private final byte[] content;
+        private final InputStream inputStream;
+        private final String contentType;
+        private final String eTag;
+        private final String lastModified;
+
+        private Response(byte[] content, String contentType, String eTag, String lastModified) {
+            this.content = content;
+            this.inputStream = null;
+            this.contentType = contentType;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+        }
+
+        private Response(InputStream inputStream, String contentType) {
+            this.content = null;
+            this.inputStream = inputStream;
+            this.contentType = contentType;
+            this.eTag = null;
+            this.lastModified = null;
+        }
+
+        /**
+         * @return the content if it has been read into memory, which must not be modified, or
+         *    null if it is streamed from the connection
+         */
+        public byte[] getContent() {
+            return content;
+        }
+
+        /**
+         * @return the content, which the caller has to read and close
+         */
+        public InputStream getInputStream() {
+            return content != null ? new ByteArrayInputStream(content) : inputStream;
+        }
+
+        /**
+         * @return the value of the Content-Type header, or null
+         */
+        public String getContentType() {
+            return contentType;
+        }
+    }
+}
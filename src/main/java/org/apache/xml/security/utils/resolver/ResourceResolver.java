@@ -18,9 +18,10 @@
  */
 package org.apache.xml.security.utils.resolver;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.xml.security.signature.XMLSignatureInput;
 import org.apache.xml.security.utils.ClassLoaderUtils;
@@ -42,12 +43,28 @@ public class ResourceResolver {
     private static org.slf4j.Logger log =
         org.slf4j.LoggerFactory.getLogger(ResourceResolver.class);
     
-    /** these are the system-wide resolvers */
-    private static final List<ResourceResolver> resolverList = new ArrayList<ResourceResolver>();
+    /**
+     * these are the system-wide resolvers. Registration is rare, so the list is copied
+     * on write and lookups iterate over a snapshot without locking.
+     */
+    private static final List<ResourceResolver> resolverList = 
+        new CopyOnWriteArrayList<ResourceResolver>();
+
+    /** The shapes of URI that are told apart before asking the resolvers */
+    private static final int URI_NULL = 1;
+    private static final int URI_SAME_DOCUMENT = 2;
+    private static final int URI_XPOINTER = 4;
+    private static final int URI_HTTP = 8;
+    private static final int URI_OTHER = 16;
+    private static final int URI_ANY = 
+        URI_NULL | URI_SAME_DOCUMENT | URI_XPOINTER | URI_HTTP | URI_OTHER;
     
     /** Field resolverSpi */
     private final ResourceResolverSpi resolverSpi;
 
+    /** The shapes of URI that resolverSpi might be able to resolve */
+    private final int resolvableURIs;
+
     /**
      * Constructor ResourceResolver
      *
@@ -55,6 +72,42 @@ public class ResourceResolver {
      */
     public ResourceResolver(ResourceResolverSpi resourceResolver) {
         this.resolverSpi = resourceResolver;
+        this.resolvableURIs = getResolvableURIs(resourceResolver);
+    }
+
+    /**
+     * Returns the shapes of URI that the given resolver might be able to resolve. Only the 
+     * default resolvers are known; subclasses of them may override engineCanResolveURI, so 
+     * they are asked about every URI, like all other resolvers.
+     */
+    private static int getResolvableURIs(ResourceResolverSpi resourceResolver) {
+        Class<?> resolverClass = resourceResolver == null ? null : resourceResolver.getClass();
+        if (resolverClass == ResolverFragment.class) {
+            return URI_SAME_DOCUMENT;
+        } else if (resolverClass == ResolverXPointer.class) {
+            return URI_XPOINTER;
+        } else if (resolverClass == ResolverLocalFilesystem.class) {
+            return URI_OTHER;
+        } else if (resolverClass == ResolverDirectHTTP.class) {
+            return URI_HTTP | URI_OTHER;
+        }
+        return URI_ANY;
+    }
+
+    /**
+     * Returns the shape of the given URI, see {@link #getResolvableURIs}.
+     */
+    private static int getURIShape(String uri) {
+        if (uri == null) {
+            return URI_NULL;
+        } else if (uri.length() == 0) {
+            return URI_SAME_DOCUMENT;
+        } else if (uri.charAt(0) == '#') {
+            return uri.startsWith("#xpointer(") ? URI_XPOINTER : URI_SAME_DOCUMENT;
+        } else if (uri.startsWith("http:")) {
+            return URI_HTTP;
+        }
+        return URI_OTHER;
     }
 
     /**
@@ -76,38 +129,40 @@ public class ResourceResolver {
 
     private static <N> ResourceResolver internalGetInstance(ResourceResolverContext context)
             throws ResourceResolverException {
-        synchronized (resolverList) {
-            for (ResourceResolver resolver : resolverList) {
-                ResourceResolver resolverTmp = resolver;
-                if (!resolver.resolverSpi.engineIsThreadSafe()) {
-                    try {
-                        resolverTmp = 
-                            new ResourceResolver(resolver.resolverSpi.getClass().newInstance());
-                    } catch (InstantiationException e) {
-                        throw new ResourceResolverException(e, context.uriToResolve, context.baseUri, "");
-                    } catch (IllegalAccessException e) {
-                        throw new ResourceResolverException(e, context.uriToResolve, context.baseUri, "");			
-                    }
+        int uriShape = getURIShape(context.uriToResolve);
+        for (ResourceResolver resolver : resolverList) {
+            if ((resolver.resolvableURIs & uriShape) == 0) {
+                continue;
+            }
+            ResourceResolver resolverTmp = resolver;
+            if (!resolver.resolverSpi.engineIsThreadSafe()) {
+                try {
+                    resolverTmp = 
+                        new ResourceResolver(resolver.resolverSpi.getClass().newInstance());
+                } catch (InstantiationException e) {
+                    throw new ResourceResolverException(e, context.uriToResolve, context.baseUri, "");
+                } catch (IllegalAccessException e) {
+                    throw new ResourceResolverException(e, context.uriToResolve, context.baseUri, "");			
                 }
-    
-                if (log.isDebugEnabled()) {
-                    log.debug(
-                        "check resolvability by class " + resolverTmp.getClass().getName()
+            }
+
+            if (log.isDebugEnabled()) {
+                log.debug(
+                    "check resolvability by class " + resolverTmp.getClass().getName()
+                );
+            }
+
+            if (resolverTmp != null && resolverTmp.canResolve(context)) {
+                // Check to see whether the Resolver is allowed
+                if (context.secureValidation 
+                    && (resolverTmp.resolverSpi instanceof ResolverLocalFilesystem
+                        || resolverTmp.resolverSpi instanceof ResolverDirectHTTP)) {
+                    Object exArgs[] = { resolverTmp.resolverSpi.getClass().getName() };
+                    throw new ResourceResolverException(
+                        "signature.Reference.ForbiddenResolver", exArgs, context.uriToResolve, context.baseUri
                     );
                 }
-    
-                if (resolverTmp != null && resolverTmp.canResolve(context)) {
-                    // Check to see whether the Resolver is allowed
-                    if (context.secureValidation 
-                        && (resolverTmp.resolverSpi instanceof ResolverLocalFilesystem
-                            || resolverTmp.resolverSpi instanceof ResolverDirectHTTP)) {
-                        Object exArgs[] = { resolverTmp.resolverSpi.getClass().getName() };
-                        throw new ResourceResolverException(
-                            "signature.Reference.ForbiddenResolver", exArgs, context.uriToResolve, context.baseUri
-                        );
-                    }
-                    return resolverTmp;
-                }
+                return resolverTmp;
             }
         }
         
@@ -158,6 +213,7 @@ public class ResourceResolver {
         
         // first check the individual Resolvers
         if (individualResolvers != null) {
+            int uriShape = getURIShape(context.uriToResolve);
             for (int i = 0; i < individualResolvers.size(); i++) {
                 ResourceResolver resolver = individualResolvers.get(i);
 
@@ -167,7 +223,7 @@ public class ResourceResolver {
                         log.debug("check resolvability by class " + currentClass);
                     }
 
-                    if (resolver.canResolve(context)) {
+                    if ((resolver.resolvableURIs & uriShape) != 0 && resolver.canResolve(context)) {
                         return resolver;
                     }
                 }
@@ -249,12 +305,10 @@ public class ResourceResolver {
      */
     public static void register(ResourceResolverSpi resourceResolverSpi, boolean start) {
         JavaUtils.checkRegisterPermission();
-        synchronized(resolverList) {
-            if (start) {
-                resolverList.add(0, new ResourceResolver(resourceResolverSpi));
-            } else {               
-                resolverList.add(new ResourceResolver(resourceResolverSpi));
-            }
+        if (start) {
+            resolverList.add(0, new ResourceResolver(resourceResolverSpi));
+        } else {               
+            resolverList.add(new ResourceResolver(resourceResolverSpi));
         }
         if (log.isDebugEnabled()) {
             log.debug("Registered resolver: " + resourceResolverSpi.toString());
@@ -265,12 +319,12 @@ public class ResourceResolver {
      * This method registers the default resolvers.
      */
     public static void registerDefaultResolvers() {
-        synchronized(resolverList) {
-            resolverList.add(new ResourceResolver(new ResolverFragment()));
-            resolverList.add(new ResourceResolver(new ResolverLocalFilesystem()));
-            resolverList.add(new ResourceResolver(new ResolverXPointer()));
-            resolverList.add(new ResourceResolver(new ResolverDirectHTTP()));
-        }
+        resolverList.addAll(Arrays.asList(
+            new ResourceResolver(new ResolverFragment()),
+            new ResourceResolver(new ResolverLocalFilesystem()),
+            new ResourceResolver(new ResolverXPointer()),
+            new ResourceResolver(new ResolverDirectHTTP())
+        ));
     }
     
     /**
@@ -336,6 +390,15 @@ public class ResourceResolver {
         return resolverSpi.understandsProperty(propertyToTest);
     }
 
+    /**
+     * Method isThreadSafe
+     *
+     * @return true if the resolver can be used by several threads at once
+     */
+    public boolean isThreadSafe() {
+        return resolverSpi.engineIsThreadSafe();
+    }
+
     /**
      * Method canResolve
      *
@@ -18,9 +18,9 @@
  */
 package org.apache.xml.security.utils.resolver.implementations;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
 import java.net.Proxy;
@@ -31,6 +31,7 @@ import java.net.URLConnection;
 
 import org.apache.xml.security.signature.XMLSignatureInput;
 import org.apache.xml.security.utils.Base64;
+import org.apache.xml.security.utils.resolver.HttpResponseCache;
 import org.apache.xml.security.utils.resolver.ResourceResolverContext;
 import org.apache.xml.security.utils.resolver.ResourceResolverException;
 import org.apache.xml.security.utils.resolver.ResourceResolverSpi;
@@ -96,7 +97,6 @@ public class ResolverDirectHTTP extends ResourceResolverSpi {
     @Override
     public XMLSignatureInput engineResolveURI(ResourceResolverContext context)
         throws ResourceResolverException {
-        InputStream inputStream = null;
         try {
 
             // calculate new URI
@@ -104,6 +104,7 @@ public class ResolverDirectHTTP extends ResourceResolverSpi {
             URL url = uriNew.toURL();
             URLConnection urlConnection;
             urlConnection = openConnection(url);
+            HttpResponseCache.Response cached = HttpResponseCache.addValidators(urlConnection);
 
             // check if Basic authentication is required
             String auth = urlConnection.getHeaderField("WWW-Authenticate");
@@ -116,7 +117,9 @@ public class ResolverDirectHTTP extends ResourceResolverSpi {
                     engineGetProperty(ResolverDirectHTTP.properties[ResolverDirectHTTP.HttpBasicPass]);
 
                 if (user != null && pass != null) {
+                    discardResponse(urlConnection);
                     urlConnection = openConnection(url);
+                    cached = HttpResponseCache.addValidators(urlConnection);
 
                     String password = user + ":" + pass;
                     String encodedPassword = Base64.encode(password.getBytes("ISO-8859-1"));
@@ -127,27 +130,28 @@ public class ResolverDirectHTTP extends ResourceResolverSpi {
                 }
             }
 
-            String mimeType = urlConnection.getHeaderField("Content-Type");
-            inputStream = urlConnection.getInputStream();
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            byte buf[] = new byte[4096];
-            int read = 0;
-            int summarized = 0;
-
-            while ((read = inputStream.read(buf)) >= 0) {
-                baos.write(buf, 0, read);
-                summarized += read;
-            }
-
-            if (log.isDebugEnabled()) {
-                log.debug("Fetched " + summarized + " bytes from URI " + uriNew.toString());
+            // The content is read into memory only if it is cached, otherwise the
+            // XMLSignatureInput owns the response stream. It closes the stream once it
+            // has been read, and Reference closes it if dereferencing or digesting fails
+            HttpResponseCache.Response response =
+                HttpResponseCache.getResponse(urlConnection, cached);
+            XMLSignatureInput result;
+            if (response.getContent() != null) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Fetched " + response.getContent().length + " bytes from URI " 
+                              + uriNew.toString());
+                }
+                result = new XMLSignatureInput(response.getContent());
+            } else {
+                if (log.isDebugEnabled()) {
+                    log.debug("Streaming content from URI " + uriNew.toString());
+                }
+                result = new XMLSignatureInput(response.getInputStream());
             }
-
-            XMLSignatureInput result = new XMLSignatureInput(baos.toByteArray());
             result.setSecureValidation(context.secureValidation);
 
             result.setSourceURI(uriNew.toString());
-            result.setMIMEType(mimeType);
+            result.setMIMEType(response.getContentType());
 
             return result;
         } catch (URISyntaxException ex) {
@@ -158,6 +162,32 @@ public class ResolverDirectHTTP extends ResourceResolverSpi {
             throw new ResourceResolverException(ex, context.uriToResolve, context.baseUri, "generic.EmptyMessage");
         } catch (IllegalArgumentException e) {
             throw new ResourceResolverException(e, context.uriToResolve, context.baseUri, "generic.EmptyMessage");
+        }
+    }
+
+    /**
+     * Reads and closes the response to a request which is sent again, so that the
+     * connection can be reused.
+     */
+    private static void discardResponse(URLConnection urlConnection) {
+        InputStream inputStream = null;
+        try {
+            if (urlConnection instanceof HttpURLConnection
+                && ((HttpURLConnection)urlConnection).getResponseCode() >= 400) {
+                inputStream = ((HttpURLConnection)urlConnection).getErrorStream();
+            } else {
+                inputStream = urlConnection.getInputStream();
+            }
+            if (inputStream != null) {
+                byte buf[] = new byte[4096];
+                while (inputStream.read(buf) >= 0) {
+                    // discard
+                }
+            }
+        } catch (IOException e) {
+            if (log.isDebugEnabled()) {
+                log.debug(e.getMessage(), e);
+            }
         } finally {
             if (inputStream != null) {
                 try {
@@ -19,6 +19,7 @@
 package org.apache.xml.security.utils.resolver.implementations;
 
 import org.apache.xml.security.signature.XMLSignatureInput;
+import org.apache.xml.security.utils.DocumentIdIndex;
 import org.apache.xml.security.utils.XMLUtils;
 import org.apache.xml.security.utils.resolver.ResourceResolverContext;
 import org.apache.xml.security.utils.resolver.ResourceResolverException;
@@ -75,7 +76,11 @@ public class ResolverFragment extends ResourceResolverSpi {
              */
             String id = context.uriToResolve.substring(1);
 
-            selectedElem = doc.getElementById(id);
+            if (context.secureValidation) {
+                selectedElem = DocumentIdIndex.getElementById(doc, id);
+            } else {
+                selectedElem = doc.getElementById(id);
+            }
             if (selectedElem == null) {
                 Object exArgs[] = { id };
                 throw new ResourceResolverException(
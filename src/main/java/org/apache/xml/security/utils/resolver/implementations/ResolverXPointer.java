@@ -19,6 +19,7 @@
 package org.apache.xml.security.utils.resolver.implementations;
 
 import org.apache.xml.security.signature.XMLSignatureInput;
+import org.apache.xml.security.utils.DocumentIdIndex;
 import org.apache.xml.security.utils.XMLUtils;
 import org.apache.xml.security.utils.resolver.ResourceResolverContext;
 import org.apache.xml.security.utils.resolver.ResourceResolverException;
@@ -69,7 +70,11 @@ public class ResolverXPointer extends ResourceResolverSpi {
             resultNode = doc;
         } else if (isXPointerId(context.uriToResolve)) {
             String id = getXPointerId(context.uriToResolve);
-            resultNode = doc.getElementById(id);
+            if (context.secureValidation) {
+                resultNode = DocumentIdIndex.getElementById(doc, id);
+            } else {
+                resultNode = doc.getElementById(id);
+            }
             
             if (context.secureValidation) {
                 Element start = context.attr.getOwnerDocument().getDocumentElement();
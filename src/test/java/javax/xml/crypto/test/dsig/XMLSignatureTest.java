@@ -24,6 +24,8 @@ package javax.xml.crypto.test.dsig;
 import java.io.*;
 import java.util.*;
 import java.security.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.xml.crypto.URIDereferencer;
 import javax.xml.crypto.dom.DOMStructure;
@@ -398,6 +400,47 @@ public class XMLSignatureTest extends org.junit.Assert {
         assertTrue(sig.validate(validateContext));
     }
 
+    @org.junit.Test
+    public void testValidateReferencesConcurrently() throws Exception {
+        DigestMethod dm = fac.newDigestMethod(DigestMethod.SHA1, null);
+        List<Reference> refs = new ArrayList<Reference>();
+        List<XMLObject> objs = new ArrayList<XMLObject>();
+        Document doc = TestUtils.newDocument();
+        for (int i = 0; i < 6; i++) {
+            refs.add(fac.newReference("#object-" + i, dm));
+            Element content = doc.createElementNS(null, "Content");
+            content.setTextContent("content " + i);
+            objs.add(fac.newXMLObject(Collections.singletonList
+                (new DOMStructure(content)), "object-" + i, null, null));
+        }
+        CanonicalizationMethod cm = fac.newCanonicalizationMethod
+            (CanonicalizationMethod.INCLUSIVE, (C14NMethodParameterSpec) null);
+        SignedInfo si = fac.newSignedInfo(cm, SIG_METHODS[2], refs);
+        XMLSignature sig = fac.newXMLSignature(si, null, objs, "signature", null);
+        sig.sign(new DOMSignContext(SIGN_KEYS[2], doc));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            DOMValidateContext dvc = new DOMValidateContext
+                (VALIDATE_KEYS[2], doc.getDocumentElement());
+            dvc.setProperty("org.apache.jcp.xml.dsig.referenceValidationExecutor", executor);
+            assertTrue(fac.unmarshalXMLSignature(dvc).validate(dvc));
+
+            doc.getElementsByTagNameNS(null, "Content").item(4).setTextContent("changed");
+            dvc = new DOMValidateContext
+                (VALIDATE_KEYS[2], doc.getDocumentElement());
+            dvc.setProperty("org.apache.jcp.xml.dsig.referenceValidationExecutor", executor);
+            XMLSignature sig2 = fac.unmarshalXMLSignature(dvc);
+            assertFalse(sig2.validate(dvc));
+            List<?> refs2 = sig2.getSignedInfo().getReferences();
+            for (int i = 0; i < refs2.size(); i++) {
+                assertEquals(i != 4, ((Reference)refs2.get(i)).validate(dvc));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     private SignedInfo createSignedInfo(SignatureMethod sm) throws Exception {
         // set up the building blocks
         CanonicalizationMethod cm = fac.newCanonicalizationMethod
@@ -0,0 +1,222 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package javax.xml.crypto.test.dsig.dom;
+
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.crypto.AlgorithmMethod;
+import javax.xml.crypto.KeySelector;
+import javax.xml.crypto.KeySelectorException;
+import javax.xml.crypto.KeySelectorResult;
+import javax.xml.crypto.XMLCryptoContext;
+import javax.xml.crypto.dsig.CanonicalizationMethod;
+import javax.xml.crypto.dsig.DigestMethod;
+import javax.xml.crypto.dsig.Reference;
+import javax.xml.crypto.dsig.SignatureMethod;
+import javax.xml.crypto.dsig.SignedInfo;
+import javax.xml.crypto.dsig.Transform;
+import javax.xml.crypto.dsig.XMLSignature;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.dom.DOMSignContext;
+import javax.xml.crypto.dsig.dom.DOMValidateContext;
+import javax.xml.crypto.dsig.keyinfo.KeyInfo;
+import javax.xml.crypto.dsig.keyinfo.KeyInfoFactory;
+import javax.xml.crypto.dsig.spec.C14NMethodParameterSpec;
+import javax.xml.crypto.dsig.spec.TransformParameterSpec;
+import javax.xml.crypto.test.KeySelectors;
+import javax.xml.crypto.test.dsig.TestUtils;
+
+import org.apache.jcp.xml.dsig.internal.dom.DOMXMLSignatureBatchValidator;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Unit test for org.apache.jcp.xml.dsig.internal.dom.DOMXMLSignatureBatchValidator
+ */
+public class DOMXMLSignatureBatchValidatorTest extends org.junit.Assert {
+
+    private static final int SIGNATURES = 10;
+
+    private XMLSignatureFactory fac;
+
+    static {
+        Security.insertProviderAt
+            (new org.apache.jcp.xml.dsig.internal.dom.XMLDSigRI(), 1);
+    }
+
+    public DOMXMLSignatureBatchValidatorTest() {
+        fac = XMLSignatureFactory.getInstance
+            ("DOM", new org.apache.jcp.xml.dsig.internal.dom.XMLDSigRI());
+    }
+
+    @org.junit.Test
+    public void testValidate() throws Exception {
+        CountingKeySelector keySelector = new CountingKeySelector();
+        List<DOMValidateContext> contexts = new ArrayList<DOMValidateContext>();
+        for (int i = 0; i < SIGNATURES; i++) {
+            Document doc = signDocument("data " + i);
+            contexts.add(new DOMValidateContext(keySelector, getSignatureElement(doc)));
+        }
+        // tampered data
+        getSignatureElement(contexts.get(4)).getOwnerDocument()
+            .getDocumentElement().getFirstChild().setNodeValue("changed");
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            DOMXMLSignatureBatchValidator validator =
+                new DOMXMLSignatureBatchValidator(fac, executor);
+            validator.setShareKeySelectorResults(true);
+            List<DOMXMLSignatureBatchValidator.Result> results = validator.validate(contexts);
+            assertEquals(SIGNATURES, results.size());
+            for (int i = 0; i < SIGNATURES; i++) {
+                DOMXMLSignatureBatchValidator.Result result = results.get(i);
+                assertEquals("signature " + i, i != 4, result.isValid());
+                assertNotNull(result.getSignature());
+                assertNull(result.getException());
+                assertSame(keySelector, contexts.get(i).getKeySelector());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        // all signatures have the same KeyValue
+        assertTrue(keySelector.count.get() < SIGNATURES);
+        assertTrue(contexts.containsAll(keySelector.contexts));
+    }
+
+    @org.junit.Test
+    public void testNotSharedByDefault() throws Exception {
+        CountingKeySelector keySelector = new CountingKeySelector();
+        List<DOMValidateContext> contexts = new ArrayList<DOMValidateContext>();
+        for (int i = 0; i < SIGNATURES; i++) {
+            contexts.add(new DOMValidateContext(
+                keySelector, getSignatureElement(signDocument("data " + i))));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            DOMXMLSignatureBatchValidator validator =
+                new DOMXMLSignatureBatchValidator(fac, executor);
+            assertFalse(validator.isShareKeySelectorResults());
+            List<DOMXMLSignatureBatchValidator.Result> results = validator.validate(contexts);
+            for (int i = 0; i < SIGNATURES; i++) {
+                assertTrue(results.get(i).isValid());
+                assertSame(keySelector, contexts.get(i).getKeySelector());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        // the KeySelector decides for every context itself
+        assertEquals(SIGNATURES, keySelector.count.get());
+        assertEquals(SIGNATURES, keySelector.contexts.size());
+        assertTrue(contexts.containsAll(keySelector.contexts));
+    }
+
+    @org.junit.Test
+    public void testValidateInCallingThread() throws Exception {
+        CountingKeySelector keySelector = new CountingKeySelector();
+        List<DOMValidateContext> contexts = new ArrayList<DOMValidateContext>();
+        for (int i = 0; i < 3; i++) {
+            contexts.add(new DOMValidateContext(
+                keySelector, getSignatureElement(signDocument("data " + i))));
+        }
+        // KeyInfo without a KeyValue
+        Document doc = signDocument("data");
+        Element keyInfo = (Element)doc.getElementsByTagNameNS
+            (XMLSignature.XMLNS, "KeyInfo").item(0);
+        keyInfo.removeChild(keyInfo.getFirstChild());
+        keyInfo.appendChild(doc.createElementNS(XMLSignature.XMLNS, "KeyName"))
+            .setTextContent("unknown");
+        contexts.add(new DOMValidateContext(keySelector, getSignatureElement(doc)));
+
+        DOMXMLSignatureBatchValidator validator = new DOMXMLSignatureBatchValidator(fac, null);
+        validator.setShareKeySelectorResults(true);
+        List<DOMXMLSignatureBatchValidator.Result> results = validator.validate(contexts);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(results.get(i).isValid());
+        }
+        assertFalse(results.get(3).isValid());
+        assertNotNull(results.get(3).getException());
+        // selected once for the KeyValue, and once for the KeyName
+        assertEquals(2, keySelector.count.get());
+    }
+
+    private static Element getSignatureElement(DOMValidateContext context) {
+        return (Element)context.getNode();
+    }
+
+    private static Element getSignatureElement(Document doc) {
+        return (Element)doc.getElementsByTagNameNS
+            (XMLSignature.XMLNS, "Signature").item(0);
+    }
+
+    private Document signDocument(String data) throws Exception {
+        Document doc = TestUtils.newDocument();
+        Element root = doc.createElementNS(null, "root");
+        root.appendChild(doc.createTextNode(data));
+        doc.appendChild(root);
+
+        DigestMethod dm = fac.newDigestMethod(DigestMethod.SHA1, null);
+        Transform enveloped = fac.newTransform
+            (Transform.ENVELOPED, (TransformParameterSpec) null);
+        Reference ref = fac.newReference
+            ("", dm, Collections.singletonList(enveloped), null, null);
+        CanonicalizationMethod cm = fac.newCanonicalizationMethod
+            (CanonicalizationMethod.INCLUSIVE, (C14NMethodParameterSpec) null);
+        SignatureMethod sm = fac.newSignatureMethod(SignatureMethod.RSA_SHA1, null);
+        SignedInfo si = fac.newSignedInfo(cm, sm, Collections.singletonList(ref));
+
+        KeyInfoFactory kifac = fac.getKeyInfoFactory();
+        KeyInfo ki = kifac.newKeyInfo(Collections.singletonList
+            (kifac.newKeyValue(TestUtils.getPublicKey("RSA"))));
+        XMLSignature sig = fac.newXMLSignature(si, ki);
+        sig.sign(new DOMSignContext(TestUtils.getPrivateKey("RSA"), root));
+        return doc;
+    }
+
+    /**
+     * A KeyValueKeySelector which counts how often it selects a key, and records the
+     * contexts it is called with.
+     */
+    private static class CountingKeySelector extends KeySelectors.KeyValueKeySelector {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        private final Set<XMLCryptoContext> contexts =
+            Collections.synchronizedSet(new HashSet<XMLCryptoContext>());
+
+        public KeySelectorResult select(KeyInfo keyInfo,
+                                        KeySelector.Purpose purpose,
+                                        AlgorithmMethod method,
+                                        XMLCryptoContext context)
+            throws KeySelectorException {
+            count.incrementAndGet();
+            contexts.add(context);
+            return super.select(keyInfo, purpose, method, context);
+        }
+    }
+
+}
@@ -0,0 +1,216 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.dom.algorithms;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.util.Arrays;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.xml.security.algorithms.JCEEngineCache;
+import org.apache.xml.security.algorithms.MessageDigestAlgorithm;
+import org.apache.xml.security.algorithms.SignatureAlgorithm;
+import org.apache.xml.security.signature.XMLSignature;
+import org.apache.xml.security.signature.XMLSignatureException;
+import org.apache.xml.security.utils.XMLUtils;
+import org.w3c.dom.Document;
+
+/**
+ * Tests that JCA engines are reused through the JCEEngineCache, and that a reused engine
+ * gives the same results as a fresh one.
+ */
+public class JCEEngineCacheTest extends org.junit.Assert {
+
+    static {
+        org.apache.xml.security.Init.init();
+    }
+
+    @org.junit.Test
+    public void testMessageDigestReuse() throws Exception {
+        org.junit.Assume.assumeTrue(JCEEngineCache.isEnabled());
+        Document doc = XMLUtils.createDocumentBuilder(false).newDocument();
+
+        MessageDigestAlgorithm digestAlgorithm =
+            MessageDigestAlgorithm.getInstance(doc, MessageDigestAlgorithm.ALGO_ID_DIGEST_SHA256);
+        MessageDigest md = digestAlgorithm.getAlgorithm();
+        // leave some data in the digest, which must be discarded on release
+        md.update("garbage".getBytes());
+        digestAlgorithm.release();
+        digestAlgorithm.release();
+
+        long hits = JCEEngineCache.getHitCount();
+        digestAlgorithm =
+            MessageDigestAlgorithm.getInstance(doc, MessageDigestAlgorithm.ALGO_ID_DIGEST_SHA256);
+        assertSame(md, digestAlgorithm.getAlgorithm());
+        assertEquals(hits + 1, JCEEngineCache.getHitCount());
+
+        byte[] digest = digestAlgorithm.digest("test-string".getBytes());
+        byte[] expected = MessageDigest.getInstance("SHA-256").digest("test-string".getBytes());
+        assertTrue(Arrays.equals(expected, digest));
+        digestAlgorithm.release();
+    }
+
+    @org.junit.Test
+    public void testHMACReinitialisedAfterRelease() throws Exception {
+        Document doc = XMLUtils.createDocumentBuilder(false).newDocument();
+        SecretKeySpec key = new SecretKeySpec("secret".getBytes("ASCII"), "HmacSHA256");
+        byte[] data = "test-string".getBytes();
+
+        SignatureAlgorithm signatureAlgorithm =
+            new SignatureAlgorithm(doc, XMLSignature.ALGO_ID_MAC_HMAC_SHA256);
+        signatureAlgorithm.initSign(key);
+        signatureAlgorithm.update(data);
+        byte[] signature = signatureAlgorithm.sign();
+        signatureAlgorithm.release();
+
+        // the engine has to be initialised again after a release
+        try {
+            signatureAlgorithm.update(data);
+            fail("Failure expected on an uninitialised engine");
+        } catch (XMLSignatureException ex) {
+            // expected
+        }
+
+        signatureAlgorithm.initVerify(key);
+        signatureAlgorithm.update(data);
+        assertTrue(signatureAlgorithm.verify(signature));
+        signatureAlgorithm.release();
+    }
+
+    @org.junit.Test
+    public void testRSAReinitialisedAfterRelease() throws Exception {
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(1024);
+        KeyPair keyPair = kpg.genKeyPair();
+        Document doc = XMLUtils.createDocumentBuilder(false).newDocument();
+        byte[] data = "test-string".getBytes();
+
+        SignatureAlgorithm signer =
+            new SignatureAlgorithm(doc, XMLSignature.ALGO_ID_SIGNATURE_RSA_SHA256);
+        signer.initSign(keyPair.getPrivate());
+        signer.update(data);
+        byte[] signature = signer.sign();
+        signer.release();
+
+        // a new instance picks up the released engine, and has to initialise it
+        SignatureAlgorithm verifier =
+            new SignatureAlgorithm(doc, XMLSignature.ALGO_ID_SIGNATURE_RSA_SHA256);
+        verifier.initVerify(keyPair.getPublic());
+        verifier.update(data);
+        assertTrue(verifier.verify(signature));
+        verifier.release();
+
+        signer.initVerify(keyPair.getPublic());
+        signer.update("other-string".getBytes());
+        assertFalse(signer.verify(signature));
+        signer.release();
+    }
+
+    @org.junit.Test
+    public void testMessageDigestUsedAfterRelease() throws Exception {
+        Document doc = XMLUtils.createDocumentBuilder(false).newDocument();
+        MessageDigestAlgorithm digestAlgorithm =
+            MessageDigestAlgorithm.getInstance(doc, MessageDigestAlgorithm.ALGO_ID_DIGEST_SHA256);
+        digestAlgorithm.release();
+        try {
+            digestAlgorithm.update("test-string".getBytes());
+            fail("Failure expected on a released MessageDigestAlgorithm");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+    }
+
+    @org.junit.Test
+    public void testProviderNameAfterRelease() throws Exception {
+        Document doc = XMLUtils.createDocumentBuilder(false).newDocument();
+        SignatureAlgorithm hmac =
+            new SignatureAlgorithm(doc, XMLSignature.ALGO_ID_MAC_HMAC_SHA256);
+        SignatureAlgorithm rsa =
+            new SignatureAlgorithm(doc, XMLSignature.ALGO_ID_SIGNATURE_RSA_SHA256);
+        String hmacProvider = hmac.getJCEProviderName();
+        String rsaProvider = rsa.getJCEProviderName();
+        assertNotNull(hmacProvider);
+        assertNotNull(rsaProvider);
+        hmac.release();
+        rsa.release();
+
+        // no engine is taken from the cache, and kept, to answer the provider name
+        long requests = JCEEngineCache.getHitCount() + JCEEngineCache.getMissCount();
+        assertEquals(hmacProvider, hmac.getJCEProviderName());
+        assertEquals(rsaProvider, rsa.getJCEProviderName());
+        assertEquals(requests, JCEEngineCache.getHitCount() + JCEEngineCache.getMissCount());
+    }
+
+    @org.junit.Test
+    public void testMacKeyReplacedOnRelease() throws Exception {
+        org.junit.Assume.assumeTrue(JCEEngineCache.isEnabled());
+        SecretKeySpec key = new SecretKeySpec("secret".getBytes("ASCII"), "HmacSHA256");
+        byte[] data = "test-string".getBytes();
+
+        Mac mac = JCEEngineCache.getMac("HmacSHA256", null);
+        mac.init(key);
+        assertTrue(JCEEngineCache.repoolMac("HmacSHA256", null, mac));
+        // the cached engine no longer computes MACs with the key of the last operation
+        Mac expected = Mac.getInstance("HmacSHA256");
+        expected.init(key);
+        assertFalse(Arrays.equals(expected.doFinal(data), mac.doFinal(data)));
+    }
+
+    @org.junit.Test
+    public void testSigningEngineNotCached() throws Exception {
+        org.junit.Assume.assumeTrue(JCEEngineCache.isEnabled());
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(1024);
+        KeyPair keyPair = kpg.genKeyPair();
+        Document doc = XMLUtils.createDocumentBuilder(false).newDocument();
+        byte[] data = "test-string".getBytes();
+        String algorithmID = "SHA512withRSA";
+
+        // take all idle engines out of the cache
+        long hits;
+        do {
+            hits = JCEEngineCache.getHitCount();
+            JCEEngineCache.getSignature(algorithmID, null);
+        } while (JCEEngineCache.getHitCount() > hits);
+
+        SignatureAlgorithm signer =
+            new SignatureAlgorithm(doc, XMLSignature.ALGO_ID_SIGNATURE_RSA_SHA512);
+        signer.initSign(keyPair.getPrivate());
+        signer.update(data);
+        byte[] signature = signer.sign();
+        signer.release();
+
+        // the engine with the private key has been discarded
+        hits = JCEEngineCache.getHitCount();
+        Signature engine = JCEEngineCache.getSignature(algorithmID, null);
+        assertEquals(hits, JCEEngineCache.getHitCount());
+
+        // an engine used for verification is reused
+        signer.initVerify(keyPair.getPublic());
+        signer.update(data);
+        assertTrue(signer.verify(signature));
+        signer.release();
+        assertNotSame(engine, JCEEngineCache.getSignature(algorithmID, null));
+        assertEquals(hits + 1, JCEEngineCache.getHitCount());
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.dom.c14n.implementations;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import org.apache.xml.security.c14n.Canonicalizer;
+import org.apache.xml.security.c14n.CanonicalizerPool;
+import org.apache.xml.security.c14n.CanonicalizerSpi;
+import org.apache.xml.security.c14n.implementations.Canonicalizer20010315ExclOmitComments;
+import org.apache.xml.security.utils.XMLUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+/**
+ * Tests that Canonicalizer instances taken from the CanonicalizerPool do not carry
+ * any state over from a previous canonicalization.
+ */
+public class CanonicalizerPoolTest extends org.junit.Assert {
+
+    private static final String INPUT_DATA =
+        "<a xml:lang=\"en\" xmlns:x=\"urn:x\"><b x:attr=\"1\">text &amp; more</b></a>";
+    private static final String EXPECTED_RESULT =
+        "<b xmlns:x=\"urn:x\" xml:lang=\"en\" x:attr=\"1\">text &amp; more</b>";
+
+    static {
+        org.apache.xml.security.Init.init();
+    }
+
+    @org.junit.Test
+    public void testReleasedInstanceIsReused() throws Exception {
+        CanonicalizerSpi first = CanonicalizerPool.getInstance(Canonicalizer.ALGO_ID_C14N11_OMIT_COMMENTS);
+        assertTrue(CanonicalizerPool.repool(Canonicalizer.ALGO_ID_C14N11_OMIT_COMMENTS, first));
+        CanonicalizerSpi second = CanonicalizerPool.getInstance(Canonicalizer.ALGO_ID_C14N11_OMIT_COMMENTS);
+        assertSame(first, second);
+    }
+
+    @org.junit.Test
+    public void testRepoolUnderWrongAlgorithm() throws Exception {
+        CanonicalizerSpi spi = CanonicalizerPool.getInstance(Canonicalizer.ALGO_ID_C14N_OMIT_COMMENTS);
+        assertFalse(CanonicalizerPool.repool(Canonicalizer.ALGO_ID_C14N_WITH_COMMENTS, spi));
+    }
+
+    @org.junit.Test
+    public void testPollByClass() throws Exception {
+        Canonicalizer20010315ExclOmitComments spi = new Canonicalizer20010315ExclOmitComments();
+        assertTrue(CanonicalizerPool.repool(spi));
+        assertSame(spi, CanonicalizerPool.poll(Canonicalizer20010315ExclOmitComments.class));
+    }
+
+    @org.junit.Test
+    public void testPoolDisabled() throws Exception {
+        // the pool size is read when the class is loaded, so load it once more
+        String property = "org.apache.xml.security.c14n.poolSize";
+        String oldValue = System.getProperty(property);
+        System.setProperty(property, "0");
+        try {
+            ClassLoader loader = new ChildFirstClassLoader(
+                CanonicalizerPool.class.getProtectionDomain().getCodeSource().getLocation()
+            );
+            Class<?> poolClass = loader.loadClass(CanonicalizerPool.class.getName());
+            Class<?> spiClass = loader.loadClass(CanonicalizerSpi.class.getName());
+            Class<?> implementingClass =
+                loader.loadClass(Canonicalizer20010315ExclOmitComments.class.getName());
+            assertNotSame(CanonicalizerPool.class, poolClass);
+            assertEquals(Boolean.FALSE, poolClass.getMethod("isEnabled").invoke(null));
+
+            Object spi = implementingClass.newInstance();
+            assertEquals(
+                Boolean.FALSE, poolClass.getMethod("repool", spiClass).invoke(null, spi)
+            );
+            assertNull(poolClass.getMethod("poll", Class.class).invoke(null, implementingClass));
+        } finally {
+            if (oldValue == null) {
+                System.clearProperty(property);
+            } else {
+                System.setProperty(property, oldValue);
+            }
+        }
+    }
+
+    @org.junit.Test
+    public void testLargeOutputNotCarriedOver() throws Exception {
+        StringBuilder sb = new StringBuilder("<a>");
+        for (int i = 0; i < 10000; i++) {
+            sb.append("<b>").append(i).append("</b>");
+        }
+        sb.append("</a>");
+        Document doc =
+            XMLUtils.createDocumentBuilder(false).parse(
+                new ByteArrayInputStream(sb.toString().getBytes("UTF8"))
+            );
+        Canonicalizer canonicalizer = Canonicalizer.getInstance(Canonicalizer.ALGO_ID_C14N_OMIT_COMMENTS);
+        assertEquals(sb.toString(), new String(canonicalizer.canonicalizeSubtree(doc), "UTF-8"));
+        canonicalizer.release();
+
+        // the replaced buffer must still collect the whole output of the next call
+        canonicalizer = Canonicalizer.getInstance(Canonicalizer.ALGO_ID_C14N_OMIT_COMMENTS);
+        byte[] result = canonicalizer.canonicalizeSubtree(getElementB());
+        assertEquals(EXPECTED_RESULT, new String(result, "UTF-8"));
+        canonicalizer.release();
+    }
+
+    @org.junit.Test
+    public void testNoStateCarriedOver() throws Exception {
+        String[] algorithms = {
+            Canonicalizer.ALGO_ID_C14N_OMIT_COMMENTS,
+            Canonicalizer.ALGO_ID_C14N11_OMIT_COMMENTS,
+        };
+        for (String algorithm : algorithms) {
+            // the first use writes to an external stream
+            Canonicalizer canonicalizer = Canonicalizer.getInstance(algorithm);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            canonicalizer.setWriter(new FilterOutputStream(out));
+            canonicalizer.canonicalizeSubtree(getElementB());
+            assertEquals(EXPECTED_RESULT, new String(out.toByteArray(), "UTF-8"));
+            canonicalizer.release();
+
+            // the reused instances must return the result again and render the inherited
+            // xml:lang attribute on every call
+            for (int i = 0; i < 3; i++) {
+                canonicalizer = Canonicalizer.getInstance(algorithm);
+                byte[] result = canonicalizer.canonicalizeSubtree(getElementB());
+                assertEquals(EXPECTED_RESULT, new String(result, "UTF-8"));
+                canonicalizer.release();
+            }
+        }
+    }
+
+    private Node getElementB() throws Exception {
+        Document doc = 
+            XMLUtils.createDocumentBuilder(false).parse(new ByteArrayInputStream(INPUT_DATA.getBytes("UTF8")));
+        return doc.getDocumentElement().getFirstChild();
+    }
+
+    /**
+     * Loads the classes of the library itself, and delegates only for the others.
+     */
+    private static class ChildFirstClassLoader extends URLClassLoader {
+
+        ChildFirstClassLoader(URL location) {
+            super(new URL[] {location}, CanonicalizerPoolTest.class.getClassLoader());
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(String name, boolean resolve)
+            throws ClassNotFoundException {
+            if (!name.startsWith("org.apache.xml.security.")) {
+                return super.loadClass(name, resolve);
+            }
+            Class<?> c = findLoadedClass(name);
+            if (c == null) {
+                c = findClass(name);
+            }
+            if (resolve) {
+                resolveClass(c);
+            }
+            return c;
+        }
+    }
+
+}
@@ -0,0 +1,224 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.dom.c14n.implementations;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.xml.security.c14n.implementations.EscapingEncoder;
+import org.apache.xml.security.c14n.implementations.UtfHelpper;
+
+/**
+ * Compares the output of the {@link EscapingEncoder} with the character by character
+ * escaping the canonicalizers used before.
+ */
+public class EscapingEncoderTest extends org.junit.Assert {
+
+    // the internal buffer size of the encoder
+    private static final int BUFFER_SIZE = 1024;
+
+    private static final String HIGH_SURROGATE = "\ud83d";
+    private static final String LOW_SURROGATE = "\ude00";
+    private static final String PAIR = HIGH_SURROGATE + LOW_SURROGATE;
+
+    @org.junit.Test
+    public void testAsciiCharacters() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (char c = 0; c < 0x80; c++) {
+            sb.append(c);
+        }
+        assertEscaped(sb.toString());
+    }
+
+    @org.junit.Test
+    public void testEscapes() throws Exception {
+        assertEscaped("a & b < c > d \" e ' f \t g \n h \r i");
+        assertEscaped("&&&<<<>>>\"\"\"\r\r\r\t\t\t\n\n\n");
+        assertEscaped("");
+    }
+
+    @org.junit.Test
+    public void testNonAscii() throws Exception {
+        assertEscaped("\u00e4\u00f6\u00fc \u20ac \uffff " + PAIR + " \u0080\u07ff\u0800");
+    }
+
+    @org.junit.Test
+    public void testUnpairedSurrogates() throws Exception {
+        assertEscaped(HIGH_SURROGATE);
+        assertEscaped(LOW_SURROGATE);
+        assertEscaped("a" + HIGH_SURROGATE + "b");
+        assertEscaped("a" + LOW_SURROGATE + HIGH_SURROGATE + "b");
+        assertEscaped(HIGH_SURROGATE + HIGH_SURROGATE + LOW_SURROGATE);
+    }
+
+    @org.junit.Test
+    public void testSurrogatePairAcrossChunks() throws Exception {
+        // Strings are copied to a char[] of the buffer size, which must not split a pair
+        for (int prefix = BUFFER_SIZE - 4; prefix <= BUFFER_SIZE + 2; prefix++) {
+            String padding = repeat('a', prefix);
+            assertEscaped(padding + PAIR + "b");
+            assertEscaped(padding + PAIR);
+            assertEscaped(padding + HIGH_SURROGATE + "b");
+            assertEscaped(padding + HIGH_SURROGATE);
+            assertEscaped(padding + LOW_SURROGATE + "b");
+        }
+    }
+
+    @org.junit.Test
+    public void testEscapesAcrossBuffer() throws Exception {
+        // escape sequences and multi-byte characters which do not fit into the rest of the
+        // output buffer
+        for (int prefix = BUFFER_SIZE - 8; prefix <= BUFFER_SIZE; prefix++) {
+            String padding = repeat('a', prefix);
+            assertEscaped(padding + "&quot;\"");
+            assertEscaped(padding + "\r\t\n");
+            assertEscaped(padding + "\u20ac\u20ac");
+            assertEscaped(padding + PAIR + PAIR);
+        }
+        assertEscaped(repeat('&', 3 * BUFFER_SIZE));
+        assertEscaped(repeat('\u20ac', 3 * BUFFER_SIZE));
+    }
+
+    @org.junit.Test
+    public void testRandom() throws Exception {
+        String alphabet = "ab&<>\"'\t\n\r \u00e4\u20ac" + PAIR + HIGH_SURROGATE + LOW_SURROGATE;
+        Random random = new Random(42);
+        for (int i = 0; i < 200; i++) {
+            int length = random.nextInt(3 * BUFFER_SIZE);
+            StringBuilder sb = new StringBuilder(length);
+            for (int j = 0; j < length; j++) {
+                sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            assertEscaped(sb.toString());
+        }
+    }
+
+    @org.junit.Test
+    public void testEncoderIsReusable() throws Exception {
+        EscapingEncoder encoder = new EscapingEncoder();
+        for (String text : new String[] {repeat('\u20ac', BUFFER_SIZE), "a&b", ""}) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            encoder.writeText(text, out);
+            assertArrayEquals(outputText(text), out.toByteArray());
+        }
+    }
+
+    private static void assertEscaped(String str) throws IOException {
+        EscapingEncoder encoder = new EscapingEncoder();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.writeText(str, out);
+        assertArrayEquals(outputText(str), out.toByteArray());
+
+        out = new ByteArrayOutputStream();
+        encoder.writeText(str.toCharArray(), out);
+        assertArrayEquals(outputText(str), out.toByteArray());
+
+        out = new ByteArrayOutputStream();
+        encoder.writeAttributeValue(str, out);
+        assertArrayEquals(outputAttributeValue(str), out.toByteArray());
+    }
+
+    /**
+     * The text escaping of CanonicalizerBase.outputTextToWriter before the EscapingEncoder
+     */
+    private static byte[] outputText(String text) throws IOException {
+        ByteArrayOutputStream writer = new ByteArrayOutputStream();
+        final int length = text.length();
+        for (int i = 0; i < length; ) {
+            int c = text.codePointAt(i);
+            i += Character.charCount(c);
+
+            switch (c) {
+            case '&' :
+                write(writer, "&amp;");
+                break;
+            case '<' :
+                write(writer, "&lt;");
+                break;
+            case '>' :
+                write(writer, "&gt;");
+                break;
+            case 0xD :
+                write(writer, "&#xD;");
+                break;
+            default :
+                if (c < 0x80) {
+                    writer.write(c);
+                } else {
+                    UtfHelpper.writeCodePointToUtf8(c, writer);
+                }
+            }
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * The value escaping of CanonicalizerBase.outputAttrToWriter before the EscapingEncoder
+     */
+    private static byte[] outputAttributeValue(String value) throws IOException {
+        ByteArrayOutputStream writer = new ByteArrayOutputStream();
+        final int length = value.length();
+        for (int i = 0; i < length; ) {
+            int c = value.codePointAt(i);
+            i += Character.charCount(c);
+
+            switch (c) {
+            case '&' :
+                write(writer, "&amp;");
+                break;
+            case '<' :
+                write(writer, "&lt;");
+                break;
+            case '"' :
+                write(writer, "&quot;");
+                break;
+            case 0x09 :
+                write(writer, "&#x9;");
+                break;
+            case 0x0A :
+                write(writer, "&#xA;");
+                break;
+            case 0x0D :
+                write(writer, "&#xD;");
+                break;
+            default :
+                if (c < 0x80) {
+                    writer.write(c);
+                } else {
+                    UtfHelpper.writeCodePointToUtf8(c, writer);
+                }
+            }
+        }
+        return writer.toByteArray();
+    }
+
+    private static void write(OutputStream out, String ascii) throws IOException {
+        out.write(ascii.getBytes("US-ASCII"));
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
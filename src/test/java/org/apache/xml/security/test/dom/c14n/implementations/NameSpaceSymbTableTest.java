@@ -18,16 +18,26 @@
  */
 package org.apache.xml.security.test.dom.c14n.implementations;
 
+import java.io.ByteArrayInputStream;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
+import org.apache.xml.security.c14n.Canonicalizer;
 import org.apache.xml.security.c14n.implementations.NameSpaceSymbTable;
+import org.apache.xml.security.utils.Constants;
 import org.apache.xml.security.utils.XMLUtils;
 import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 
 public class NameSpaceSymbTableTest extends org.junit.Assert {
     static Attr node1,node2;
+    static {
+        org.apache.xml.security.Init.init();
+    }
     static {
         try {
             Document doc = XMLUtils.createDocumentBuilder(false).newDocument();
@@ -200,4 +210,95 @@ public class NameSpaceSymbTableTest extends org.junit.Assert {
         ns.addMappingAndRender("ctrl", "http://foo.com/controls", node1);
         ns.addMappingAndRender("wiki", "http://foo.com/samples/wiki", node1);
     }
+
+    @org.junit.Test
+    public void testRenderedStateRestoredOnPop() {
+        NameSpaceSymbTable ns = new NameSpaceSymbTable();
+        ns.push();
+        ns.addMapping("a", "http://a", node1);
+        ns.push();
+        // rendered in an inner frame only
+        assertEquals(node1, ns.getMapping("a"));
+        assertNull(ns.getMapping("a"));
+        ns.pop();
+        assertEquals(node1, ns.getMapping("a"));
+        assertNull(ns.getMapping("a"));
+    }
+
+    @org.junit.Test
+    public void testManyPrefixesAndReset() {
+        NameSpaceSymbTable ns = new NameSpaceSymbTable();
+        for (int i = 0; i < 100; i++) {
+            ns.push();
+            ns.addMapping("p" + i, "http://p" + i, node1);
+        }
+        List<Attr> l = new ArrayList<Attr>();
+        ns.getUnrenderedNodes(l);
+        assertEquals(100, l.size());
+        l.clear();
+        ns.getUnrenderedNodes(l);
+        assertTrue(l.isEmpty());
+        // the rendering done in the innermost frame is undone by the pop
+        ns.pop();
+        ns.getUnrenderedNodes(l);
+        assertEquals(99, l.size());
+        for (int i = 98; i >= 0; i--) {
+            ns.pop();
+        }
+        assertEquals(0, ns.getLevel());
+        assertNull(ns.getMapping("p0"));
+
+        ns.reset();
+        assertNull(ns.getMapping("p0"));
+        assertNull(ns.getMapping("xmlns"));
+        ns.push();
+        ns.addMapping("p0", "http://p0", node2);
+        assertEquals(node2, ns.getMapping("p0"));
+    }
+
+    @org.junit.Test
+    public void testUnrenderedEmptyXmlns() {
+        NameSpaceSymbTable ns = new NameSpaceSymbTable();
+        ns.push();
+        ns.addMappingAndRender("xmlns", "http://a", node1);
+        ns.push();
+        assertTrue(ns.addMapping("xmlns", "", node2));
+        ns.push();
+        // an undeclared default namespace is not one of the unrendered nodes
+        List<Attr> l = new ArrayList<Attr>();
+        ns.getUnrenderedNodes(l);
+        assertTrue(l.isEmpty());
+    }
+
+    @org.junit.Test
+    public void testSubtreeWithEmptyXmlns() throws Exception {
+        String xml =
+            "<a xmlns=\"urn:x\" xmlns:p=\"urn:p\"><b xmlns=\"\"><c xmlns=\"\"/></b></a>";
+        Document doc =
+            XMLUtils.createDocumentBuilder(false).parse(
+                new ByteArrayInputStream(xml.getBytes("UTF-8"))
+            );
+        Element b = (Element)doc.getDocumentElement().getFirstChild();
+        Canonicalizer c14n = Canonicalizer.getInstance(Canonicalizer.ALGO_ID_C14N_OMIT_COMMENTS);
+        assertEquals(
+            "<b xmlns:p=\"urn:p\"><c></c></b>",
+            new String(c14n.canonicalizeSubtree(b), "UTF-8")
+        );
+        c14n = Canonicalizer.getInstance(Canonicalizer.ALGO_ID_C14N_OMIT_COMMENTS);
+        assertEquals(
+            "<c xmlns:p=\"urn:p\"></c>",
+            new String(c14n.canonicalizeSubtree(b.getFirstChild()), "UTF-8")
+        );
+        // the parent with xmlns="" is not in the node set
+        Element a = doc.getDocumentElement();
+        Set<Node> nodes = new HashSet<Node>();
+        nodes.add(a);
+        nodes.add(a.getAttributeNodeNS(Constants.NamespaceSpecNS, "xmlns"));
+        nodes.add(b.getFirstChild());
+        c14n = Canonicalizer.getInstance(Canonicalizer.ALGO_ID_C14N_OMIT_COMMENTS);
+        assertEquals(
+            "<a xmlns=\"urn:x\"><c xmlns=\"\"></c></a>",
+            new String(c14n.canonicalizeXPathNodeSet(nodes), "UTF-8")
+        );
+    }
 }
@@ -98,4 +98,24 @@ public class UtfHelperTest extends org.junit.Assert {
         }
     }
 
+    @org.junit.Test
+    public void testWriteCodePointToBuffer() throws Exception {
+        // every code point, and some which are not valid, must be encoded as by the
+        // OutputStream variant
+        int[] invalid = {-1, Character.MAX_CODE_POINT + 1, Integer.MAX_VALUE};
+        byte[] buf = new byte[8];
+        for (int c = -invalid.length; c <= Character.MAX_CODE_POINT; c++) {
+            int codePoint = c < 0 ? invalid[-c - 1] : c;
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            UtfHelpper.writeCodePointToUtf8(codePoint, expected);
+
+            int pos = UtfHelpper.writeCodePointToUtf8(codePoint, buf, 1);
+            byte[] result = new byte[pos - 1];
+            System.arraycopy(buf, 1, result, 0, result.length);
+            if (!Arrays.equals(expected.toByteArray(), result)) {
+                fail("Code point " + Integer.toHexString(codePoint));
+            }
+        }
+    }
+
 }
@@ -37,6 +37,7 @@ import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.DESedeKeySpec;
+import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import javax.xml.parsers.DocumentBuilder;
 
@@ -49,7 +50,9 @@ import org.apache.xml.security.encryption.EncryptedData;
 import org.apache.xml.security.encryption.EncryptedKey;
 import org.apache.xml.security.encryption.EncryptionMethod;
 import org.apache.xml.security.encryption.CipherData;
+import org.apache.xml.security.encryption.XMLEncryptionException;
 import org.apache.xml.security.transforms.params.XPathContainer;
+import org.apache.xml.security.utils.Base64;
 import org.apache.xml.security.utils.EncryptionConstants;
 import org.apache.xml.security.utils.XMLUtils;
 import org.apache.xml.security.keys.KeyInfo;
@@ -818,6 +821,183 @@ public class XMLCipherTest extends org.junit.Assert {
         }
     }
 
+    /*
+     * Test that decrypting into the document while the octets are decrypted gives the same
+     * nodes as parsing them into a separate Document first
+     */
+    @org.junit.Test
+    public void testStreamingDecryption() throws Exception {
+        DocumentBuilder db = XMLUtils.createDocumentBuilder(false);
+
+        KeyGenerator keygen = KeyGenerator.getInstance("AES");
+        keygen.init(128);
+        SecretKey key = keygen.generateKey();
+
+        final String DATA =
+            "<ns:root xmlns:ns=\"ns.com\" xmlns=\"defns.com\">"
+            + "<ns:elem xmlns:ns2=\"ns2.com\" ns2:attr=\"a&amp;b\" attr=\"1\">text &lt;1&gt;"
+            + "<!--comment--><?pi target?><![CDATA[<cdata>]]><elem xmlns=\"\">11</elem>"
+            + "<ns2:elem/></ns:elem>tail</ns:root>";
+
+        Document[] docs = new Document[2];
+        for (int i = 0; i < docs.length; i++) {
+            Document doc = db.parse(new ByteArrayInputStream(DATA.getBytes("UTF-8")));
+            Element elem = doc.getDocumentElement();
+
+            XMLCipher dataCipher = XMLCipher.getInstance(XMLCipher.AES_128_GCM);
+            dataCipher.init(XMLCipher.ENCRYPT_MODE, key);
+            dataCipher.doFinal(doc, elem, true);
+
+            Element encrElem = (Element)elem.getFirstChild();
+            assertEquals("EncryptedData", encrElem.getLocalName());
+
+            XMLCipher deCipher = XMLCipher.getInstance(XMLCipher.AES_128_GCM);
+            deCipher.init(XMLCipher.DECRYPT_MODE, key);
+            deCipher.setStreamingDecryption(i == 1);
+            deCipher.doFinal(doc, encrElem);
+            docs[i] = doc;
+        }
+        Element elem = (Element)docs[1].getDocumentElement().getFirstChild();
+        assertEquals("ns:elem", elem.getNodeName());
+        assertEquals("a&b", elem.getAttributeNS("ns2.com", "attr"));
+        assertTrue(docs[0].getDocumentElement().isEqualNode(docs[1].getDocumentElement()));
+
+        // a modified cipher text leaves the document as it is
+        Document doc = db.parse(new ByteArrayInputStream(DATA.getBytes("UTF-8")));
+        XMLCipher dataCipher = XMLCipher.getInstance(XMLCipher.AES_128_GCM);
+        dataCipher.init(XMLCipher.ENCRYPT_MODE, key);
+        dataCipher.doFinal(doc, doc.getDocumentElement(), true);
+        byte[] cipherText = getCipherText(doc);
+        cipherText[cipherText.length - 1]++;
+        assertStreamingDecryptionFails(doc, cipherText, XMLCipher.AES_128_GCM, key);
+
+        // a truncated CBC cipher text
+        doc = db.parse(new ByteArrayInputStream(DATA.getBytes("UTF-8")));
+        dataCipher = XMLCipher.getInstance(XMLCipher.AES_128);
+        dataCipher.init(XMLCipher.ENCRYPT_MODE, key);
+        dataCipher.doFinal(doc, doc.getDocumentElement(), true);
+        cipherText = getCipherText(doc);
+        byte[] truncated = new byte[cipherText.length - 5];
+        System.arraycopy(cipherText, 0, truncated, 0, truncated.length);
+        assertStreamingDecryptionFails(doc, truncated, XMLCipher.AES_128, key);
+
+        // a CBC cipher text with a bad padding: flipping a bit of the second to last block
+        // flips the same bit of the last plaintext block, so the padding length exceeds
+        // the block size
+        cipherText[cipherText.length - 17] ^= 0x20;
+        assertStreamingDecryptionFails(doc, cipherText, XMLCipher.AES_128, key);
+    }
+
+    private static byte[] getCipherText(Document doc) throws Exception {
+        Element cipherValue =
+            (Element)doc.getElementsByTagNameNS(
+                EncryptionConstants.EncryptionSpecNS, EncryptionConstants._TAG_CIPHERVALUE
+            ).item(0);
+        return Base64.decode(cipherValue.getTextContent());
+    }
+
+    /**
+     * Replaces the cipher text of the EncryptedData element of doc, and checks that a
+     * streaming decryption of it fails and leaves the document as it is.
+     */
+    private static void assertStreamingDecryptionFails(
+        Document doc, byte[] cipherText, String algorithm, SecretKey key
+    ) throws Exception {
+        Element cipherValue =
+            (Element)doc.getElementsByTagNameNS(
+                EncryptionConstants.EncryptionSpecNS, EncryptionConstants._TAG_CIPHERVALUE
+            ).item(0);
+        cipherValue.setTextContent(Base64.encode(cipherText));
+
+        XMLCipher deCipher = XMLCipher.getInstance(algorithm);
+        deCipher.init(XMLCipher.DECRYPT_MODE, key);
+        deCipher.setStreamingDecryption(true);
+        Element encrElem = (Element)doc.getDocumentElement().getFirstChild();
+        try {
+            deCipher.doFinal(doc, encrElem);
+            fail("Failure expected on a modified cipher text");
+        } catch (XMLEncryptionException ex) {
+            // expected
+        }
+        assertSame(encrElem, doc.getDocumentElement().getFirstChild());
+    }
+
+    @org.junit.Test
+    public void testStreamingEncryption() throws Exception {
+        if (!haveISOPadding) {
+            log.warn("Test testStreamingEncryption skipped as necessary algorithms not available");
+            return;
+        }
+        DocumentBuilder db = XMLUtils.createDocumentBuilder(false);
+
+        KeyGenerator keygen = KeyGenerator.getInstance("AES");
+        keygen.init(128);
+        SecretKey key = keygen.generateKey();
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            text.append("text ").append(i);
+        }
+        final String DATA = "<root><elem attr=\"1\">" + text + "</elem></root>";
+
+        // the CipherValue is encoded as by Base64.encode(byte[])
+        Document doc = db.parse(new ByteArrayInputStream(DATA.getBytes("UTF-8")));
+        XMLCipher cipher = XMLCipher.getInstance(XMLCipher.AES_128);
+        cipher.init(XMLCipher.ENCRYPT_MODE, key);
+        cipher.doFinal(doc, doc.getDocumentElement(), true);
+        String cipherValue =
+            doc.getElementsByTagNameNS(
+                EncryptionConstants.EncryptionSpecNS, EncryptionConstants._TAG_CIPHERVALUE
+            ).item(0).getTextContent();
+        assertTrue(cipherValue.indexOf('\n') > 0);
+        assertEquals(Base64.encode(Base64.decode(cipherValue)), cipherValue);
+
+        cipher = XMLCipher.getInstance(XMLCipher.AES_128);
+        cipher.init(XMLCipher.DECRYPT_MODE, key);
+        cipher.doFinal(doc, (Element)doc.getDocumentElement().getFirstChild());
+        assertEquals(text.toString(), doc.getDocumentElement().getTextContent());
+
+        // the encrypted octets are written to an OutputStream
+        doc = db.parse(new ByteArrayInputStream(DATA.getBytes("UTF-8")));
+        Element elem = (Element)doc.getDocumentElement().getFirstChild();
+        cipher = XMLCipher.getInstance(XMLCipher.AES_128);
+        cipher.init(XMLCipher.ENCRYPT_MODE, key);
+        cipher.getEncryptedData().setId("ED");
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        EncryptedData encryptedData =
+            cipher.encryptData(doc, elem, false, "http://example.org/octets", os);
+        assertEquals("ED", encryptedData.getId());
+        assertEquals(EncryptionConstants.TYPE_ELEMENT, encryptedData.getType());
+        assertEquals(XMLCipher.AES_128, encryptedData.getEncryptionMethod().getAlgorithm());
+        assertEquals(CipherData.REFERENCE_TYPE, encryptedData.getCipherData().getDataType());
+        assertEquals(
+            "http://example.org/octets",
+            encryptedData.getCipherData().getCipherReference().getURI()
+        );
+        // the source document is left as it is
+        assertSame(elem, doc.getDocumentElement().getFirstChild());
+
+        byte[] octets = os.toByteArray();
+        Cipher c = Cipher.getInstance("AES/CBC/ISO10126Padding");
+        c.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(octets, 0, 16));
+        byte[] plainText = c.doFinal(octets, 16, octets.length - 16);
+        assertEquals(
+            "<elem attr=\"1\">" + text + "</elem>", new String(plainText, "UTF-8")
+        );
+
+        // the EncryptedData being built keeps its CipherValue
+        assertNotSame(encryptedData, cipher.getEncryptedData());
+        encryptedData = cipher.encryptData(doc, elem, false);
+        assertEquals("ED", encryptedData.getId());
+        assertEquals(CipherData.VALUE_TYPE, encryptedData.getCipherData().getDataType());
+        cipher = XMLCipher.getInstance(XMLCipher.AES_128);
+        cipher.init(XMLCipher.DECRYPT_MODE, key);
+        assertEquals(
+            "<elem attr=\"1\">" + text + "</elem>",
+            new String(cipher.decryptToByteArray(cipher.martial(encryptedData)), "UTF-8")
+        );
+    }
+
     @org.junit.Test
     public void testSerializedData() throws Exception {
         if (!haveISOPadding) {
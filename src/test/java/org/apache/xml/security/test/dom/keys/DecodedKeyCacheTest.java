@@ -0,0 +1,97 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.dom.keys;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+
+import org.apache.xml.security.Init;
+import org.apache.xml.security.keys.DecodedKeyCache;
+import org.apache.xml.security.keys.KeyInfo;
+import org.apache.xml.security.utils.XMLUtils;
+import org.junit.Assert;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+public class DecodedKeyCacheTest extends Assert {
+
+    private PublicKey publicKey;
+
+    public DecodedKeyCacheTest() throws Exception {
+        Init.init();
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(1024);
+        publicKey = kpg.generateKeyPair().getPublic();
+    }
+
+    @org.junit.Test
+    public void testKeyValue() throws Exception {
+        PublicKey first = readKeyInfo(publicKey, null, "\n").getPublicKey();
+        assertEquals(publicKey, first);
+
+        long hits = DecodedKeyCache.getHitCount();
+        // the same key, formatted differently
+        PublicKey second = readKeyInfo(publicKey, null, "\n  ").getPublicKey();
+        assertSame(first, second);
+        assertEquals(hits + 1, DecodedKeyCache.getHitCount());
+        assertTrue(DecodedKeyCache.getHitRate() > 0);
+    }
+
+    @org.junit.Test
+    public void testNotSelfContained() throws Exception {
+        PublicKey first = readKeyInfo(publicKey, "name", "\n").getPublicKey();
+        PublicKey second = readKeyInfo(publicKey, "name", "\n").getPublicKey();
+        assertEquals(first, second);
+        assertNotSame(first, second);
+    }
+
+    @org.junit.Test
+    public void testClear() throws Exception {
+        PublicKey first = readKeyInfo(publicKey, null, "\n").getPublicKey();
+        DecodedKeyCache.clear();
+        PublicKey second = readKeyInfo(publicKey, null, "\n").getPublicKey();
+        assertEquals(first, second);
+        assertNotSame(first, second);
+    }
+
+    private static KeyInfo readKeyInfo(PublicKey publicKey, String keyName, String lineBreak)
+        throws Exception {
+        Document doc = XMLUtils.createDocumentBuilder(false).newDocument();
+        KeyInfo keyInfo = new KeyInfo(doc);
+        if (keyName != null) {
+            keyInfo.addKeyName(keyName);
+        }
+        keyInfo.addKeyValue(publicKey);
+        doc.appendChild(keyInfo.getElement());
+
+        // parse the KeyInfo again, so that it is decoded from its text
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        XMLUtils.outputDOM(doc, bos);
+        String xml = new String(bos.toByteArray(), "UTF-8");
+        xml = xml.replace("\n", lineBreak);
+        Document parsed =
+            XMLUtils.createDocumentBuilder(false).parse(
+                new ByteArrayInputStream(xml.getBytes("UTF-8"))
+            );
+        Element element = parsed.getDocumentElement();
+        return new KeyInfo(element, "");
+    }
+}
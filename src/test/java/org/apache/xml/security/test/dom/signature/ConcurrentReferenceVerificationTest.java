@@ -0,0 +1,202 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.dom.signature;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.xml.security.Init;
+import org.apache.xml.security.signature.MissingResourceFailureException;
+import org.apache.xml.security.signature.SignedInfo;
+import org.apache.xml.security.signature.XMLSignature;
+import org.apache.xml.security.transforms.Transforms;
+import org.apache.xml.security.utils.Constants;
+import org.apache.xml.security.utils.XMLUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Tests that verifying the References of a Signature, or generating their DigestValues,
+ * concurrently gives the same results as processing them one after the other.
+ */
+public class ConcurrentReferenceVerificationTest extends org.junit.Assert {
+
+    private static final int ELEMENTS = 8;
+
+    private static final SecretKey KEY = new SecretKeySpec("secret".getBytes(), "HmacSHA256");
+
+    private ExecutorService executor;
+
+    public ConcurrentReferenceVerificationTest() {
+        Init.init();
+    }
+
+    @org.junit.Before
+    public void createExecutor() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @org.junit.After
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @org.junit.Test
+    public void testSameResults() throws Exception {
+        Document doc = signDocument(null);
+        doc.getElementsByTagNameNS("urn:test", "data").item(3).setTextContent("changed");
+
+        XMLSignature sequential = new XMLSignature(getSignatureElement(doc), "");
+        assertFalse(sequential.getSignedInfo().verify());
+
+        XMLSignature concurrent = new XMLSignature(getSignatureElement(doc), "");
+        concurrent.setReferenceVerificationExecutor(executor);
+        assertFalse(concurrent.checkSignatureValue(KEY));
+
+        SignedInfo sequentialInfo = sequential.getSignedInfo();
+        SignedInfo concurrentInfo = concurrent.getSignedInfo();
+        for (int i = 0; i < sequentialInfo.getLength(); i++) {
+            assertEquals(
+                sequentialInfo.getVerificationResult(i), concurrentInfo.getVerificationResult(i)
+            );
+            assertEquals(i != 3 && i != ELEMENTS, concurrentInfo.getVerificationResult(i));
+        }
+    }
+
+    @org.junit.Test
+    public void testValid() throws Exception {
+        Document doc = signDocument(null);
+        XMLSignature signature = new XMLSignature(getSignatureElement(doc), "");
+        signature.setReferenceVerificationExecutor(executor);
+        assertTrue(signature.checkSignatureValue(KEY));
+    }
+
+    @org.junit.Test
+    public void testExceptionInDocumentOrder() throws Exception {
+        Document doc = signDocument(null);
+        Element signedInfo =
+            XMLUtils.selectDsNode(
+                getSignatureElement(doc).getFirstChild(), Constants._TAG_SIGNEDINFO, 0
+            );
+        Element[] references =
+            XMLUtils.selectDsNodes(signedInfo.getFirstChild(), Constants._TAG_REFERENCE);
+        references[2].setAttributeNS(null, "URI", "#missing2");
+        references[5].setAttributeNS(null, "URI", "#missing5");
+
+        XMLSignature signature = new XMLSignature(getSignatureElement(doc), "");
+        signature.getSignedInfo().setReferenceVerificationExecutor(executor);
+        try {
+            signature.getSignedInfo().verify();
+            fail("Failure expected on a missing resource");
+        } catch (MissingResourceFailureException ex) {
+            assertEquals("#missing2", ex.getReference().getURI());
+        }
+    }
+
+    @org.junit.Test
+    public void testDigestGeneration() throws Exception {
+        Element sequential = getSignatureElement(signDocument(null));
+        Element concurrent = getSignatureElement(signDocument(executor));
+        assertEquals(
+            sequential.getElementsByTagNameNS(Constants.SignatureSpecNS, "SignatureValue")
+                .item(0).getTextContent(),
+            concurrent.getElementsByTagNameNS(Constants.SignatureSpecNS, "SignatureValue")
+                .item(0).getTextContent()
+        );
+
+        XMLSignature signature = new XMLSignature(concurrent, "");
+        assertTrue(signature.checkSignatureValue(KEY));
+    }
+
+    @org.junit.Test
+    public void testDigestOfReference() throws Exception {
+        Element sequential = getSignatureElement(signDocument(null, true));
+        Element concurrent = getSignatureElement(signDocument(executor, true));
+        assertEquals(
+            sequential.getElementsByTagNameNS(Constants.SignatureSpecNS, "SignatureValue")
+                .item(0).getTextContent(),
+            concurrent.getElementsByTagNameNS(Constants.SignatureSpecNS, "SignatureValue")
+                .item(0).getTextContent()
+        );
+
+        XMLSignature signature = new XMLSignature(concurrent, "");
+        assertTrue(signature.checkSignatureValue(KEY));
+        assertTrue(signature.getSignedInfo().getVerificationResult(ELEMENTS));
+    }
+
+    private static Element getSignatureElement(Document doc) {
+        return (Element)doc.getElementsByTagNameNS(
+            Constants.SignatureSpecNS, Constants._TAG_SIGNATURE).item(0);
+    }
+
+    private static Document signDocument(ExecutorService executor) throws Exception {
+        return signDocument(executor, false);
+    }
+
+    /**
+     * Signs ELEMENTS data elements and the whole document. If referenceToReference is true,
+     * the References get an Id and another one pointing at the second of them is added.
+     */
+    private static Document signDocument(
+        ExecutorService executor, boolean referenceToReference
+    ) throws Exception {
+        Document doc = XMLUtils.createDocumentBuilder(false).newDocument();
+        Element root = doc.createElementNS("urn:test", "t:root");
+        root.setAttributeNS(Constants.NamespaceSpecNS, "xmlns:t", "urn:test");
+        doc.appendChild(root);
+        for (int i = 0; i < ELEMENTS; i++) {
+            Element data = doc.createElementNS("urn:test", "t:data");
+            data.setAttributeNS(null, "Id", "id" + i);
+            data.setIdAttributeNS(null, "Id", true);
+            data.setTextContent("data " + i);
+            root.appendChild(data);
+        }
+
+        XMLSignature sig = new XMLSignature(doc, "", XMLSignature.ALGO_ID_MAC_HMAC_SHA256);
+        root.appendChild(sig.getElement());
+        for (int i = 0; i < ELEMENTS; i++) {
+            Transforms transforms = new Transforms(doc);
+            transforms.addTransform(Transforms.TRANSFORM_C14N_EXCL_OMIT_COMMENTS);
+            if (referenceToReference) {
+                sig.addDocument(
+                    "#id" + i, transforms, Constants.ALGO_ID_DIGEST_SHA1, "ref-" + i, null
+                );
+            } else {
+                sig.addDocument("#id" + i, transforms, Constants.ALGO_ID_DIGEST_SHA1);
+            }
+        }
+        if (referenceToReference) {
+            Transforms transforms = new Transforms(doc);
+            transforms.addTransform(Transforms.TRANSFORM_C14N_EXCL_OMIT_COMMENTS);
+            sig.addDocument("#ref-1", transforms, Constants.ALGO_ID_DIGEST_SHA1);
+        }
+        Transforms transforms = new Transforms(doc);
+        transforms.addTransform(Transforms.TRANSFORM_ENVELOPED_SIGNATURE);
+        transforms.addTransform(Transforms.TRANSFORM_C14N_OMIT_COMMENTS);
+        sig.addDocument("", transforms, Constants.ALGO_ID_DIGEST_SHA1);
+
+        sig.setDigestGenerationExecutor(executor);
+        sig.sign(KEY);
+        return doc;
+    }
+
+}
@@ -71,6 +71,8 @@ public class SignatureReferenceTest extends org.junit.Assert {
         SignedInfo signedInfo = signature.getSignedInfo();
         assertTrue(signedInfo.getLength() == 1);
         Reference reference = signedInfo.item(0);
+        // the canonical octets were written to the digest as they were produced
+        assertFalse(reference.isDigestInputBuffered());
         ReferenceData referenceData = reference.getReferenceData();
         assertNotNull(referenceData);
         assertTrue(referenceData instanceof ReferenceNodeSetData);
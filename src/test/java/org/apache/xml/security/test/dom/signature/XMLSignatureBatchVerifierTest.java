@@ -0,0 +1,116 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.dom.signature;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.xml.security.Init;
+import org.apache.xml.security.algorithms.MessageDigestAlgorithm;
+import org.apache.xml.security.signature.XMLSignature;
+import org.apache.xml.security.signature.XMLSignatureBatchVerifier;
+import org.apache.xml.security.transforms.Transforms;
+import org.apache.xml.security.utils.XMLUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+public class XMLSignatureBatchVerifierTest extends org.junit.Assert {
+
+    private static final int SIGNATURES = 12;
+
+    private static KeyPair keyPair;
+
+    public XMLSignatureBatchVerifierTest() throws Exception {
+        Init.init();
+        if (keyPair == null) {
+            KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+            kpg.initialize(1024);
+            keyPair = kpg.generateKeyPair();
+        }
+    }
+
+    @org.junit.Test
+    public void testVerify() throws Exception {
+        List<XMLSignatureBatchVerifier.Item> items = new ArrayList<XMLSignatureBatchVerifier.Item>();
+        for (int i = 0; i < SIGNATURES; i++) {
+            Element signature = signDocument("data " + i, i % 2 == 0);
+            items.add(new XMLSignatureBatchVerifier.Item(
+                signature, "", i % 2 == 0 ? null : keyPair.getPublic()));
+        }
+        // tampered data
+        items.get(3).getSignatureElement().getOwnerDocument()
+            .getDocumentElement().getFirstChild().setNodeValue("changed");
+        // no KeyInfo and no key
+        items.set(5, new XMLSignatureBatchVerifier.Item(signDocument("data", false), "", null));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            XMLSignatureBatchVerifier verifier = new XMLSignatureBatchVerifier(executor);
+            verifier.setSecureValidation(true);
+            List<XMLSignatureBatchVerifier.Result> results = verifier.verify(items);
+
+            assertEquals(SIGNATURES, results.size());
+            for (int i = 0; i < SIGNATURES; i++) {
+                XMLSignatureBatchVerifier.Result result = results.get(i);
+                assertEquals("signature " + i, i != 3 && i != 5, result.isValid());
+                assertNotNull(result.getSignature());
+                assertEquals(i == 5, result.getException() != null);
+            }
+            assertFalse(results.get(3).getSignature().getSignedInfo().getVerificationResult(0));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @org.junit.Test
+    public void testVerifyInCallingThread() throws Exception {
+        List<XMLSignatureBatchVerifier.Item> items = new ArrayList<XMLSignatureBatchVerifier.Item>();
+        for (int i = 0; i < 3; i++) {
+            items.add(new XMLSignatureBatchVerifier.Item(signDocument("data " + i, true), "", null));
+        }
+        for (XMLSignatureBatchVerifier.Result result : new XMLSignatureBatchVerifier(null).verify(items)) {
+            assertTrue(result.isValid());
+        }
+    }
+
+    private static Element signDocument(String data, boolean addKeyInfo) throws Exception {
+        Document doc = XMLUtils.createDocumentBuilder(false).newDocument();
+        Element root = doc.createElementNS(null, "root");
+        root.appendChild(doc.createTextNode(data));
+        doc.appendChild(root);
+
+        XMLSignature sig =
+            new XMLSignature(doc, "", XMLSignature.ALGO_ID_SIGNATURE_RSA_SHA256);
+        root.appendChild(sig.getElement());
+        Transforms transforms = new Transforms(doc);
+        transforms.addTransform(Transforms.TRANSFORM_ENVELOPED_SIGNATURE);
+        transforms.addTransform(Transforms.TRANSFORM_C14N_EXCL_OMIT_COMMENTS);
+        sig.addDocument("", transforms, MessageDigestAlgorithm.ALGO_ID_DIGEST_SHA256);
+        if (addKeyInfo) {
+            sig.addKeyInfo(keyPair.getPublic());
+        }
+        sig.sign(keyPair.getPrivate());
+        return sig.getElement();
+    }
+
+}
@@ -134,4 +134,23 @@ public class XMLSignatureInputTest extends org.junit.Assert {
         assertTrue("Input is not node set", !input.isNodeSet());
     }
 
+    @org.junit.Test
+    public void testOctetStreamClosedAfterUpdateOutputStream() throws Exception {
+        final boolean[] closed = new boolean[1];
+        InputStream inputStream =
+            new ByteArrayInputStream(_octetStreamTextInput.getBytes()) {
+                @Override
+                public void close() throws IOException {
+                    closed[0] = true;
+                    super.close();
+                }
+            };
+        XMLSignatureInput input = new XMLSignatureInput(inputStream);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        input.updateOutputStream(os);
+
+        assertEquals(_octetStreamTextInput, os.toString());
+        assertTrue("Input stream is closed", closed[0]);
+    }
+
 }
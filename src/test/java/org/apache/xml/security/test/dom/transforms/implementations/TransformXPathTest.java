@@ -0,0 +1,138 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.dom.transforms.implementations;
+
+import java.io.ByteArrayInputStream;
+
+import org.apache.xml.security.Init;
+import org.apache.xml.security.signature.XMLSignatureInput;
+import org.apache.xml.security.transforms.Transforms;
+import org.apache.xml.security.transforms.params.XPathContainer;
+import org.apache.xml.security.utils.Constants;
+import org.apache.xml.security.utils.XMLUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Tests that the XPath transform gives the same node-set whether the expression is
+ * evaluated per node, once for the document, or by walking the ancestors of the node.
+ */
+public class TransformXPathTest extends org.junit.Assert {
+
+    static {
+        Init.init();
+    }
+
+    private static final String XML =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<!-- leading comment -->\n"
+        + "<a:root xmlns:a=\"urn:a\" xmlns=\"urn:default\" id=\"root\">\n"
+        + "  <a:b x=\"1\">text<?pi data?><e><![CDATA[ more ]]></e></a:b>\n"
+        + "  <c xmlns:z=\"urn:z\" z:y=\"2\"><a:b><d id=\"keep\">d text</d></a:b><!-- inner --></c>\n"
+        + "  <ds:Signature xmlns:ds=\"http://www.w3.org/2000/09/xmldsig#\">"
+        + "<ds:SignatureValue>AAAA</ds:SignatureValue></ds:Signature>\n"
+        + "</a:root>";
+
+    /**
+     * The position() test is always true, but keeps the transform from
+     * evaluating the expression any other way than per node.
+     */
+    private static final String PER_NODE = " and position() = position()";
+
+    @org.junit.Test
+    public void testAncestorOrSelf() throws Exception {
+        assertSameNodeSet("not(ancestor-or-self::ds:Signature)");
+        assertSameNodeSet(" not ( ancestor-or-self :: ds:Signature ) ");
+        assertSameNodeSet("ancestor-or-self::a:b");
+        assertSameNodeSet("not(ancestor-or-self::c)");
+    }
+
+    @org.junit.Test
+    public void testOperatorsAfterNameTest() throws Exception {
+        // must not be taken for the name tests a:band1, ds:Signatureor0, a:bdiv1 or a:bmod2
+        assertSameNodeSet("ancestor-or-self::a:b and 1");
+        assertSameNodeSet("not(ancestor-or-self::ds:Signature or 0)");
+        assertSameNodeSet("ancestor-or-self::a:b div 1");
+        assertSameNodeSet("ancestor-or-self::a:b mod 2");
+    }
+
+    @org.junit.Test
+    public void testNodeSetExpression() throws Exception {
+        assertSameNodeSet("self::text()[contains(., 'more')] or ancestor-or-self::*[@id='keep']");
+        assertSameNodeSet("self::comment() or ancestor-or-self::a:b[@x] | self::processing-instruction()");
+        assertSameNodeSet("count(ancestor::*) > 1");
+        assertSameNodeSet("string-length(.) > 5");
+    }
+
+    @org.junit.Test
+    public void testEnvelopedSignatureExpression() throws Exception {
+        String here =
+            "count(ancestor-or-self::ds:Signature | here()/ancestor::ds:Signature[1]) > "
+            + "count(ancestor-or-self::ds:Signature)";
+
+        Document doc = parse();
+        Element signature = getSignature(doc);
+        byte[] result = transform(doc, signature, here);
+        doc = parse();
+        signature = getSignature(doc);
+        assertEquals(
+            new String(transform(doc, signature, "not(ancestor-or-self::ds:Signature)" + PER_NODE), "UTF-8"),
+            new String(result, "UTF-8")
+        );
+
+        // no ds:Signature ancestor for here(), so nothing is selected
+        doc = parse();
+        assertEquals(0, transform(doc, doc.getDocumentElement(), here).length);
+    }
+
+    private void assertSameNodeSet(String xpath) throws Exception {
+        // the transforms are kept out of the document, as they contain the expression
+        Document doc = parse();
+        Document transformsDoc = XMLUtils.createDocumentBuilder(false).newDocument();
+        byte[] expected = transform(doc, transformsDoc, "(" + xpath + ")" + PER_NODE);
+        byte[] actual = transform(doc, transformsDoc, xpath);
+        assertEquals(xpath, new String(expected, "UTF-8"), new String(actual, "UTF-8"));
+    }
+
+    private static Document parse() throws Exception {
+        return XMLUtils.createDocumentBuilder(false).parse(new ByteArrayInputStream(XML.getBytes("UTF-8")));
+    }
+
+    private static Element getSignature(Document doc) {
+        return (Element)doc.getElementsByTagNameNS(
+            Constants.SignatureSpecNS, Constants._TAG_SIGNATURE).item(0);
+    }
+
+    private static byte[] transform(Document doc, Node parent, String xpath) throws Exception {
+        Document transformsDoc = XMLUtils.getOwnerDocument(parent);
+        XPathContainer xpathContainer = new XPathContainer(transformsDoc);
+        xpathContainer.setXPathNamespaceContext("ds", Constants.SignatureSpecNS);
+        xpathContainer.setXPathNamespaceContext("a", "urn:a");
+        xpathContainer.setXPath(xpath);
+        Transforms transforms = new Transforms(transformsDoc);
+        transforms.addTransform(Transforms.TRANSFORM_XPATH, xpathContainer.getElementPlusReturns());
+        transforms.addTransform(Transforms.TRANSFORM_C14N_WITH_COMMENTS);
+        if (parent != transformsDoc) {
+            parent.appendChild(transforms.getElement());
+        }
+        return transforms.performTransforms(new XMLSignatureInput(doc)).getBytes();
+    }
+
+}
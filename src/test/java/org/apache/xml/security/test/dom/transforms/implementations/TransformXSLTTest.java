@@ -18,6 +18,7 @@
  */
 package org.apache.xml.security.test.dom.transforms.implementations;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -34,6 +35,7 @@ import org.apache.xml.security.signature.XMLSignatureInput;
 import org.apache.xml.security.test.dom.DSNamespaceContext;
 import org.apache.xml.security.transforms.Transform;
 import org.apache.xml.security.transforms.Transforms;
+import org.apache.xml.security.transforms.implementations.TemplatesCache;
 import org.apache.xml.security.utils.XMLUtils;
 
 public class TransformXSLTTest extends org.junit.Assert {
@@ -86,6 +88,86 @@ public class TransformXSLTTest extends org.junit.Assert {
         transform.performTransform(new XMLSignatureInput(doc2));
     }
     
+    /**
+     * The same stylesheet is only compiled once.
+     */
+    @org.junit.Test
+    public void testTemplatesCache() throws Exception {
+        File file1 = new File(BASEDIR + SEP + SOURCE_PATH, SIGNATURE_FILE);
+        File file2 = new File(BASEDIR + SEP + SOURCE_PATH, STYLESHEET_FILE);
+        Document doc1 = getDocument(file1);
+
+        XPathFactory xpf = XPathFactory.newInstance();
+        XPath xpath = xpf.newXPath();
+        xpath.setNamespaceContext(new DSNamespaceContext());
+        Element transformEl = 
+            (Element) xpath.evaluate("//ds:Transform[1]", doc1, XPathConstants.NODE);
+
+        byte[][] results = new byte[2][];
+        for (int i = 0; i < results.length; i++) {
+            Transform transform = 
+                new Transform(doc1, Transforms.TRANSFORM_XSLT, transformEl.getChildNodes());
+            results[i] = 
+                transform.performTransform(new XMLSignatureInput(getDocument(file2))).getBytes();
+        }
+        long hits = TemplatesCache.getHitCount();
+        Transform transform = 
+            new Transform(doc1, Transforms.TRANSFORM_XSLT, transformEl.getChildNodes());
+        transform.performTransform(new XMLSignatureInput(getDocument(file2)));
+        assertEquals(hits + 1, TemplatesCache.getHitCount());
+        assertArrayEquals(results[0], results[1]);
+    }
+    
+    /**
+     * The xml:* attributes of the ancestors of the Transform are not imported into the
+     * stylesheet, so it is the same stylesheet with or without them.
+     */
+    @org.junit.Test
+    public void testAncestorXmlAttributes() throws Exception {
+        String stylesheet =
+            "<ds:Transform xmlns:ds=\"http://www.w3.org/2000/09/xmldsig#\""
+            + " Algorithm=\"" + Transforms.TRANSFORM_XSLT + "\">"
+            + "<xsl:stylesheet version=\"1.0\""
+            + " xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">\n"
+            + "  <xsl:output method=\"text\"/>\n"
+            + "  <xsl:template match=\"/\">\n"
+            + "    <xsl:text>x</xsl:text>\n"
+            + "  </xsl:template>\n"
+            + "</xsl:stylesheet>"
+            + "</ds:Transform>";
+
+        assertEquals(
+            "x", performTransform("<t:root xmlns:t=\"urn:test\">" + stylesheet + "</t:root>")
+        );
+        long hits = TemplatesCache.getHitCount();
+        assertEquals(
+            "x",
+            performTransform(
+                "<t:root xmlns:t=\"urn:test\" xml:space=\"preserve\" xml:lang=\"en\">"
+                + stylesheet + "</t:root>"
+            )
+        );
+        if (TemplatesCache.isEnabled()) {
+            assertEquals(hits + 1, TemplatesCache.getHitCount());
+        }
+    }
+
+    /**
+     * Performs the Transform which is the first child of the document element of xml.
+     */
+    private static String performTransform(String xml) throws Exception {
+        Document doc =
+            XMLUtils.createDocumentBuilder(false).parse(
+                new ByteArrayInputStream(xml.getBytes("UTF-8"))
+            );
+        Element transformEl = XMLUtils.getNextElement(doc.getDocumentElement().getFirstChild());
+
+        Transform transform = new Transform(transformEl, "");
+        byte[] result =
+            transform.performTransform(new XMLSignatureInput("<a/>".getBytes("UTF-8"))).getBytes();
+        return new String(result, "UTF-8");
+    }
+
     private static Document getDocument(File file) 
         throws ParserConfigurationException, SAXException, IOException {
         return XMLUtils.createDocumentBuilder(false).parse(new FileInputStream(file));
@@ -19,9 +19,21 @@
 package org.apache.xml.security.test.dom.utils;
 
 import java.io.ByteArrayOutputStream;
+import java.io.CharArrayWriter;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Random;
 
+import javax.xml.parsers.DocumentBuilder;
+
+import org.apache.xml.security.exceptions.Base64DecodingException;
 import org.apache.xml.security.utils.Base64;
+import org.apache.xml.security.utils.Base64DecodingWriter;
+import org.apache.xml.security.utils.Base64EncodingOutputStream;
 import org.apache.xml.security.utils.XMLUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 
 
 /**
@@ -94,4 +106,81 @@ public class Base64Test extends org.junit.Assert {
         assertEquals("Result of encoding", result2, inputData);
     }
 
+    @org.junit.Test
+    public void testStreaming() throws Exception {
+        Random random = new Random(42);
+        for (int length = 0; length < 300; length++) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            String expected = Base64.encode(data, Base64.BASE64DEFAULTLENGTH);
+
+            // written in random chunks, to split the groups of three anywhere
+            CharArrayWriter chars = new CharArrayWriter();
+            OutputStream encoder = new Base64EncodingOutputStream(chars, Base64.BASE64DEFAULTLENGTH);
+            for (int off = 0; off < length; ) {
+                int len = Math.min(random.nextInt(7), length - off);
+                encoder.write(data, off, len);
+                off += len;
+            }
+            encoder.close();
+            assertEquals(expected, chars.toString());
+
+            // decoded in random chunks, to split the groups of four anywhere
+            char[] encoded = chars.toCharArray();
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            Writer decoder = new Base64DecodingWriter(os);
+            for (int off = 0; off < encoded.length; ) {
+                int len = Math.min(random.nextInt(9), encoded.length - off);
+                decoder.write(encoded, off, len);
+                off += len;
+            }
+            decoder.close();
+            assertTrue(Arrays.equals(data, os.toByteArray()));
+            assertTrue(Arrays.equals(data, Base64.decode(expected.getBytes("US-ASCII"))));
+        }
+    }
+
+    @org.junit.Test
+    public void testNoLineBreaks() throws Exception {
+        byte[] data = new byte[200];
+        new Random(42).nextBytes(data);
+        String result = Base64.encode(data, 0);
+        assertEquals(268, result.length());
+        assertEquals(-1, result.indexOf('\n'));
+        assertTrue(Arrays.equals(data, Base64.decode(result)));
+    }
+
+    @org.junit.Test
+    public void testDecodeElement() throws Exception {
+        DocumentBuilder db = XMLUtils.createDocumentBuilder(false);
+        Document doc = db.newDocument();
+        Element element = doc.createElement("CipherValue");
+        // split inside a group of four, as a parser may report it
+        element.appendChild(doc.createTextNode("SGFsb"));
+        element.appendChild(doc.createComment("comment"));
+        element.appendChild(doc.createTextNode("G8=\n"));
+        assertEquals("Hallo", new String(Base64.decode(element), "UTF-8"));
+    }
+
+    @org.junit.Test
+    public void testInvalid() throws Exception {
+        String[] invalid = {
+            "SGFsbG8", "SGFsbG8==", "SGF*bG8=", "SG==bG8=", "SGFsbG9=", "S===", "SGFsbG8=SGFs", "SGFs\u00e9G8="
+        };
+        for (String encoded : invalid) {
+            try {
+                Base64.decode(encoded);
+                fail(encoded);
+            } catch (Base64DecodingException ex) {
+                // expected
+            }
+            try {
+                Base64.decode(encoded, new ByteArrayOutputStream());
+                fail(encoded);
+            } catch (Base64DecodingException ex) {
+                // expected
+            }
+        }
+    }
+
 }
@@ -0,0 +1,139 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.dom.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.xml.security.utils.ConcurrentTasks;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentTasksTest {
+
+    @Test
+    public void testTasksAfterExceptionNotRun() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        List<Callable<Boolean>> callables = new ArrayList<Callable<Boolean>>();
+        for (int i = 0; i < 4; i++) {
+            final int index = i;
+            callables.add(new Callable<Boolean>() {
+                public Boolean call() {
+                    calls.incrementAndGet();
+                    if (index == 1) {
+                        throw new IllegalStateException("failed");
+                    }
+                    return Boolean.FALSE;
+                }
+            });
+        }
+
+        // an invalid result does not stop the others
+        List<FutureTask<Boolean>> tasks = ConcurrentTasks.newTasks(callables, null);
+        ConcurrentTasks.runAll(tasks, null);
+        assertEquals(2, calls.get());
+        assertFalse(tasks.get(0).get());
+        assertCause(IllegalStateException.class, tasks.get(1));
+        assertCause(CancellationException.class, tasks.get(2));
+        assertCause(CancellationException.class, tasks.get(3));
+    }
+
+    @Test
+    public void testTasksAfterFailedResultNotRun() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        List<Callable<Boolean>> callables = new ArrayList<Callable<Boolean>>();
+        for (int i = 0; i < 3; i++) {
+            final boolean valid = i != 0;
+            callables.add(new Callable<Boolean>() {
+                public Boolean call() {
+                    calls.incrementAndGet();
+                    return valid;
+                }
+            });
+        }
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            List<FutureTask<Boolean>> tasks = ConcurrentTasks.newTasks(callables, Boolean.FALSE);
+            ConcurrentTasks.runAll(tasks, executor);
+            assertEquals(1, calls.get());
+            assertFalse(tasks.get(0).get());
+            assertCause(CancellationException.class, tasks.get(1));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testNestedTasksInCallingThread() throws Exception {
+        // a single thread, which an outer task occupies while it waits for the inner ones
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            FutureTask<List<Thread>> outer = ConcurrentTasks.newTask(new Callable<List<Thread>>() {
+                public List<Thread> call() throws Exception {
+                    assertTrue(ConcurrentTasks.isRunningTask());
+                    List<Callable<Thread>> callables = new ArrayList<Callable<Thread>>();
+                    for (int i = 0; i < 3; i++) {
+                        callables.add(new Callable<Thread>() {
+                            public Thread call() {
+                                return Thread.currentThread();
+                            }
+                        });
+                    }
+                    List<FutureTask<Thread>> inner = ConcurrentTasks.newTasks(callables, null);
+                    ConcurrentTasks.runAll(inner, executor);
+                    List<Thread> threads = new ArrayList<Thread>();
+                    for (FutureTask<Thread> task : inner) {
+                        threads.add(task.get());
+                    }
+                    threads.add(Thread.currentThread());
+                    return threads;
+                }
+            });
+            executor.execute(outer);
+
+            List<Thread> threads = outer.get(30, TimeUnit.SECONDS);
+            Thread outerThread = threads.get(threads.size() - 1);
+            for (Thread thread : threads) {
+                assertSame(outerThread, thread);
+            }
+            assertFalse(ConcurrentTasks.isRunningTask());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void assertCause(Class<?> expected, FutureTask<?> task) throws Exception {
+        try {
+            task.get();
+            fail("Failure expected");
+        } catch (ExecutionException ex) {
+            assertEquals(expected, ex.getCause().getClass());
+        }
+    }
+}
@@ -18,14 +18,11 @@
  */
 package org.apache.xml.security.test.dom.utils;
 
-import org.apache.xml.security.utils.WeakObjectPool;
 import org.apache.xml.security.utils.XMLUtils;
 import org.junit.Test;
 
 import javax.xml.parsers.DocumentBuilder;
-import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
-import java.util.Iterator;
 import java.util.concurrent.*;
 
 import static org.junit.Assert.*;
@@ -102,6 +99,21 @@ public class DocumentBuilderPoolingTest {
         assertFalse("can't repool the same object twice!", XMLUtils.repoolDocumentBuilder(documentBuilder));
     }
 
+    @Test
+    public void testPoolMetrics() throws Exception {
+        DocumentBuilder documentBuilder = XMLUtils.createDocumentBuilder(false, false);
+        assertTrue(XMLUtils.repoolDocumentBuilder(documentBuilder));
+        long hits = XMLUtils.getDocumentBuilderPoolHitCount();
+        long misses = XMLUtils.getDocumentBuilderPoolMissCount();
+
+        assertSame(documentBuilder, XMLUtils.createDocumentBuilder(false, false));
+        assertEquals(hits + 1, XMLUtils.getDocumentBuilderPoolHitCount());
+        assertEquals(misses, XMLUtils.getDocumentBuilderPoolMissCount());
+
+        assertNotSame(documentBuilder, XMLUtils.createDocumentBuilder(false, false));
+        assertEquals(misses + 1, XMLUtils.getDocumentBuilderPoolMissCount());
+    }
+
     @Test(timeout = 30000)
     public void testPooling() throws Exception {
         int nThreads = 8;
@@ -130,30 +142,20 @@ public class DocumentBuilderPoolingTest {
                 }
             });
         }
-        // more or less mimic gc
+        // watch the pool metrics while the other threads are running
         results[nThreads - 1] = exec.submit(new Runnable() {
             @Override
             public void run() {
                 try {
-                    final Field poolField = XMLUtils.class.getDeclaredField("pools");
-                    poolField.setAccessible(true);
-                    final WeakObjectPool[] weakObjectPools = (WeakObjectPool[]) poolField.get(null);
-
-                    final Field availableField = WeakObjectPool.class.getDeclaredField("available");
-                    availableField.setAccessible(true);
-
+                    long hits = XMLUtils.getDocumentBuilderPoolHitCount();
                     while (true) {
-                        final BlockingDeque blockingDeque = (BlockingDeque) availableField.get(weakObjectPools[1]);
-                        Iterator iterator = blockingDeque.iterator();
-                        while (iterator.hasNext()) {
-                            ((WeakReference) iterator.next()).clear();
-                        }
                         Thread.sleep(200);
+                        long newHits = XMLUtils.getDocumentBuilderPoolHitCount();
+                        assertTrue(newHits >= hits);
+                        hits = newHits;
                     }
                 } catch (InterruptedException e) {
                     return;
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
                 }
             }
         });
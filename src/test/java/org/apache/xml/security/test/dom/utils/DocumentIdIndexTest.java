@@ -0,0 +1,176 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.dom.utils;
+
+import java.io.ByteArrayInputStream;
+
+import org.apache.xml.security.utils.DocumentIdIndex;
+import org.apache.xml.security.utils.XMLUtils;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import static org.junit.Assert.*;
+
+public class DocumentIdIndexTest {
+
+    private static final String XML =
+        "<root><a Id=\"one\"/><b><c Id=\"two\"/></b><d Id=\"three\"/></root>";
+
+    private static Document parse() throws Exception {
+        Document doc =
+            XMLUtils.createDocumentBuilder(false).parse(new ByteArrayInputStream(XML.getBytes("UTF-8")));
+        registerIds(doc.getDocumentElement());
+        return doc;
+    }
+
+    private static void registerIds(Element element) {
+        if (element.hasAttributeNS(null, "Id")) {
+            element.setIdAttributeNS(null, "Id", true);
+        }
+        for (Element child = XMLUtils.getNextElement(element.getFirstChild()); child != null;
+            child = XMLUtils.getNextElement(child.getNextSibling())) {
+            registerIds(child);
+        }
+    }
+
+    @Test
+    public void testLookup() throws Exception {
+        Document doc = parse();
+        DocumentIdIndex index = DocumentIdIndex.getInstance(doc);
+        assertEquals("c", index.getElementById("two").getLocalName());
+        assertNull(index.getElementById("four"));
+        assertTrue(index.isUnique("one"));
+        assertTrue(index.isUnique("one", index.getElementById("one")));
+        assertFalse(index.isUnique("one", index.getElementById("two")));
+        assertTrue(index.isUnique("four", doc.getDocumentElement()));
+    }
+
+    @Test
+    public void testPin() throws Exception {
+        Document doc = parse();
+        assertNotSame(DocumentIdIndex.getInstance(doc), DocumentIdIndex.getInstance(doc));
+
+        DocumentIdIndex.pin(doc);
+        DocumentIdIndex index = DocumentIdIndex.getInstance(doc);
+        assertSame(index, DocumentIdIndex.getInstance(doc));
+
+        DocumentIdIndex.pin(doc);
+        assertNotSame(index, DocumentIdIndex.getInstance(doc));
+        index = DocumentIdIndex.getInstance(doc);
+        DocumentIdIndex.unpin(doc);
+        assertSame(index, DocumentIdIndex.getInstance(doc));
+
+        DocumentIdIndex.unpin(doc);
+        assertNotSame(index, DocumentIdIndex.getInstance(doc));
+    }
+
+    @Test
+    public void testDuplicate() throws Exception {
+        Document doc = parse();
+        Element a = (Element)doc.getElementsByTagName("a").item(0);
+        Element d = (Element)doc.getElementsByTagName("d").item(0);
+        d.setAttributeNS(null, "Id", "one");
+
+        DocumentIdIndex index = DocumentIdIndex.getInstance(doc);
+        assertSame(a, index.getElementById("one"));
+        assertFalse(index.isUnique("one"));
+        assertFalse(index.isUnique("one", a));
+        assertFalse(XMLUtils.protectAgainstWrappingAttack(doc.getDocumentElement(), "one"));
+        assertFalse(XMLUtils.protectAgainstWrappingAttack(doc.getDocumentElement(), a, "#one"));
+        assertTrue(XMLUtils.protectAgainstWrappingAttack(doc.getDocumentElement(), "two"));
+    }
+
+    @Test
+    public void testSameValueTwiceOnOneElement() throws Exception {
+        Document doc = parse();
+        Element a = (Element)doc.getElementsByTagName("a").item(0);
+        a.setAttributeNS(null, "Name", "one");
+        a.setIdAttributeNS(null, "Name", true);
+
+        DocumentIdIndex index = DocumentIdIndex.getInstance(doc);
+        assertFalse(index.isUnique("one"));
+        assertTrue(index.isUnique("one", a));
+        assertFalse(XMLUtils.protectAgainstWrappingAttack(doc.getDocumentElement(), "one"));
+        assertTrue(XMLUtils.protectAgainstWrappingAttack(doc.getDocumentElement(), a, "one"));
+    }
+
+    @Test
+    public void testIdAttributeMarkedAfterVerification() throws Exception {
+        Document doc = parse();
+        Element d = (Element)doc.getElementsByTagName("d").item(0);
+        d.setAttributeNS(null, "Name", "two");
+
+        DocumentIdIndex.pin(doc);
+        try {
+            assertTrue(XMLUtils.protectAgainstWrappingAttack(doc.getDocumentElement(), "two"));
+        } finally {
+            DocumentIdIndex.unpin(doc);
+        }
+
+        // not a mutation, so no index built before may be trusted
+        d.setIdAttributeNS(null, "Name", true);
+        assertFalse(XMLUtils.protectAgainstWrappingAttack(doc.getDocumentElement(), "two"));
+
+        DocumentIdIndex.pin(doc);
+        try {
+            assertFalse(XMLUtils.protectAgainstWrappingAttack(doc.getDocumentElement(), "two"));
+        } finally {
+            DocumentIdIndex.unpin(doc);
+        }
+    }
+
+    @Test
+    public void testInvalidatedOnMutation() throws Exception {
+        Document doc = parse();
+        DocumentIdIndex.pin(doc);
+        DocumentIdIndex index = DocumentIdIndex.getInstance(doc);
+        assertTrue(index.isUnique("two"));
+
+        // a wrapping element added after the index was built
+        Element wrapper = doc.createElementNS(null, "c");
+        wrapper.setAttributeNS(null, "Id", "two");
+        wrapper.setIdAttributeNS(null, "Id", true);
+        doc.getDocumentElement().insertBefore(wrapper, doc.getDocumentElement().getFirstChild());
+
+        assertNotSame(index, DocumentIdIndex.getInstance(doc));
+        assertFalse(XMLUtils.protectAgainstWrappingAttack(doc.getDocumentElement(), "two"));
+        assertSame(wrapper, DocumentIdIndex.getInstance(doc).getElementById("two"));
+
+        doc.getDocumentElement().removeChild(wrapper);
+        assertTrue(XMLUtils.protectAgainstWrappingAttack(doc.getDocumentElement(), "two"));
+        DocumentIdIndex.unpin(doc);
+    }
+
+    @Test
+    public void testIdAttributeMarkedAfterBuild() throws Exception {
+        Document doc = parse();
+        DocumentIdIndex.pin(doc);
+        Element e = doc.createElementNS(null, "e");
+        e.setAttributeNS(null, "Id", "five");
+        doc.getDocumentElement().appendChild(e);
+        assertNull(DocumentIdIndex.getInstance(doc).getElementById("five"));
+
+        // not a mutation, but the document knows the ID now
+        e.setIdAttributeNS(null, "Id", true);
+        assertSame(e, DocumentIdIndex.getElementById(doc, "five"));
+        DocumentIdIndex.unpin(doc);
+    }
+
+}
@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.dom.utils;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.xml.security.utils.SubtreeNodeSet;
+import org.apache.xml.security.utils.XMLUtils;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that a SubtreeNodeSet has the same nodes, in the same order, as the set collected by
+ * XMLUtils.getSet.
+ */
+public class SubtreeNodeSetTest {
+
+    private static final String XML =
+        "<?xml version=\"1.0\"?>\n"
+        + "<!DOCTYPE root>\n"
+        + "<!-- before -->"
+        + "<root xmlns=\"urn:a\" xmlns:b=\"urn:b\" a=\"1\">text<![CDATA[cdata]]>text"
+        + "<b:child b:attr=\"2\"><!-- inner --><?pi data?><leaf>leaf text</leaf></b:child>"
+        + "<excluded Id=\"x\"><c/>excluded text</excluded>tail</root>"
+        + "<?after?>";
+
+    private static Document parse() throws Exception {
+        Document doc =
+            XMLUtils.createDocumentBuilder(false, false).parse(
+                new ByteArrayInputStream(XML.getBytes("UTF-8")));
+        // adjacent text nodes, which the parser never creates
+        Element leaf = (Element)doc.getElementsByTagNameNS("urn:a", "leaf").item(0);
+        leaf.appendChild(doc.createTextNode(" more"));
+        leaf.appendChild(doc.createTextNode(" and more"));
+        return doc;
+    }
+
+    private static List<Node> allNodes(Node node, List<Node> result) {
+        result.add(node);
+        NamedNodeMap attributes = node.getAttributes();
+        if (attributes != null) {
+            for (int i = 0; i < attributes.getLength(); i++) {
+                result.add(attributes.item(i));
+            }
+        }
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            allNodes(child, result);
+        }
+        return result;
+    }
+
+    private static void assertSameNodeSet(Node root, Node exclude, boolean comments) {
+        Set<Node> expected = new LinkedHashSet<Node>();
+        XMLUtils.getSet(root, expected, exclude, comments);
+        Set<Node> actual = new SubtreeNodeSet(root, exclude, comments);
+
+        assertEquals(new ArrayList<Node>(expected), new ArrayList<Node>(actual));
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.isEmpty(), actual.isEmpty());
+        for (Node node : allNodes(XMLUtils.getOwnerDocument(root), new ArrayList<Node>())) {
+            assertEquals(node.toString(), expected.contains(node), actual.contains(node));
+        }
+    }
+
+    @Test
+    public void testSameAsGetSet() throws Exception {
+        Document doc = parse();
+        Element excluded = (Element)doc.getElementsByTagNameNS("urn:a", "excluded").item(0);
+        Element child = (Element)doc.getElementsByTagNameNS("urn:b", "child").item(0);
+        Node[] roots = {
+            doc, doc.getDocumentElement(), child, excluded,
+            doc.getDocumentElement().getFirstChild(), child.getFirstChild()
+        };
+        Node[] excludes = { null, excluded, child, excluded.getLastChild(), doc.getDocumentElement() };
+        for (Node root : roots) {
+            for (Node exclude : excludes) {
+                assertSameNodeSet(root, exclude, true);
+                assertSameNodeSet(root, exclude, false);
+            }
+        }
+    }
+
+    @Test
+    public void testCopiedOnModification() throws Exception {
+        Document doc = parse();
+        Element root = doc.getDocumentElement();
+        Set<Node> nodeSet = new SubtreeNodeSet(root, null, false);
+        int size = nodeSet.size();
+
+        assertTrue(nodeSet.remove(root));
+        assertFalse(nodeSet.contains(root));
+        assertEquals(size - 1, nodeSet.size());
+        assertTrue(nodeSet.add(root));
+        assertEquals(size, nodeSet.size());
+
+        // a copy is no longer a view of the document
+        root.appendChild(doc.createElementNS("urn:a", "new"));
+        assertEquals(size, nodeSet.size());
+        assertEquals(size + 1, new SubtreeNodeSet(root, null, false).size());
+    }
+
+}
@@ -18,12 +18,25 @@
  */
 package org.apache.xml.security.test.dom.utils.resolver;
 
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
 import org.apache.xml.security.Init;
+import org.apache.xml.security.signature.XMLSignatureInput;
 import org.apache.xml.security.utils.XMLUtils;
+import org.apache.xml.security.utils.resolver.HttpResponseCache;
 import org.apache.xml.security.utils.resolver.ResourceResolver;
 import org.apache.xml.security.utils.resolver.ResourceResolverContext;
 import org.apache.xml.security.utils.resolver.ResourceResolverException;
 import org.apache.xml.security.utils.resolver.implementations.ResolverDirectHTTP;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Ignore;
@@ -62,6 +75,50 @@ public class ResolverDirectHTTPTest extends org.junit.Assert {
         }
     }
 
+    @Test
+    public void testResponseCache() throws Exception {
+        ResourceServlet servlet = new ResourceServlet();
+        Server server = new Server(0);
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.NO_SESSIONS);
+        context.setContextPath("/");
+        context.addServlet(new ServletHolder(servlet), "/*");
+        server.setHandler(context);
+        server.start();
+        try {
+            String baseURI = "http://localhost:" + server.getConnectors()[0].getLocalPort() + "/";
+            HttpResponseCache.clear();
+
+            // a response with an ETag is cached, and only transferred once
+            XMLSignatureInput first = resolve("cached.xml", baseURI);
+            long hits = HttpResponseCache.getHitCount();
+            XMLSignatureInput second = resolve("cached.xml", baseURI);
+            assertEquals(hits + 1, HttpResponseCache.getHitCount());
+            assertEquals(1, servlet.transfers.get());
+            assertArrayEquals(ResourceServlet.CONTENT, first.getBytes());
+            assertArrayEquals(ResourceServlet.CONTENT, second.getBytes());
+            assertEquals("text/xml", second.getMIMEType());
+
+            // a response without validators is streamed
+            XMLSignatureInput streamed = resolve("streamed.xml", baseURI);
+            assertTrue(streamed.isOctetStream());
+            assertFalse(streamed.isByteArray());
+            assertArrayEquals(ResourceServlet.CONTENT, streamed.getBytes());
+            resolve("streamed.xml", baseURI).getBytes();
+            assertEquals(3, servlet.transfers.get());
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static XMLSignatureInput resolve(String uri, String baseURI) throws Exception {
+        Document doc = XMLUtils.createDocumentBuilder(false).newDocument();
+        Attr uriAttr = doc.createAttribute("URI");
+        uriAttr.setNodeValue(uri);
+        ResourceResolverContext context = 
+            new ResourceResolverContext(uriAttr, baseURI, true);
+        return new ResolverDirectHTTP().engineResolveURI(context);
+    }
+
     @Test
     @Ignore
     public void testProxyAuth() throws Exception {
@@ -154,4 +211,34 @@ public class ResolverDirectHTTPTest extends org.junit.Assert {
             new ResourceResolverContext(uri, url, true);
         resolverDirectHTTP.engineResolveURI(context);
     }
+
+    /**
+     * Serves the same content, with an ETag for cached.xml.
+     */
+    private static class ResourceServlet extends HttpServlet {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final byte[] CONTENT = "<doc>content</doc>".getBytes();
+
+        private static final String ETAG = "\"1\"";
+
+        private final AtomicInteger transfers = new AtomicInteger();
+
+        @Override
+        protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+            boolean cached = request.getRequestURI().endsWith("/cached.xml");
+            if (cached && ETAG.equals(request.getHeader("If-None-Match"))) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+            transfers.incrementAndGet();
+            response.setContentType("text/xml");
+            if (cached) {
+                response.setHeader("ETag", ETAG);
+            }
+            response.getOutputStream().write(CONTENT);
+        }
+    }
 }
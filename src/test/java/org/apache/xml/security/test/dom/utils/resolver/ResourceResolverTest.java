@@ -20,8 +20,12 @@ package org.apache.xml.security.test.dom.utils.resolver;
 
 import java.io.File;
 
+import org.apache.xml.security.signature.XMLSignatureInput;
 import org.apache.xml.security.utils.XMLUtils;
 import org.apache.xml.security.utils.resolver.ResourceResolver;
+import org.apache.xml.security.utils.resolver.ResourceResolverContext;
+import org.apache.xml.security.utils.resolver.ResourceResolverException;
+import org.apache.xml.security.utils.resolver.implementations.ResolverFragment;
 import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
 
@@ -85,4 +89,37 @@ public class ResourceResolverTest extends org.junit.Assert {
         }
     }
 
+    /**
+     * Tests that a subclass of a default resolver is asked about URIs that the default
+     * resolver itself cannot resolve.
+     */
+    @org.junit.Test
+    public void testSubclassOfDefaultResolver() throws Exception {
+        ResourceResolver.register(new URNResolver(), true);
+        Document doc = XMLUtils.createDocumentBuilder(false).newDocument();
+        Attr uriAttr = doc.createAttribute("URI");
+        uriAttr.setValue("urn:example:resource");
+        ResourceResolver res = ResourceResolver.getInstance(uriAttr, null, true);
+        XMLSignatureInput input = res.resolve(uriAttr, null, true);
+        assertEquals("urn:example:resource", new String(input.getBytes(), "UTF-8"));
+    }
+
+    public static class URNResolver extends ResolverFragment {
+
+        @Override
+        public boolean engineCanResolveURI(ResourceResolverContext context) {
+            return context.uriToResolve != null 
+                && context.uriToResolve.startsWith("urn:example:");
+        }
+
+        @Override
+        public XMLSignatureInput engineResolveURI(ResourceResolverContext context) {
+            try {
+                return new XMLSignatureInput(context.uriToResolve.getBytes("UTF-8"));
+            } catch (java.io.UnsupportedEncodingException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+    }
+
 }
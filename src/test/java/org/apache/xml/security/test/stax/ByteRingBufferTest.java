@@ -0,0 +1,113 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.stax;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.xml.security.stax.impl.util.ByteRingBuffer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * @author $Author$
+ * @version $Revision$ $Date$
+ */
+public class ByteRingBufferTest extends org.junit.Assert {
+
+    @Test
+    public void testCapacityIsRoundedUp() throws Exception {
+        Assert.assertEquals(16, new ByteRingBuffer(10).getCapacity());
+        Assert.assertEquals(32768, new ByteRingBuffer(32768).getCapacity());
+    }
+
+    @Test
+    public void testSingleThreaded() throws Exception {
+        ByteRingBuffer byteRingBuffer = new ByteRingBuffer(16);
+        OutputStream outputStream = byteRingBuffer.getOutputStream();
+        InputStream inputStream = byteRingBuffer.getInputStream();
+
+        byte[] buffer = new byte[16];
+        for (int i = 0; i < 10; i++) {
+            outputStream.write("0123456789".getBytes("UTF-8"));
+            Assert.assertEquals(10, inputStream.available());
+            Assert.assertEquals(10, inputStream.read(buffer));
+            Assert.assertEquals("0123456789", new String(buffer, 0, 10, "UTF-8"));
+        }
+        outputStream.write('a');
+        outputStream.close();
+        Assert.assertEquals('a', inputStream.read());
+        Assert.assertEquals(-1, inputStream.read());
+        Assert.assertEquals(-1, inputStream.read(buffer));
+    }
+
+    @Test
+    public void testProducerConsumer() throws Exception {
+        final byte[] data = new byte[1024 * 1024];
+        new Random().nextBytes(data);
+
+        final ByteRingBuffer byteRingBuffer = new ByteRingBuffer(1024);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    OutputStream outputStream = byteRingBuffer.getOutputStream();
+                    Random random = new Random();
+                    int written = 0;
+                    while (written < data.length) {
+                        int len = Math.min(data.length - written, random.nextInt(3000) + 1);
+                        outputStream.write(data, written, len);
+                        written += len;
+                    }
+                    outputStream.close();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        producer.start();
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        InputStream inputStream = byteRingBuffer.getInputStream();
+        byte[] buffer = new byte[777];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            baos.write(buffer, 0, read);
+        }
+        producer.join();
+
+        Assert.assertArrayEquals(data, baos.toByteArray());
+    }
+
+    @Test
+    public void testWriteAfterReaderClosed() throws Exception {
+        ByteRingBuffer byteRingBuffer = new ByteRingBuffer(8);
+        byteRingBuffer.getInputStream().close();
+        try {
+            byteRingBuffer.getOutputStream().write(new byte[16]);
+            Assert.fail("IOException expected");
+        } catch (IOException e) {
+            Assert.assertEquals("Read end closed", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.stax;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.xml.security.stax.impl.util.SpillingBufferedOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * @author $Author$
+ * @version $Revision$ $Date$
+ */
+public class SpillingBufferedOutputStreamTest extends org.junit.Assert {
+
+    private static final String MARKER = "not yet authenticated plaintext ";
+
+    private static byte[] createContent() throws Exception {
+        StringBuilder stringBuilder = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            stringBuilder.append(MARKER).append(i);
+        }
+        return stringBuilder.toString().getBytes("UTF-8");
+    }
+
+    @Test
+    public void testInMemory() throws Exception {
+        byte[] content = createContent();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        SpillingBufferedOutputStream outputStream = new SpillingBufferedOutputStream(baos, content.length);
+        outputStream.write(content);
+        Assert.assertEquals(0, baos.size());
+        Assert.assertFalse(outputStream.isSpilled());
+        outputStream.close();
+        Assert.assertArrayEquals(content, baos.toByteArray());
+    }
+
+    @Test
+    public void testSpilledEncrypted() throws Exception {
+        byte[] content = createContent();
+        Set<String> tempFiles = listTempFiles();
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        SpillingBufferedOutputStream outputStream = new SpillingBufferedOutputStream(baos, 100);
+        int written = 0;
+        int count = 0;
+        while (written < content.length) {
+            int len = Math.min(++count * 7, content.length - written);
+            outputStream.write(content, written, len);
+            written += len;
+        }
+        outputStream.write('!');
+        Assert.assertTrue(outputStream.isSpilled());
+        Assert.assertEquals(0, baos.size());
+
+        Set<String> spilled = listTempFiles();
+        spilled.removeAll(tempFiles);
+        Assert.assertFalse(spilled.isEmpty());
+        byte[] marker = MARKER.getBytes("UTF-8");
+        for (String name : spilled) {
+            Assert.assertFalse(contains(readFile(new File(getTempDir(), name)), marker));
+        }
+
+        outputStream.close();
+        byte[] expected = Arrays.copyOf(content, content.length + 1);
+        expected[content.length] = '!';
+        Assert.assertArrayEquals(expected, baos.toByteArray());
+        for (String name : spilled) {
+            Assert.assertFalse(new File(getTempDir(), name).exists());
+        }
+    }
+
+    @Test
+    public void testSpilledModified() throws Exception {
+        Set<String> tempFiles = listTempFiles();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        SpillingBufferedOutputStream outputStream = new SpillingBufferedOutputStream(baos, 10);
+        outputStream.write(createContent());
+
+        Set<String> spilled = listTempFiles();
+        spilled.removeAll(tempFiles);
+        Assert.assertEquals(1, spilled.size());
+        RandomAccessFile file = new RandomAccessFile(new File(getTempDir(), spilled.iterator().next()), "rw");
+        try {
+            file.seek(10);
+            int b = file.read();
+            file.seek(10);
+            file.write(b ^ 1);
+        } finally {
+            file.close();
+        }
+
+        try {
+            outputStream.close();
+            Assert.fail("Exception expected");
+        } catch (IOException e) {
+            Assert.assertEquals(0, baos.size());
+        }
+    }
+
+    @Test
+    public void testDiscard() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        SpillingBufferedOutputStream outputStream = new SpillingBufferedOutputStream(baos, 10);
+        outputStream.write(createContent());
+        Assert.assertTrue(outputStream.isSpilled());
+        outputStream.discard();
+        Assert.assertFalse(outputStream.isSpilled());
+        Assert.assertEquals(0, baos.size());
+    }
+
+    private static File getTempDir() {
+        return new File(System.getProperty("java.io.tmpdir"));
+    }
+
+    private static Set<String> listTempFiles() {
+        Set<String> names = new HashSet<String>();
+        String[] files = getTempDir().list();
+        if (files != null) {
+            for (String name : files) {
+                if (name.startsWith("xmlsec-")) {
+                    names.add(name);
+                }
+            }
+        }
+        return names;
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        FileInputStream inputStream = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                baos.write(buffer, 0, read);
+            }
+        } finally {
+            inputStream.close();
+        }
+        return baos.toByteArray();
+    }
+
+    private static boolean contains(byte[] data, byte[] marker) {
+        for (int i = 0; i + marker.length <= data.length; i++) {
+            int j = 0;
+            while (j < marker.length && data[i + j] == marker[j]) {
+                j++;
+            }
+            if (j == marker.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.stax;
+
+import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
+import org.apache.xml.security.stax.ext.stax.XMLSecEventFactory;
+import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
+import org.apache.xml.security.stax.impl.util.XMLSecEventBuffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author $Author$
+ * @version $Revision$ $Date$
+ */
+public class XMLSecEventBufferTest extends Assert {
+
+    private static final String XML =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<!-- comment --><root xmlns=\"urn:default\" xmlns:p=\"urn:p\" a=\"1\">"
+            + "<p:child p:attr=\"&lt;&quot;é\">text &amp; more €</p:child>"
+            + "<?target data?><child><![CDATA[<cdata>]]></child>"
+            + "<p:child>again</p:child></root>";
+
+    private List<XMLSecEvent> readEvents() throws Exception {
+        XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        XMLStreamReader xmlStreamReader = xmlInputFactory.createXMLStreamReader(new StringReader(XML));
+        List<XMLSecEvent> xmlSecEvents = new ArrayList<XMLSecEvent>();
+        XMLSecStartElement parentXmlSecStartElement = null;
+        while (true) {
+            XMLSecEvent xmlSecEvent = XMLSecEventFactory.allocate(xmlStreamReader, parentXmlSecStartElement);
+            xmlSecEvents.add(xmlSecEvent);
+            if (xmlSecEvent.isStartElement()) {
+                parentXmlSecStartElement = xmlSecEvent.asStartElement();
+            } else if (xmlSecEvent.isEndElement()) {
+                parentXmlSecStartElement = parentXmlSecStartElement.getParentXMLSecStartElement();
+            }
+            if (!xmlStreamReader.hasNext()) {
+                break;
+            }
+            xmlStreamReader.next();
+        }
+        return xmlSecEvents;
+    }
+
+    private void assertEventsEqual(XMLSecEvent expected, XMLSecEvent actual) throws Exception {
+        assertEquals(expected.getEventType(), actual.getEventType());
+        assertEquals(expected.getDocumentLevel(), actual.getDocumentLevel());
+        assertEquals(expected.getElementPath(), actual.getElementPath());
+        StringWriter expectedWriter = new StringWriter();
+        expected.writeAsEncodedUnicode(expectedWriter);
+        StringWriter actualWriter = new StringWriter();
+        actual.writeAsEncodedUnicode(actualWriter);
+        assertEquals(expectedWriter.toString(), actualWriter.toString());
+        if (expected.getEventType() == XMLStreamConstants.START_ELEMENT) {
+            assertEquals(expected.asStartElement().getOnElementDeclaredNamespaces(),
+                    actual.asStartElement().getOnElementDeclaredNamespaces());
+            assertEquals(expected.asStartElement().getOnElementDeclaredAttributes().size(),
+                    actual.asStartElement().getOnElementDeclaredAttributes().size());
+        }
+    }
+
+    @Test
+    public void testReplayFromMemory() throws Exception {
+        List<XMLSecEvent> xmlSecEvents = readEvents();
+        XMLSecEventBuffer xmlSecEventBuffer = new XMLSecEventBuffer(-1);
+        for (int i = 0; i < xmlSecEvents.size(); i++) {
+            xmlSecEventBuffer.push(xmlSecEvents.get(i));
+        }
+        assertEquals(0, xmlSecEventBuffer.getSpilledEventCount());
+        for (int i = 0; i < xmlSecEvents.size(); i++) {
+            assertSame(xmlSecEvents.get(i), xmlSecEventBuffer.pollLast());
+        }
+        assertTrue(xmlSecEventBuffer.isEmpty());
+    }
+
+    @Test
+    public void testReplayFromSpilledEvents() throws Exception {
+        List<XMLSecEvent> xmlSecEvents = readEvents();
+        XMLSecEventBuffer xmlSecEventBuffer = new XMLSecEventBuffer(3);
+        for (int i = 0; i < xmlSecEvents.size(); i++) {
+            xmlSecEventBuffer.push(xmlSecEvents.get(i));
+        }
+        assertEquals(xmlSecEvents.size(), xmlSecEventBuffer.size());
+        assertEquals(xmlSecEvents.size() - 3, xmlSecEventBuffer.getSpilledEventCount());
+        assertEquals(3, xmlSecEventBuffer.getXmlSecEventDeque().size());
+        assertSame(xmlSecEvents.get(xmlSecEvents.size() - 1), xmlSecEventBuffer.getXmlSecEventDeque().peekFirst());
+
+        for (int i = 0; i < xmlSecEvents.size(); i++) {
+            XMLSecEvent xmlSecEvent = xmlSecEventBuffer.pollLast();
+            assertNotNull(xmlSecEvent);
+            assertEventsEqual(xmlSecEvents.get(i), xmlSecEvent);
+        }
+        assertTrue(xmlSecEventBuffer.isEmpty());
+        assertNull(xmlSecEventBuffer.pollLast());
+    }
+
+    @Test
+    public void testSpillingDisabled() throws Exception {
+        List<XMLSecEvent> xmlSecEvents = readEvents();
+        XMLSecEventBuffer xmlSecEventBuffer = new XMLSecEventBuffer(2);
+        for (int i = 0; i < 5; i++) {
+            xmlSecEventBuffer.push(xmlSecEvents.get(i));
+        }
+        xmlSecEventBuffer.setSpillingEnabled(false);
+        for (int i = 5; i < xmlSecEvents.size(); i++) {
+            xmlSecEventBuffer.push(xmlSecEvents.get(i));
+        }
+        assertEquals(3, xmlSecEventBuffer.getSpilledEventCount());
+        assertEquals(xmlSecEvents.size() - 3, xmlSecEventBuffer.getXmlSecEventDeque().size());
+        for (int i = 0; i < xmlSecEvents.size(); i++) {
+            assertEventsEqual(xmlSecEvents.get(i), xmlSecEventBuffer.pollLast());
+        }
+        xmlSecEventBuffer.discard();
+        assertTrue(xmlSecEventBuffer.isEmpty());
+    }
+}
@@ -0,0 +1,265 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.stax;
+
+import org.apache.xml.security.binding.xmldsig.SignatureType;
+import org.apache.xml.security.binding.xmlenc.EncryptedDataType;
+import org.apache.xml.security.stax.ext.XMLSecurityConstants;
+import org.apache.xml.security.stax.ext.XMLSecurityUtils;
+import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
+import org.apache.xml.security.stax.ext.stax.XMLSecEventFactory;
+import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
+import org.apache.xml.security.stax.impl.XMLSecurityEventReader;
+import org.apache.xml.security.stax.impl.util.XMLSecStructureBinder;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * @author $Author$
+ * @version $Revision$ $Date$
+ */
+public class XMLSecStructureBinderTest extends Assert {
+
+    private static final String SIGNATURE_PATH = "ie/baltimore/merlin-examples/merlin-xmldsig-twenty-three/";
+    private static final String ENCRYPTION_PATH = "ie/baltimore/merlin-examples/merlin-xmlenc-five/";
+
+    private static final String SIGNATURE =
+            "<ds:Signature xmlns:ds=\"http://www.w3.org/2000/09/xmldsig#\" Id=\"Sig-1\">"
+            + "<ds:SignedInfo>"
+            + "<ds:CanonicalizationMethod Algorithm=\"http://www.w3.org/2001/10/xml-exc-c14n#\">"
+            + "<ec:InclusiveNamespaces xmlns:ec=\"http://www.w3.org/2001/10/xml-exc-c14n#\" PrefixList=\"ds  soap\"/>"
+            + "</ds:CanonicalizationMethod>"
+            + "<ds:SignatureMethod Algorithm=\"http://www.w3.org/2000/09/xmldsig#hmac-sha1\">"
+            + "<ds:HMACOutputLength>160</ds:HMACOutputLength></ds:SignatureMethod>"
+            + "<ds:Reference URI=\"#Body-1\" Id=\"Ref-1\"><ds:Transforms>"
+            + "<ds:Transform Algorithm=\"http://www.w3.org/2001/10/xml-exc-c14n#\">"
+            + "<ec:InclusiveNamespaces xmlns:ec=\"http://www.w3.org/2001/10/xml-exc-c14n#\" PrefixList=\"\"/>"
+            + "</ds:Transform></ds:Transforms>"
+            + "<ds:DigestMethod Algorithm=\"http://www.w3.org/2000/09/xmldsig#sha1\"/>"
+            + "<ds:DigestValue>fdy6S2NLpnT4fMdokUHSHsmpcvo=</ds:DigestValue></ds:Reference>"
+            + "</ds:SignedInfo>"
+            + "<ds:SignatureValue>Z4pBb+o+XOKWME7CpLyXuNqyIYdXOcGvthfUf+ZDLL5immPx+3tK8Q==</ds:SignatureValue>"
+            + "%s"
+            + "</ds:Signature>";
+
+    private static JAXBContext jaxbContext;
+    private static Unmarshaller unmarshaller;
+
+    private static synchronized Unmarshaller getUnmarshaller() throws Exception {
+        if (unmarshaller == null) {
+            jaxbContext = JAXBContext.newInstance(
+                    org.apache.xml.security.binding.xmlenc.ObjectFactory.class,
+                    org.apache.xml.security.binding.xmlenc11.ObjectFactory.class,
+                    org.apache.xml.security.binding.xmldsig.ObjectFactory.class,
+                    org.apache.xml.security.binding.xmldsig11.ObjectFactory.class,
+                    org.apache.xml.security.binding.excc14n.ObjectFactory.class);
+            unmarshaller = jaxbContext.createUnmarshaller();
+            unmarshaller.setSchema(XMLSecurityUtils.loadXMLSecuritySchemas());
+        }
+        return unmarshaller;
+    }
+
+    private static Deque<XMLSecEvent> readEvents(XMLStreamReader xmlStreamReader) throws Exception {
+        Deque<XMLSecEvent> xmlSecEvents = new ArrayDeque<XMLSecEvent>();
+        XMLSecStartElement parentXmlSecStartElement = null;
+        while (true) {
+            XMLSecEvent xmlSecEvent = XMLSecEventFactory.allocate(xmlStreamReader, parentXmlSecStartElement);
+            xmlSecEvents.push(xmlSecEvent);
+            if (xmlSecEvent.isStartElement()) {
+                parentXmlSecStartElement = xmlSecEvent.asStartElement();
+            } else if (xmlSecEvent.isEndElement()) {
+                parentXmlSecStartElement = parentXmlSecStartElement.getParentXMLSecStartElement();
+            }
+            if (!xmlStreamReader.hasNext()) {
+                break;
+            }
+            xmlStreamReader.next();
+        }
+        return xmlSecEvents;
+    }
+
+    private static Deque<XMLSecEvent> readResource(String resource) throws Exception {
+        InputStream inputStream = XMLSecStructureBinderTest.class.getClassLoader().getResourceAsStream(resource);
+        assertNotNull(resource, inputStream);
+        try {
+            return readEvents(XMLInputFactory.newInstance().createXMLStreamReader(inputStream));
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private static Deque<XMLSecEvent> readString(String xml) throws Exception {
+        return readEvents(XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(xml)));
+    }
+
+    private static int indexOf(Deque<XMLSecEvent> xmlSecEvents, QName name) {
+        Iterator<XMLSecEvent> iterator = xmlSecEvents.descendingIterator();
+        int index = 0;
+        while (iterator.hasNext()) {
+            XMLSecEvent xmlSecEvent = iterator.next();
+            if (xmlSecEvent.isStartElement() && xmlSecEvent.asStartElement().getName().equals(name)) {
+                return index;
+            }
+            index++;
+        }
+        fail(name + " not found");
+        return -1;
+    }
+
+    private static String marshal(Object jaxbElement) throws Exception {
+        Marshaller marshaller = jaxbContext.createMarshaller();
+        StringWriter stringWriter = new StringWriter();
+        marshaller.marshal(jaxbElement, stringWriter);
+        return stringWriter.toString();
+    }
+
+    /**
+     * Binds the structure with the binder and with JAXB and compares the results.
+     */
+    private static JAXBElement<?> bindAndCompare(Deque<XMLSecEvent> xmlSecEvents, QName name) throws Exception {
+        int index = indexOf(xmlSecEvents, name);
+        JAXBElement<?> bound = XMLSecStructureBinder.bind(xmlSecEvents, index);
+        assertNotNull(name + " was not bound", bound);
+        assertEquals(name, bound.getName());
+        Object unmarshalled = getUnmarshaller().unmarshal(new XMLSecurityEventReader(xmlSecEvents, index));
+        assertEquals(marshal(unmarshalled), marshal(bound));
+        return bound;
+    }
+
+    @Test
+    public void testSignatures() throws Exception {
+        String[] files = {
+            "signature-enveloped-dsa.xml",
+            "signature-external-dsa.xml",
+            "signature-keyname.xml",
+            "signature-retrievalmethod-rawx509crt.xml",
+            "signature-x509-crt-crl.xml",
+            "signature-x509-crt.xml",
+            "signature-x509-is.xml",
+            "signature-x509-ski.xml",
+            "signature-x509-sn.xml",
+        };
+        for (int i = 0; i < files.length; i++) {
+            bindAndCompare(readResource(SIGNATURE_PATH + files[i]), XMLSecurityConstants.TAG_dsig_Signature);
+        }
+    }
+
+    @Test
+    public void testEncryptedStructures() throws Exception {
+        String[] files = {
+            "encrypt-data-aes128-cbc.xml",
+            "encrypt-data-aes192-cbc-kw-aes256.xml",
+            "encrypt-data-tripledes-cbc-rsa-oaep-mgf1p.xml",
+            "encrypt-element-aes128-cbc-rsa-1_5.xml",
+            "encrypt-element-aes256-cbc-carried-kw-aes256.xml",
+        };
+        for (int i = 0; i < files.length; i++) {
+            bindAndCompare(readResource(ENCRYPTION_PATH + files[i]), XMLSecurityConstants.TAG_xenc_EncryptedData);
+        }
+        bindAndCompare(readResource(ENCRYPTION_PATH + "encrypt-element-aes256-cbc-carried-kw-aes256.xml"),
+                XMLSecurityConstants.TAG_xenc_EncryptedKey);
+
+        JAXBElement<?> bound = bindAndCompare(
+                readResource(ENCRYPTION_PATH + "encrypt-data-tripledes-cbc-rsa-oaep-mgf1p.xml"),
+                XMLSecurityConstants.TAG_xenc_EncryptedData);
+        EncryptedDataType encryptedDataType = (EncryptedDataType) bound.getValue();
+        assertEquals("text/plain", encryptedDataType.getMimeType());
+        assertNotNull(XMLSecurityUtils.getQNameType(
+                encryptedDataType.getKeyInfo().getContent(), XMLSecurityConstants.TAG_xenc_EncryptedKey));
+    }
+
+    @Test
+    public void testSignatureWithExtensions() throws Exception {
+        String keyInfo = "<ds:KeyInfo Id=\"KI-1\"><ds:KeyName>key</ds:KeyName></ds:KeyInfo>";
+        JAXBElement<?> bound = bindAndCompare(
+                readString(String.format(SIGNATURE, keyInfo)), XMLSecurityConstants.TAG_dsig_Signature);
+        SignatureType signatureType = (SignatureType) bound.getValue();
+        assertEquals("Sig-1", signatureType.getId());
+        assertEquals("#Body-1", signatureType.getSignedInfo().getReference().get(0).getURI());
+
+        bindAndCompare(readString(String.format(SIGNATURE, keyInfo)), XMLSecurityConstants.TAG_dsig_SignedInfo);
+    }
+
+    @Test
+    public void testUnsupportedStructures() throws Exception {
+        String[] unsupported = {
+            //ds:Object is left to JAXB
+            String.format(SIGNATURE, "<ds:Object>text</ds:Object>"),
+            //unknown KeyInfo content
+            String.format(SIGNATURE, "<ds:KeyInfo><ds:PGPData><ds:PGPKeyID>AAAA</ds:PGPKeyID></ds:PGPData></ds:KeyInfo>"),
+            //empty KeyInfo
+            String.format(SIGNATURE, "<ds:KeyInfo/>"),
+            //duplicate Id
+            String.format(SIGNATURE, "<ds:KeyInfo Id=\"Ref-1\"><ds:KeyName>key</ds:KeyName></ds:KeyInfo>"),
+            //invalid Id
+            String.format(SIGNATURE, "<ds:KeyInfo Id=\"1KI\"><ds:KeyName>key</ds:KeyName></ds:KeyInfo>"),
+            //unexpected attribute
+            String.format(SIGNATURE, "<ds:KeyInfo xml:lang=\"en\"><ds:KeyName>key</ds:KeyName></ds:KeyInfo>"),
+            //unexpected text
+            String.format(SIGNATURE, "text"),
+            //misplaced element
+            String.format(SIGNATURE, "<ds:SignatureValue>AAAA</ds:SignatureValue>"),
+            //invalid base64
+            SIGNATURE.replace("fdy6S2NLpnT4fMdokUHSHsmpcvo=", "fdy6S2NLpnT4fMdokUHSHsmpcvo"),
+            //invalid integer
+            SIGNATURE.replace(">160<", ">1.6<"),
+            //invalid URI
+            SIGNATURE.replace("#Body-1", "#Body#1"),
+            //missing DigestMethod
+            SIGNATURE.replaceAll("<ds:DigestMethod [^>]*>", ""),
+        };
+        for (int i = 0; i < unsupported.length; i++) {
+            Deque<XMLSecEvent> xmlSecEvents = readString(unsupported[i]);
+            assertNull(unsupported[i], XMLSecStructureBinder.bind(
+                    xmlSecEvents, indexOf(xmlSecEvents, XMLSecurityConstants.TAG_dsig_Signature)));
+        }
+
+        //ds:DigestMethod precedes xenc:OAEPparams, which is not schema valid
+        Deque<XMLSecEvent> xmlSecEvents =
+                readResource(ENCRYPTION_PATH + "encrypt-data-tripledes-cbc-rsa-oaep-mgf1p-sha256.xml");
+        assertNull(XMLSecStructureBinder.bind(xmlSecEvents, indexOf(xmlSecEvents, XMLSecurityConstants.TAG_xenc_EncryptedData)));
+        try {
+            getUnmarshaller().unmarshal(
+                    new XMLSecurityEventReader(xmlSecEvents, indexOf(xmlSecEvents, XMLSecurityConstants.TAG_xenc_EncryptedData)));
+            fail("Schema validation failure expected");
+        } catch (JAXBException e) {
+            //expected
+        }
+
+        xmlSecEvents = readResource(SIGNATURE_PATH + "signature-enveloping-dsa.xml");
+        assertNull(XMLSecStructureBinder.bind(xmlSecEvents, indexOf(xmlSecEvents, XMLSecurityConstants.TAG_dsig_Signature)));
+        xmlSecEvents = readResource(SIGNATURE_PATH + "signature-enveloping-dsa.xml");
+        assertNull(XMLSecStructureBinder.bind(xmlSecEvents, indexOf(xmlSecEvents, XMLSecurityConstants.TAG_dsig_KeyInfo)));
+    }
+}
@@ -30,6 +30,10 @@ import java.security.PublicKey;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
@@ -322,6 +326,108 @@ public class DecryptionTest extends org.junit.Assert {
                 securityEventListener, "http://www.w3.org/2001/04/xmlenc#tripledes-cbc", null);
     }
 
+    @Test
+    public void testDecryptMultipleElementsWithExecutor() throws Exception {
+        // Decrypt using a single pooled thread for all EncryptedData structures
+        final AtomicInteger executedTasks = new AtomicInteger();
+        final ExecutorService executorService = Executors.newFixedThreadPool(1);
+        try {
+            XMLSecurityProperties properties = new XMLSecurityProperties();
+            properties.setDecryptionExecutor(new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    executedTasks.incrementAndGet();
+                    executorService.execute(command);
+                }
+            });
+            decryptMultipleElements(properties);
+        } finally {
+            executorService.shutdown();
+        }
+        Assert.assertEquals(2, executedTasks.get());
+    }
+
+    @Test
+    public void testDecryptMultipleElementsInline() throws Exception {
+        final AtomicInteger executedTasks = new AtomicInteger();
+        XMLSecurityProperties properties = new XMLSecurityProperties();
+        properties.setDecryptionInline(true);
+        properties.setDecryptionExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                executedTasks.incrementAndGet();
+                new Thread(command).start();
+            }
+        });
+        decryptMultipleElements(properties);
+        Assert.assertEquals(0, executedTasks.get());
+    }
+
+    @Test
+    public void testDecryptMultipleElementsInlineHandOver() throws Exception {
+        final AtomicInteger executedTasks = new AtomicInteger();
+        XMLSecurityProperties properties = new XMLSecurityProperties();
+        properties.setDecryptionInline(true);
+        properties.setDecryptionInlineThreshold(0);
+        properties.setDecryptionExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                executedTasks.incrementAndGet();
+                new Thread(command).start();
+            }
+        });
+        decryptMultipleElements(properties);
+        Assert.assertEquals(2, executedTasks.get());
+    }
+
+    private void decryptMultipleElements(XMLSecurityProperties properties) throws Exception {
+        // Read in plaintext document
+        InputStream sourceDocument = 
+                this.getClass().getClassLoader().getResourceAsStream(
+                        "ie/baltimore/merlin-examples/merlin-xmlenc-five/plaintext.xml");
+        DocumentBuilder builder = XMLUtils.createDocumentBuilder(false);
+        Document document = builder.parse(sourceDocument);
+        
+        // Set up the Key
+        SecretKey secretKey = generateSecretKey();
+        
+        // Encrypt using DOM
+        List<String> localNames = new ArrayList<String>();
+        localNames.add("PaymentInfo");
+        localNames.add("ShippingAddress");
+        encryptUsingDOM(
+            "http://www.w3.org/2001/04/xmlenc#tripledes-cbc", secretKey, null, null, document, 
+            localNames, false
+        );
+        
+        // Convert Document to a Stream Reader
+        javax.xml.transform.Transformer transformer = transformerFactory.newTransformer();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        transformer.transform(new DOMSource(document), new StreamResult(baos));
+        final XMLStreamReader xmlStreamReader = 
+                xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(baos.toByteArray()));
+        
+        // Decrypt
+        properties.setDecryptionKey(secretKey);
+        InboundXMLSec inboundXMLSec = XMLSec.getInboundWSSec(properties);
+        TestSecurityEventListener securityEventListener = new TestSecurityEventListener();
+        XMLStreamReader securityStreamReader = 
+                inboundXMLSec.processInMessage(xmlStreamReader, null, securityEventListener);
+         
+        document = StAX2DOM.readDoc(XMLUtils.createDocumentBuilder(false), securityStreamReader);
+         
+        // Check the CreditCard decrypted ok
+        NodeList nodeList = document.getElementsByTagNameNS("urn:example:po", "CreditCard");
+        Assert.assertEquals(nodeList.getLength(), 1);
+        
+        // Check the ShippingAddress decrypted ok
+        nodeList = document.getElementsByTagNameNS("urn:example:po", "ShippingAddress");
+        Assert.assertEquals(nodeList.getLength(), 1);
+        
+        // Check the SecurityEvents
+        checkMultipleEncryptedElementSecurityEvents(securityEventListener);
+    }
+
     /**
      * Test encryption using a generated AES 128 bit key that is
      * encrypted using a AES 192 bit key.  Then reverse using the KEK
@@ -33,6 +33,7 @@ import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
@@ -202,6 +203,110 @@ public class SymmetricEncryptionVerificationTest extends org.junit.Assert {
         Assert.assertEquals(nodeList.getLength(), 1);
     }
     
+    @Test
+    public void testAES128_GCMBufferedInTemporaryFile() throws Exception {
+        // Read in plaintext document
+        InputStream sourceDocument = 
+                this.getClass().getClassLoader().getResourceAsStream(
+                        "ie/baltimore/merlin-examples/merlin-xmlenc-five/plaintext.xml");
+        DocumentBuilder builder = XMLUtils.createDocumentBuilder(false);
+        Document document = builder.parse(sourceDocument);
+        
+        // Set up the Key
+        KeyGenerator keygen = KeyGenerator.getInstance("AES");
+        keygen.init(128);
+        SecretKey key = keygen.generateKey();
+        
+        // Encrypt using DOM
+        List<String> localNames = new ArrayList<String>();
+        localNames.add("PaymentInfo");
+        localNames.add("ShippingAddress");
+        String algorithm = "http://www.w3.org/2009/xmlenc11#aes128-gcm";
+        encryptUsingDOM(
+            algorithm, key, null, null, document, localNames, false
+        );
+        
+        // Convert Document to a Stream Reader
+        javax.xml.transform.Transformer transformer = transformerFactory.newTransformer();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        transformer.transform(new DOMSource(document), new StreamResult(baos));
+        final XMLStreamReader xmlStreamReader = 
+                xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(baos.toByteArray()));
+        
+        // Decrypt with the plaintext buffered in a temporary file
+        XMLSecurityProperties properties = new XMLSecurityProperties();
+        properties.setDecryptionKey(key);
+        properties.setDecryptionGCMBufferThreshold(0);
+        InboundXMLSec inboundXMLSec = XMLSec.getInboundWSSec(properties);
+        TestSecurityEventListener securityEventListener = new TestSecurityEventListener();
+        XMLStreamReader securityStreamReader = 
+                inboundXMLSec.processInMessage(xmlStreamReader, null, securityEventListener);
+         
+        document = StAX2DOM.readDoc(XMLUtils.createDocumentBuilder(false), securityStreamReader);
+         
+        // Check the CreditCard and the ShippingAddress decrypted ok
+        NodeList nodeList = document.getElementsByTagNameNS("urn:example:po", "CreditCard");
+        Assert.assertEquals(nodeList.getLength(), 1);
+        nodeList = document.getElementsByTagNameNS("urn:example:po", "ShippingAddress");
+        Assert.assertEquals(nodeList.getLength(), 1);
+    }
+    
+    @Test
+    public void testAES128_GCMBufferedModifiedCipherValue() throws Exception {
+        // Read in plaintext document
+        InputStream sourceDocument = 
+                this.getClass().getClassLoader().getResourceAsStream(
+                        "ie/baltimore/merlin-examples/merlin-xmlenc-five/plaintext.xml");
+        DocumentBuilder builder = XMLUtils.createDocumentBuilder(false);
+        Document document = builder.parse(sourceDocument);
+        
+        // Set up the Key
+        KeyGenerator keygen = KeyGenerator.getInstance("AES");
+        keygen.init(128);
+        SecretKey key = keygen.generateKey();
+        
+        // Encrypt using DOM
+        List<String> localNames = new ArrayList<String>();
+        localNames.add("PaymentInfo");
+        String algorithm = "http://www.w3.org/2009/xmlenc11#aes128-gcm";
+        encryptUsingDOM(
+            algorithm, key, null, null, document, localNames, false
+        );
+        
+        // Modify the CipherValue
+        Element cipherValue = (Element) document.getElementsByTagNameNS(
+                XMLSecurityConstants.TAG_xenc_CipherValue.getNamespaceURI(),
+                XMLSecurityConstants.TAG_xenc_CipherValue.getLocalPart()
+            ).item(0);
+        String value = cipherValue.getTextContent();
+        int index = value.length() / 2;
+        char replacement = value.charAt(index) == 'A' ? 'B' : 'A';
+        cipherValue.setTextContent(value.substring(0, index) + replacement + value.substring(index + 1));
+        
+        // Convert Document to a Stream Reader
+        javax.xml.transform.Transformer transformer = transformerFactory.newTransformer();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        transformer.transform(new DOMSource(document), new StreamResult(baos));
+        final XMLStreamReader xmlStreamReader = 
+                xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(baos.toByteArray()));
+        
+        // Decrypt
+        XMLSecurityProperties properties = new XMLSecurityProperties();
+        properties.setDecryptionKey(key);
+        properties.setDecryptionGCMBufferThreshold(0);
+        InboundXMLSec inboundXMLSec = XMLSec.getInboundWSSec(properties);
+        TestSecurityEventListener securityEventListener = new TestSecurityEventListener();
+        XMLStreamReader securityStreamReader = 
+                inboundXMLSec.processInMessage(xmlStreamReader, null, securityEventListener);
+         
+        try {
+            StAX2DOM.readDoc(XMLUtils.createDocumentBuilder(false), securityStreamReader);
+            fail("Exception expected");
+        } catch (XMLStreamException e) {
+            Assert.assertTrue(e.getMessage().contains("Tag mismatch"));
+        }
+    }
+    
     @Test
     public void testAES192() throws Exception {
         // Read in plaintext document
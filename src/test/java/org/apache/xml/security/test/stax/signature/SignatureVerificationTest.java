@@ -364,6 +364,76 @@ public class SignatureVerificationTest extends AbstractSignatureVerificationTest
     }
     
     
+    @Test
+    public void testEnvelopedSignatureVerificationWithSpilledEvents() throws Exception {
+        // Read in plaintext document
+        InputStream sourceDocument = 
+                this.getClass().getClassLoader().getResourceAsStream(
+                        "ie/baltimore/merlin-examples/merlin-xmlenc-five/plaintext.xml");
+        DocumentBuilder builder = XMLUtils.createDocumentBuilder(false);
+        Document document = builder.parse(sourceDocument);
+        
+        // Set up the Key
+        KeyStore keyStore = KeyStore.getInstance("jks");
+        keyStore.load(
+            this.getClass().getClassLoader().getResource("transmitter.jks").openStream(), 
+            "default".toCharArray()
+        );
+        Key key = keyStore.getKey("transmitter", "default".toCharArray());
+        X509Certificate cert = (X509Certificate)keyStore.getCertificate("transmitter");
+        
+        ReferenceInfo referenceInfo = new ReferenceInfo(
+            "",
+            new String[]{
+                         "http://www.w3.org/2000/09/xmldsig#enveloped-signature",
+                         "http://www.w3.org/TR/2001/REC-xml-c14n-20010315"
+            },
+            "http://www.w3.org/2000/09/xmldsig#sha1",
+            false
+        );
+
+        List<ReferenceInfo> referenceInfos = new ArrayList<ReferenceInfo>();
+        referenceInfos.add(referenceInfo);
+        
+        // Sign using DOM
+        List<String> localNames = new ArrayList<String>();
+        localNames.add("PaymentInfo");
+        XMLSignature sig = signUsingDOM(
+            "http://www.w3.org/2000/09/xmldsig#rsa-sha1", document, localNames, key, referenceInfos
+        );
+        
+        // Add KeyInfo
+        sig.addKeyInfo(cert);
+        
+        // XMLUtils.outputDOM(document, System.out);
+        
+        // Convert Document to a Stream Reader
+        javax.xml.transform.Transformer transformer = transformerFactory.newTransformer();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        transformer.transform(new DOMSource(document), new StreamResult(baos));
+        final XMLStreamReader xmlStreamReader = 
+                xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(baos.toByteArray()));
+  
+        // Verify signature
+        XMLSecurityProperties properties = new XMLSecurityProperties();
+        // keep only a few events in memory, the rest of the document goes to a temporary file
+        properties.setSignatureEventBufferThreshold(2);
+        InboundXMLSec inboundXMLSec = XMLSec.getInboundWSSec(properties);
+        TestSecurityEventListener securityEventListener = new TestSecurityEventListener();
+        XMLStreamReader securityStreamReader = 
+                inboundXMLSec.processInMessage(xmlStreamReader, null, securityEventListener);
+
+        Document verifiedDocument =
+                StAX2DOM.readDoc(XMLUtils.createDocumentBuilder(false), securityStreamReader);
+
+        Assert.assertEquals(document.getElementsByTagName("*").getLength(),
+                verifiedDocument.getElementsByTagName("*").getLength());
+        Assert.assertEquals(1, verifiedDocument.getElementsByTagNameNS("*", "PaymentInfo").getLength());
+        checkSignatureToken(securityEventListener, cert, null,
+                            SecurityTokenConstants.KeyIdentifier_X509KeyIdentifier);
+    }
+
+    
     @Test
     public void testHMACSignatureVerification() throws Exception {
         // Read in plaintext document